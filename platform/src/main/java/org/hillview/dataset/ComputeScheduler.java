@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.dataset;
+
+import org.hillview.dataset.api.TaskPriority;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * The ComputeScheduler executes the data processing performed by LocalDataSets.
+ * It is backed by a work-stealing ForkJoinPool.  Tasks are submitted with a priority;
+ * when all threads are busy, pending tasks with a higher priority are started first.
+ * The scheduler also keeps a few counters that describe the load of the machine.
+ * There is one global instance, which can be reconfigured; other instances can be
+ * created for testing.
+ */
+public final class ComputeScheduler {
+    /**
+     * Name of the Java system property that specifies the number of threads
+     * of the global instance.  By default this is the number of cores.
+     */
+    public static final String PARALLELISM_PROPERTY = "hillview.compute.parallelism";
+    private static final Logger logger = Logger.getLogger(ComputeScheduler.class.getName());
+
+    @Nullable
+    private static ComputeScheduler instance = null;
+
+    private final ForkJoinPool pool;
+    /**
+     * One queue of pending tasks for each priority, indexed by TaskPriority.ordinal().
+     */
+    private final ConcurrentLinkedQueue<Runnable>[] pending;
+    private final AtomicInteger[] queueDepth;
+    private final AtomicLong[] completed;
+    private final AtomicInteger running;
+    private final Scheduler[] schedulers;
+
+    @SuppressWarnings("unchecked")
+    public ComputeScheduler(final int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        // asyncMode = true: tasks that are never joined are processed in FIFO order.
+        this.pool = new ForkJoinPool(parallelism,
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        final int priorities = TaskPriority.values().length;
+        this.pending = new ConcurrentLinkedQueue[priorities];
+        this.queueDepth = new AtomicInteger[priorities];
+        this.completed = new AtomicLong[priorities];
+        this.schedulers = new Scheduler[priorities];
+        for (TaskPriority p : TaskPriority.values()) {
+            int i = p.ordinal();
+            this.pending[i] = new ConcurrentLinkedQueue<Runnable>();
+            this.queueDepth[i] = new AtomicInteger(0);
+            this.completed[i] = new AtomicLong(0);
+            this.schedulers[i] = Schedulers.from(this.getExecutor(p));
+        }
+        this.running = new AtomicInteger(0);
+    }
+
+    /**
+     * @return The global scheduler instance, creating it if necessary.
+     */
+    public static synchronized ComputeScheduler getInstance() {
+        if (instance == null) {
+            int parallelism = Integer.getInteger(PARALLELISM_PROPERTY,
+                    Runtime.getRuntime().availableProcessors());
+            instance = new ComputeScheduler(parallelism);
+            logger.info("Created compute scheduler with " + parallelism + " threads");
+        }
+        return instance;
+    }
+
+    /**
+     * Replace the global scheduler with one using the specified number of threads.
+     * Computations already submitted to the previous scheduler run to completion.
+     */
+    public static synchronized void configure(final int parallelism) {
+        ComputeScheduler previous = instance;
+        instance = new ComputeScheduler(parallelism);
+        if (previous != null)
+            previous.shutdown();
+        logger.info("Reconfigured compute scheduler with " + parallelism + " threads");
+    }
+
+    /**
+     * @return An executor which submits tasks with the specified priority.
+     */
+    public Executor getExecutor(final TaskPriority priority) {
+        return task -> this.submit(priority, task);
+    }
+
+    /**
+     * @return An Rx scheduler which runs the work with the specified priority.
+     */
+    public Scheduler getScheduler(final TaskPriority priority) {
+        return this.schedulers[priority.ordinal()];
+    }
+
+    private void submit(final TaskPriority priority, final Runnable task) {
+        int i = priority.ordinal();
+        this.pending[i].add(task);
+        this.queueDepth[i].incrementAndGet();
+        // Each submitted task causes exactly one call to runNext, but the task
+        // executed by runNext is the one with the highest priority at that time.
+        this.pool.execute(this::runNext);
+    }
+
+    private void runNext() {
+        for (int i = 0; i < this.pending.length; i++) {
+            Runnable task = this.pending[i].poll();
+            if (task == null)
+                continue;
+            this.queueDepth[i].decrementAndGet();
+            this.running.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                this.running.decrementAndGet();
+                this.completed[i].incrementAndGet();
+            }
+            return;
+        }
+    }
+
+    /**
+     * @return Number of tasks with the specified priority waiting to be started.
+     */
+    public int getQueueDepth(final TaskPriority priority) {
+        return this.queueDepth[priority.ordinal()].get();
+    }
+
+    /**
+     * @return Total number of tasks waiting to be started.
+     */
+    public int getQueueDepth() {
+        int result = 0;
+        for (AtomicInteger d : this.queueDepth)
+            result += d.get();
+        return result;
+    }
+
+    /**
+     * @return Number of tasks with the specified priority that have completed.
+     */
+    public long getCompletedCount(final TaskPriority priority) {
+        return this.completed[priority.ordinal()].get();
+    }
+
+    /**
+     * @return Number of tasks currently executing.
+     */
+    public int getRunningCount() {
+        return this.running.get();
+    }
+
+    public int getParallelism() {
+        return this.pool.getParallelism();
+    }
+
+    /**
+     * @return Number of tasks stolen by the pool threads from each other.
+     */
+    public long getStealCount() {
+        return this.pool.getStealCount();
+    }
+
+    public void shutdown() {
+        this.pool.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("ComputeScheduler(threads=").append(this.getParallelism())
+               .append(", running=").append(this.getRunningCount());
+        for (TaskPriority p : TaskPriority.values())
+            builder.append(", ").append(p).append(": queued=").append(this.getQueueDepth(p))
+                   .append(" completed=").append(this.getCompletedCount(p));
+        builder.append(", steals=").append(this.getStealCount()).append(")");
+        return builder.toString();
+    }
+}
@@ -18,13 +18,22 @@
 
 package org.hillview.dataset;
 
+import org.hillview.dataset.api.IAccumulator;
+import org.hillview.dataset.api.IFusableSketch;
 import org.hillview.dataset.api.ISketch;
 import org.hillview.dataset.api.Pair;
 import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 
-public class ConcurrentSketch<T, R1, R2> implements ISketch<T, Pair<R1, R2>> {
+/**
+ * A sketch which computes two sketches on the same data.  If possible the two sketches
+ * share a single scan of the data (see FusedSketch).
+ */
+public class ConcurrentSketch<T, R1, R2> implements IFusableSketch<T, Pair<R1, R2>> {
     private final ISketch<T, R1> first;
     private final ISketch<T, R2> second;
 
@@ -51,8 +60,47 @@ public class ConcurrentSketch<T, R1, R2> implements ISketch<T, Pair<R1, R2>> {
 
     @Override
     public Pair<R1, R2> create(T data) {
-        R1 first = this.first.create(data);
-        R2 second = this.second.create(data);
-        return new Pair<R1, R2>(first, second);
+        List<Object> results = FusedSketch.createAll(data, this.components());
+        return ConcurrentSketch.makePair(results);
+    }
+
+    private List<ISketch<T, ?>> components() {
+        return Arrays.<ISketch<T, ?>>asList(this.first, this.second);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R1, R2> Pair<R1, R2> makePair(final List<Object> results) {
+        return new Pair<R1, R2>((R1)results.get(0), (R2)results.get(1));
+    }
+
+    @Nullable
+    @Override
+    public IAccumulator<Pair<R1, R2>> getAccumulator(T data) {
+        List<IAccumulator<?>> accumulators = FusedSketch.getAccumulators(data, this.components());
+        if (accumulators == null)
+            return null;
+        return new FusedSketch.FanOut<Pair<R1, R2>>(accumulators, ConcurrentSketch::makePair);
+    }
+
+    /**
+     * The combined sketch is cacheable if all its components are.
+     */
+    @Override
+    public boolean isCacheable() {
+        return this.first.isCacheable() && this.second.isCacheable();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ConcurrentSketch<?, ?, ?> that = (ConcurrentSketch<?, ?, ?>) o;
+        return this.first.equals(that.first) &&
+                this.second.equals(that.second);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.first, this.second);
     }
 }
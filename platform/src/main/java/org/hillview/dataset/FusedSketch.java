@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.dataset;
+
+import org.hillview.dataset.api.IAccumulator;
+import org.hillview.dataset.api.IFusableSketch;
+import org.hillview.dataset.api.IScannable;
+import org.hillview.dataset.api.ISketch;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A sketch which computes several sketches on the same data.  When the data is
+ * IScannable, all sketches which are IFusableSketches consume a single scan of the data;
+ * the other sketches are computed separately.
+ * @param <T> Input data type.
+ * @param <R> Result type of each sketch.
+ */
+public class FusedSketch<T, R> implements IFusableSketch<T, List<R>> {
+    private final List<ISketch<T, R>> sketches;
+
+    public FusedSketch(final List<ISketch<T, R>> sketches) {
+        this.sketches = sketches;
+    }
+
+    @Override
+    public List<R> create(final T data) {
+        List<Object> results = FusedSketch.createAll(data, this.sketches);
+        return FusedSketch.castAll(results);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> List<R> castAll(final List<Object> objects) {
+        final List<R> result = new ArrayList<R>(objects.size());
+        for (Object o : objects)
+            result.add((R)o);
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public List<R> zero() {
+        final List<R> result = new ArrayList<R>(this.sketches.size());
+        for (ISketch<T, R> s : this.sketches)
+            result.add(s.zero());
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public List<R> add(@Nullable List<R> left, @Nullable List<R> right) {
+        left = Converters.checkNull(left);
+        right = Converters.checkNull(right);
+        final List<R> result = new ArrayList<R>(this.sketches.size());
+        for (int i = 0; i < this.sketches.size(); i++)
+            result.add(this.sketches.get(i).add(left.get(i), right.get(i)));
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public IAccumulator<List<R>> getAccumulator(final T data) {
+        final List<IAccumulator<?>> accumulators = FusedSketch.getAccumulators(data, this.sketches);
+        if (accumulators == null)
+            return null;
+        return new FanOut<List<R>>(accumulators, FusedSketch::castAll);
+    }
+
+    /**
+     * Computes each of the sketches on the data, sharing one scan of the data between
+     * all sketches that support it.
+     * @return The list of results, in the order of the sketches.
+     */
+    static <T> List<Object> createAll(final T data, final List<? extends ISketch<T, ?>> sketches) {
+        final Object[] results = new Object[sketches.size()];
+        final List<IAccumulator<?>> fused = new ArrayList<IAccumulator<?>>();
+        final List<Integer> fusedIndex = new ArrayList<Integer>();
+        if (data instanceof IScannable) {
+            for (int i = 0; i < sketches.size(); i++) {
+                ISketch<T, ?> sketch = sketches.get(i);
+                if (!(sketch instanceof IFusableSketch))
+                    continue;
+                IAccumulator<?> acc = ((IFusableSketch<T, ?>) sketch).getAccumulator(data);
+                if (acc != null) {
+                    fused.add(acc);
+                    fusedIndex.add(i);
+                }
+            }
+        }
+        if (fused.size() > 1) {
+            final FanOut<List<Object>> all = new FanOut<List<Object>>(fused, l -> l);
+            ((IScannable)data).scan(all::add);
+            final List<Object> fusedResults = all.getResult();
+            for (int i = 0; i < fusedIndex.size(); i++)
+                results[fusedIndex.get(i)] = fusedResults.get(i);
+        }
+        for (int i = 0; i < sketches.size(); i++) {
+            // No point in fusing a single sketch.
+            if ((fused.size() <= 1) || !fusedIndex.contains(i))
+                results[i] = sketches.get(i).create(data);
+        }
+        final List<Object> result = new ArrayList<Object>(results.length);
+        for (Object o : results)
+            result.add(o);
+        return result;
+    }
+
+    /**
+     * Returns the accumulators of all sketches, or null if some sketch cannot
+     * provide one.
+     */
+    @Nullable
+    static <T> List<IAccumulator<?>> getAccumulators(
+            final T data, final List<? extends ISketch<T, ?>> sketches) {
+        final List<IAccumulator<?>> result = new ArrayList<IAccumulator<?>>(sketches.size());
+        for (ISketch<T, ?> sketch : sketches) {
+            if (!(sketch instanceof IFusableSketch))
+                return null;
+            IAccumulator<?> acc = ((IFusableSketch<T, ?>) sketch).getAccumulator(data);
+            if (acc == null)
+                return null;
+            result.add(acc);
+        }
+        return result;
+    }
+
+    /**
+     * An accumulator which feeds each batch to a list of accumulators.
+     * @param <R> Type of the combined result.
+     */
+    static class FanOut<R> implements IAccumulator<R> {
+        private final IAccumulator<?>[] accumulators;
+        private final Function<List<Object>, R> combine;
+
+        FanOut(final List<IAccumulator<?>> accumulators,
+               final Function<List<Object>, R> combine) {
+            this.accumulators = accumulators.toArray(new IAccumulator<?>[accumulators.size()]);
+            this.combine = combine;
+        }
+
+        @Override
+        public void add(final int[] indexes, final int count) {
+            for (IAccumulator<?> acc : this.accumulators)
+                acc.add(indexes, count);
+        }
+
+        @Override
+        public R getResult() {
+            final List<Object> results = new ArrayList<Object>(this.accumulators.length);
+            for (IAccumulator<?> acc : this.accumulators)
+                results.add(acc.getResult());
+            return this.combine.apply(results);
+        }
+    }
+
+    @Override
+    public boolean isCacheable() {
+        for (ISketch<T, R> s : this.sketches)
+            if (!s.isCacheable())
+                return false;
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FusedSketch<?, ?> that = (FusedSketch<?, ?>) o;
+        return this.sketches.equals(that.sketches);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.sketches);
+    }
+}
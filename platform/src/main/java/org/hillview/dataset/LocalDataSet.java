@@ -19,12 +19,14 @@
 package org.hillview.dataset;
 
 import org.hillview.dataset.api.*;
+import org.hillview.utils.Converters;
 import rx.Observable;
-import rx.schedulers.Schedulers;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A LocalDataSet is an implementation of IDataSet which contains exactly one
@@ -36,13 +38,36 @@ public class LocalDataSet<T> implements IDataSet<T> {
      * Actual data held by the LocalDataSet.
      */
     private final T data;
+    /**
+     * Unique identifier of this dataset, used to index the SketchCache.
+     * The data itself is not used as a key, to avoid keeping it alive in the cache.
+     */
+    private final long id;
+    private static final AtomicLong nextId = new AtomicLong(0);
     /**
      * If this is set to 'true' then data processing (i.e., the map and sketch calls)
      * are done on a separate thread.  This is the only place where multithreading
-     * is used in the whole platform code base.  The effect is that all observers of
-     * the results are invoked on a separate thread.
+     * is used in the whole platform code base.  The computation itself runs on the
+     * separate thread (not just the delivery of the results), so sibling LocalDataSets
+     * in a ParallelDataSet are processed concurrently.  The effect is also that all
+     * observers of the results are invoked on a separate thread.
+     * The threads are managed by the global ComputeScheduler.
      */
     private final boolean separateThread;
+    /**
+     * If the data is IChunkable sketches are computed one chunk of this size at a time,
+     * and a partial result is produced after each chunk.  This gives the user early
+     * feedback on large datasets and allows computations to be cancelled between chunks.
+     * Zero disables chunking.
+     */
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+    /**
+     * The chunks of the data, computed on the first chunked sketch.  The data is
+     * immutable, so all sketches use the same chunks.
+     */
+    @Nullable
+    private volatile List<T> chunks;
 
     /**
      * Create a LocalDataSet, processing the data on a separate thread by default.
@@ -50,14 +75,27 @@ public class LocalDataSet<T> implements IDataSet<T> {
      */
     public LocalDataSet(final T data) {
         this.data = data;
+        this.id = nextId.getAndIncrement();
         this.separateThread = true;
     }
 
     public LocalDataSet(final T data, final boolean separateThread) {
         this.data = data;
+        this.id = nextId.getAndIncrement();
         this.separateThread = separateThread;
     }
 
+    /**
+     * Set the size of the chunks used when computing sketches; zero disables chunking.
+     * This only affects this dataset, not the datasets produced by map operations.
+     */
+    public void setChunkSize(final int chunkSize) {
+        if (chunkSize < 0)
+            throw new IllegalArgumentException("Negative chunk size " + chunkSize);
+        this.chunkSize = chunkSize;
+        this.chunks = null;
+    }
+
     /**
      * Helper function to create the first result in a stream of results.
      * This is used to immediately return a "zero" when processing start;
@@ -88,7 +126,7 @@ public class LocalDataSet<T> implements IDataSet<T> {
         // Wrap the produced data in a PartialResult
         Observable<PartialResult<IDataSet<S>>> data = mapped.map(PartialResult::new);
         if (this.separateThread)
-            data = data.observeOn(Schedulers.computation());
+            data = data.subscribeOn(ComputeScheduler.getInstance().getScheduler(TaskPriority.Normal));
         return data;
     }
 
@@ -108,7 +146,7 @@ public class LocalDataSet<T> implements IDataSet<T> {
         // Wrap the produced data in a PartialResult
         Observable<PartialResult<IDataSet<S>>> data = mapped.map(PartialResult::new);
         if (this.separateThread)
-            data = data.observeOn(Schedulers.computation());
+            data = data.subscribeOn(ComputeScheduler.getInstance().getScheduler(TaskPriority.Normal));
         return data;
     }
 
@@ -127,18 +165,65 @@ public class LocalDataSet<T> implements IDataSet<T> {
     public <R> Observable<PartialResult<R>> sketch(final ISketch<T, R> sketch) {
         // Immediately return a zero partial result
         final Observable<PartialResult<R>> zero = this.zero(sketch::zero);
-        // Actual sketch computation performed lazily when observable is subscribed to.
-        final Callable<R> callable = () -> sketch.create(this.data);
-        final Observable<R> sketched = Observable.fromCallable(callable);
-        // Wrap sketch results in a stream of PartialResults.
-        final Observable<PartialResult<R>> pro = sketched.map(PartialResult::new);
+        final Observable<PartialResult<R>> pro;
+        if (this.data instanceof IStreamable<?>) {
+            pro = Observable.defer(() -> this.sketchPieces(sketch));
+        } else if ((this.chunkSize > 0) && (this.data instanceof IChunkable<?>)) {
+            // The data is split in chunks only when someone subscribes.
+            pro = Observable.defer(() -> this.sketchChunks(sketch));
+        } else {
+            // Actual sketch computation performed lazily when observable is subscribed to.
+            final Callable<R> callable = () -> sketch.create(this.data);
+            final Observable<R> sketched = Observable.fromCallable(callable);
+            // Wrap sketch results in a stream of PartialResults.
+            pro = sketched.map(PartialResult::new);
+        }
         // Concatenate with the zero.
         Observable<PartialResult<R>> result = zero.concatWith(pro);
         if (this.separateThread)
-            result = result.observeOn(Schedulers.computation());
+            result = result.subscribeOn(
+                    ComputeScheduler.getInstance().getScheduler(sketch.getPriority()));
+        // Repeated sketches of the same data are served from the cache.
+        return SketchCache.getInstance().sketch(this.id, sketch, result);
+    }
+
+    /**
+     * Runs the sketch on each chunk of the data in turn; each chunk produces a
+     * partial result.  The next chunk is only processed if the consumer is still
+     * subscribed.
+     */
+    private <R> Observable<PartialResult<R>> sketchChunks(final ISketch<T, R> sketch) {
+        final List<T> chunks = this.getChunks();
+        final double delta = 1.0 / chunks.size();
+        return Observable.from(chunks).map(c -> new PartialResult<R>(delta, sketch.create(c)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> getChunks() {
+        List<T> result = this.chunks;
+        if (result == null) {
+            // Concurrent callers may split the data more than once; all results are equivalent.
+            result = ((IChunkable<T>) this.data).splitInChunks(this.chunkSize);
+            this.chunks = result;
+        }
         return result;
     }
 
+    /**
+     * Runs the sketch on each piece of the data as it becomes available.  The
+     * pieces may arrive on the thread producing them, so the sketches are computed
+     * on the compute scheduler.
+     */
+    @SuppressWarnings("unchecked")
+    private <R> Observable<PartialResult<R>> sketchPieces(final ISketch<T, R> sketch) {
+        final IStreamable<T> streamable = (IStreamable<T>) this.data;
+        return streamable.getPieces()
+                .onBackpressureBuffer()
+                .observeOn(ComputeScheduler.getInstance().getScheduler(sketch.getPriority()))
+                .map(p -> new PartialResult<R>(Converters.checkNull(p.first),
+                        sketch.create(Converters.checkNull(p.second))));
+    }
+
     @Override
     public String toString() {
         return "LocalDataSet " + this.data.toString();
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.dataset;
+
+import com.google.common.net.HostAndPort;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.stub.StreamObserver;
+import org.apache.commons.lang3.SerializationUtils;
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.api.IMap;
+import org.hillview.dataset.api.ISketch;
+import org.hillview.dataset.api.Pair;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.pb.BatchCommand;
+import org.hillview.pb.BatchResponse;
+import org.hillview.pb.Command;
+import org.hillview.pb.HillviewServerGrpc;
+import org.hillview.remoting.ChannelPool;
+import org.hillview.remoting.FlatMapOperation;
+import org.hillview.remoting.MapOperation;
+import org.hillview.remoting.RemoteOperation;
+import org.hillview.remoting.ResultCodecs;
+import org.hillview.remoting.SketchOperation;
+import org.hillview.remoting.ZipOperation;
+import org.hillview.utils.Converters;
+import rx.Observable;
+import rx.subjects.ReplaySubject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Sends several operations on RemoteDataSets that reside on the same server using a
+ * single call.  Each of map(), flatMap(), sketch() and zip() adds an operation to the
+ * batch and returns the stream of its results; execute() sends the whole batch.
+ * The server runs the operations concurrently, and computes the sketches of the same
+ * dataset with a single scan of the data; if one of these sketches fails, they all fail.
+ */
+public class RemoteBatch {
+    private final HostAndPort serverEndpoint;
+    private final List<Command> commands;
+    private final List<Operation<?>> operations;
+    private boolean executed;
+
+    /**
+     * An operation of the batch.
+     * @param <R> Type of the results of the operation.
+     */
+    private static class Operation<R> {
+        final ReplaySubject<R> results;
+        final Function<byte[], R> decode;
+
+        Operation(final Function<byte[], R> decode) {
+            this.results = ReplaySubject.create();
+            this.decode = decode;
+        }
+    }
+
+    public RemoteBatch(final HostAndPort serverEndpoint) {
+        this.serverEndpoint = serverEndpoint;
+        this.commands = new ArrayList<Command>();
+        this.operations = new ArrayList<Operation<?>>();
+        this.executed = false;
+    }
+
+    private <R> Observable<R> add(final RemoteDataSet<?> data, final RemoteOperation op,
+                                  final Function<byte[], R> decode) {
+        if (this.executed)
+            throw new RuntimeException("Batch already executed");
+        if (!data.getServerEndpoint().equals(this.serverEndpoint))
+            throw new RuntimeException("Dataset on " + data.getServerEndpoint() +
+                    " cannot be part of a batch for " + this.serverEndpoint);
+        final byte[] serializedOp = SerializationUtils.serialize(op);
+        this.commands.add(Command.newBuilder()
+                                 .setIdsIndex(data.getRemoteHandle())
+                                 .setSerializedOp(ByteString.copyFrom(serializedOp))
+                                 .build());
+        final Operation<R> operation = new Operation<R>(decode);
+        this.operations.add(operation);
+        return operation.results.doOnUnsubscribe(() -> data.unsubscribe(op.id));
+    }
+
+    private <S> PartialResult<IDataSet<S>> decodeDataSet(final byte[] bytes) {
+        final Integer index = (Integer) ResultCodecs.decode(bytes);
+        final IDataSet<S> ids = (index == null) ? null :
+                new RemoteDataSet<S>(this.serverEndpoint, index);
+        return new PartialResult<IDataSet<S>>(ids);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> PartialResult<R> decodeResult(final byte[] bytes) {
+        return (PartialResult<R>) Converters.checkNull(ResultCodecs.decode(bytes));
+    }
+
+    public <T, S> Observable<PartialResult<IDataSet<S>>> map(
+            final RemoteDataSet<T> data, final IMap<T, S> mapper) {
+        return this.add(data, new MapOperation<T, S>(mapper), this::<S>decodeDataSet);
+    }
+
+    public <T, S> Observable<PartialResult<IDataSet<S>>> flatMap(
+            final RemoteDataSet<T> data, final IMap<T, List<S>> mapper) {
+        return this.add(data, new FlatMapOperation<T, S>(mapper), this::<S>decodeDataSet);
+    }
+
+    public <T, R> Observable<PartialResult<R>> sketch(
+            final RemoteDataSet<T> data, final ISketch<T, R> sketch) {
+        return this.add(data, new SketchOperation<T, R>(sketch), RemoteBatch::<R>decodeResult);
+    }
+
+    public <T, S> Observable<PartialResult<IDataSet<Pair<T, S>>>> zip(
+            final RemoteDataSet<T> data, final RemoteDataSet<S> other) {
+        return this.add(data, new ZipOperation(other.getRemoteHandle()),
+                this::<Pair<T, S>>decodeDataSet);
+    }
+
+    /**
+     * Send all operations of the batch to the server.  The results of each operation
+     * are replayed to the subscribers of the observable returned when it was added.
+     */
+    public void execute() {
+        if (this.executed)
+            throw new RuntimeException("Batch already executed");
+        this.executed = true;
+        final BatchCommand batch = BatchCommand.newBuilder().addAllCommands(this.commands).build();
+        final ManagedChannel channel = ChannelPool.getInstance().getChannel(this.serverEndpoint);
+        HillviewServerGrpc.newStub(channel)
+                          .withDeadlineAfter(RemoteDataSet.TIMEOUT, TimeUnit.MILLISECONDS)
+                          .batch(batch, new StreamObserver<BatchResponse>() {
+            @Override
+            public void onNext(final BatchResponse response) {
+                RemoteBatch.this.dispatch(response);
+            }
+
+            @Override
+            public void onError(final Throwable throwable) {
+                ChannelPool.getInstance().reportFailure(
+                        RemoteBatch.this.serverEndpoint, channel, throwable);
+                for (Operation<?> op : RemoteBatch.this.operations)
+                    op.results.onError(throwable);
+            }
+
+            @Override
+            public void onCompleted() {
+                // The server terminates each operation, so the results of an operation
+                // which did not terminate are incomplete.
+                for (Operation<?> op : RemoteBatch.this.operations)
+                    if (!op.results.hasCompleted() && !op.results.hasThrowable())
+                        op.results.onError(new RuntimeException("Batch ended before the operation completed"));
+            }
+        });
+    }
+
+    private void dispatch(final BatchResponse response) {
+        final Operation<?> op = this.operations.get(response.getTag());
+        if (!response.getError().isEmpty())
+            op.results.onError(new RuntimeException(response.getError()));
+        else if (response.getCompleted())
+            op.results.onCompleted();
+        else
+            RemoteBatch.emit(op, response.getSerializedOp().toByteArray());
+    }
+
+    private static <R> void emit(final Operation<R> op, final byte[] bytes) {
+        op.results.onNext(op.decode.apply(bytes));
+    }
+}
@@ -20,7 +20,7 @@ package org.hillview.dataset;
 
 import com.google.common.net.HostAndPort;
 import com.google.protobuf.ByteString;
-import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.ManagedChannel;
 import io.grpc.stub.StreamObserver;
 import org.apache.commons.lang3.SerializationUtils;
 import org.hillview.dataset.api.*;
@@ -33,6 +33,7 @@ import org.hillview.utils.Converters;
 import rx.Observable;
 import rx.subjects.PublishSubject;
 
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -45,10 +46,14 @@ import static org.hillview.remoting.HillviewServer.DEFAULT_IDS_INDEX;
  * with a wrong value for either entry of the tuple will result in an exception.
  */
 public class RemoteDataSet<T> implements IDataSet<T> {
-    private final static int TIMEOUT = 10000;  // TODO: import via config file
+    final static int TIMEOUT = 10000;  // TODO: import via config file
+    /**
+     * Name of the Java system property that controls whether connect() accesses
+     * the datasets of servers running in this process directly; true by default.
+     */
+    public static final String IN_PROCESS_PROPERTY = "hillview.remoting.inprocess";
     private final int remoteHandle;
     private final HostAndPort serverEndpoint;
-    private final HillviewServerGrpc.HillviewServerStub stub;
 
     public RemoteDataSet(final HostAndPort serverEndpoint) {
         this(serverEndpoint, DEFAULT_IDS_INDEX);
@@ -57,10 +62,62 @@ public class RemoteDataSet<T> implements IDataSet<T> {
     public RemoteDataSet(final HostAndPort serverEndpoint, final int remoteHandle) {
         this.serverEndpoint = serverEndpoint;
         this.remoteHandle = remoteHandle;
-        this.stub = HillviewServerGrpc.newStub(NettyChannelBuilder
-                .forAddress(serverEndpoint.getHost(), serverEndpoint.getPort())
-                .usePlaintext(true)   // channel is unencrypted.
-                .build());
+        ChannelPool.getInstance().acquire(this, serverEndpoint);
+    }
+
+    /**
+     * A handle to the initial dataset of a server.
+     */
+    public static <T> IDataSet<T> connect(final HostAndPort serverEndpoint) {
+        return RemoteDataSet.connect(serverEndpoint, DEFAULT_IDS_INDEX);
+    }
+
+    /**
+     * A handle to a dataset of a server.  If the server runs in this process, the
+     * dataset itself is returned: all operations are then plain method calls, and
+     * results are passed by reference instead of being serialized.  Otherwise the
+     * result is a RemoteDataSet.
+     * @param serverEndpoint  Address the server listens on.
+     * @param remoteHandle    Index of the dataset on the server.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> IDataSet<T> connect(final HostAndPort serverEndpoint,
+                                          final int remoteHandle) {
+        if (Boolean.parseBoolean(System.getProperty(IN_PROCESS_PROPERTY, "true"))) {
+            final HillviewServer server = HillviewServer.getLocalServer(serverEndpoint);
+            if (server != null)
+                return (IDataSet<T>) server.getDataSet(remoteHandle);
+        }
+        return new RemoteDataSet<T>(serverEndpoint, remoteHandle);
+    }
+
+    HostAndPort getServerEndpoint() {
+        return this.serverEndpoint;
+    }
+
+    int getRemoteHandle() {
+        return this.remoteHandle;
+    }
+
+    /**
+     * @return A stub for a new call to the server, using the channel shared by all the
+     * RemoteDataSets pointing to the server.
+     */
+    private HillviewServerGrpc.HillviewServerStub stub() {
+        final ManagedChannel channel = ChannelPool.getInstance().getChannel(this.serverEndpoint);
+        return HillviewServerGrpc.newStub(channel)
+                                 .withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Like stub(), but failures of the call reported to the observer are also
+     * reported to the channel pool.
+     */
+    private HillviewServerGrpc.HillviewServerStub stub(final OperationObserver<?> observer) {
+        final ManagedChannel channel = ChannelPool.getInstance().getChannel(this.serverEndpoint);
+        observer.setChannel(this.serverEndpoint, channel);
+        return HillviewServerGrpc.newStub(channel)
+                                 .withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -76,8 +133,8 @@ public class RemoteDataSet<T> implements IDataSet<T> {
                                        .setSerializedOp(ByteString.copyFrom(serializedOp))
                                        .build();
         final PublishSubject<PartialResult<IDataSet<S>>> subj = PublishSubject.create();
-        final StreamObserver<PartialResponse> responseObserver = new NewDataSetObserver<S>(subj);
-        return subj.doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+        final NewDataSetObserver<S> responseObserver = new NewDataSetObserver<S>(subj);
+        return subj.doOnSubscribe(() -> this.stub(responseObserver)
                                                  .map(command, responseObserver))
                    .doOnUnsubscribe(() -> this.unsubscribe(mapOp.id));
     }
@@ -91,9 +148,9 @@ public class RemoteDataSet<T> implements IDataSet<T> {
                 .setSerializedOp(ByteString.copyFrom(serializedOp))
                 .build();
         final PublishSubject<PartialResult<IDataSet<S>>> subj = PublishSubject.create();
-        final StreamObserver<PartialResponse> responseObserver = new NewDataSetObserver<S>(subj);
-        return subj.doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
-                .flatMap(command, responseObserver))
+        final NewDataSetObserver<S> responseObserver = new NewDataSetObserver<S>(subj);
+        return subj.doOnSubscribe(() -> this.stub(responseObserver)
+                                                 .flatMap(command, responseObserver))
                 .doOnUnsubscribe(() -> this.unsubscribe(mapOp.id));
     }
 
@@ -109,8 +166,8 @@ public class RemoteDataSet<T> implements IDataSet<T> {
                                        .setSerializedOp(ByteString.copyFrom(serializedOp))
                                        .build();
         final PublishSubject<PartialResult<R>> subj = PublishSubject.create();
-        final StreamObserver<PartialResponse> responseObserver = new SketchObserver<>(subj);
-        return subj.doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+        final SketchObserver<R> responseObserver = new SketchObserver<R>(subj);
+        return subj.doOnSubscribe(() -> this.stub(responseObserver)
                                                  .sketch(command, responseObserver))
                    .doOnUnsubscribe(() -> this.unsubscribe(sketchOp.id));
     }
@@ -141,9 +198,9 @@ public class RemoteDataSet<T> implements IDataSet<T> {
                                          .setSerializedOp(ByteString.copyFrom(serializedOp))
                                          .build();
         final PublishSubject<PartialResult<IDataSet<Pair<T, S>>>> subj = PublishSubject.create();
-        final StreamObserver<PartialResponse> responseObserver =
+        final NewDataSetObserver<Pair<T, S>> responseObserver =
                                                         new NewDataSetObserver<Pair<T, S>>(subj);
-        return subj.doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+        return subj.doOnSubscribe(() -> this.stub(responseObserver)
                                                  .zip(command, responseObserver))
                    .doOnUnsubscribe(() -> this.unsubscribe(zip.id));
     }
@@ -152,15 +209,14 @@ public class RemoteDataSet<T> implements IDataSet<T> {
      * Unsubscribes an operation. This method is safe to invoke multiple times because the
      * logic on the remote end is idempotent.
      */
-    private void unsubscribe(final UUID id) {
+    void unsubscribe(final UUID id) {
         final UnsubscribeOperation op = new UnsubscribeOperation(id);
         final byte[] serializedOp = SerializationUtils.serialize(op);
         final Command command = Command.newBuilder()
                                        .setIdsIndex(this.remoteHandle)
                                        .setSerializedOp(ByteString.copyFrom(serializedOp))
                                        .build();
-        this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
-                 .unsubscribe(command, new StreamObserver<Ack>() {
+        this.stub().unsubscribe(command, new StreamObserver<Ack>() {
             @Override
             public void onNext(final Ack ack) {
             }
@@ -181,11 +237,20 @@ public class RemoteDataSet<T> implements IDataSet<T> {
      */
     private abstract static class OperationObserver<T> implements StreamObserver<PartialResponse> {
         final PublishSubject<T> subject;
+        @Nullable
+        private HostAndPort server;
+        @Nullable
+        private ManagedChannel channel;
 
         public OperationObserver(final PublishSubject<T> subject) {
             this.subject = subject;
         }
 
+        void setChannel(final HostAndPort server, final ManagedChannel channel) {
+            this.server = server;
+            this.channel = channel;
+        }
+
         @Override
         public void onNext(final PartialResponse response) {
             this.subject.onNext(processResponse(response));
@@ -193,6 +258,8 @@ public class RemoteDataSet<T> implements IDataSet<T> {
 
         @Override
         public void onError(final Throwable throwable) {
+            if ((this.server != null) && (this.channel != null))
+                ChannelPool.getInstance().reportFailure(this.server, this.channel, throwable);
             this.subject.onError(throwable);
         }
 
@@ -215,10 +282,10 @@ public class RemoteDataSet<T> implements IDataSet<T> {
 
         @Override
         public PartialResult<IDataSet<S>> processResponse(final PartialResponse response) {
-            final OperationResponse op = SerializationUtils.deserialize(response
+            final Integer index = (Integer) ResultCodecs.decode(response
                     .getSerializedOp().toByteArray());
-            final IDataSet<S> ids = (op.result == null) ? null :
-                    new RemoteDataSet<S>(RemoteDataSet.this.serverEndpoint, (int) op.result);
+            final IDataSet<S> ids = (index == null) ? null :
+                    new RemoteDataSet<S>(RemoteDataSet.this.serverEndpoint, index);
             return new PartialResult<IDataSet<S>>(ids);
         }
     }
@@ -234,9 +301,8 @@ public class RemoteDataSet<T> implements IDataSet<T> {
         @Override
         @SuppressWarnings("unchecked")
         public PartialResult<S> processResponse(final PartialResponse response) {
-            final OperationResponse op = SerializationUtils.deserialize(response
-                    .getSerializedOp().toByteArray());
-            return (PartialResult<S>) Converters.checkNull(op.result);
+            return (PartialResult<S>) Converters.checkNull(ResultCodecs.decode(response
+                    .getSerializedOp().toByteArray()));
         }
     }
 }
\ No newline at end of file
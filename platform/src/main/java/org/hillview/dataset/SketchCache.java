@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.dataset;
+
+import org.hillview.dataset.api.ISketch;
+import org.hillview.dataset.api.PartialResult;
+import rx.Observable;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A cache of complete sketch results.  Results are indexed by a key identifying the
+ * dataset and by the sketch itself; only sketches which are cacheable (i.e., which
+ * implement equals and hashCode based on their parameters) are stored.
+ * The cache is bounded by an approximate number of bytes; when full the least recently
+ * used results are evicted.  The size of a result is estimated by its serialized size.
+ */
+public final class SketchCache {
+    /**
+     * Name of the Java system property that specifies the size of the global cache
+     * in bytes.  Zero disables the global cache.
+     */
+    public static final String SIZE_PROPERTY = "hillview.sketch.cache.bytes";
+    public static final long DEFAULT_SIZE = 64 * 1024 * 1024;
+    /**
+     * Size assumed for results which cannot be serialized.
+     */
+    private static final long UNKNOWN_RESULT_SIZE = 4096;
+    private static final Logger logger = Logger.getLogger(SketchCache.class.getName());
+
+    @Nullable
+    private static SketchCache instance = null;
+
+    private static final class Key {
+        final Object dataSetId;
+        final ISketch<?, ?> sketch;
+
+        Key(final Object dataSetId, final ISketch<?, ?> sketch) {
+            this.dataSetId = dataSetId;
+            this.sketch = sketch;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return this.dataSetId.equals(key.dataSetId) && this.sketch.equals(key.sketch);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.dataSetId, this.sketch);
+        }
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long size;
+
+        Entry(final Object value, final long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    private final long maxBytes;
+    private long usedBytes;
+    // Access-ordered: iteration starts with the least recently used entry.
+    private final LinkedHashMap<Key, Entry> entries;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    /**
+     * Create a cache.
+     * @param maxBytes  Approximate maximum size of the cached results in bytes.
+     */
+    public SketchCache(final long maxBytes) {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("Negative cache size " + maxBytes);
+        this.maxBytes = maxBytes;
+        this.usedBytes = 0;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+        this.hits = new AtomicLong(0);
+        this.misses = new AtomicLong(0);
+    }
+
+    /**
+     * @return The global cache used by LocalDataSets, creating it if necessary.
+     */
+    public static synchronized SketchCache getInstance() {
+        if (instance == null)
+            instance = new SketchCache(Long.getLong(SIZE_PROPERTY, DEFAULT_SIZE));
+        return instance;
+    }
+
+    /**
+     * Returns a stream of partial results for the sketch.  If the result is cached
+     * the stream contains just the complete result.  Otherwise the stream is
+     * 'computation', and its complete result is added to the cache if the stream
+     * terminates successfully.
+     * @param dataSetId   An object identifying the dataset the sketch is applied to.
+     * @param sketch      Sketch that is computed.
+     * @param computation Stream of partial results that computes the sketch.
+     */
+    public <R> Observable<PartialResult<R>> sketch(
+            final Object dataSetId, final ISketch<?, R> sketch,
+            final Observable<PartialResult<R>> computation) {
+        if ((this.maxBytes == 0) || !sketch.isCacheable())
+            return computation;
+        final Key key = new Key(dataSetId, sketch);
+        return Observable.defer(() -> {
+            R cached = this.get(key);
+            if (cached != null) {
+                this.hits.incrementAndGet();
+                return Observable.just(new PartialResult<R>(cached));
+            }
+            this.misses.incrementAndGet();
+            final Accumulator<R> acc = new Accumulator<R>(sketch);
+            return computation
+                    .doOnNext(acc::add)
+                    .doOnCompleted(() -> {
+                        // Partial results may not add up to exactly 1 due to rounding.
+                        if (acc.done > 0.999999 && acc.value != null)
+                            this.put(key, acc.value);
+                    });
+        });
+    }
+
+    /**
+     * Adds up the partial results of a computation.
+     */
+    private static final class Accumulator<R> {
+        final ISketch<?, R> sketch;
+        double done;
+        @Nullable
+        R value;
+
+        Accumulator(final ISketch<?, R> sketch) {
+            this.sketch = sketch;
+            this.done = 0;
+            this.value = null;
+        }
+
+        void add(final PartialResult<R> pr) {
+            this.done += pr.deltaDone;
+            if (pr.deltaValue == null)
+                return;
+            if (this.value == null)
+                this.value = pr.deltaValue;
+            else
+                this.value = this.sketch.add(this.value, pr.deltaValue);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private synchronized <R> R get(final Key key) {
+        Entry e = this.entries.get(key);
+        if (e == null)
+            return null;
+        return (R)e.value;
+    }
+
+    private <R> void put(final Key key, final R value) {
+        // Estimate the size outside the lock.
+        final long size = SketchCache.estimateSize(value);
+        if (size > this.maxBytes)
+            return;
+        synchronized (this) {
+            Entry previous = this.entries.put(key, new Entry(value, size));
+            if (previous != null)
+                this.usedBytes -= previous.size;
+            this.usedBytes += size;
+            Iterator<Map.Entry<Key, Entry>> it = this.entries.entrySet().iterator();
+            while (this.usedBytes > this.maxBytes && it.hasNext()) {
+                Entry evicted = it.next().getValue();
+                this.usedBytes -= evicted.size;
+                it.remove();
+            }
+        }
+    }
+
+    private static final class CountingStream extends OutputStream {
+        long count = 0;
+
+        @Override
+        public void write(int b) { this.count++; }
+
+        @Override
+        public void write(byte[] b, int off, int len) { this.count += len; }
+    }
+
+    private static long estimateSize(final Object value) {
+        if (!(value instanceof Serializable))
+            return UNKNOWN_RESULT_SIZE;
+        CountingStream counter = new CountingStream();
+        try (ObjectOutputStream stream = new ObjectOutputStream(counter)) {
+            stream.writeObject(value);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Cannot estimate size of " + value.getClass(), e);
+            return UNKNOWN_RESULT_SIZE;
+        }
+        return counter.count;
+    }
+
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    public synchronized int getEntryCount() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return Approximate number of bytes used by the cached results.
+     */
+    public synchronized long getUsedBytes() {
+        return this.usedBytes;
+    }
+
+    public synchronized void clear() {
+        this.entries.clear();
+        this.usedBytes = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "SketchCache(entries=" + this.getEntryCount() + ", bytes=" + this.getUsedBytes() +
+                ", hits=" + this.getHitCount() + ", misses=" + this.getMissCount() + ")";
+    }
+}
@@ -18,13 +18,22 @@
 
 package org.hillview.dataset;
 
+import org.hillview.dataset.api.IAccumulator;
+import org.hillview.dataset.api.IFusableSketch;
 import org.hillview.dataset.api.ISketch;
 import org.hillview.dataset.api.Triple;
 import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 
-public class TripleSketch<T, R1, R2, R3> implements ISketch<T, Triple<R1, R2, R3>> {
+/**
+ * A sketch which computes three sketches on the same data.  If possible the sketches
+ * share a single scan of the data (see FusedSketch).
+ */
+public class TripleSketch<T, R1, R2, R3> implements IFusableSketch<T, Triple<R1, R2, R3>> {
     private final ISketch<T, R1> first;
     private final ISketch<T, R2> second;
     private final ISketch<T, R3> third;
@@ -55,9 +64,49 @@ public class TripleSketch<T, R1, R2, R3> implements ISketch<T, Triple<R1, R2, R3
 
     @Override
     public Triple<R1, R2, R3> create(T data) {
-        R1 first = this.first.create(data);
-        R2 second = this.second.create(data);
-        R3 third = this.third.create(data);
-        return new Triple<R1, R2, R3>(first, second, third);
+        List<Object> results = FusedSketch.createAll(data, this.components());
+        return TripleSketch.makeTriple(results);
+    }
+
+    private List<ISketch<T, ?>> components() {
+        return Arrays.<ISketch<T, ?>>asList(this.first, this.second, this.third);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R1, R2, R3> Triple<R1, R2, R3> makeTriple(final List<Object> results) {
+        return new Triple<R1, R2, R3>(
+                (R1)results.get(0), (R2)results.get(1), (R3)results.get(2));
+    }
+
+    @Nullable
+    @Override
+    public IAccumulator<Triple<R1, R2, R3>> getAccumulator(T data) {
+        List<IAccumulator<?>> accumulators = FusedSketch.getAccumulators(data, this.components());
+        if (accumulators == null)
+            return null;
+        return new FusedSketch.FanOut<Triple<R1, R2, R3>>(accumulators, TripleSketch::makeTriple);
+    }
+
+    /**
+     * The combined sketch is cacheable if all its components are.
+     */
+    @Override
+    public boolean isCacheable() {
+        return this.first.isCacheable() && this.second.isCacheable() && this.third.isCacheable();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TripleSketch<?, ?, ?, ?> that = (TripleSketch<?, ?, ?, ?>) o;
+        return this.first.equals(that.first) &&
+                this.second.equals(that.second) &&
+                this.third.equals(that.third);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.first, this.second, this.third);
     }
 }
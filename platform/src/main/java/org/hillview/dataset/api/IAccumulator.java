@@ -16,19 +16,23 @@
  *
  */
 
-package org.hillview.remoting;
-
-import javax.annotation.Nullable;
-import java.io.Serializable;
+package org.hillview.dataset.api;
 
 /**
- * Class used to wrap responses of map and sketch executions.
- * @param <T> Return type of the result
+ * Computes a sketch result incrementally, from batches of element indexes
+ * produced by scanning an IScannable object.
+ * @param <R> Type of result produced.
  */
-public class OperationResponse<T> implements Serializable {
-    @Nullable public final T result;
+public interface IAccumulator<R> {
+    /**
+     * Process a batch of elements.
+     * @param indexes  Indexes of the elements in the batch.
+     * @param count    Number of valid entries in indexes.
+     */
+    void add(int[] indexes, int count);
 
-    public OperationResponse(@Nullable final T result) {
-        this.result = result;
-    }
+    /**
+     * @return The result accumulated so far.
+     */
+    R getResult();
 }
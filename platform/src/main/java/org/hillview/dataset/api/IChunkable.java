@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.dataset.api;
+
+import java.util.List;
+
+/**
+ * Data that can be broken into smaller pieces that can be processed independently.
+ * A LocalDataSet holding such data runs sketches one chunk at a time, producing a
+ * partial result after each chunk.  Adding the sketch results of all the chunks
+ * must produce the same result as running the sketch on the whole data.
+ * @param <T> Type of the pieces; usually the type of the data itself.
+ */
+public interface IChunkable<T> {
+    /**
+     * Split the data into chunks.
+     * @param maxChunkSize  Maximum size of a chunk, in elements (e.g., rows).
+     * @return A list of chunks; if the data is small the list contains a single element.
+     */
+    List<T> splitInChunks(int maxChunkSize);
+}
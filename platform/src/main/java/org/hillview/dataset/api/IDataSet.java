@@ -114,6 +114,17 @@ public interface IDataSet<T> {
         return reduce(this.map(mapper));
     }
 
+    /**
+     * Applies a flatMap and then reduces the result immediately.
+     * @param mapper  Mapper to apply to data.
+     * @param <S>     Type of data in the result.
+     * @return        An observable with a single element.
+     */
+    default <S> Observable<IDataSet<S>> singleFlatMap(
+            final IMap<T, List<S>> mapper) {
+        return reduce(this.flatMap(mapper));
+    }
+
     /**
      * Applies a zip and then reduces the result immediately.
      * @param <S>     Type of data in the result.
@@ -145,6 +156,16 @@ public interface IDataSet<T> {
         return this.singleMap(mapper).toBlocking().single();
     }
 
+    /**
+     * Run a flatMap synchronously.
+     * @param mapper  Mapper to run.
+     * @param <S>     Type of data produced.
+     * @return        An IDataSet containing the final result of the flatMap.
+     */
+    default <S> IDataSet<S> blockingFlatMap(final IMap<T, List<S>> mapper) {
+        return this.singleFlatMap(mapper).toBlocking().single();
+    }
+
     /**
      * Run a zip synchronously.
      * @param <S>     Type of data produced.
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.dataset.api;
+
+import javax.annotation.Nullable;
+
+/**
+ * A sketch which can share a single scan of the data with other sketches.
+ * Several such sketches applied to the same IScannable data can be computed
+ * together (see FusedSketch), reading the data only once.
+ * @param <T> Input data type.
+ * @param <R> Output data type.
+ */
+public interface IFusableSketch<T, R> extends ISketch<T, R> {
+    /**
+     * Returns an accumulator which computes the same result as create(data) when fed
+     * all elements produced by scanning data; returns null if the sketch cannot be
+     * computed this way (e.g., if it only looks at a sample of the data).
+     */
+    @Nullable
+    IAccumulator<R> getAccumulator(T data);
+}
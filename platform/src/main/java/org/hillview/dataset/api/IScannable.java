@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.dataset.api;
+
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Data made of elements identified by integers (e.g., the rows of a table), which can
+ * be enumerated in batches.  A single scan can feed several IAccumulators.
+ */
+public interface IScannable {
+    /**
+     * Enumerate all the elements of the data.
+     * @param consumer  Invoked repeatedly with an array holding the next batch of
+     *                  element indexes and the number of valid entries in the array.
+     *                  The array is reused between invocations.
+     */
+    void scan(ObjIntConsumer<int[]> consumer);
+}
@@ -39,4 +39,16 @@ public interface ISketch<T, R> extends Serializable, IMonoid<R> {
      * Helper method to return non-null zeros.
      */
     default R getZero() { return Converters.checkNull(this.zero()); }
+
+    /**
+     * Priority used when scheduling this computation on a busy machine.
+     */
+    default TaskPriority getPriority() { return TaskPriority.Normal; }
+
+    /**
+     * True if the results of this sketch can be cached.  Cacheable sketches must
+     * implement equals and hashCode such that equal sketches compute the same
+     * result on the same data.
+     */
+    default boolean isCacheable() { return false; }
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.dataset.api;
+
+import rx.Observable;
+
+/**
+ * Data which becomes available progressively, e.g., a table which is still being
+ * loaded from a file.  A LocalDataSet holding such data runs sketches on each piece
+ * of the data as soon as it is available, instead of waiting for all the data.
+ * Adding the sketch results of all the pieces must produce the same result as
+ * running the sketch on the whole data.
+ * @param <T> Type of the pieces; usually the type of the data itself.
+ */
+public interface IStreamable<T> {
+    /**
+     * @return An observable which emits the pieces available so far and then each new
+     *         piece as it becomes available; it completes when all the data is available.
+     *         The first element of each pair is the fraction of the data in the piece;
+     *         the fractions of all pieces add up to 1.
+     */
+    Observable<Pair<Double, T>> getPieces();
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.dataset.api;
+
+/**
+ * Priority class of a computation.  When the machine is busy, pending computations
+ * with a higher priority are started before the ones with a lower priority.
+ * The values are listed in decreasing order of priority.
+ */
+public enum TaskPriority {
+    /**
+     * Computations that a user is waiting for, such as scrolling through a table.
+     */
+    Interactive,
+    Normal,
+    /**
+     * Computations whose results are not immediately needed, e.g. precomputation.
+     */
+    Background
+}
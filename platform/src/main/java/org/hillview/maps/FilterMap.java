@@ -18,15 +18,18 @@
 
 package org.hillview.maps;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.hillview.dataset.api.IMap;
 import org.hillview.table.FalseTableFilter;
+import org.hillview.table.LazyMembership;
 import org.hillview.table.TableFilter;
 import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.ITable;
 
 /**
  * A Map which implements table filtering: given a row index it returns true if the
- * row is in the resulting table.
+ * row is in the resulting table.  If the filter allows it the resulting table
+ * has a LazyMembership set, so the filter is only evaluated when the table is scanned.
  */
 public class FilterMap implements IMap<ITable, ITable> {
     /**
@@ -45,6 +48,14 @@ public class FilterMap implements IMap<ITable, ITable> {
 
     @Override
     public ITable apply(ITable data) {
+        if (this.rowFilterPredicate.isThreadSafe()) {
+            // The same map may be applied to several tables; a lazy filter
+            // needs its own copy bound to the table.
+            final TableFilter filter = SerializationUtils.clone(this.rowFilterPredicate);
+            filter.setTable(data);
+            IMembershipSet result = new LazyMembership(data.getMembershipSet(), filter::test);
+            return data.selectRowsFromFullTable(result);
+        }
         this.rowFilterPredicate.setTable(data);
         IMembershipSet result = data.getMembershipSet().filter(this.rowFilterPredicate::test);
         return data.selectRowsFromFullTable(result);
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.maps;
+
+import org.hillview.dataset.api.Empty;
+import org.hillview.dataset.api.IMap;
+import org.hillview.storage.NativeFileReader;
+import org.hillview.table.FullSubSchema;
+import org.hillview.table.HashSubSchema;
+import org.hillview.table.api.ISubSchema;
+import org.hillview.table.api.ITable;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads the files in native Hillview format found in a folder, producing one table
+ * for each file.  The columns are loaded lazily: reading the files only reads their
+ * schemas, and each column is mapped and decoded when a computation first uses it.
+ * Since most computations use just a few columns, this is much cheaper than
+ * loading wide tables entirely.
+ */
+public class LoadNativeFilesMapper implements IMap<Empty, List<ITable>> {
+    private final String folder;
+    /**
+     * Glob pattern which selects the files in the folder, e.g., "*.hvc".
+     */
+    private final String pattern;
+    /**
+     * Columns to load; if null all columns are loaded.
+     */
+    @Nullable
+    private final String[] columns;
+
+    public LoadNativeFilesMapper(final String folder, final String pattern,
+                                 @Nullable final String[] columns) {
+        this.folder = folder;
+        this.pattern = pattern;
+        this.columns = columns;
+    }
+
+    @Override
+    public List<ITable> apply(final Empty empty) {
+        final ISubSchema subSchema = (this.columns == null) ?
+                new FullSubSchema() : new HashSubSchema(this.columns);
+        final List<Path> files = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(this.folder), this.pattern)) {
+            for (Path file : stream)
+                files.add(file);
+            // Directory order is arbitrary; all workers should produce tables in the same order.
+            Collections.sort(files);
+            final List<ITable> result = new ArrayList<ITable>(files.size());
+            for (Path file : files)
+                result.add(new NativeFileReader(file, true).read(subSchema));
+            return result;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LoadNativeFilesMapper(" + this.folder + "/" + this.pattern + ")";
+    }
+}
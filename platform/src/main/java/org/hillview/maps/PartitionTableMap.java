@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.maps;
+
+import org.hillview.dataset.api.IMap;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.ITable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A map which splits a table into several smaller tables, each containing a range of
+ * the rows of the original table.  The resulting tables share the columns of the
+ * original table; only the membership sets are different.  Used with flatMap this
+ * produces a ParallelDataSet with one LocalDataSet per shard, so that operations on
+ * a single table can use all cores of a machine.
+ */
+public class PartitionTableMap implements IMap<ITable, List<ITable>> {
+    /**
+     * Tables with fewer rows than this per shard are not worth splitting further:
+     * the cost of scheduling and merging would dominate the scan.
+     */
+    public static final int DEFAULT_MIN_SHARD_SIZE = 100000;
+
+    /**
+     * Number of shards desired; zero means use the number of cores of the machine
+     * where the map is executed.
+     */
+    private final int shards;
+    private final int minShardSize;
+
+    /**
+     * Split a table into as many shards as cores available.
+     */
+    public PartitionTableMap() {
+        this(0, DEFAULT_MIN_SHARD_SIZE);
+    }
+
+    /**
+     * Split a table into the specified number of shards.
+     * @param shards        Number of shards; if zero use the number of cores.
+     * @param minShardSize  Minimum number of rows in a shard.
+     */
+    public PartitionTableMap(final int shards, final int minShardSize) {
+        if (shards < 0)
+            throw new IllegalArgumentException("Negative number of shards " + shards);
+        if (minShardSize <= 0)
+            throw new IllegalArgumentException("Shard size must be positive " + minShardSize);
+        this.shards = shards;
+        this.minShardSize = minShardSize;
+    }
+
+    @Override
+    public List<ITable> apply(final ITable data) {
+        // The number of cores must be read where the map runs, not where it is created.
+        int parts = this.shards > 0 ? this.shards : Runtime.getRuntime().availableProcessors();
+        final IMembershipSet members = data.getMembershipSet();
+        parts = Math.max(1, Math.min(parts, members.getSize() / this.minShardSize));
+        final List<ITable> result = new ArrayList<ITable>(parts);
+        if (parts == 1) {
+            result.add(data);
+            return result;
+        }
+        for (IMembershipSet set : members.split(parts))
+            result.add(data.selectRowsFromFullTable(set));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionTableMap(" + this.shards + ")";
+    }
+}
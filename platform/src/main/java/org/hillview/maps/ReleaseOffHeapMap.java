@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.maps;
+
+import org.hillview.dataset.api.Empty;
+import org.hillview.dataset.api.IMap;
+import org.hillview.table.OffHeapMemory;
+
+/**
+ * A map which gives up the ownership of the off-heap columns of a table, or of a
+ * list of tables, taken by a RetainOffHeapMap.  The memory of the columns is released
+ * when they have no other owners; the tables can no longer be used afterwards.
+ * The result holds no data, so that it does not own the columns again.
+ */
+public class ReleaseOffHeapMap implements IMap<Object, Empty> {
+    @Override
+    public Empty apply(final Object data) {
+        OffHeapMemory.releaseColumns(data);
+        return Empty.getInstance();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.maps;
+
+import org.hillview.dataset.api.IMap;
+import org.hillview.table.OffHeapMemory;
+
+/**
+ * A map which applies another map and takes the ownership of the off-heap columns
+ * of the result, a table or a list of tables: the memory of these columns is kept
+ * until a ReleaseOffHeapMap is applied to the result.
+ * @param <T> Input type.
+ * @param <S> Output type.
+ */
+public class RetainOffHeapMap<T, S> implements IMap<T, S> {
+    private final IMap<T, S> mapper;
+
+    public RetainOffHeapMap(final IMap<T, S> mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public S apply(final T data) {
+        final S result = this.mapper.apply(data);
+        OffHeapMemory.retainColumns(result);
+        return result;
+    }
+}
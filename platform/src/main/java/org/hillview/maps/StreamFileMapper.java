@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.maps;
+
+import org.hillview.dataset.LocalDataSet;
+import org.hillview.dataset.api.IMap;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.CsvFileObject;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads a file as several tables which can be used while the file is being parsed.
+ * If the file has a valid native copy the copy is loaded and split into shards,
+ * as PartitionTableMap does.
+ */
+public class StreamFileMapper implements IMap<CsvFileObject, List<ITable>> {
+    /**
+     * Number of rows made available at a time; this is also the size of the chunks
+     * used by LocalDataSet for sketches.
+     */
+    private final int pieceRows;
+
+    public StreamFileMapper() {
+        this(LocalDataSet.DEFAULT_CHUNK_SIZE);
+    }
+
+    public StreamFileMapper(final int pieceRows) {
+        this.pieceRows = pieceRows;
+    }
+
+    @Override
+    public List<ITable> apply(CsvFileObject csvFileObject) {
+        try {
+            @Nullable
+            ITable cached = csvFileObject.loadCached();
+            if (cached != null)
+                return new PartitionTableMap().apply(cached);
+            System.out.println("Streaming " + csvFileObject);
+            return new ArrayList<ITable>(csvFileObject.streamTables(this.pieceRows));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.remoting;
+
+import com.google.protobuf.ByteString;
+import io.grpc.stub.CallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.hillview.dataset.PartialResultMonoid;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.pb.BatchResponse;
+
+import javax.annotation.Nullable;
+
+/**
+ * Sends the results of the commands of a batch to a gRPC response stream, tagged with
+ * the index of the command.  Like PartialResultSender, partial results of sketches are
+ * sent only while the transport is ready to accept more data; while it is not, newly
+ * arrived results of a command are added to the one waiting to be sent.  Other results
+ * cannot be added, and are always sent.  Each command terminates once: results and
+ * terminations which arrive after the command was completed, failed or cancelled
+ * are dropped.
+ */
+final class BatchResultSender {
+    private final StreamObserver<BatchResponse> observer;
+    /**
+     * Sums of the results received but not yet sent, indexed by tag.
+     */
+    private final PartialResult[] pending;
+    private final boolean[] terminated;
+
+    BatchResultSender(final StreamObserver<BatchResponse> observer, final int commandCount) {
+        this.observer = observer;
+        this.pending = new PartialResult[commandCount];
+        this.terminated = new boolean[commandCount];
+        if (observer instanceof CallStreamObserver)
+            // Invoked by gRPC when the transport can accept data again.
+            ((CallStreamObserver<BatchResponse>) observer).setOnReadyHandler(this::flushIfReady);
+    }
+
+    private boolean isReady() {
+        return !(this.observer instanceof CallStreamObserver) ||
+                ((CallStreamObserver<BatchResponse>) this.observer).isReady();
+    }
+
+    private synchronized void flushIfReady() {
+        for (int tag = 0; tag < this.pending.length; tag++) {
+            if (!this.isReady())
+                return;
+            this.flush(tag);
+        }
+    }
+
+    private void flush(final int tag) {
+        if (this.pending[tag] == null)
+            return;
+        final byte[] bytes = ResultCodecs.encode(this.pending[tag]);
+        this.pending[tag] = null;
+        this.send(tag, bytes);
+    }
+
+    private void send(final int tag, final byte[] bytes) {
+        this.observer.onNext(BatchResponse.newBuilder().setTag(tag)
+                                          .setSerializedOp(ByteString.copyFrom(bytes))
+                                          .build());
+    }
+
+    /**
+     * Send a partial result of a sketch.
+     * @param monoid  Used to add the result to the one waiting to be sent.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized void onPartialResult(final int tag, final PartialResult pr,
+                                      final PartialResultMonoid monoid) {
+        if (this.terminated[tag])
+            return;
+        if (this.pending[tag] == null)
+            this.pending[tag] = pr;
+        else
+            this.pending[tag] = monoid.add(this.pending[tag], pr);
+        if (this.isReady())
+            this.flush(tag);
+    }
+
+    /**
+     * Send a result which cannot be added to other results.
+     */
+    synchronized void onResult(final int tag, @Nullable final Object value) {
+        if (this.terminated[tag])
+            return;
+        this.send(tag, ResultCodecs.encode(value));
+    }
+
+    synchronized void onCompleted(final int tag) {
+        if (this.terminated[tag])
+            return;
+        // gRPC buffers the last message if the transport is not ready.
+        this.flush(tag);
+        this.terminated[tag] = true;
+        this.observer.onNext(BatchResponse.newBuilder().setTag(tag).setCompleted(true).build());
+    }
+
+    synchronized void onError(final int tag, final String message) {
+        if (this.terminated[tag])
+            return;
+        this.pending[tag] = null;
+        this.terminated[tag] = true;
+        this.observer.onNext(BatchResponse.newBuilder().setTag(tag).setError(message).build());
+    }
+
+    /**
+     * Terminate the response stream; all commands must have terminated.
+     */
+    synchronized void close() {
+        this.observer.onCompleted();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.remoting;
+
+import com.google.common.net.HostAndPort;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.netty.NettyChannelBuilder;
+
+import javax.annotation.Nullable;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide registry of the gRPC channels used to talk to HillviewServers.
+ * All the handles pointing to one server share a single channel, and thus a single
+ * HTTP/2 connection.  Each handle registers itself with acquire(); the pool counts the
+ * live handles of each server, and handles that are garbage-collected are released
+ * automatically.  A channel with no handles is shut down once it has been idle for
+ * IDLE_TIMEOUT_PROPERTY milliseconds; idle channels are looked for on each use of the
+ * pool, and periodically by a background thread for the global pool.  A channel on which a call failed because the
+ * server was unreachable is replaced by a fresh one on the next call.
+ */
+public final class ChannelPool {
+    /**
+     * Name of the Java system property that specifies how long, in milliseconds,
+     * a channel without handles is kept open.
+     */
+    public static final String IDLE_TIMEOUT_PROPERTY = "hillview.channel.idle.ms";
+    private static final long DEFAULT_IDLE_TIMEOUT = 60000;
+    private static final Logger logger = Logger.getLogger(ChannelPool.class.getName());
+    private static final ChannelPool instance = createInstance();
+
+    private static class Endpoint {
+        @Nullable
+        ManagedChannel channel;
+        int references;
+        long idleSince;
+    }
+
+    /**
+     * Tracks a handle, so that it is released when it is garbage-collected.
+     */
+    private static class Handle extends PhantomReference<Object> {
+        final HostAndPort server;
+
+        Handle(final Object owner, final HostAndPort server, final ReferenceQueue<Object> queue) {
+            super(owner, queue);
+            this.server = server;
+        }
+    }
+
+    private final long idleTimeout;
+    private final HashMap<HostAndPort, Endpoint> endpoints;
+    private final HashSet<Handle> handles;
+    private final ReferenceQueue<Object> queue;
+
+    public ChannelPool(final long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        this.endpoints = new HashMap<HostAndPort, Endpoint>();
+        this.handles = new HashSet<Handle>();
+        this.queue = new ReferenceQueue<Object>();
+    }
+
+    public static ChannelPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates the global pool, with a daemon thread which closes the idle channels
+     * even when the pool is not used.
+     */
+    private static ChannelPool createInstance() {
+        final long idleTimeout = Long.getLong(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT);
+        final ChannelPool pool = new ChannelPool(idleTimeout);
+        final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "ChannelPool cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long period = Math.max(idleTimeout, 1000);
+        cleaner.scheduleWithFixedDelay(pool::cleanup, period, period, TimeUnit.MILLISECONDS);
+        return pool;
+    }
+
+    /**
+     * Register a handle that will send calls to the specified server.
+     * @param owner   Object whose lifetime determines the duration of the registration.
+     * @param server  Address of the server.
+     */
+    public synchronized void acquire(final Object owner, final HostAndPort server) {
+        this.cleanup();
+        final Endpoint e = this.getEndpoint(server);
+        e.references++;
+        this.handles.add(new Handle(owner, server, this.queue));
+    }
+
+    /**
+     * @return A channel connected to the specified server, creating one if necessary.
+     */
+    public synchronized ManagedChannel getChannel(final HostAndPort server) {
+        this.cleanup();
+        final Endpoint e = this.getEndpoint(server);
+        if ((e.channel == null) || e.channel.isShutdown()) {
+            e.channel = NettyChannelBuilder
+                    .forAddress(server.getHost(), server.getPort())
+                    .usePlaintext(true)   // channel is unencrypted.
+                    .build();
+            logger.info("Opened channel to " + server);
+        }
+        e.idleSince = System.currentTimeMillis();
+        return e.channel;
+    }
+
+    /**
+     * Report that a call on a channel returned by getChannel failed.  If the failure
+     * indicates that the connection is broken the channel is replaced; calls in progress
+     * on the old channel are allowed to complete.
+     */
+    public synchronized void reportFailure(final HostAndPort server,
+                                           final ManagedChannel channel,
+                                           final Throwable failure) {
+        this.cleanup();
+        if (Status.fromThrowable(failure).getCode() != Status.Code.UNAVAILABLE)
+            return;
+        final Endpoint e = this.endpoints.get(server);
+        if ((e == null) || (e.channel != channel))
+            // Already replaced
+            return;
+        logger.warning("Reconnecting to " + server + ": " + failure.getMessage());
+        channel.shutdown();
+        e.channel = null;
+    }
+
+    /**
+     * Close the channel to a server which has been shut down; the next call opens a
+     * fresh channel.
+     */
+    public synchronized void closeChannel(final HostAndPort server) {
+        final Endpoint e = this.endpoints.get(server);
+        if ((e != null) && (e.channel != null)) {
+            e.channel.shutdown();
+            e.channel = null;
+        }
+    }
+
+    private Endpoint getEndpoint(final HostAndPort server) {
+        Endpoint e = this.endpoints.get(server);
+        if (e == null) {
+            e = new Endpoint();
+            this.endpoints.put(server, e);
+        }
+        return e;
+    }
+
+    /**
+     * Release the handles that have been garbage-collected and close the channels
+     * that have been unused for a long time.
+     */
+    public synchronized void cleanup() {
+        for (Reference<?> r = this.queue.poll(); r != null; r = this.queue.poll()) {
+            final Handle handle = (Handle) r;
+            this.handles.remove(handle);
+            final Endpoint e = this.endpoints.get(handle.server);
+            if (e != null) {
+                e.references--;
+                if (e.references == 0)
+                    e.idleSince = System.currentTimeMillis();
+            }
+        }
+        final long now = System.currentTimeMillis();
+        final Iterator<Map.Entry<HostAndPort, Endpoint>> it = this.endpoints.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<HostAndPort, Endpoint> entry = it.next();
+            final Endpoint e = entry.getValue();
+            if ((e.references == 0) && ((now - e.idleSince) >= this.idleTimeout)) {
+                if (e.channel != null) {
+                    e.channel.shutdown();
+                    logger.info("Closed idle channel to " + entry.getKey());
+                }
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return Number of live handles registered for the specified server.
+     */
+    public synchronized int getReferenceCount(final HostAndPort server) {
+        final Endpoint e = this.endpoints.get(server);
+        return (e == null) ? 0 : e.references;
+    }
+
+    /**
+     * @return Number of open channels.
+     */
+    public synchronized int getChannelCount() {
+        int result = 0;
+        for (Endpoint e : this.endpoints.values())
+            if ((e.channel != null) && !e.channel.isShutdown())
+                result++;
+        return result;
+    }
+
+    /**
+     * Close all channels.
+     */
+    public synchronized void shutdown() {
+        for (Endpoint e : this.endpoints.values())
+            if (e.channel != null)
+                e.channel.shutdown();
+        this.endpoints.clear();
+        this.handles.clear();
+    }
+}
@@ -6,9 +6,16 @@ import io.grpc.Server;
 import io.grpc.netty.NettyServerBuilder;
 import io.grpc.stub.StreamObserver;
 import org.apache.commons.lang3.SerializationUtils;
+import org.hillview.dataset.FusedSketch;
+import org.hillview.dataset.PartialResultMonoid;
 import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.api.ISketch;
 import org.hillview.dataset.api.PartialResult;
+import org.hillview.maps.ReleaseOffHeapMap;
+import org.hillview.maps.RetainOffHeapMap;
 import org.hillview.pb.Ack;
+import org.hillview.pb.BatchCommand;
+import org.hillview.pb.BatchResponse;
 import org.hillview.pb.Command;
 import org.hillview.pb.HillviewServerGrpc;
 import org.hillview.pb.PartialResponse;
@@ -16,34 +23,72 @@ import org.hillview.utils.Converters;
 import rx.Observable;
 import rx.Subscriber;
 import rx.Subscription;
+import rx.subscriptions.Subscriptions;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Server that transfers map(), sketch(), zip() and unsubscribe() RPCs from a RemoteDataSet
  * object to locally managed IDataSet objects, and streams back results.
+ * The datasets produced by map and flatMap own the off-heap columns of their tables,
+ * which are released when all datasets holding them are removed.
  */
 public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
     public static final int DEFAULT_IDS_INDEX = 1;
     public static final int DEFAULT_PORT = 3569;
+    /**
+     * Name of the Java system property that specifies the time window, in milliseconds,
+     * in which partial results of a sketch are added together before being sent to
+     * the client.  Zero disables coalescing.
+     */
+    public static final String COALESCE_INTERVAL_PROPERTY = "hillview.server.coalesce.ms";
+    /**
+     * Name of the Java system property that specifies the maximum number of partial
+     * results of a sketch that are added together into one message.
+     */
+    public static final String COALESCE_COUNT_PROPERTY = "hillview.server.coalesce.count";
+    private static final int DEFAULT_COALESCE_INTERVAL = 100;
+    private static final int DEFAULT_COALESCE_COUNT = 1000;
     private static final String LOCALHOST = "127.0.0.1";
     private static final int NUM_THREADS = 5;
+    /**
+     * How long shutdown waits for the connections to be closed.
+     */
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
     private static final Executor EXECUTOR = Executors.newFixedThreadPool(NUM_THREADS);
+    /**
+     * Servers running in this process, indexed by listening address.
+     */
+    private static final ConcurrentHashMap<HostAndPort, HillviewServer> localServers
+            = new ConcurrentHashMap<HostAndPort, HillviewServer>();
     private final Server server;
     private final AtomicInteger dsIndex = new AtomicInteger(0);
     private final ConcurrentHashMap<Integer, IDataSet> dataSets;
     private final ConcurrentHashMap<UUID, Subscription> operationToObservable
             = new ConcurrentHashMap<>();
     private final HostAndPort listenAddress;
+    private int coalesceInterval;
+    private int coalesceCount;
 
     public HillviewServer(final HostAndPort listenAddress, final IDataSet dataSet) throws IOException {
         this.listenAddress = listenAddress;
+        this.setCoalescing(
+                Integer.getInteger(COALESCE_INTERVAL_PROPERTY, DEFAULT_COALESCE_INTERVAL),
+                Integer.getInteger(COALESCE_COUNT_PROPERTY, DEFAULT_COALESCE_COUNT));
         this.server = NettyServerBuilder.forAddress(new InetSocketAddress(listenAddress.getHost(),
                                                                      listenAddress.getPort()))
                                         .executor(EXECUTOR)
@@ -52,6 +97,58 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
                                         .start();
         this.dataSets = new ConcurrentHashMap<>();
         this.dataSets.put(this.dsIndex.incrementAndGet(), dataSet);
+        localServers.put(listenAddress, this);
+    }
+
+    /**
+     * @return The server listening on the specified address if it runs in this process,
+     * or null otherwise.
+     */
+    @Nullable
+    public static HillviewServer getLocalServer(final HostAndPort address) {
+        return localServers.get(address);
+    }
+
+    /**
+     * Change the window in which partial results of sketches are added together before
+     * being sent.  This affects only the sketches started after the call.
+     * @param intervalInMilliseconds  Length of the time window; zero disables coalescing.
+     * @param maxCount                Maximum number of results added in one window.
+     */
+    public void setCoalescing(final int intervalInMilliseconds, final int maxCount) {
+        if (intervalInMilliseconds < 0)
+            throw new IllegalArgumentException("Negative time interval: " + intervalInMilliseconds);
+        if (maxCount <= 0)
+            throw new IllegalArgumentException("Count must be positive: " + maxCount);
+        this.coalesceInterval = intervalInMilliseconds;
+        this.coalesceCount = maxCount;
+    }
+
+    /**
+     * Add together the partial results of a sketch that are produced within the
+     * coalescing window, like ParallelDataSet.bundle does.
+     */
+    @SuppressWarnings("unchecked")
+    private Observable<PartialResult> coalesce(final Observable<PartialResult> data,
+                                               final PartialResultMonoid monoid) {
+        if (this.coalesceInterval == 0)
+            return data;
+        return data.buffer(this.coalesceInterval, TimeUnit.MILLISECONDS, this.coalesceCount)
+                   .filter(e -> !e.isEmpty())
+                   .map(e -> (PartialResult) monoid.reduce(e));
+    }
+
+    /**
+     * Store the dataset produced by a map, flatMap or zip operation.
+     * @return The index of the dataset, or null if the partial result carries no dataset.
+     */
+    @Nullable
+    private Integer registerDataSet(final PartialResult<IDataSet> pr) {
+        if (pr.deltaValue == null)
+            return null;
+        final int idsIndex = this.dsIndex.incrementAndGet();
+        this.dataSets.put(idsIndex, pr.deltaValue);
+        return idsIndex;
     }
 
     private Subscriber<PartialResult<IDataSet>> createSubscriber(
@@ -72,13 +169,7 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
 
             @Override
             public void onNext(final PartialResult<IDataSet> pr) {
-                Integer idsIndex = null;
-                if (pr.deltaValue != null) {
-                    idsIndex = HillviewServer.this.dsIndex.incrementAndGet();
-                    HillviewServer.this.dataSets.put(idsIndex, Converters.checkNull(pr.deltaValue));
-                }
-                final OperationResponse<Integer> res = new OperationResponse<Integer>(idsIndex);
-                final byte[] bytes = SerializationUtils.serialize(res);
+                final byte[] bytes = ResultCodecs.encode(HillviewServer.this.registerDataSet(pr));
                 responseObserver.onNext(PartialResponse.newBuilder()
                                                        .setSerializedOp(ByteString.copyFrom(bytes)).build());
             }
@@ -99,7 +190,7 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
             final MapOperation mapOp = SerializationUtils.deserialize(bytes);
             final Observable<PartialResult<IDataSet>> observable =
                     this.dataSets.get(command.getIdsIndex())
-                                 .map(mapOp.mapper);
+                                 .map(new RetainOffHeapMap(mapOp.mapper));
             final Subscription sub = observable.subscribe(this.createSubscriber(mapOp.id, responseObserver));
             this.operationToObservable.put(mapOp.id, sub);
         } catch (final Exception e) {
@@ -123,7 +214,7 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
             final FlatMapOperation mapOp = SerializationUtils.deserialize(bytes);
             final Observable<PartialResult<IDataSet>> observable =
                     this.dataSets.get(command.getIdsIndex())
-                            .flatMap(mapOp.mapper);
+                            .flatMap(new RetainOffHeapMap(mapOp.mapper));
             final Subscription sub = observable.subscribe(this.createSubscriber(mapOp.id, responseObserver));
             this.operationToObservable.put(mapOp.id, sub);
         } catch (final Exception e) {
@@ -147,30 +238,10 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
             final SketchOperation sketchOp = SerializationUtils.deserialize(bytes);
             final Observable<PartialResult> observable = this.dataSets.get(command.getIdsIndex())
                                                                       .sketch(sketchOp.sketch);
-            final Subscription sub = observable.subscribe(new Subscriber<PartialResult>() {
-                @Override
-                public void onCompleted() {
-                    responseObserver.onCompleted();
-                    HillviewServer.this.operationToObservable.remove(sketchOp.id);
-                }
-
-                @Override
-                public void onError(final Throwable e) {
-                    e.printStackTrace();
-                    responseObserver.onError(e);
-                    HillviewServer.this.operationToObservable.remove(sketchOp.id);
-                }
-
-                @Override
-                public void onNext(final PartialResult pr) {
-                    final OperationResponse<PartialResult> res =
-                            new OperationResponse<PartialResult>(pr);
-                    final byte[] bytes = SerializationUtils.serialize(res);
-                    responseObserver.onNext(PartialResponse.newBuilder()
-                                                           .setSerializedOp(ByteString.copyFrom(bytes))
-                                                           .build());
-                }
-            });
+            final PartialResultMonoid monoid = new PartialResultMonoid(sketchOp.sketch);
+            final PartialResultSender sender = new PartialResultSender(responseObserver, monoid,
+                    () -> HillviewServer.this.operationToObservable.remove(sketchOp.id));
+            final Subscription sub = this.coalesce(observable, monoid).subscribe(sender);
             this.operationToObservable.put(sketchOp.id, sub);
         } catch (final Exception e) {
             e.printStackTrace();
@@ -204,6 +275,232 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
         }
     }
 
+    /**
+     * One or more commands of a batch that are executed together.
+     */
+    private static class BatchJob {
+        /**
+         * Indexes of the commands in the batch.
+         */
+        final List<Integer> tags;
+        /**
+         * Ids of the operations of the commands.
+         */
+        final List<UUID> ids;
+        /**
+         * For each command, the monoid which adds its partial results, or null if
+         * the results of the command cannot be added.
+         */
+        final List<PartialResultMonoid> monoids;
+        /**
+         * Each element holds one result for each command.
+         */
+        final Observable<List<Object>> results;
+        final AtomicBoolean finished;
+        /**
+         * Number of commands which have not been cancelled by the client; the job
+         * is cancelled with the last one.
+         */
+        final AtomicInteger live;
+
+        BatchJob(final List<Integer> tags, final List<UUID> ids,
+                 final List<PartialResultMonoid> monoids,
+                 final Observable<List<Object>> results) {
+            this.tags = tags;
+            this.ids = ids;
+            this.monoids = monoids;
+            this.results = results;
+            this.finished = new AtomicBoolean(false);
+            this.live = new AtomicInteger(ids.size());
+        }
+    }
+
+    /**
+     * @return The dataset with the specified index managed by this server.
+     */
+    public IDataSet getDataSet(final int index) {
+        final IDataSet result = this.dataSets.get(index);
+        if (result == null)
+            throw new RuntimeException("Object with index does not exist: "
+                    + index + " " + this.listenAddress);
+        return result;
+    }
+
+    /**
+     * Start a map, flatMap, sketch or zip operation.
+     * @return The stream of results of the operation: partial results for a sketch,
+     *         indexes of datasets otherwise.
+     */
+    @SuppressWarnings("unchecked")
+    private Observable<Object> startOperation(final int idsIndex, final RemoteOperation op,
+                                              @Nullable final PartialResultMonoid monoid) {
+        final IDataSet dataSet = this.getDataSet(idsIndex);
+        final Observable<PartialResult<IDataSet>> result;
+        if (op instanceof SketchOperation) {
+            final ISketch sketch = ((SketchOperation) op).sketch;
+            return this.coalesce(dataSet.sketch(sketch), Converters.checkNull(monoid))
+                       .map(pr -> (Object) pr);
+        } else if (op instanceof MapOperation) {
+            result = dataSet.map(new RetainOffHeapMap(((MapOperation) op).mapper));
+        } else if (op instanceof FlatMapOperation) {
+            result = dataSet.flatMap(new RetainOffHeapMap(((FlatMapOperation) op).mapper));
+        } else if (op instanceof ZipOperation) {
+            result = dataSet.zip(this.getDataSet(((ZipOperation) op).datasetIndex));
+        } else {
+            throw new RuntimeException("Unexpected operation in batch " + op);
+        }
+        return result.map(this::registerDataSet);
+    }
+
+    /**
+     * Compute several sketches of the same dataset with a FusedSketch, which lets
+     * them share a single scan of the data.
+     * @return The stream of lists of partial results, one for each sketch.
+     */
+    @SuppressWarnings("unchecked")
+    private Observable<List<Object>> startFused(final int idsIndex, final List<ISketch> sketches) {
+        final IDataSet dataSet = this.getDataSet(idsIndex);
+        final FusedSketch fused = new FusedSketch(sketches);
+        final Observable<PartialResult> results = this.coalesce(
+                dataSet.sketch(fused), new PartialResultMonoid(fused));
+        return results.map(pr -> {
+            final List<Object> split = new ArrayList<Object>(sketches.size());
+            final List<Object> values = (List<Object>) pr.deltaValue;
+            for (int i = 0; i < sketches.size(); i++)
+                split.add(new PartialResult<Object>(
+                        pr.deltaDone, (values == null) ? null : values.get(i)));
+            return split;
+        });
+    }
+
+    /**
+     * Implementation of batch() service in hillview.proto.  All commands are started
+     * concurrently, and their responses are interleaved on the response stream, tagged
+     * with the index of the command in the batch.  Sketches of the same dataset are
+     * computed together, sharing one scan of the data, so they fail together; the scan
+     * is cancelled when all of them are.
+     */
+    @Override
+    public void batch(final BatchCommand batch,
+                      final StreamObserver<BatchResponse> responseObserver) {
+        final List<BatchJob> jobs = new ArrayList<BatchJob>();
+        // Sketch commands, grouped by dataset.
+        final Map<Integer, List<Integer>> sketchTags = new LinkedHashMap<Integer, List<Integer>>();
+        final RemoteOperation[] ops = new RemoteOperation[batch.getCommandsCount()];
+        for (int i = 0; i < ops.length; i++) {
+            final Command command = batch.getCommands(i);
+            final int tag = i;
+            try {
+                ops[i] = SerializationUtils.deserialize(command.getSerializedOp().toByteArray());
+            } catch (final Exception e) {
+                jobs.add(new BatchJob(Collections.singletonList(tag), Collections.<UUID>emptyList(),
+                        Collections.<PartialResultMonoid>singletonList(null),
+                        Observable.<List<Object>>error(e)));
+                continue;
+            }
+            if (ops[i] instanceof SketchOperation) {
+                sketchTags.computeIfAbsent(command.getIdsIndex(), k -> new ArrayList<Integer>())
+                          .add(tag);
+                continue;
+            }
+            final RemoteOperation op = ops[i];
+            jobs.add(new BatchJob(Collections.singletonList(tag), Collections.singletonList(op.id),
+                    Collections.<PartialResultMonoid>singletonList(null),
+                    Observable.defer(() -> this.startOperation(command.getIdsIndex(), op, null))
+                              .map(Collections::singletonList)));
+        }
+        for (Map.Entry<Integer, List<Integer>> e : sketchTags.entrySet()) {
+            final int idsIndex = e.getKey();
+            final List<Integer> tags = e.getValue();
+            final List<UUID> ids = new ArrayList<UUID>(tags.size());
+            final List<ISketch> sketches = new ArrayList<ISketch>(tags.size());
+            final List<PartialResultMonoid> monoids = new ArrayList<PartialResultMonoid>(tags.size());
+            for (int tag : tags) {
+                final ISketch sketch = ((SketchOperation) ops[tag]).sketch;
+                ids.add(ops[tag].id);
+                sketches.add(sketch);
+                monoids.add(new PartialResultMonoid(sketch));
+            }
+            final Observable<List<Object>> results;
+            if (tags.size() == 1) {
+                final int tag = tags.get(0);
+                results = Observable.defer(() -> this.startOperation(idsIndex, ops[tag], monoids.get(0)))
+                                    .map(Collections::singletonList);
+            } else {
+                results = Observable.defer(() -> this.startFused(idsIndex, sketches));
+            }
+            jobs.add(new BatchJob(tags, ids, monoids, results));
+        }
+        this.runBatch(jobs, new BatchResultSender(responseObserver, ops.length));
+    }
+
+    private void runBatch(final List<BatchJob> jobs, final BatchResultSender sender) {
+        final AtomicInteger remaining = new AtomicInteger(jobs.size());
+        if (jobs.isEmpty()) {
+            sender.close();
+            return;
+        }
+        for (BatchJob job : jobs) {
+            // Invoked when the job terminates or is cancelled.
+            final Runnable finish = () -> {
+                if (job.finished.getAndSet(true))
+                    return;
+                // Without this the client would take the results received so far
+                // for the result of the commands.
+                for (int tag : job.tags)
+                    sender.onError(tag, "Operation cancelled");
+                for (UUID id : job.ids)
+                    HillviewServer.this.operationToObservable.remove(id);
+                if (remaining.decrementAndGet() == 0)
+                    sender.close();
+            };
+            final Subscription sub = job.results.doOnUnsubscribe(finish::run).subscribe(
+                    new Subscriber<List<Object>>() {
+                @Override
+                public void onCompleted() {
+                    for (int tag : job.tags)
+                        sender.onCompleted(tag);
+                    finish.run();
+                }
+
+                @Override
+                public void onError(final Throwable e) {
+                    e.printStackTrace();
+                    final String message = (e.getMessage() == null) ? e.toString() : e.getMessage();
+                    for (int tag : job.tags)
+                        sender.onError(tag, message);
+                    finish.run();
+                }
+
+                @Override
+                public void onNext(final List<Object> results) {
+                    for (int i = 0; i < job.tags.size(); i++) {
+                        final PartialResultMonoid monoid = job.monoids.get(i);
+                        if (monoid == null)
+                            sender.onResult(job.tags.get(i), results.get(i));
+                        else
+                            sender.onPartialResult(job.tags.get(i), (PartialResult) results.get(i), monoid);
+                    }
+                }
+            });
+            if (job.finished.get())
+                continue;
+            // Each command is cancelled separately; the job is cancelled with the last one.
+            for (int i = 0; i < job.ids.size(); i++) {
+                final int tag = job.tags.get(i);
+                this.operationToObservable.put(job.ids.get(i), Subscriptions.create(() -> {
+                    sender.onError(tag, "Operation cancelled");
+                    if (job.live.decrementAndGet() == 0)
+                        sub.unsubscribe();
+                }));
+            }
+            if (job.finished.get())
+                // The job finished while the commands were registered.
+                for (UUID id : job.ids)
+                    this.operationToObservable.remove(id);
+        }
+    }
+
     /**
      * Implementation of unsubscribe() service in hillview.proto.
      */
@@ -224,10 +521,57 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
     }
 
     /**
-     * shutdown RPC server
+     * Removes a dataset produced by an operation and gives up the ownership of its
+     * off-heap columns: their memory is released unless another dataset of the
+     * server holds them.  The caller must ensure that the dataset is no longer used.
+     * The initial dataset belongs to the creator of the server and cannot be removed.
+     * @return True if a dataset with this index existed.
+     */
+    public boolean removeDataSet(final int index) {
+        if (index == DEFAULT_IDS_INDEX)
+            throw new IllegalArgumentException("The initial dataset cannot be removed");
+        final IDataSet dataSet = this.dataSets.remove(index);
+        if (dataSet == null)
+            return false;
+        this.releaseDataSet(dataSet);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void releaseDataSet(final IDataSet dataSet) {
+        dataSet.blockingMap(new ReleaseOffHeapMap());
+    }
+
+    /**
+     * shutdown RPC server; returns when its connections are closed.  The channels
+     * of this process to the server are closed, so that a server started later on the
+     * same address is not reached through a channel waiting to reconnect.
+     * The off-heap memory of the datasets produced by operations is released.
      */
     public void shutdown() {
+        localServers.remove(this.listenAddress, this);
         this.server.shutdown();
+        for (Subscription sub : this.operationToObservable.values())
+            sub.unsubscribe();
+        this.operationToObservable.clear();
+        for (Map.Entry<Integer, IDataSet> e : this.dataSets.entrySet()) {
+            if (e.getKey() == DEFAULT_IDS_INDEX)
+                continue;
+            try {
+                this.releaseDataSet(e.getValue());
+            } catch (final Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+        this.dataSets.clear();
+        // The operations in progress have been cancelled, so their calls are too.
+        this.server.shutdownNow();
+        try {
+            this.server.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ChannelPool.getInstance().closeChannel(this.listenAddress);
     }
 
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.remoting;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A hand-written binary encoding for the objects of one class that are shipped
+ * between a HillviewServer and a RemoteDataSet.  Codecs are registered with
+ * ResultCodecs; objects of classes without a codec are sent using Java serialization.
+ * @param <T> Type of the encoded objects.
+ */
+public interface IResultCodec<T> {
+    /**
+     * @return The class whose objects are encoded; subclasses are not handled by this codec.
+     */
+    Class<T> getEncodedClass();
+
+    void encode(T value, DataOutput out) throws IOException;
+
+    T decode(DataInput in) throws IOException;
+}
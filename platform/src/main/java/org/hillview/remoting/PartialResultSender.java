@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.remoting;
+
+import com.google.protobuf.ByteString;
+import io.grpc.stub.CallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.hillview.dataset.PartialResultMonoid;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.pb.PartialResponse;
+import rx.Subscriber;
+
+import javax.annotation.Nullable;
+
+/**
+ * Sends the partial results of a sketch to a gRPC response stream.  Results are sent
+ * only while the transport is ready to accept more data; while it is not, newly arrived
+ * results are added to the one waiting to be sent, so a slow client receives fewer,
+ * larger messages instead of an unbounded queue of small ones.
+ * @param <R> Type of the sketch result.
+ */
+final class PartialResultSender<R> extends Subscriber<PartialResult<R>> {
+    private final StreamObserver<PartialResponse> observer;
+    private final PartialResultMonoid<R> monoid;
+    /**
+     * Invoked when the stream terminates.
+     */
+    private final Runnable onTerminate;
+    /**
+     * Sum of the results received but not yet sent.
+     */
+    @Nullable
+    private PartialResult<R> pending;
+    private boolean terminated;
+
+    PartialResultSender(final StreamObserver<PartialResponse> observer,
+                        final PartialResultMonoid<R> monoid, final Runnable onTerminate) {
+        this.observer = observer;
+        this.monoid = monoid;
+        this.onTerminate = onTerminate;
+        this.pending = null;
+        this.terminated = false;
+        if (observer instanceof CallStreamObserver)
+            // Invoked by gRPC when the transport can accept data again.
+            ((CallStreamObserver<PartialResponse>) observer).setOnReadyHandler(this::flushIfReady);
+    }
+
+    private boolean isReady() {
+        return !(this.observer instanceof CallStreamObserver) ||
+                ((CallStreamObserver<PartialResponse>) this.observer).isReady();
+    }
+
+    private synchronized void flushIfReady() {
+        if (this.terminated || (this.pending == null) || !this.isReady())
+            return;
+        this.flush();
+    }
+
+    private void flush() {
+        if (this.pending == null)
+            return;
+        final byte[] bytes = ResultCodecs.encode(this.pending);
+        this.pending = null;
+        this.observer.onNext(PartialResponse.newBuilder()
+                                            .setSerializedOp(ByteString.copyFrom(bytes))
+                                            .build());
+    }
+
+    @Override
+    public synchronized void onNext(final PartialResult<R> pr) {
+        if (this.terminated)
+            return;
+        if (this.pending == null)
+            this.pending = pr;
+        else
+            this.pending = this.monoid.add(this.pending, pr);
+        this.flushIfReady();
+    }
+
+    @Override
+    public void onCompleted() {
+        synchronized (this) {
+            if (this.terminated)
+                return;
+            // gRPC buffers the last message if the transport is not ready.
+            this.flush();
+            this.terminated = true;
+            this.observer.onCompleted();
+        }
+        this.onTerminate.run();
+    }
+
+    @Override
+    public void onError(final Throwable e) {
+        e.printStackTrace();
+        synchronized (this) {
+            if (this.terminated)
+                return;
+            this.terminated = true;
+            this.pending = null;
+            this.observer.onError(e);
+        }
+        this.onTerminate.run();
+    }
+}
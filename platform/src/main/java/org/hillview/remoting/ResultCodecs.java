@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.remoting;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.sketches.SketchCodecs;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Encodes the results sent by a HillviewServer to a RemoteDataSet.  Each value is
+ * preceded by a one-byte tag: NULL_TAG, SERIALIZED_TAG for values encoded using Java
+ * serialization, or a tag identifying the codec registered for the class of the value.
+ * The tags depend on the order in which codecs are registered, so all the processes
+ * of a deployment must register the same codecs in the same order.
+ */
+public final class ResultCodecs {
+    private static final byte NULL_TAG = 0;
+    private static final byte SERIALIZED_TAG = 1;
+    private static final int MAX_CODECS = 255 - SERIALIZED_TAG;
+
+    private static final List<IResultCodec<?>> codecs = new ArrayList<IResultCodec<?>>();
+    private static final HashMap<Class<?>, Integer> tags = new HashMap<Class<?>, Integer>();
+
+    static {
+        ResultCodecs.register(new IntegerCodec());
+        ResultCodecs.register(new DoubleCodec());
+        ResultCodecs.register(new StringCodec());
+        ResultCodecs.register(new DateCodec());
+        ResultCodecs.register(new DurationCodec());
+        ResultCodecs.register(new PartialResultCodec());
+        for (IResultCodec<?> codec : SketchCodecs.getCodecs())
+            ResultCodecs.register(codec);
+    }
+
+    private ResultCodecs() {}
+
+    /**
+     * Register a codec for a class that is not already handled by another codec.
+     */
+    public static synchronized void register(final IResultCodec<?> codec) {
+        final Class<?> c = codec.getEncodedClass();
+        if (tags.containsKey(c))
+            throw new IllegalArgumentException("Codec already registered for " + c);
+        if (codecs.size() >= MAX_CODECS)
+            throw new RuntimeException("Too many codecs");
+        tags.put(c, codecs.size());
+        codecs.add(codec);
+    }
+
+    /**
+     * @return The tag of the codec registered for the specified class, or SERIALIZED_TAG.
+     */
+    private static synchronized int getTag(final Class<?> c) {
+        final Integer index = tags.get(c);
+        if (index == null)
+            return SERIALIZED_TAG;
+        return index + SERIALIZED_TAG + 1;
+    }
+
+    private static synchronized IResultCodec<?> getCodec(final int tag) {
+        final int index = tag - SERIALIZED_TAG - 1;
+        if ((index < 0) || (index >= codecs.size()))
+            throw new RuntimeException("Unknown codec tag " + tag);
+        return codecs.get(index);
+    }
+
+    /**
+     * Write a value, preceded by its tag.
+     */
+    @SuppressWarnings("unchecked")
+    public static void write(@Nullable final Object value, final DataOutput out) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL_TAG);
+            return;
+        }
+        final int tag = ResultCodecs.getTag(value.getClass());
+        out.writeByte(tag);
+        if (tag == SERIALIZED_TAG) {
+            if (!(value instanceof Serializable))
+                throw new RuntimeException("Cannot encode object of " + value.getClass());
+            final byte[] bytes = SerializationUtils.serialize((Serializable) value);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else {
+            final IResultCodec<Object> codec = (IResultCodec<Object>) ResultCodecs.getCodec(tag);
+            codec.encode(value, out);
+        }
+    }
+
+    /**
+     * Read a value written by write().
+     */
+    @Nullable
+    public static Object read(final DataInput in) throws IOException {
+        final int tag = in.readUnsignedByte();
+        if (tag == NULL_TAG)
+            return null;
+        if (tag == SERIALIZED_TAG) {
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return SerializationUtils.deserialize(bytes);
+        }
+        return ResultCodecs.getCodec(tag).decode(in);
+    }
+
+    public static byte[] encode(@Nullable final Object value) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            ResultCodecs.write(value, out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Nullable
+    public static Object decode(final byte[] bytes) {
+        try {
+            return ResultCodecs.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Write a string that may be null and may be longer than DataOutput.writeUTF allows.
+     */
+    public static void writeString(@Nullable final String value, final DataOutput out)
+            throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    public static String readString(final DataInput in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0)
+            return null;
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeDate(final LocalDateTime value, final DataOutput out)
+            throws IOException {
+        out.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(value.getNano());
+    }
+
+    public static LocalDateTime readDate(final DataInput in) throws IOException {
+        final long seconds = in.readLong();
+        return LocalDateTime.ofEpochSecond(seconds, in.readInt(), ZoneOffset.UTC);
+    }
+
+    public static void writeDuration(final Duration value, final DataOutput out)
+            throws IOException {
+        out.writeLong(value.getSeconds());
+        out.writeInt(value.getNano());
+    }
+
+    public static Duration readDuration(final DataInput in) throws IOException {
+        final long seconds = in.readLong();
+        return Duration.ofSeconds(seconds, in.readInt());
+    }
+
+    private static class IntegerCodec implements IResultCodec<Integer> {
+        @Override
+        public Class<Integer> getEncodedClass() { return Integer.class; }
+
+        @Override
+        public void encode(final Integer value, final DataOutput out) throws IOException {
+            out.writeInt(value);
+        }
+
+        @Override
+        public Integer decode(final DataInput in) throws IOException {
+            return in.readInt();
+        }
+    }
+
+    private static class DoubleCodec implements IResultCodec<Double> {
+        @Override
+        public Class<Double> getEncodedClass() { return Double.class; }
+
+        @Override
+        public void encode(final Double value, final DataOutput out) throws IOException {
+            out.writeDouble(value);
+        }
+
+        @Override
+        public Double decode(final DataInput in) throws IOException {
+            return in.readDouble();
+        }
+    }
+
+    private static class StringCodec implements IResultCodec<String> {
+        @Override
+        public Class<String> getEncodedClass() { return String.class; }
+
+        @Override
+        public void encode(final String value, final DataOutput out) throws IOException {
+            ResultCodecs.writeString(value, out);
+        }
+
+        @Override
+        public String decode(final DataInput in) throws IOException {
+            final String result = ResultCodecs.readString(in);
+            if (result == null)
+                throw new RuntimeException("Unexpected null string");
+            return result;
+        }
+    }
+
+    private static class DateCodec implements IResultCodec<LocalDateTime> {
+        @Override
+        public Class<LocalDateTime> getEncodedClass() { return LocalDateTime.class; }
+
+        @Override
+        public void encode(final LocalDateTime value, final DataOutput out) throws IOException {
+            ResultCodecs.writeDate(value, out);
+        }
+
+        @Override
+        public LocalDateTime decode(final DataInput in) throws IOException {
+            return ResultCodecs.readDate(in);
+        }
+    }
+
+    private static class DurationCodec implements IResultCodec<Duration> {
+        @Override
+        public Class<Duration> getEncodedClass() { return Duration.class; }
+
+        @Override
+        public void encode(final Duration value, final DataOutput out) throws IOException {
+            ResultCodecs.writeDuration(value, out);
+        }
+
+        @Override
+        public Duration decode(final DataInput in) throws IOException {
+            return ResultCodecs.readDuration(in);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static class PartialResultCodec implements IResultCodec<PartialResult> {
+        @Override
+        public Class<PartialResult> getEncodedClass() { return PartialResult.class; }
+
+        @Override
+        public void encode(final PartialResult value, final DataOutput out) throws IOException {
+            out.writeDouble(value.deltaDone);
+            ResultCodecs.write(value.deltaValue, out);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public PartialResult decode(final DataInput in) throws IOException {
+            final double done = in.readDouble();
+            return new PartialResult(done, ResultCodecs.read(in));
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package org.hillview.sketches;
 
-import org.hillview.dataset.api.ISketch;
+import org.hillview.dataset.api.IAccumulator;
+import org.hillview.dataset.api.IFusableSketch;
+import org.hillview.table.api.IColumn;
 import org.hillview.table.api.IStringConverter;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
 import javax.annotation.Nullable;
+import java.util.Objects;
 
-public class BasicColStatSketch implements ISketch<ITable, BasicColStats> {
+public class BasicColStatSketch implements IFusableSketch<ITable, BasicColStats> {
     private final String colName;
     @Nullable
     private final IStringConverter converter;
@@ -36,6 +39,30 @@ public class BasicColStatSketch implements ISketch<ITable, BasicColStats> {
         return result;
     }
 
+    @Nullable
+    @Override
+    public IAccumulator<BasicColStats> getAccumulator(final ITable data) {
+        if (this.rate < 1)
+            // Sampling selects different rows than the other sketches.
+            return null;
+        final BasicColStats result = this.getZero();
+        final IColumn column = data.getColumn(this.colName);
+        return new IAccumulator<BasicColStats>() {
+            private final ColumnBatch batch = ColumnBatch.create(column, BasicColStatSketch.this.converter);
+
+            @Override
+            public void add(int[] indexes, int count) {
+                this.batch.load(indexes, 0, count);
+                result.addBatch(this.batch);
+            }
+
+            @Override
+            public BasicColStats getResult() {
+                return result;
+            }
+        };
+    }
+
     @Override
     public BasicColStats zero() { return new BasicColStats(this.momentNum); }
 
@@ -43,4 +70,26 @@ public class BasicColStatSketch implements ISketch<ITable, BasicColStats> {
     public BasicColStats add(@Nullable final BasicColStats left, @Nullable final BasicColStats right) {
         return Converters.checkNull(left).union(Converters.checkNull(right));
     }
+
+    @Override
+    public boolean isCacheable() {
+        // Each sampled sketch draws a new random sample.
+        return this.rate >= 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BasicColStatSketch that = (BasicColStatSketch) o;
+        return Objects.equals(this.colName, that.colName) &&
+                Objects.equals(this.converter, that.converter) &&
+                this.momentNum == that.momentNum &&
+                Double.compare(this.rate, that.rate) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.colName, this.converter, this.momentNum, this.rate);
+    }
 }
@@ -3,7 +3,6 @@ package org.hillview.sketches;
 import org.hillview.dataset.api.IJson;
 import org.hillview.table.api.IColumn;
 import org.hillview.table.api.IMembershipSet;
-import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.IStringConverter;
 import javax.annotation.Nullable;
 
@@ -34,6 +33,26 @@ public class BasicColStats implements IJson {
         this.presentCount = 0;
     }
 
+    /**
+     * Create statistics with the specified contents; used when decoding.
+     */
+    BasicColStats(final double[] moments, final long presentCount, final long missingCount,
+                  final double min, @Nullable final Object minObject,
+                  final double max, @Nullable final Object maxObject) {
+        this.momentCount = moments.length;
+        this.moments = moments;
+        this.presentCount = presentCount;
+        this.missingCount = missingCount;
+        this.min = min;
+        this.minObject = minObject;
+        this.max = max;
+        this.maxObject = maxObject;
+    }
+
+    int getMomentCount() { return this.momentCount; }
+
+    long getMissingCount() { return this.missingCount; }
+
     public double getMin() { return this.min; }
     @Nullable
     public Object getMinObject() { return this.minObject; }
@@ -58,11 +77,35 @@ public class BasicColStats implements IJson {
 
     public void createStats(final IColumn column, final IMembershipSet membershipSet,
                             @Nullable final IStringConverter converter) {
-        final IRowIterator myIter = membershipSet.getIterator();
-        int currRow = myIter.getNextRow();
-        while (currRow >= 0) {
-            if (!column.isMissing(currRow)) {
-                double val = column.asDouble(currRow, converter);
+        final ColumnBatch batch = ColumnBatch.create(column, converter);
+        ColumnBatch.forEachBatch(membershipSet, (rows, start, count) -> {
+            batch.load(rows, start, count);
+            this.addBatch(batch);
+        });
+    }
+
+    /**
+     * Add a batch of rows of the column to the statistics.
+     * @param rows   Indexes of the rows.
+     * @param count  Number of valid entries in rows.
+     */
+    public void addRows(final IColumn column, final int[] rows, final int count,
+                        @Nullable final IStringConverter converter) {
+        final ColumnBatch batch = ColumnBatch.create(column, converter);
+        batch.load(rows, 0, count);
+        this.addBatch(batch);
+    }
+
+    /**
+     * Add a batch of values of the column to the statistics.
+     */
+    void addBatch(final ColumnBatch batch) {
+        final IColumn column = batch.column;
+        final double[] values = batch.values;
+        for (int i = 0; i < batch.count; i++) {
+            if (!batch.isMissing(i)) {
+                final double val = values[i];
+                final int currRow = batch.getRow(i);
                 if (this.presentCount == 0) {
                     this.min = val;
                     this.max = val;
@@ -80,16 +123,15 @@ public class BasicColStats implements IJson {
                     double alpha = (double) this.presentCount / (double) (this.presentCount + 1);
                     double beta = 1.0 - alpha;
                     this.moments[0] = (alpha * this.moments[0]) + (beta * val);
-                    for (int i = 1; i < this.momentCount; i++) {
+                    for (int j = 1; j < this.momentCount; j++) {
                         tmpMoment = tmpMoment * val;
-                        this.moments[i] = (alpha * this.moments[i]) + (beta * tmpMoment);
+                        this.moments[j] = (alpha * this.moments[j]) + (beta * tmpMoment);
                     }
                 }
                 this.presentCount++;
             } else {
                 this.missingCount++;
             }
-            currRow = myIter.getNextRow();
         }
     }
 
@@ -18,6 +18,8 @@
 
 package org.hillview.sketches;
 
+import java.util.Arrays;
+
 /**
  * MetaData for one dimensional buckets held by a histogram
  */
@@ -86,4 +88,17 @@ public class BucketsDescription implements IBucketsDescription {
 
     @Override
     public int getNumOfBuckets() { return this.numOfBuckets; }
-}
\ No newline at end of file
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BucketsDescription that = (BucketsDescription) o;
+        return Arrays.equals(this.boundaries, that.boundaries);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.boundaries);
+    }
+}
@@ -18,6 +18,8 @@
 
 package org.hillview.sketches;
 
+import java.util.Objects;
+
 /**
  * MetaData for one dimensional buckets of equal size
  */
@@ -48,6 +50,24 @@ public class BucketsDescriptionEqSize implements IBucketsDescription {
         return (int) ((this.numOfBuckets * (item - this.minValue)) / this.range);
     }
 
+    @Override
+    public void indexOf(final double[] items, final int count, final int[] indexes) {
+        final double min = this.minValue;
+        final double max = this.maxValue;
+        final int last = this.numOfBuckets - 1;
+        final double buckets = this.numOfBuckets;
+        final double range = this.range;
+        for (int i = 0; i < count; i++) {
+            final double item = items[i];
+            if ((item < min) || (item > max))
+                indexes[i] = -1;
+            else if (item >= max)
+                indexes[i] = last;
+            else
+                indexes[i] = (int) ((buckets * (item - min)) / range);
+        }
+    }
+
     @Override
     public double getLeftBoundary(final int index) {
         if ((index < 0) || (index >= this.numOfBuckets))
@@ -64,4 +84,19 @@ public class BucketsDescriptionEqSize implements IBucketsDescription {
 
     @Override
     public int getNumOfBuckets() { return this.numOfBuckets; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BucketsDescriptionEqSize that = (BucketsDescriptionEqSize) o;
+        return Double.compare(this.minValue, that.minValue) == 0 &&
+                Double.compare(this.maxValue, that.maxValue) == 0 &&
+                this.numOfBuckets == that.numOfBuckets;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.minValue, this.maxValue, this.numOfBuckets);
+    }
 }
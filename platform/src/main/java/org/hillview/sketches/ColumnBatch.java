@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.table.RangeMembership;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.IStringConverter;
+
+import javax.annotation.Nullable;
+
+/**
+ * The values of a column for a batch of rows, decoded as doubles using the batch
+ * accessors of IColumn.  This allows the sketch kernels to work on primitive arrays.
+ * The buffers are reused from one batch to the next, so a ColumnBatch should not be
+ * shared between threads.  Use create to obtain the implementation best suited for
+ * the kind of the column.
+ */
+class ColumnBatch {
+    /**
+     * Consumer of a batch of rows.  If rows is null the batch contains the
+     * contiguous rows start, ..., start + count - 1; otherwise it contains
+     * rows[0], ..., rows[count - 1] and start is 0.
+     */
+    interface IBatchConsumer {
+        void accept(@Nullable int[] rows, int start, int count);
+    }
+
+    final IColumn column;
+    @Nullable
+    final IStringConverter converter;
+    double[] values;
+    int[] indexes;
+    private long[] missing;
+    int count;
+    private int missingCount;
+    @Nullable
+    private int[] rows;
+    private int start;
+
+    ColumnBatch(final IColumn column, @Nullable final IStringConverter converter) {
+        this.column = column;
+        this.converter = converter;
+        this.values = new double[IRowIterator.BATCH_SIZE];
+        this.indexes = new int[IRowIterator.BATCH_SIZE];
+        this.missing = new long[IColumn.maskWords(IRowIterator.BATCH_SIZE)];
+    }
+
+    /**
+     * Creates a batch for the column, choosing the decoder by the kind of the column.
+     * @param converter  Used only for columns that store data as strings.
+     */
+    static ColumnBatch create(IColumn column, @Nullable final IStringConverter converter) {
+        column = column.getLoadedColumn();
+        if (column instanceof IDictionaryColumn)
+            return new DictionaryColumnBatch((IDictionaryColumn) column, converter);
+        switch (column.getKind()) {
+            case Category:
+            case String:
+            case Json:
+                return new StringColumnBatch(column, converter);
+            default:
+                return new ColumnBatch(column, converter);
+        }
+    }
+
+    /**
+     * Loads the values of a batch of rows of the column; the rows are described
+     * as in IBatchConsumer.
+     */
+    void load(@Nullable final int[] rows, final int start, final int count) {
+        if (count > this.values.length) {
+            this.values = new double[count];
+            this.indexes = new int[count];
+            this.missing = new long[IColumn.maskWords(count)];
+        }
+        this.rows = rows;
+        this.start = start;
+        this.count = count;
+        if (rows == null)
+            this.missingCount = this.column.fillMissing(start, count, this.missing);
+        else
+            this.missingCount = this.column.fillMissing(rows, count, this.missing);
+        this.decode(rows, start, count);
+    }
+
+    /**
+     * Fills the values of the batch; called after the missing rows are known.
+     */
+    void decode(@Nullable final int[] rows, final int start, final int count) {
+        if (rows == null)
+            this.column.asDoubles(start, count, this.converter, this.values);
+        else
+            this.column.asDoubles(rows, count, this.converter, this.values);
+    }
+
+    /**
+     * Stores in indexes the bucket of each value of the batch.
+     */
+    void computeBuckets(final IBucketsDescription buckets) {
+        buckets.indexOf(this.values, this.count, this.indexes);
+    }
+
+    /**
+     * @return True if some rows of the batch are missing.
+     */
+    boolean hasMissing() {
+        return this.missingCount != 0;
+    }
+
+    /**
+     * @return True if the i-th row of the batch is missing.
+     */
+    boolean isMissing(final int i) {
+        return (this.missingCount != 0) && IColumn.isMasked(this.missing, i);
+    }
+
+    /**
+     * @return The index in the column of the i-th row of the batch.
+     */
+    int getRow(final int i) {
+        return this.rows == null ? this.start + i : this.rows[i];
+    }
+
+    /**
+     * Enumerates the rows of a membership set in batches.  Contiguous sets
+     * are described as ranges, so that columns can copy their values in bulk.
+     */
+    static void forEachBatch(final IMembershipSet set, final IBatchConsumer consumer) {
+        final RangeMembership range = RangeMembership.asRange(set);
+        if (range != null) {
+            for (int start = range.getStart(); start < range.getEnd(); start += IRowIterator.BATCH_SIZE)
+                consumer.accept(null, start, Math.min(IRowIterator.BATCH_SIZE, range.getEnd() - start));
+            return;
+        }
+        final IRowIterator it = set.getIterator();
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        for (int count = it.fillRows(rows); count > 0; count = it.fillRows(rows))
+            consumer.accept(rows, 0, count);
+    }
+}
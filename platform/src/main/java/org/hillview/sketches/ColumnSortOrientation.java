@@ -21,6 +21,7 @@ package org.hillview.sketches;
 import org.hillview.table.ColumnDescription;
 
 import java.io.Serializable;
+import java.util.Objects;
 
 public class ColumnSortOrientation implements Serializable {
     public final ColumnDescription columnDescription;
@@ -31,4 +32,18 @@ public class ColumnSortOrientation implements Serializable {
         this.columnDescription = colDesc;
         this.isAscending = isAscending;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ColumnSortOrientation that = (ColumnSortOrientation) o;
+        return this.isAscending == that.isAscending &&
+                this.columnDescription.equals(that.columnDescription);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.columnDescription, this.isAscending);
+    }
 }
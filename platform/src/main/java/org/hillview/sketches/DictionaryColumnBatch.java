@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.table.api.IDictionaryColumn;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.IStringConverter;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A ColumnBatch for dictionary-encoded columns of strings.  Each distinct string is
+ * converted to a double only once; the result is kept in a table indexed by the code.
+ */
+final class DictionaryColumnBatch extends ColumnBatch {
+    private final IDictionaryColumn dictionary;
+    private final int[] codes;
+    private double[] converted;
+    private boolean[] known;
+
+    DictionaryColumnBatch(final IDictionaryColumn column, @Nullable final IStringConverter converter) {
+        super(column, converter);
+        this.dictionary = column;
+        this.codes = new int[IRowIterator.BATCH_SIZE];
+        this.converted = new double[column.getDictionarySize()];
+        this.known = new boolean[column.getDictionarySize()];
+    }
+
+    @Override
+    void decode(@Nullable final int[] rows, final int start, final int count) {
+        final int[] c = count <= this.codes.length ? this.codes : new int[count];
+        if (rows == null)
+            this.dictionary.getCodes(start, count, c);
+        else
+            this.dictionary.getCodes(rows, count, c);
+        for (int i = 0; i < count; i++) {
+            final int code = c[i];
+            if (code < 0)
+                continue;
+            if (code >= this.known.length) {
+                // The dictionary grew since the batch was created
+                final int size = Math.max(code + 1, this.dictionary.getDictionarySize());
+                this.converted = Arrays.copyOf(this.converted, size);
+                this.known = Arrays.copyOf(this.known, size);
+            }
+            if (!this.known[code]) {
+                this.converted[code] = Converters.checkNull(this.converter).asDouble(
+                        this.dictionary.decode(code));
+                this.known[code] = true;
+            }
+            this.values[i] = this.converted[code];
+        }
+    }
+
+    /**
+     * Marks in seen the codes of the values of the column in the specified rows.
+     * @return The number of missing values.
+     */
+    static int collectCodes(final IDictionaryColumn column, final IMembershipSet set,
+                            final BitSet seen) {
+        final int[] codes = new int[IRowIterator.BATCH_SIZE];
+        final int[] missing = new int[1];
+        ColumnBatch.forEachBatch(set, (rows, start, count) -> {
+            if (rows == null)
+                column.getCodes(start, count, codes);
+            else
+                column.getCodes(rows, count, codes);
+            for (int i = 0; i < count; i++) {
+                if (codes[i] < 0)
+                    missing[0]++;
+                else
+                    seen.set(codes[i]);
+            }
+        });
+        return missing[0];
+    }
+}
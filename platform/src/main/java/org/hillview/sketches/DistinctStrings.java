@@ -2,10 +2,12 @@ package org.hillview.sketches;
 
 import org.hillview.dataset.api.IJson;
 import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
 import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.IRowIterator;
 
 import javax.annotation.Nullable;
+import java.util.BitSet;
 import java.util.TreeSet;
 
 /**
@@ -44,8 +46,18 @@ public class DistinctStrings implements IJson {
         this.mySet.add(string);
     }
 
-    public void addStrings(final IColumn column, final IMembershipSet membershipSet) {
+    public void addStrings(IColumn column, final IMembershipSet membershipSet) {
         this.rowCount = membershipSet.getSize();
+        column = column.getLoadedColumn();
+        if (column instanceof IDictionaryColumn) {
+            // Each distinct value is inserted once
+            final IDictionaryColumn dictionary = (IDictionaryColumn) column;
+            final BitSet seen = new BitSet(dictionary.getDictionarySize());
+            this.missingCount += DictionaryColumnBatch.collectCodes(dictionary, membershipSet, seen);
+            for (int code = seen.nextSetBit(0); code >= 0; code = seen.nextSetBit(code + 1))
+                this.add(dictionary.decode(code));
+            return;
+        }
         IRowIterator iter = membershipSet.getIterator();
         int row = iter.getNextRow();
         while (row >= 0) {
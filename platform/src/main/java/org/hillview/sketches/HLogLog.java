@@ -2,8 +2,12 @@ package org.hillview.sketches;
 
 import net.openhft.hashing.LongHashFunction;
 import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
 import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.IRowIterator;
+import org.hillview.utils.HashUtil;
+
+import java.util.BitSet;
 
 /**
  * A class that computes an approximation of the number of distinct elements in a column. Elements
@@ -29,6 +33,25 @@ public class HLogLog {
         this.seed = seed;
     }
 
+    /**
+     * Create a HLogLog with the specified registers; used when decoding.
+     */
+    HLogLog(int logRegNum, long seed, byte[] registers) {
+        HLogLog.checkSpaceValid(logRegNum);
+        if (registers.length != (1 << logRegNum))
+            throw new IllegalArgumentException("Wrong number of HLogLog registers");
+        this.regNum = registers.length;
+        this.registers = registers;
+        this.logRegNum = logRegNum;
+        this.seed = seed;
+    }
+
+    int getLogRegNum() { return this.logRegNum; }
+
+    long getSeed() { return this.seed; }
+
+    byte[] getRegisters() { return this.registers; }
+
     /**
      * adds the long 'itemHash' to the data structure.
      * Uses the first bits to identify the register and then counts trailing zeros
@@ -47,13 +70,34 @@ public class HLogLog {
      */
     public void createHLL(IColumn column, IMembershipSet memSet) {
         final IRowIterator myIter = memSet.getIterator();
-        LongHashFunction hash = LongHashFunction.xx(this.seed);
-        int currRow = myIter.getNextRow();
-        while (currRow >= 0) {
-            if (!column.isMissing(currRow)) {
+        final LongHashFunction hash = HashUtil.xxHash(this.seed);
+        column = column.getLoadedColumn();
+        if (column instanceof IDictionaryColumn) {
+            // Hash each distinct value once
+            final IDictionaryColumn dictionary = (IDictionaryColumn) column;
+            final BitSet seen = new BitSet(dictionary.getDictionarySize());
+            DictionaryColumnBatch.collectCodes(dictionary, memSet, seen);
+            for (int code = seen.nextSetBit(0); code >= 0; code = seen.nextSetBit(code + 1))
+                this.add(hash.hashChars(dictionary.decode(code)));
+            return;
+        }
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        for (int count = myIter.fillRows(rows); count > 0; count = myIter.fillRows(rows))
+            this.addRows(column, rows, count, hash);
+    }
+
+    /**
+     * Add a batch of rows of the column to the data structure.
+     * @param rows   Indexes of the rows.
+     * @param count  Number of valid entries in rows.
+     * @param hash   Hash function; should be HashUtil.xxHash with the seed of this object.
+     */
+    public void addRows(final IColumn column, final int[] rows, final int count,
+                        final LongHashFunction hash) {
+        for (int i = 0; i < count; i++) {
+            final int currRow = rows[i];
+            if (!column.isMissing(currRow))
                 this.add(column.hashCode64(currRow, hash));
-             }
-            currRow = myIter.getNextRow();
         }
     }
 
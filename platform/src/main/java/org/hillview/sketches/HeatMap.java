@@ -21,7 +21,6 @@ package org.hillview.sketches;
 import org.hillview.dataset.api.IJson;
 import org.hillview.table.api.IColumn;
 import org.hillview.table.api.IMembershipSet;
-import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.IStringConverter;
 
 import javax.annotation.Nullable;
@@ -49,6 +48,27 @@ public class HeatMap implements Serializable, IJson {
         this.histogramMissingD2 = new Histogram(this.bucketDescDim2);
     }
 
+    /**
+     * Create a heat map with the specified contents; used when decoding heat maps.
+     */
+    HeatMap(final IBucketsDescription buckets1, final IBucketsDescription buckets2,
+            final long[][] buckets, final long missingData, final long outOfRange,
+            final Histogram histogramMissingD1, final Histogram histogramMissingD2,
+            final long totalSize) {
+        this.bucketDescDim1 = buckets1;
+        this.bucketDescDim2 = buckets2;
+        this.buckets = buckets;
+        this.missingData = missingData;
+        this.outOfRange = outOfRange;
+        this.histogramMissingD1 = histogramMissingD1;
+        this.histogramMissingD2 = histogramMissingD2;
+        this.totalSize = totalSize;
+    }
+
+    IBucketsDescription getBucketDescD1() { return this.bucketDescDim1; }
+
+    IBucketsDescription getBucketDescD2() { return this.bucketDescDim2; }
+
     /**
      * Creates the histogram explicitly and in full. Should be called at most once.
      */
@@ -56,30 +76,59 @@ public class HeatMap implements Serializable, IJson {
                               @Nullable final IStringConverter converterD1,
                               @Nullable final IStringConverter converterD2,
                               final IMembershipSet membershipSet) {
-        final IRowIterator myIter = membershipSet.getIterator();
-        int currRow = myIter.getNextRow();
-        while (currRow >= 0) {
-            boolean isMissingD1 = columnD1.isMissing(currRow);
-            boolean isMissingD2 = columnD2.isMissing(currRow);
+        final ColumnBatch batchD1 = ColumnBatch.create(columnD1, converterD1);
+        final ColumnBatch batchD2 = ColumnBatch.create(columnD2, converterD2);
+        ColumnBatch.forEachBatch(membershipSet, (rows, start, count) -> {
+            batchD1.load(rows, start, count);
+            batchD2.load(rows, start, count);
+            this.addBatch(batchD1, batchD2);
+        });
+    }
+
+    /**
+     * Add a batch of rows to the heat map.
+     * @param rows   Indexes of the rows.
+     * @param count  Number of valid entries in rows.
+     */
+    public void addRows(final IColumn columnD1, final IColumn columnD2,
+                        @Nullable final IStringConverter converterD1,
+                        @Nullable final IStringConverter converterD2,
+                        final int[] rows, final int count) {
+        final ColumnBatch batchD1 = ColumnBatch.create(columnD1, converterD1);
+        final ColumnBatch batchD2 = ColumnBatch.create(columnD2, converterD2);
+        batchD1.load(rows, 0, count);
+        batchD2.load(rows, 0, count);
+        this.addBatch(batchD1, batchD2);
+    }
+
+    /**
+     * Add the same rows of both columns to the heat map.
+     */
+    void addBatch(final ColumnBatch batchD1, final ColumnBatch batchD2) {
+        batchD1.computeBuckets(this.bucketDescDim1);
+        batchD2.computeBuckets(this.bucketDescDim2);
+        final int[] indexesD1 = batchD1.indexes;
+        final int[] indexesD2 = batchD2.indexes;
+        final boolean hasMissing = batchD1.hasMissing() || batchD2.hasMissing();
+        for (int i = 0; i < batchD1.count; i++) {
+            boolean isMissingD1 = hasMissing && batchD1.isMissing(i);
+            boolean isMissingD2 = hasMissing && batchD2.isMissing(i);
             if (isMissingD1 || isMissingD2) {
                 if (!isMissingD1)  // only column 2 is missing
-                    this.histogramMissingD2.addValue(columnD1.asDouble(currRow, converterD1));
+                    this.histogramMissingD2.addValue(batchD1.values[i]);
                 else if (!isMissingD2) // only column 1 is missing
-                    this.histogramMissingD1.addValue(columnD2.asDouble(currRow, converterD2));
+                    this.histogramMissingD1.addValue(batchD2.values[i]);
                 else
                     this.missingData++; // both are missing
             } else {
-                double val1 = columnD1.asDouble(currRow, converterD1);
-                double val2 = columnD2.asDouble(currRow, converterD2);
-                int index1 = this.bucketDescDim1.indexOf(val1);
-                int index2 = this.bucketDescDim2.indexOf(val2);
+                int index1 = indexesD1[i];
+                int index2 = indexesD2[i];
                 if ((index1 >= 0) && (index2 >= 0)) {
                     this.buckets[index1][index2]++;
                     this.totalSize++;
                 }
                 else this.outOfRange++;
             }
-            currRow = myIter.getNextRow();
         }
     }
 
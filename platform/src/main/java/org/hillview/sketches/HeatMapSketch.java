@@ -17,14 +17,17 @@
  */
 
 package org.hillview.sketches;
-import org.hillview.dataset.api.ISketch;
+import org.hillview.dataset.api.IAccumulator;
+import org.hillview.dataset.api.IFusableSketch;
+import org.hillview.table.api.IColumn;
 import org.hillview.table.api.IStringConverter;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
+import java.util.Objects;
 
-public class HeatMapSketch implements ISketch<ITable, HeatMap> {
+public class HeatMapSketch implements IFusableSketch<ITable, HeatMap> {
     private final IBucketsDescription bucketDescD1;
     private final IBucketsDescription bucketDescD2;
     private final String colNameD1;
@@ -67,6 +70,33 @@ public class HeatMapSketch implements ISketch<ITable, HeatMap> {
         return result;
     }
 
+    @Nullable
+    @Override
+    public IAccumulator<HeatMap> getAccumulator(final ITable data) {
+        if (this.rate < 1)
+            // Sampling selects different rows than the other sketches.
+            return null;
+        final HeatMap result = this.getZero();
+        final IColumn column1 = data.getColumn(this.colNameD1);
+        final IColumn column2 = data.getColumn(this.colNameD2);
+        return new IAccumulator<HeatMap>() {
+            private final ColumnBatch batchD1 = ColumnBatch.create(column1, HeatMapSketch.this.converterD1);
+            private final ColumnBatch batchD2 = ColumnBatch.create(column2, HeatMapSketch.this.converterD2);
+
+            @Override
+            public void add(int[] indexes, int count) {
+                this.batchD1.load(indexes, 0, count);
+                this.batchD2.load(indexes, 0, count);
+                result.addBatch(this.batchD1, this.batchD2);
+            }
+
+            @Override
+            public HeatMap getResult() {
+                return result;
+            }
+        };
+    }
+
     @Override
     public HeatMap zero() {
         return new HeatMap(this.bucketDescD1, this.bucketDescD2);
@@ -76,4 +106,29 @@ public class HeatMapSketch implements ISketch<ITable, HeatMap> {
     public HeatMap add(@Nullable final HeatMap left, @Nullable final HeatMap right) {
         return Converters.checkNull(left).union(Converters.checkNull(right));
     }
+
+    @Override
+    public boolean isCacheable() {
+        // Each sampled sketch draws a new random sample.
+        return this.rate >= 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        HeatMapSketch that = (HeatMapSketch) o;
+        return Objects.equals(this.bucketDescD1, that.bucketDescD1) &&
+                Objects.equals(this.bucketDescD2, that.bucketDescD2) &&
+                Objects.equals(this.colNameD1, that.colNameD1) &&
+                Objects.equals(this.colNameD2, that.colNameD2) &&
+                Objects.equals(this.converterD1, that.converterD1) &&
+                Objects.equals(this.converterD2, that.converterD2) &&
+                Double.compare(this.rate, that.rate) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.bucketDescD1, this.bucketDescD2, this.colNameD1, this.colNameD2, this.converterD1, this.converterD2, this.rate);
+    }
 }
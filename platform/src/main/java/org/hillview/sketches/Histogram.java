@@ -20,7 +20,6 @@ package org.hillview.sketches;
 
 import org.hillview.table.api.IColumn;
 import org.hillview.table.api.IMembershipSet;
-import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.IStringConverter;
 
 import javax.annotation.Nullable;
@@ -42,6 +41,22 @@ public class Histogram implements Serializable {
         this.rate = 1.0;
     }
 
+    /**
+     * Create a histogram with the specified contents; used when decoding histograms.
+     */
+    Histogram(final IBucketsDescription bucketDescription, final long[] buckets,
+              final long missingData, final long outOfRange) {
+        if (buckets.length != bucketDescription.getNumOfBuckets())
+            throw new IllegalArgumentException("Mismatched buckets and bucket description");
+        this.bucketDescription = bucketDescription;
+        this.buckets = buckets;
+        this.missingData = missingData;
+        this.outOfRange = outOfRange;
+        this.rate = 1.0;
+    }
+
+    IBucketsDescription getBucketDescription() { return this.bucketDescription; }
+
     void addValue(final double val) {
         int index = this.bucketDescription.indexOf(val);
         if (index >= 0)
@@ -53,19 +68,44 @@ public class Histogram implements Serializable {
                                 @Nullable final IStringConverter converter) {
         if (this.rate < 1)
             membershipSet = membershipSet.sample(this.rate);
-        final IRowIterator myIter = membershipSet.getIterator();
-        int currRow = myIter.getNextRow();
-        while (currRow >= 0) {
-            if (column.isMissing(currRow))
-                this.missingData++;
-            else {
-                double val = column.asDouble(currRow, converter);
-                int index = this.bucketDescription.indexOf(val);
+        final ColumnBatch batch = ColumnBatch.create(column, converter);
+        ColumnBatch.forEachBatch(membershipSet, (rows, start, count) -> {
+            batch.load(rows, start, count);
+            this.addBatch(batch);
+        });
+    }
+
+    /**
+     * Add a batch of rows of the column to the histogram.
+     * @param rows   Indexes of the rows.
+     * @param count  Number of valid entries in rows.
+     */
+    public void addRows(final IColumn column, final int[] rows, final int count,
+                        @Nullable final IStringConverter converter) {
+        final ColumnBatch batch = ColumnBatch.create(column, converter);
+        batch.load(rows, 0, count);
+        this.addBatch(batch);
+    }
+
+    void addBatch(final ColumnBatch batch) {
+        batch.computeBuckets(this.bucketDescription);
+        final int[] indexes = batch.indexes;
+        final long[] buckets = this.buckets;
+        if (!batch.hasMissing()) {
+            for (int i = 0; i < batch.count; i++) {
+                final int index = indexes[i];
                 if (index >= 0)
-                    this.buckets[index]++;
+                    buckets[index]++;
                 else this.outOfRange++;
             }
-            currRow = myIter.getNextRow();
+            return;
+        }
+        for (int i = 0; i < batch.count; i++) {
+            if (batch.isMissing(i))
+                this.missingData++;
+            else if (indexes[i] >= 0)
+                buckets[indexes[i]]++;
+            else this.outOfRange++;
         }
     }
 
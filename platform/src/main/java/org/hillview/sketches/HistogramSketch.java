@@ -17,14 +17,17 @@
  */
 
 package org.hillview.sketches;
-import org.hillview.dataset.api.ISketch;
+import org.hillview.dataset.api.IAccumulator;
+import org.hillview.dataset.api.IFusableSketch;
+import org.hillview.table.api.IColumn;
 import org.hillview.table.api.IStringConverter;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
+import java.util.Objects;
 
-public class HistogramSketch implements ISketch<ITable, Histogram> {
+public class HistogramSketch implements IFusableSketch<ITable, Histogram> {
     private final IBucketsDescription bucketDesc;
     private final String colName;
     @Nullable
@@ -55,6 +58,30 @@ public class HistogramSketch implements ISketch<ITable, Histogram> {
         return result;
     }
 
+    @Nullable
+    @Override
+    public IAccumulator<Histogram> getAccumulator(final ITable data) {
+        if (this.rate < 1)
+            // Sampling selects different rows than the other sketches.
+            return null;
+        final Histogram result = this.getZero();
+        final IColumn column = data.getColumn(this.colName);
+        return new IAccumulator<Histogram>() {
+            private final ColumnBatch batch = ColumnBatch.create(column, HistogramSketch.this.converter);
+
+            @Override
+            public void add(int[] indexes, int count) {
+                this.batch.load(indexes, 0, count);
+                result.addBatch(this.batch);
+            }
+
+            @Override
+            public Histogram getResult() {
+                return result;
+            }
+        };
+    }
+
     @Override
     public Histogram add(@Nullable final Histogram left,
                          @Nullable final Histogram right) {
@@ -65,4 +92,26 @@ public class HistogramSketch implements ISketch<ITable, Histogram> {
     public Histogram zero() {
         return new Histogram(this.bucketDesc);
     }
+
+    @Override
+    public boolean isCacheable() {
+        // Each sampled sketch draws a new random sample.
+        return this.rate >= 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        HistogramSketch that = (HistogramSketch) o;
+        return Objects.equals(this.bucketDesc, that.bucketDesc) &&
+                Objects.equals(this.colName, that.colName) &&
+                Objects.equals(this.converter, that.converter) &&
+                Double.compare(this.rate, that.rate) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.bucketDesc, this.colName, this.converter, this.rate);
+    }
 }
@@ -50,4 +50,12 @@ interface IBucketsDescription extends Serializable {
      * If item is out of range of buckets returns -1
      */
     int indexOf(final double item);
+
+    /**
+     * Batch version of indexOf: indexes[i] = indexOf(items[i]) for i < count.
+     */
+    default void indexOf(final double[] items, final int count, final int[] indexes) {
+        for (int i = 0; i < count; i++)
+            indexes[i] = this.indexOf(items[i]);
+    }
 }
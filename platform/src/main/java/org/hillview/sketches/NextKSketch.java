@@ -19,6 +19,7 @@
 package org.hillview.sketches;
 
 import org.hillview.dataset.api.ISketch;
+import org.hillview.dataset.api.TaskPriority;
 import org.hillview.table.*;
 import org.hillview.table.api.*;
 import org.hillview.utils.Converters;
@@ -27,6 +28,7 @@ import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.SortedMap;
+import java.util.Objects;
 
 /**
  * Given a data set, the NextKSketch generates the Next K items in Sorted Order (specified by a
@@ -176,8 +178,36 @@ public class NextKSketch implements ISketch<ITable, NextKList> {
         return new NextKList(this.recordOrder.toSchema());
     }
 
+    /**
+     * The user is waiting for these rows to scroll the table.
+     */
+    @Override
+    public TaskPriority getPriority() {
+        return TaskPriority.Interactive;
+    }
+
     @Override
     public String toString() {
         return "NextKSketch(" + this.maxSize + ")";
     }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NextKSketch that = (NextKSketch) o;
+        return Objects.equals(this.recordOrder, that.recordOrder) &&
+                Objects.equals(this.topRow, that.topRow) &&
+                this.maxSize == that.maxSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.recordOrder, this.topRow, this.maxSize);
+    }
 }
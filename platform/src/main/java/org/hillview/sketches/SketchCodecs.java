@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.remoting.IResultCodec;
+import org.hillview.remoting.ResultCodecs;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.DateArrayColumn;
+import org.hillview.table.DoubleArrayColumn;
+import org.hillview.table.DurationArrayColumn;
+import org.hillview.table.IntArrayColumn;
+import org.hillview.table.SmallTable;
+import org.hillview.table.StringArrayColumn;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.utils.Converters;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encodings for the sketch results that are most often shipped
+ * from a HillviewServer to a RemoteDataSet.  The encodings write just the contents
+ * of the arrays held by the results, without the class descriptors and object headers
+ * produced by Java serialization.
+ */
+public final class SketchCodecs {
+    private SketchCodecs() {}
+
+    /**
+     * @return The codecs defined in this class, in the order in which they must be registered.
+     */
+    public static List<IResultCodec<?>> getCodecs() {
+        return Arrays.<IResultCodec<?>>asList(
+                new BucketsEqSizeCodec(),
+                new BucketsCodec(),
+                new HistogramCodec(),
+                new HeatMapCodec(),
+                new HLogLogCodec(),
+                new BasicColStatsCodec(),
+                new SmallTableCodec(),
+                new NextKListCodec());
+    }
+
+    private static void writeBuckets(final IBucketsDescription buckets, final DataOutput out)
+            throws IOException {
+        ResultCodecs.write(buckets, out);
+    }
+
+    private static IBucketsDescription readBuckets(final DataInput in) throws IOException {
+        return (IBucketsDescription) Converters.checkNull(ResultCodecs.read(in));
+    }
+
+    private static long[] readLongs(final int count, final DataInput in) throws IOException {
+        final long[] result = new long[count];
+        for (int i = 0; i < count; i++)
+            result[i] = in.readLong();
+        return result;
+    }
+
+    static class BucketsEqSizeCodec implements IResultCodec<BucketsDescriptionEqSize> {
+        @Override
+        public Class<BucketsDescriptionEqSize> getEncodedClass() {
+            return BucketsDescriptionEqSize.class;
+        }
+
+        @Override
+        public void encode(final BucketsDescriptionEqSize value, final DataOutput out)
+                throws IOException {
+            final int count = value.getNumOfBuckets();
+            out.writeDouble(value.getLeftBoundary(0));
+            out.writeDouble(value.getRightBoundary(count - 1));
+            out.writeInt(count);
+        }
+
+        @Override
+        public BucketsDescriptionEqSize decode(final DataInput in) throws IOException {
+            final double min = in.readDouble();
+            final double max = in.readDouble();
+            return new BucketsDescriptionEqSize(min, max, in.readInt());
+        }
+    }
+
+    static class BucketsCodec implements IResultCodec<BucketsDescription> {
+        @Override
+        public Class<BucketsDescription> getEncodedClass() { return BucketsDescription.class; }
+
+        @Override
+        public void encode(final BucketsDescription value, final DataOutput out)
+                throws IOException {
+            final int count = value.getNumOfBuckets();
+            out.writeInt(count);
+            for (int i = 0; i < count; i++)
+                out.writeDouble(value.getLeftBoundary(i));
+            out.writeDouble(value.getRightBoundary(count - 1));
+        }
+
+        @Override
+        public BucketsDescription decode(final DataInput in) throws IOException {
+            final double[] boundaries = new double[in.readInt() + 1];
+            for (int i = 0; i < boundaries.length; i++)
+                boundaries[i] = in.readDouble();
+            return new BucketsDescription(boundaries);
+        }
+    }
+
+    static class HistogramCodec implements IResultCodec<Histogram> {
+        @Override
+        public Class<Histogram> getEncodedClass() { return Histogram.class; }
+
+        @Override
+        public void encode(final Histogram value, final DataOutput out) throws IOException {
+            SketchCodecs.writeBuckets(value.getBucketDescription(), out);
+            out.writeLong(value.getMissingData());
+            out.writeLong(value.getOutOfRange());
+            for (int i = 0; i < value.getNumOfBuckets(); i++)
+                out.writeLong(value.getCount(i));
+        }
+
+        @Override
+        public Histogram decode(final DataInput in) throws IOException {
+            final IBucketsDescription buckets = SketchCodecs.readBuckets(in);
+            final long missing = in.readLong();
+            final long outOfRange = in.readLong();
+            final long[] counts = SketchCodecs.readLongs(buckets.getNumOfBuckets(), in);
+            return new Histogram(buckets, counts, missing, outOfRange);
+        }
+    }
+
+    static class HeatMapCodec implements IResultCodec<HeatMap> {
+        private final HistogramCodec histogramCodec = new HistogramCodec();
+
+        @Override
+        public Class<HeatMap> getEncodedClass() { return HeatMap.class; }
+
+        @Override
+        public void encode(final HeatMap value, final DataOutput out) throws IOException {
+            SketchCodecs.writeBuckets(value.getBucketDescD1(), out);
+            SketchCodecs.writeBuckets(value.getBucketDescD2(), out);
+            out.writeLong(value.getMissingData());
+            out.writeLong(value.getOutOfRange());
+            out.writeLong(value.getSize());
+            for (int i = 0; i < value.getNumOfBucketsD1(); i++)
+                for (int j = 0; j < value.getNumOfBucketsD2(); j++)
+                    out.writeLong(value.getCount(i, j));
+            this.histogramCodec.encode(value.getMissingHistogramD1(), out);
+            this.histogramCodec.encode(value.getMissingHistogramD2(), out);
+        }
+
+        @Override
+        public HeatMap decode(final DataInput in) throws IOException {
+            final IBucketsDescription buckets1 = SketchCodecs.readBuckets(in);
+            final IBucketsDescription buckets2 = SketchCodecs.readBuckets(in);
+            final long missing = in.readLong();
+            final long outOfRange = in.readLong();
+            final long size = in.readLong();
+            final long[][] counts = new long[buckets1.getNumOfBuckets()][];
+            for (int i = 0; i < counts.length; i++)
+                counts[i] = SketchCodecs.readLongs(buckets2.getNumOfBuckets(), in);
+            final Histogram missingD1 = this.histogramCodec.decode(in);
+            final Histogram missingD2 = this.histogramCodec.decode(in);
+            return new HeatMap(buckets1, buckets2, counts, missing, outOfRange,
+                    missingD1, missingD2, size);
+        }
+    }
+
+    static class HLogLogCodec implements IResultCodec<HLogLog> {
+        @Override
+        public Class<HLogLog> getEncodedClass() { return HLogLog.class; }
+
+        @Override
+        public void encode(final HLogLog value, final DataOutput out) throws IOException {
+            out.writeByte(value.getLogRegNum());
+            out.writeLong(value.getSeed());
+            out.write(value.getRegisters());
+        }
+
+        @Override
+        public HLogLog decode(final DataInput in) throws IOException {
+            final int logRegNum = in.readUnsignedByte();
+            final long seed = in.readLong();
+            final byte[] registers = new byte[1 << logRegNum];
+            in.readFully(registers);
+            return new HLogLog(logRegNum, seed, registers);
+        }
+    }
+
+    static class BasicColStatsCodec implements IResultCodec<BasicColStats> {
+        @Override
+        public Class<BasicColStats> getEncodedClass() { return BasicColStats.class; }
+
+        @Override
+        public void encode(final BasicColStats value, final DataOutput out) throws IOException {
+            out.writeInt(value.getMomentCount());
+            for (int i = 1; i <= value.getMomentCount(); i++)
+                out.writeDouble(value.getMoment(i));
+            out.writeLong(value.getPresentCount());
+            out.writeLong(value.getMissingCount());
+            out.writeDouble(value.getMin());
+            ResultCodecs.write(value.getMinObject(), out);
+            out.writeDouble(value.getMax());
+            ResultCodecs.write(value.getMaxObject(), out);
+        }
+
+        @Override
+        public BasicColStats decode(final DataInput in) throws IOException {
+            final double[] moments = new double[in.readInt()];
+            for (int i = 0; i < moments.length; i++)
+                moments[i] = in.readDouble();
+            final long present = in.readLong();
+            final long missing = in.readLong();
+            final double min = in.readDouble();
+            final Object minObject = ResultCodecs.read(in);
+            final double max = in.readDouble();
+            final Object maxObject = ResultCodecs.read(in);
+            return new BasicColStats(moments, present, missing, min, minObject, max, maxObject);
+        }
+    }
+
+    /**
+     * Encodes a SmallTable column by column.  For each column the indexes of the
+     * missing rows are written first, followed by the values of the present rows.
+     */
+    static class SmallTableCodec implements IResultCodec<SmallTable> {
+        private static final ContentsKind[] kinds = ContentsKind.values();
+
+        @Override
+        public Class<SmallTable> getEncodedClass() { return SmallTable.class; }
+
+        @Override
+        public void encode(final SmallTable value, final DataOutput out) throws IOException {
+            final int rows = value.getNumOfRows();
+            out.writeInt(value.getSchema().getColumnCount());
+            out.writeInt(rows);
+            for (IColumn column : value.getColumns()) {
+                final ColumnDescription desc = column.getDescription();
+                ResultCodecs.writeString(desc.name, out);
+                out.writeByte(desc.kind.ordinal());
+                out.writeBoolean(desc.allowMissing);
+                int missing = 0;
+                for (int i = 0; i < rows; i++)
+                    if (column.isMissing(i))
+                        missing++;
+                out.writeInt(missing);
+                if (missing > 0)
+                    for (int i = 0; i < rows; i++)
+                        if (column.isMissing(i))
+                            out.writeInt(i);
+                for (int i = 0; i < rows; i++) {
+                    if (column.isMissing(i))
+                        continue;
+                    switch (desc.kind) {
+                        case Category:
+                        case String:
+                        case Json:
+                            ResultCodecs.writeString(column.getString(i), out);
+                            break;
+                        case Date:
+                            ResultCodecs.writeDate(Converters.checkNull(column.getDate(i)), out);
+                            break;
+                        case Integer:
+                            out.writeInt(column.getInt(i));
+                            break;
+                        case Double:
+                            out.writeDouble(column.getDouble(i));
+                            break;
+                        case Duration:
+                            ResultCodecs.writeDuration(
+                                    Converters.checkNull(column.getDuration(i)), out);
+                            break;
+                        default:
+                            throw new RuntimeException("Unexpected column kind " + desc.kind);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public SmallTable decode(final DataInput in) throws IOException {
+            final int columnCount = in.readInt();
+            final int rows = in.readInt();
+            final List<IColumn> columns = new ArrayList<IColumn>(columnCount);
+            for (int c = 0; c < columnCount; c++) {
+                final String name = Converters.checkNull(ResultCodecs.readString(in));
+                final ContentsKind kind = kinds[in.readUnsignedByte()];
+                final ColumnDescription desc = new ColumnDescription(name, kind, in.readBoolean());
+                final boolean[] missing = new boolean[rows];
+                final int missingCount = in.readInt();
+                for (int i = 0; i < missingCount; i++)
+                    missing[in.readInt()] = true;
+                columns.add(SmallTableCodec.readColumn(desc, rows, missing, in));
+            }
+            return new SmallTable(columns);
+        }
+
+        private static IColumn readColumn(final ColumnDescription desc, final int rows,
+                                          final boolean[] missing, final DataInput in)
+                throws IOException {
+            switch (desc.kind) {
+                case Category:
+                case String:
+                case Json: {
+                    final StringArrayColumn result = new StringArrayColumn(desc, rows);
+                    for (int i = 0; i < rows; i++)
+                        if (!missing[i])
+                            result.set(i, ResultCodecs.readString(in));
+                    return result;
+                }
+                case Date: {
+                    final DateArrayColumn result = new DateArrayColumn(desc, rows);
+                    for (int i = 0; i < rows; i++)
+                        if (!missing[i])
+                            result.set(i, ResultCodecs.readDate(in));
+                    return result;
+                }
+                case Integer: {
+                    final IntArrayColumn result = new IntArrayColumn(desc, rows);
+                    for (int i = 0; i < rows; i++) {
+                        if (missing[i])
+                            result.setMissing(i);
+                        else
+                            result.set(i, in.readInt());
+                    }
+                    return result;
+                }
+                case Double: {
+                    final DoubleArrayColumn result = new DoubleArrayColumn(desc, rows);
+                    for (int i = 0; i < rows; i++) {
+                        if (missing[i])
+                            result.setMissing(i);
+                        else
+                            result.set(i, in.readDouble());
+                    }
+                    return result;
+                }
+                case Duration: {
+                    final DurationArrayColumn result = new DurationArrayColumn(desc, rows);
+                    for (int i = 0; i < rows; i++)
+                        if (!missing[i])
+                            result.set(i, ResultCodecs.readDuration(in));
+                    return result;
+                }
+                default:
+                    throw new RuntimeException("Unexpected column kind " + desc.kind);
+            }
+        }
+    }
+
+    static class NextKListCodec implements IResultCodec<NextKList> {
+        private final SmallTableCodec tableCodec = new SmallTableCodec();
+
+        @Override
+        public Class<NextKList> getEncodedClass() { return NextKList.class; }
+
+        @Override
+        public void encode(final NextKList value, final DataOutput out) throws IOException {
+            this.tableCodec.encode(value.table, out);
+            out.writeInt(value.count.size());
+            for (Integer c : value.count)
+                out.writeInt(c);
+            out.writeLong(value.startPosition);
+            out.writeLong(value.totalRows);
+        }
+
+        @Override
+        public NextKList decode(final DataInput in) throws IOException {
+            final SmallTable table = this.tableCodec.decode(in);
+            final int size = in.readInt();
+            final List<Integer> count = new ArrayList<Integer>(size);
+            for (int i = 0; i < size; i++)
+                count.add(in.readInt());
+            final long start = in.readLong();
+            final long total = in.readLong();
+            return new NextKList(table, count, start, total);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IStringConverter;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+
+/**
+ * A ColumnBatch for columns of strings.  Converting a string to a double
+ * involves a binary search among the bucket boundaries, but most string columns
+ * have few distinct values, so the result of the conversion of each distinct
+ * string is remembered in a table.
+ */
+final class StringColumnBatch extends ColumnBatch {
+    /**
+     * Beyond this many distinct strings new values are converted without being remembered.
+     */
+    static final int MAX_REMEMBERED = 10000;
+
+    private final HashMap<String, Double> converted;
+
+    StringColumnBatch(final IColumn column, @Nullable final IStringConverter converter) {
+        super(column, converter);
+        this.converted = new HashMap<String, Double>();
+    }
+
+    @Override
+    void decode(@Nullable final int[] rows, final int start, final int count) {
+        for (int i = 0; i < count; i++) {
+            if (this.isMissing(i))
+                continue;
+            final String s = this.column.getString(rows == null ? start + i : rows[i]);
+            this.values[i] = this.convert(Converters.checkNull(s));
+        }
+    }
+
+    private double convert(final String s) {
+        final Double value = this.converted.get(s);
+        if (value != null)
+            return value;
+        final double result = Converters.checkNull(this.converter).asDouble(s);
+        if (this.converted.size() < MAX_REMEMBERED)
+            this.converted.put(s, result);
+        return result;
+    }
+}
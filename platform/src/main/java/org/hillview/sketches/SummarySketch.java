@@ -23,6 +23,7 @@ import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
 import org.hillview.dataset.api.IJson;
 import org.hillview.dataset.api.ISketch;
+import org.hillview.dataset.api.TaskPriority;
 import org.hillview.table.Schema;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
@@ -94,4 +95,9 @@ public class SummarySketch implements ISketch<ITable, SummarySketch.TableSummary
     public TableSummary create(ITable data) {
         return new TableSummary(data.getSchema(), data.getNumOfRows());
     }
+
+    @Override
+    public TaskPriority getPriority() {
+        return TaskPriority.Interactive;
+    }
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.storage;
+
+import javax.annotation.Nullable;
+
+/**
+ * Exception signalling that a value in a file cannot be parsed as the kind of
+ * its column.
+ */
+public class ColumnParseException extends RuntimeException {
+    private final String columnName;
+    /**
+     * The value which could not be parsed.
+     */
+    @Nullable
+    private final String value;
+
+    public ColumnParseException(final String columnName, @Nullable final String value,
+                                final Throwable cause) {
+        super(cause.getMessage(), cause);
+        this.columnName = columnName;
+        this.value = value;
+    }
+
+    public String getColumnName() {
+        return this.columnName;
+    }
+
+    @Nullable
+    public String getValue() {
+        return this.value;
+    }
+
+    /**
+     * @return The ColumnParseException among the causes of an exception, or null.
+     */
+    @Nullable
+    public static ColumnParseException find(@Nullable Throwable ex) {
+        for (; ex != null; ex = ex.getCause())
+            if (ex instanceof ColumnParseException)
+                return (ColumnParseException) ex;
+        return null;
+    }
+}
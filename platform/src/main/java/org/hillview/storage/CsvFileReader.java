@@ -18,12 +18,13 @@
 
 package org.hillview.storage;
 
-import com.univocity.parsers.csv.CsvFormat;
-import com.univocity.parsers.csv.CsvParser;
-import com.univocity.parsers.csv.CsvParserSettings;
+import org.hillview.dataset.ComputeScheduler;
+import org.hillview.dataset.api.TaskPriority;
 import org.hillview.table.BaseListColumn;
 import org.hillview.table.ColumnDescription;
+import org.hillview.table.FullMembership;
 import org.hillview.table.Schema;
+import org.hillview.table.StreamingTable;
 import org.hillview.table.Table;
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IColumn;
@@ -31,13 +32,23 @@ import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
 /**
  * Knows how to read a CSV file (comma-separated file).
@@ -72,8 +83,21 @@ public class CsvFileReader {
          */
         @Nullable
         public Schema schema;
+        /**
+         * Number of threads used to parse a large file, which is split into parts
+         * at record boundaries; 0 means one thread per core.  Splitting requires the
+         * schema to be known in advance or the file to have a header row.
+         */
+        public int parallelism = 1;
+        /**
+         * If true integer and double columns are stored outside of the Java heap;
+         * see IColumn.compressOffHeap.  Streaming loads ignore this.
+         */
+        public boolean offHeap;
     }
 
+    private static final Logger logger = Logger.getLogger(CsvFileReader.class.getName());
+
     private final Path filename;
     private final CsvConfiguration configuration;
     @Nullable
@@ -87,6 +111,19 @@ public class CsvFileReader {
     private String currentToken;
     @SuppressWarnings("FieldCanBeLocal")
     private int actualColumnCount;
+    /**
+     * Position in the file of the part being parsed.
+     */
+    private long startOffset;
+    /**
+     * True if the part being parsed ended inside a quoted field.
+     */
+    private boolean unterminatedQuote;
+    /**
+     * Error raised while parsing a part of the file in parallel.
+     */
+    @Nullable
+    private RuntimeException partError;
 
     public CsvFileReader(final Path path, CsvConfiguration configuration) {
         this.filename = path;
@@ -97,54 +134,52 @@ public class CsvFileReader {
         this.currentToken = null;
     }
 
+    /**
+     * @return The number of threads to use for parsing the file.
+     */
+    private int getParallelism() {
+        if (this.configuration.parallelism > 0)
+            return this.configuration.parallelism;
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * A file can be split if the schema is known before the data is parsed.
+     */
+    private boolean canSplit() throws IOException {
+        return (this.getParallelism() > 1) &&
+                ((this.configuration.schema != null) || this.configuration.hasHeaderRow) &&
+                (Files.size(this.filename) >= 2 * CsvSplitter.MIN_PART_SIZE);
+    }
+
     // May return null when an error occurs.
     @Nullable
     public ITable read() throws IOException {
+        if (this.canSplit()) {
+            final List<BaseListColumn[]> parts = this.parseParts();
+            return this.createTable(concatenate(parts, this.actualColumnCount));
+        }
+
         if (this.configuration.schema != null)
             this.actualSchema = this.configuration.schema;
 
-        try (Reader file = new FileReader(this.filename.toString())) {
-            CsvParserSettings settings = new CsvParserSettings();
-            CsvFormat format = new CsvFormat();
-            format.setDelimiter(this.configuration.separator);
-            settings.setFormat(format);
-            settings.setIgnoreTrailingWhitespaces(true);
-            settings.setEmptyValue("");
-            settings.setNullValue(null);
-            CsvParser reader = new CsvParser(settings);
-            reader.beginParsing(file);
+        try (Reader file = new InputStreamReader(
+                Files.newInputStream(this.filename), StandardCharsets.UTF_8)) {
+            CsvTokenizer tokenizer = new CsvTokenizer(file, this.configuration.separator);
 
             if (this.configuration.hasHeaderRow) {
-                @Nullable
-                String[] line = reader.parseNext();
-                if (line == null)
+                if (!tokenizer.nextRecord())
                     throw new RuntimeException("Missing header row " + this.filename.toString());
-                System.out.println(Arrays.toString(line));
-                if (this.configuration.schema == null) {
-                    System.out.println("Creating schema");
-                    this.actualSchema = new Schema();
-                    int index = 0;
-                    for (String col : line) {
-                        if ((col == null) || col.isEmpty())
-                            col = this.actualSchema.newColumnName("Column_" + Integer.toString(index));
-                        ColumnDescription cd = new ColumnDescription(col,
-                                ContentsKind.String,
-                                this.configuration.allowMissingData);
-                        this.actualSchema.append(cd);
-                        index++;
-                    }
-                } else {
-                    this.currentRow++;
-                }
+                this.readHeader(tokenizer.getRecord());
             }
 
             String[] firstLine = null;
             if (this.actualSchema == null) {
                 this.actualSchema = new Schema();
                 if (this.configuration.columnCount == 0) {
-                    firstLine = reader.parseNext();
-                    if (firstLine == null)
+                    if (!tokenizer.nextRecord())
                         throw new RuntimeException("Cannot create schema from empty CSV file");
+                    firstLine = tokenizer.getRecord();
                     this.actualColumnCount = firstLine.length;
                 }
 
@@ -155,32 +190,369 @@ public class CsvFileReader {
                 }
             }
 
-            Converters.checkNull(this.actualSchema);
-            this.actualColumnCount = this.actualSchema.getColumnCount();
-            List<IColumn> columns = new ArrayList<IColumn>(this.actualColumnCount);
-            this.columns = new BaseListColumn[this.actualColumnCount];
-            int index = 0;
-            for (String col : this.actualSchema.getColumnNames()) {
-                ColumnDescription cd = Converters.checkNull(this.actualSchema.getDescription(col));
-                BaseListColumn column = BaseListColumn.create(cd);
-                columns.add(column);
-                this.columns[index++] = column;
-            }
-
+            List<IColumn> columns = this.createColumns();
             if (firstLine != null)
                 this.append(firstLine);
-            while (true) {
-                String[] line = reader.parseNext();
-                if (line == null)
-                    break;
-                this.append(line);
+            this.parseRecords(tokenizer);
+            return this.createTable(columns);
+        }
+    }
+
+    /**
+     * Creates a table from the parsed columns, copying them off-heap if the
+     * configuration asks for it.
+     */
+    private ITable createTable(final List<IColumn> columns) {
+        if (this.configuration.offHeap && !columns.isEmpty()) {
+            final FullMembership all = new FullMembership(columns.get(0).sizeInRows());
+            for (int i = 0; i < columns.size(); i++)
+                // Replace each column as soon as it is copied, to limit the memory used.
+                columns.set(i, columns.get(i).compressOffHeap(all));
+        }
+        return new Table(columns);
+    }
+
+    /**
+     * Concatenates the columns of several parts of a file, one column per task.
+     */
+    private static List<IColumn> concatenate(final List<BaseListColumn[]> parts, final int columnCount) {
+        final List<IColumn> columns = new ArrayList<IColumn>(columnCount);
+        if (parts.size() == 1) {
+            columns.addAll(Arrays.asList(parts.get(0)));
+            return columns;
+        }
+        final List<ForkJoinTask<BaseListColumn>> tasks =
+                new ArrayList<ForkJoinTask<BaseListColumn>>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            final List<BaseListColumn> pieces = new ArrayList<BaseListColumn>(parts.size());
+            for (BaseListColumn[] part : parts)
+                pieces.add(part[i]);
+            final ColumnDescription cd = pieces.get(0).getDescription();
+            tasks.add(ForkJoinTask.adapt(() -> BaseListColumn.concatenate(cd, pieces)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        for (ForkJoinTask<BaseListColumn> task : tasks)
+            columns.add(task.join());
+        return columns;
+    }
+
+    /**
+     * Reads the file and returns its contents as several tables, each holding a
+     * contiguous range of the records.  Large files are split and the parts are
+     * parsed in parallel; otherwise the result contains a single table.
+     */
+    public List<ITable> readPartitions() throws IOException {
+        final List<ITable> result = new ArrayList<ITable>();
+        if (!this.canSplit()) {
+            result.add(Converters.checkNull(this.read()));
+            return result;
+        }
+        for (BaseListColumn[] part : this.parseParts())
+            result.add(this.createTable(new ArrayList<IColumn>(Arrays.asList(part))));
+        return result;
+    }
+
+    /**
+     * Splits the data of the file into parts which can be parsed in parallel.
+     * If any split point looks wrong the data is not split.
+     * @return An increasing list of positions; part i is between positions i and i + 1.
+     */
+    private List<Long> split(final FileChannel channel, final long dataStart, final long size)
+            throws IOException {
+        final List<Long> bounds = CsvSplitter.split(channel, dataStart, size, this.getParallelism());
+        for (int i = 1; i < bounds.size() - 1; i++) {
+            if (!CsvSplitter.checkBoundary(channel, bounds.get(i), bounds.get(i + 1),
+                    this.configuration.separator, this.actualColumnCount,
+                    this.configuration.allowFewerColumns)) {
+                logger.warning("Cannot split " + this.filename + " at byte " + bounds.get(i) +
+                        "; parsing it sequentially");
+                return Arrays.asList(dataStart, size);
             }
+        }
+        return bounds;
+    }
 
-            reader.stopParsing();
-            return new Table(columns);
+    /**
+     * Splits the file at record boundaries and parses the parts in parallel.
+     * Each part is known to start at a record boundary if the previous part did
+     * and did not end inside a quoted field; otherwise the rest of the file is parsed
+     * sequentially.
+     * @return The columns of each part.
+     */
+    private List<BaseListColumn[]> parseParts() throws IOException {
+        try (FileChannel channel = FileChannel.open(this.filename, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final long dataStart = this.readSchema(channel, size);
+            final Schema schema = Converters.checkNull(this.actualSchema);
+            final List<Long> bounds = this.split(channel, dataStart, size);
+            final List<CsvFileReader> parts = new ArrayList<CsvFileReader>(bounds.size() - 1);
+            final List<ForkJoinTask<BaseListColumn[]>> tasks =
+                    new ArrayList<ForkJoinTask<BaseListColumn[]>>(bounds.size() - 1);
+            for (int i = 0; i < bounds.size() - 1; i++) {
+                final long start = bounds.get(i);
+                final long end = bounds.get(i + 1);
+                final CsvFileReader part = new CsvFileReader(this.filename, this.configuration);
+                part.actualSchema = schema;
+                part.startOffset = start;
+                parts.add(part);
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    try {
+                        return part.parseRange(channel, start, end);
+                    } catch (RuntimeException ex) {
+                        // Reported below, unless the part did not start at a record boundary.
+                        part.partError = ex;
+                        return null;
+                    }
+                }));
+            }
+            ForkJoinTask.invokeAll(tasks);
+            final List<BaseListColumn[]> result = new ArrayList<BaseListColumn[]>(tasks.size());
+            for (int i = 0; i < tasks.size(); i++) {
+                final CsvFileReader part = parts.get(i);
+                if (part.partError != null)
+                    throw part.partError;
+                if (part.unterminatedQuote && (i < tasks.size() - 1)) {
+                    logger.warning("Wrong split of " + this.filename + " at byte " +
+                            bounds.get(i + 1) + "; parsing the rest sequentially");
+                    final CsvFileReader rest = new CsvFileReader(this.filename, this.configuration);
+                    rest.actualSchema = schema;
+                    rest.startOffset = bounds.get(i);
+                    result.add(rest.parseRange(channel, bounds.get(i), size));
+                    return result;
+                }
+                result.add(Converters.checkNull(tasks.get(i).join()));
+            }
+            return result;
         }
     }
 
+    /**
+     * Determines the schema of the file, reading the header row if there is one.
+     * @return The position of the first data record.
+     */
+    private long readSchema(final FileChannel channel, final long size) throws IOException {
+        long dataStart = 0;
+        if (this.configuration.hasHeaderRow) {
+            dataStart = CsvSplitter.nextRecord(channel, 0, size, false);
+            final ByteBuffer header = ByteBuffer.allocate((int) dataStart);
+            channel.read(header, 0);
+            final CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(
+                    new String(header.array(), StandardCharsets.UTF_8)), this.configuration.separator);
+            if (!tokenizer.nextRecord())
+                throw new RuntimeException("Missing header row " + this.filename.toString());
+            this.readHeader(tokenizer.getRecord());
+        } else {
+            this.actualSchema = this.configuration.schema;
+        }
+        if (this.actualSchema == null)
+            throw new RuntimeException("The schema of " + this.filename + " is not known");
+        this.actualColumnCount = this.actualSchema.getColumnCount();
+        return dataStart;
+    }
+
+    /**
+     * Starts loading the file in the background and returns immediately.  The file
+     * is split into parts as in readPartitions, and each part is loaded into a
+     * StreamingTable, one piece of pieceRows rows at a time.  The pieces are parsed by
+     * background tasks of the compute scheduler, one piece per task, so that
+     * interactive computations on the data already loaded are not delayed.
+     * This requires the schema to be known in advance or the file to have a header row.
+     */
+    public List<StreamingTable> readStreaming(final int pieceRows) throws IOException {
+        if (pieceRows <= 0)
+            throw new IllegalArgumentException("Piece size must be positive: " + pieceRows);
+        final FileChannel channel = FileChannel.open(this.filename, StandardOpenOption.READ);
+        try {
+            final long size = channel.size();
+            final long dataStart = this.readSchema(channel, size);
+            final Schema schema = Converters.checkNull(this.actualSchema);
+            final List<Long> bounds;
+            if (this.canSplit()) {
+                bounds = this.split(channel, dataStart, size);
+            } else {
+                bounds = new ArrayList<Long>();
+                bounds.add(dataStart);
+                bounds.add(size);
+            }
+
+            final Executor executor = ComputeScheduler.getInstance().getExecutor(TaskPriority.Background);
+            final AtomicInteger loading = new AtomicInteger(bounds.size() - 1);
+            final Runnable partDone = () -> {
+                if (loading.decrementAndGet() == 0) {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        logger.warning("Error closing " + this.filename + ": " + e.getMessage());
+                    }
+                }
+            };
+            final List<StreamingTable> result = new ArrayList<StreamingTable>(bounds.size() - 1);
+            for (int i = 0; i < bounds.size() - 1; i++) {
+                final CsvFileReader reader = new CsvFileReader(this.filename, this.configuration);
+                reader.actualSchema = schema;
+                reader.startOffset = bounds.get(i);
+                final StreamingPart part = new StreamingPart(reader, channel, bounds.get(i),
+                        bounds.get(i + 1), i == bounds.size() - 2, pieceRows, executor, partDone);
+                result.add(part.table);
+                executor.execute(part::parsePiece);
+            }
+            return result;
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * The state of the streaming load of a part of a file.
+     */
+    private static final class StreamingPart {
+        private final CsvFileReader reader;
+        private final CsvSplitter.RangeInputStream stream;
+        private final CsvTokenizer tokenizer;
+        private final StreamingTable table;
+        private final long partSize;
+        /**
+         * True for the part which ends at the end of the file.
+         */
+        private final boolean last;
+        private final int pieceRows;
+        private final Executor executor;
+        private final Runnable done;
+        private final List<BaseListColumn[]> pieces;
+        private long position;
+        private double fractionDone;
+
+        StreamingPart(final CsvFileReader reader, final FileChannel channel,
+                      final long start, final long end, final boolean last, final int pieceRows,
+                      final Executor executor, final Runnable done) {
+            this.reader = reader;
+            this.stream = new CsvSplitter.RangeInputStream(channel, start, end);
+            this.tokenizer = new CsvTokenizer(new InputStreamReader(this.stream, StandardCharsets.UTF_8),
+                    reader.configuration.separator);
+            this.table = new StreamingTable(Converters.checkNull(reader.actualSchema));
+            this.partSize = Math.max(1, end - start);
+            this.last = last;
+            this.pieceRows = pieceRows;
+            this.executor = executor;
+            this.done = done;
+            this.pieces = new ArrayList<BaseListColumn[]>();
+            this.position = start;
+            this.fractionDone = 0;
+        }
+
+        /**
+         * Parses the next piece of the part and schedules the parsing of the following one.
+         */
+        void parsePiece() {
+            try {
+                this.reader.createColumns();
+                boolean more = true;
+                int rows = 0;
+                while (rows < this.pieceRows) {
+                    if (!this.tokenizer.nextRecord()) {
+                        more = false;
+                        break;
+                    }
+                    this.reader.append(this.tokenizer);
+                    rows++;
+                }
+                final BaseListColumn[] columns = Converters.checkNull(this.reader.columns);
+                // The fraction is computed from the bytes read, which include some
+                // read-ahead; the last piece gets the rest.
+                double fraction = 1.0 - this.fractionDone;
+                if (more) {
+                    final long current = this.stream.getPosition();
+                    fraction = Math.min(fraction, (double) (current - this.position) / this.partSize);
+                    this.position = current;
+                }
+                this.fractionDone += fraction;
+                if (rows > 0)
+                    this.pieces.add(columns);
+                this.table.append(fraction, new Table(Arrays.asList(columns)));
+                if (more) {
+                    this.executor.execute(this::parsePiece);
+                    return;
+                }
+
+                if (this.tokenizer.hasUnterminatedQuote() && !this.last)
+                    // The rows already produced cannot be taken back.
+                    throw new RuntimeException("File " + this.reader.filename +
+                            " was split inside a quoted field at byte " + this.stream.getPosition());
+                final List<IColumn> all;
+                if (this.pieces.isEmpty())
+                    all = new ArrayList<IColumn>(Arrays.asList(columns));
+                else
+                    all = concatenate(this.pieces, columns.length);
+                this.pieces.clear();
+                this.table.complete(new Table(all));
+            } catch (Throwable ex) {
+                this.table.fail(ex);
+            }
+            this.done.run();
+        }
+    }
+
+    private BaseListColumn[] parseRange(final FileChannel channel, final long start, final long end)
+            throws IOException {
+        try (Reader file = new InputStreamReader(
+                new CsvSplitter.RangeInputStream(channel, start, end), StandardCharsets.UTF_8)) {
+            this.createColumns();
+            final CsvTokenizer tokenizer = new CsvTokenizer(file, this.configuration.separator);
+            this.parseRecords(tokenizer);
+            this.unterminatedQuote = tokenizer.hasUnterminatedQuote();
+            return Converters.checkNull(this.columns);
+        }
+    }
+
+    /**
+     * Processes the header row; if no schema is given it creates one
+     * with a string column for each header.
+     */
+    private void readHeader(final String[] line) {
+        System.out.println(Arrays.toString(line));
+        if (this.configuration.schema == null) {
+            System.out.println("Creating schema");
+            this.actualSchema = new Schema();
+            int index = 0;
+            for (String col : line) {
+                if ((col == null) || col.isEmpty())
+                    col = this.actualSchema.newColumnName("Column_" + Integer.toString(index));
+                ColumnDescription cd = new ColumnDescription(col,
+                        ContentsKind.String,
+                        this.configuration.allowMissingData);
+                this.actualSchema.append(cd);
+                index++;
+            }
+        } else {
+            this.actualSchema = this.configuration.schema;
+            this.currentRow++;
+        }
+    }
+
+    /**
+     * Creates an empty column for each column of the schema.
+     */
+    private List<IColumn> createColumns() {
+        Converters.checkNull(this.actualSchema);
+        this.actualColumnCount = this.actualSchema.getColumnCount();
+        List<IColumn> columns = new ArrayList<IColumn>(this.actualColumnCount);
+        this.columns = new BaseListColumn[this.actualColumnCount];
+        int index = 0;
+        for (String col : this.actualSchema.getColumnNames()) {
+            ColumnDescription cd = Converters.checkNull(this.actualSchema.getDescription(col));
+            BaseListColumn column = BaseListColumn.create(cd);
+            columns.add(column);
+            this.columns[index++] = column;
+        }
+        return columns;
+    }
+
+    private void parseRecords(final CsvTokenizer tokenizer) throws IOException {
+        while (tokenizer.nextRecord())
+            this.append(tokenizer);
+    }
+
     private void append(String[] data) {
         try {
             Converters.checkNull(this.columns);
@@ -190,12 +562,13 @@ public class CsvFileReader {
                 this.error("Too many columns " + data.length + " vs " + columnCount);
             for (this.currentColumn = 0; this.currentColumn < data.length; this.currentColumn++) {
                 this.currentToken = data[this.currentColumn];
-                this.columns[this.currentColumn].parseAndAppendString(this.currentToken);
-                this.currentField++;
-                if ((this.currentField % 100000) == 0) {
-                    System.out.print(".");
-                    System.out.flush();
+                final BaseListColumn column = this.columns[this.currentColumn];
+                try {
+                    column.parseAndAppendString(this.currentToken);
+                } catch (RuntimeException ex) {
+                    throw new ColumnParseException(column.getName(), this.currentToken, ex);
                 }
+                this.countField();
             }
             if (data.length < columnCount) {
                 if (!this.configuration.allowFewerColumns)
@@ -212,6 +585,60 @@ public class CsvFileReader {
         }
     }
 
+    private void countField() {
+        this.currentField++;
+        if ((this.currentField % 100000) == 0) {
+            System.out.print(".");
+            System.out.flush();
+        }
+    }
+
+    /**
+     * Appends the current record of the tokenizer to the columns.  The fields are
+     * parsed directly from the buffer of the tokenizer, without creating strings.
+     */
+    private void append(final CsvTokenizer tokenizer) {
+        try {
+            Converters.checkNull(this.columns);
+            int columnCount = this.columns.length;
+            this.currentToken = null;
+            for (this.currentColumn = 0; tokenizer.nextField(); this.currentColumn++) {
+                if (this.currentColumn >= columnCount) {
+                    int fields = this.currentColumn + 1;
+                    while (tokenizer.nextField())
+                        fields++;
+                    this.error("Too many columns " + fields + " vs " + columnCount);
+                }
+                BaseListColumn column = this.columns[this.currentColumn];
+                try {
+                    if (tokenizer.isNull())
+                        column.parseAndAppendString(null);
+                    else
+                        column.parseAndAppendChars(
+                                tokenizer.getBuffer(), tokenizer.getStart(), tokenizer.getLength());
+                } catch (RuntimeException ex) {
+                    throw new ColumnParseException(column.getName(),
+                            tokenizer.isNull() ? null : tokenizer.getString(), ex);
+                }
+                this.countField();
+            }
+            if (this.currentColumn < columnCount) {
+                if (!this.configuration.allowFewerColumns)
+                    this.error("Too few columns " + this.currentColumn + " vs " + columnCount);
+                else {
+                    this.currentToken = "";
+                    for (int i = this.currentColumn; i < columnCount; i++)
+                        this.columns[i].parseAndAppendString(this.currentToken);
+                }
+            }
+            this.currentRow++;
+        } catch (Exception ex) {
+            if ((this.currentToken == null) && (this.currentColumn < this.actualColumnCount))
+                this.currentToken = tokenizer.getString();
+            this.error(ex);
+        }
+    }
+
     private String errorMessage() {
         String columnName = "";
         if (this.columns != null) {
@@ -220,6 +647,7 @@ public class CsvFileReader {
         }
 
         return "Error while parsing CSV file " + this.filename.toString() +
+                (this.startOffset > 0 ? " part starting at byte " + this.startOffset : "") +
                 " line " + this.currentRow + " column " + this.currentColumn +
                 columnName + (this.currentToken != null ? " token " + this.currentToken : "");
     }
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.storage;
+
+import org.hillview.table.BaseListColumn;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.Schema;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.utils.Randomness;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Guesses the schema of a CSV file which has no schema file.  It parses a sample
+ * of the records: the first rows of the file and rows starting at random offsets.
+ * Each column gets the most specific kind that can parse all sampled values, in the
+ * order Integer, Double, Date; other columns are Category if they have few distinct
+ * values and String otherwise.  The sampled values are parsed by the same columns
+ * that CsvFileReader uses, so a file whose sample is representative loads with the
+ * inferred schema.
+ */
+public final class CsvSchemaInference {
+    public static final int DEFAULT_HEAD_ROWS = 1000;
+    public static final int DEFAULT_RANDOM_ROWS = 1000;
+    /**
+     * A column is a category if it has at most this many distinct values...
+     */
+    static final int MAX_CATEGORIES = 1000;
+    /**
+     * ... and each distinct value appears on average this many times in the sample.
+     */
+    static final int CATEGORY_REPETITIONS = 10;
+    /**
+     * Maximum number of bytes read for a record sampled at a random offset.
+     */
+    private static final long MAX_RECORD_SIZE = 1 << 20;
+    private static final Logger logger = Logger.getLogger(CsvSchemaInference.class.getName());
+
+    private final Path filename;
+    private final CsvFileReader.CsvConfiguration configuration;
+    private final int headRows;
+    private final int randomRows;
+    private final Randomness random;
+
+    public CsvSchemaInference(final Path filename, final CsvFileReader.CsvConfiguration configuration) {
+        this(filename, configuration, DEFAULT_HEAD_ROWS, DEFAULT_RANDOM_ROWS, new Randomness());
+    }
+
+    /**
+     * @param headRows    Number of rows sampled from the beginning of the file.
+     * @param randomRows  Number of rows sampled at random offsets in the rest of the file.
+     */
+    public CsvSchemaInference(final Path filename, final CsvFileReader.CsvConfiguration configuration,
+                              final int headRows, final int randomRows, final Randomness random) {
+        if (headRows <= 0)
+            throw new IllegalArgumentException("Number of rows must be positive: " + headRows);
+        this.filename = filename;
+        this.configuration = configuration;
+        this.headRows = headRows;
+        this.randomRows = randomRows;
+        this.random = random;
+    }
+
+    /**
+     * Statistics about the sampled values of a column.
+     */
+    private static final class ColumnStats {
+        private final String name;
+        private boolean missing;
+        private int present;
+        /**
+         * Columns which have parsed all values so far; null once a value fails to parse.
+         */
+        @Nullable
+        private BaseListColumn asInteger;
+        @Nullable
+        private BaseListColumn asDouble;
+        @Nullable
+        private BaseListColumn asDate;
+        /**
+         * Distinct values; null when there are too many.
+         */
+        @Nullable
+        private HashSet<String> distinct;
+
+        ColumnStats(final String name) {
+            this.name = name;
+            this.missing = false;
+            this.present = 0;
+            this.asInteger = BaseListColumn.create(
+                    new ColumnDescription(name, ContentsKind.Integer, false));
+            this.asDouble = BaseListColumn.create(
+                    new ColumnDescription(name, ContentsKind.Double, false));
+            this.asDate = BaseListColumn.create(
+                    new ColumnDescription(name, ContentsKind.Date, false));
+            this.distinct = new HashSet<String>();
+        }
+
+        @Nullable
+        private static BaseListColumn tryParse(@Nullable final BaseListColumn column, @Nullable final String value) {
+            if (column == null)
+                return null;
+            try {
+                column.parseAndAppendString(value);
+                return column;
+            } catch (RuntimeException ex) {
+                return null;
+            }
+        }
+
+        void add(@Nullable final String value) {
+            if ((value == null) || value.isEmpty()) {
+                this.missing = true;
+                return;
+            }
+            this.present++;
+            this.asInteger = tryParse(this.asInteger, value);
+            this.asDouble = tryParse(this.asDouble, value);
+            this.asDate = tryParse(this.asDate, value);
+            if (this.distinct != null) {
+                this.distinct.add(value);
+                if (this.distinct.size() > MAX_CATEGORIES)
+                    this.distinct = null;
+            }
+        }
+
+        ContentsKind getKind() {
+            if (this.present == 0)
+                return ContentsKind.String;
+            if (this.asInteger != null)
+                return ContentsKind.Integer;
+            if (this.asDouble != null)
+                return ContentsKind.Double;
+            if (this.asDate != null)
+                return ContentsKind.Date;
+            if ((this.distinct != null) &&
+                    (this.distinct.size() * CATEGORY_REPETITIONS <= this.present))
+                return ContentsKind.Category;
+            return ContentsKind.String;
+        }
+
+        /**
+         * @param complete  True if all rows of the file were sampled.
+         */
+        ColumnDescription getDescription(final boolean complete) {
+            // A sample cannot show that a column has no missing values.
+            return new ColumnDescription(this.name, this.getKind(), this.missing || !complete);
+        }
+    }
+
+    /**
+     * Used when a value outside of the sample cannot be parsed with the inferred
+     * kind of its column.
+     * @param desc   Description of the column.
+     * @param value  Value which cannot be parsed.
+     * @return The description of a column of a less specific kind which can hold the
+     *         value, or null if there is none.
+     */
+    @Nullable
+    public static ColumnDescription widen(final ColumnDescription desc, @Nullable final String value) {
+        final ContentsKind kind;
+        switch (desc.kind) {
+            case Integer:
+                final BaseListColumn asDouble = BaseListColumn.create(
+                        new ColumnDescription(desc.name, ContentsKind.Double, true));
+                kind = (ColumnStats.tryParse(asDouble, value) != null) ?
+                        ContentsKind.Double : ContentsKind.String;
+                break;
+            case Double:
+            case Date:
+            case Duration:
+            case Category:
+                kind = ContentsKind.String;
+                break;
+            default:
+                return null;
+        }
+        return new ColumnDescription(desc.name, kind, true);
+    }
+
+    private CsvTokenizer createTokenizer(final FileChannel channel, final long start, final long end) {
+        final Reader reader = new InputStreamReader(
+                new CsvSplitter.RangeInputStream(channel, start, end), StandardCharsets.UTF_8);
+        return new CsvTokenizer(reader, this.configuration.separator);
+    }
+
+    private static void addRecord(final List<ColumnStats> stats, final String[] record) {
+        for (int i = 0; i < record.length; i++)
+            stats.get(i).add(record[i]);
+    }
+
+    /**
+     * Parses the sample of the file and returns the inferred schema.
+     */
+    public Schema infer() throws IOException {
+        try (FileChannel channel = FileChannel.open(this.filename, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final CsvTokenizer head = this.createTokenizer(channel, 0, size);
+            if (!head.nextRecord())
+                throw new RuntimeException("Cannot infer schema of empty CSV file " + this.filename);
+
+            final List<ColumnStats> stats = new ArrayList<ColumnStats>();
+            final String[] first = head.getRecord();
+            final Schema names = new Schema();
+            for (int i = 0; i < first.length; i++) {
+                String name;
+                if (!this.configuration.hasHeaderRow)
+                    name = "Column " + Integer.toString(i);
+                else if ((first[i] == null) || first[i].isEmpty())
+                    name = names.newColumnName("Column_" + Integer.toString(i));
+                else
+                    name = first[i];
+                names.append(new ColumnDescription(name, ContentsKind.String, true));
+                stats.add(new ColumnStats(name));
+            }
+            if (!this.configuration.hasHeaderRow)
+                addRecord(stats, first);
+
+            boolean complete = false;
+            for (int sampled = 0; ; sampled++) {
+                if (!head.nextRecord()) {
+                    complete = true;
+                    break;
+                }
+                if (sampled == this.headRows)
+                    break;
+                final String[] record = head.getRecord();
+                if (record.length <= stats.size())
+                    addRecord(stats, record);
+            }
+
+            if (!complete) {
+                for (int i = 0; i < this.randomRows; i++) {
+                    final long offset = (long) (this.random.nextDouble() * size);
+                    // The offset may be inside a quoted field; records which do not
+                    // have the right number of fields are ignored.
+                    final long start = CsvSplitter.nextRecord(channel, offset, size, false);
+                    if (start >= size)
+                        continue;
+                    final CsvTokenizer tokenizer = this.createTokenizer(
+                            channel, start, Math.min(size, start + MAX_RECORD_SIZE));
+                    if (!tokenizer.nextRecord())
+                        continue;
+                    final String[] record = tokenizer.getRecord();
+                    if (record.length == stats.size())
+                        addRecord(stats, record);
+                }
+            }
+
+            final Schema result = new Schema();
+            for (ColumnStats s : stats)
+                result.append(s.getDescription(complete));
+            logger.info("Inferred schema of " + this.filename + ": " + result.toString());
+            return result;
+        }
+    }
+}
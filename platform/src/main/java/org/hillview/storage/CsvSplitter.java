@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Splits a CSV file into byte ranges which start and end at record boundaries,
+ * so that the ranges can be parsed independently.  A newline only ends a record
+ * if it is not inside a quoted field.  Whether a position is inside quotes depends
+ * on the number of quote characters before it; the quotes are counted in parallel
+ * for large blocks of the file, and the boundaries are then found by scanning
+ * forward from the start of each block.  (An escaped quote is written as two
+ * quotes, so it does not change the parity.)  The parity is only a guess: a quote
+ * inside an unquoted field or on a comment line is a literal character for the
+ * tokenizer, so the boundaries must be checked with checkBoundary.
+ */
+final class CsvSplitter {
+    /**
+     * Files are not split into parts smaller than this many bytes.
+     */
+    static final long MIN_PART_SIZE = 1 << 22;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte QUOTE = '"';
+    private static final byte NEWLINE = '\n';
+    /**
+     * Number of records tokenized by checkBoundary.
+     */
+    private static final int CHECKED_RECORDS = 100;
+
+    private CsvSplitter() {}
+
+    /**
+     * Computes the boundaries of the parts of the file region [start, end).
+     * @param parts  Desired number of parts; fewer may be returned.
+     * @return An increasing list of positions; part i is between positions i and i + 1.
+     *         The first position is start and the last one is end.
+     */
+    static List<Long> split(final FileChannel channel, final long start, final long end,
+                            final int parts) throws IOException {
+        final int blocks = (int) Math.max(1, Math.min(parts, (end - start) / MIN_PART_SIZE));
+        final long[] blockStart = new long[blocks + 1];
+        for (int i = 0; i <= blocks; i++)
+            blockStart[i] = start + ((end - start) * i) / blocks;
+
+        final List<ForkJoinTask<Long>> counts = new ArrayList<ForkJoinTask<Long>>(blocks);
+        for (int i = 0; i < blocks; i++) {
+            final long from = blockStart[i];
+            final long to = blockStart[i + 1];
+            counts.add(ForkJoinTask.adapt(() -> countQuotes(channel, from, to)));
+        }
+        ForkJoinTask.invokeAll(counts);
+
+        final List<Long> result = new ArrayList<Long>(blocks + 1);
+        result.add(start);
+        boolean quoted = false;
+        for (int i = 1; i < blocks; i++) {
+            quoted ^= (counts.get(i - 1).join() & 1) != 0;
+            final long boundary = nextRecord(channel, blockStart[i], end, quoted);
+            // A record may span several blocks.
+            if (boundary > result.get(result.size() - 1) && boundary < end)
+                result.add(boundary);
+        }
+        result.add(end);
+        return result;
+    }
+
+    /**
+     * Checks a boundary computed by split by tokenizing the records which follow it:
+     * each record must have the expected number of fields, and no quoted field may
+     * extend past the end of the region.
+     * @param position     Boundary to check.
+     * @param end          End of the region which starts at the boundary.
+     * @param columnCount  Expected number of fields in each record.
+     * @param allowFewer   If true records may have fewer fields.
+     * @return False if the boundary is not at the start of a record.
+     */
+    static boolean checkBoundary(final FileChannel channel, final long position, final long end,
+                                 final char separator, final int columnCount,
+                                 final boolean allowFewer) throws IOException {
+        final CsvTokenizer tokenizer = new CsvTokenizer(new InputStreamReader(
+                new RangeInputStream(channel, position, end), StandardCharsets.UTF_8), separator);
+        for (int i = 0; i < CHECKED_RECORDS; i++) {
+            if (!tokenizer.nextRecord())
+                break;
+            int fields = 0;
+            while (tokenizer.nextField())
+                fields++;
+            if ((fields > columnCount) || ((fields < columnCount) && !allowFewer))
+                return false;
+        }
+        return !tokenizer.hasUnterminatedQuote();
+    }
+
+    /**
+     * @return The number of quote characters in the region [from, to).
+     */
+    static long countQuotes(final FileChannel channel, final long from, final long to)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long result = 0;
+        long position = from;
+        while (position < to) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to - position));
+            final int read = channel.read(buffer, position);
+            if (read <= 0)
+                break;
+            final byte[] data = buffer.array();
+            for (int i = 0; i < read; i++)
+                if (data[i] == QUOTE)
+                    result++;
+            position += read;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the start of the first record which begins at or after a position.
+     * @param position  Position where the search starts.
+     * @param end       Position where the search ends.
+     * @param quoted    True if the position is inside a quoted field.
+     * @return The position following the first newline which is not quoted, or end.
+     */
+    static long nextRecord(final FileChannel channel, final long position, final long end,
+                           boolean quoted) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long current = position;
+        while (current < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - current));
+            final int read = channel.read(buffer, current);
+            if (read <= 0)
+                break;
+            final byte[] data = buffer.array();
+            for (int i = 0; i < read; i++) {
+                if (data[i] == QUOTE)
+                    quoted = !quoted;
+                else if ((data[i] == NEWLINE) && !quoted)
+                    return current + i + 1;
+            }
+            current += read;
+        }
+        return end;
+    }
+
+    /**
+     * An input stream which reads a region of a file.  It uses positional reads,
+     * so several streams can share a channel.
+     */
+    static final class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        RangeInputStream(final FileChannel channel, final long start, final long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            final int read = this.read(b, 0, 1);
+            return read <= 0 ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (this.position >= this.end)
+                return -1;
+            final int toRead = (int) Math.min(len, this.end - this.position);
+            final int read = this.channel.read(ByteBuffer.wrap(b, off, toRead), this.position);
+            if (read <= 0)
+                return -1;
+            this.position += read;
+            return read;
+        }
+
+        /**
+         * @return The position in the file of the next byte to read.
+         */
+        long getPosition() {
+            return this.position;
+        }
+    }
+}
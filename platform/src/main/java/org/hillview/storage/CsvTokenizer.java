@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.storage;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the text of a CSV file into records and fields without allocating
+ * objects: each field is returned as a range of an internal character buffer, which
+ * the columns parse directly.  The conventions are the same as those of the
+ * univocity parser with the settings previously used by CsvFileReader:
+ * - an empty field which is not quoted is null; a quoted empty field is empty
+ * - whitespace around unquoted fields and outside quotes is ignored
+ * - a quote inside a quoted field is written as two quotes
+ * - quoted fields can contain separators and newlines
+ * - empty lines and lines starting with # are skipped
+ */
+final class CsvTokenizer {
+    private static final char QUOTE = '"';
+    private static final char COMMENT = '#';
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Reader reader;
+    private final char separator;
+    private char[] buffer;
+    /**
+     * Number of valid characters in buffer.
+     */
+    private int limit;
+    /**
+     * Position of the next character to process.
+     */
+    private int position;
+    private boolean eof;
+    /**
+     * True when the last field of the current record has been returned.
+     */
+    private boolean endOfRecord;
+    private int fieldStart;
+    private int fieldLength;
+    private boolean fieldNull;
+    /**
+     * True if the input ended inside a quoted field.
+     */
+    private boolean unterminatedQuote;
+
+    CsvTokenizer(final Reader reader, final char separator) {
+        this.reader = reader;
+        this.separator = separator;
+        this.buffer = new char[BUFFER_SIZE];
+        this.limit = 0;
+        this.position = 0;
+        this.eof = false;
+        this.endOfRecord = true;
+        this.unterminatedQuote = false;
+    }
+
+    /**
+     * Ensures that the character at position is in the buffer, reading more data
+     * if necessary.  The characters starting at keep are preserved, but may be moved
+     * to the beginning of the buffer.
+     * At the end of the input position is left equal to limit.
+     * @return The number of positions by which the characters were moved.
+     */
+    private int fill(final int keep) throws IOException {
+        if ((this.position < this.limit) || this.eof)
+            return 0;
+        final int shift = keep;
+        if (shift > 0) {
+            System.arraycopy(this.buffer, keep, this.buffer, 0, this.limit - keep);
+            this.limit -= shift;
+            this.position -= shift;
+        } else if (this.limit == this.buffer.length) {
+            // A field larger than the buffer
+            final char[] larger = new char[2 * this.buffer.length];
+            System.arraycopy(this.buffer, 0, larger, 0, this.limit);
+            this.buffer = larger;
+        }
+        while (this.position >= this.limit) {
+            final int read = this.reader.read(this.buffer, this.limit, this.buffer.length - this.limit);
+            if (read < 0) {
+                this.eof = true;
+                break;
+            }
+            this.limit += read;
+        }
+        return shift;
+    }
+
+    /**
+     * @return True if the character at position is available.
+     */
+    private boolean available() throws IOException {
+        this.fill(this.position);
+        return this.position < this.limit;
+    }
+
+    /**
+     * Skips the rest of the current line.
+     */
+    private void skipLine() throws IOException {
+        while (true) {
+            if (!this.available())
+                return;
+            if (this.buffer[this.position++] == '\n')
+                return;
+        }
+    }
+
+    /**
+     * Advances to the next record, skipping the rest of the current one.
+     * @return False at the end of the input.
+     */
+    boolean nextRecord() throws IOException {
+        while (!this.endOfRecord)
+            this.nextField();
+        while (true) {
+            if (!this.available())
+                return false;
+            final char c = this.buffer[this.position];
+            if (c == '\n') {
+                this.position++;
+            } else if (c == '\r') {
+                this.position++;
+                if (this.available() && (this.buffer[this.position] == '\n'))
+                    this.position++;
+            } else if (c == COMMENT) {
+                this.skipLine();
+            } else {
+                this.endOfRecord = false;
+                return true;
+            }
+        }
+    }
+
+    private static boolean isWhitespace(final char c) {
+        return (c <= ' ') && (c != '\n');
+    }
+
+    /**
+     * Consumes the character which ends a field and updates endOfRecord.
+     */
+    private void endField() throws IOException {
+        while (true) {
+            // Keep the current field in the buffer
+            this.fieldStart -= this.fill(this.fieldStart);
+            if (this.position == this.limit) {
+                this.endOfRecord = true;
+                return;
+            }
+            final char c = this.buffer[this.position++];
+            if (c == this.separator)
+                return;
+            if (c == '\n') {
+                this.endOfRecord = true;
+                return;
+            }
+            // Other characters after a closing quote are ignored.
+        }
+    }
+
+    /**
+     * Reads the next field of the current record; the field is then described by
+     * isNull, getBuffer, getStart and getLength, until the next call.
+     * @return False if there are no more fields in the record.
+     */
+    boolean nextField() throws IOException {
+        if (this.endOfRecord)
+            return false;
+        // Skip leading whitespace
+        while (true) {
+            if (!this.available()) {
+                this.setField(this.position, 0, true);
+                this.endOfRecord = true;
+                return true;
+            }
+            final char c = this.buffer[this.position];
+            if ((c == this.separator) || !isWhitespace(c))
+                break;
+            this.position++;
+        }
+
+        if (this.buffer[this.position] == QUOTE) {
+            this.position++;
+            int start = this.position;
+            int write = this.position;
+            while (true) {
+                int shift = this.fill(start);
+                start -= shift;
+                write -= shift;
+                if (this.position == this.limit) {
+                    this.unterminatedQuote = true;
+                    break;
+                }
+                final char c = this.buffer[this.position++];
+                if (c == QUOTE) {
+                    shift = this.fill(start);
+                    start -= shift;
+                    write -= shift;
+                    if ((this.position == this.limit) || (this.buffer[this.position] != QUOTE))
+                        break;
+                    this.position++;
+                }
+                this.buffer[write++] = c;
+            }
+            this.setField(start, write - start, false);
+            this.endField();
+            return true;
+        }
+
+        int start = this.position;
+        while (true) {
+            start -= this.fill(start);
+            if (this.position == this.limit)
+                break;
+            final char c = this.buffer[this.position];
+            if ((c == this.separator) || (c == '\n'))
+                break;
+            this.position++;
+        }
+        int end = this.position;
+        while ((end > start) && isWhitespace(this.buffer[end - 1]))
+            end--;
+        this.setField(start, end - start, end == start);
+        this.endField();
+        return true;
+    }
+
+    private void setField(final int start, final int length, final boolean isNull) {
+        this.fieldStart = start;
+        this.fieldLength = length;
+        this.fieldNull = isNull;
+    }
+
+    /**
+     * @return True if the input ended inside a quoted field.
+     */
+    boolean hasUnterminatedQuote() {
+        return this.unterminatedQuote;
+    }
+
+    boolean isNull() {
+        return this.fieldNull;
+    }
+
+    char[] getBuffer() {
+        return this.buffer;
+    }
+
+    int getStart() {
+        return this.fieldStart;
+    }
+
+    int getLength() {
+        return this.fieldLength;
+    }
+
+    /**
+     * @return The current field as a String, or null.
+     */
+    String getString() {
+        if (this.fieldNull)
+            return null;
+        return new String(this.buffer, this.fieldStart, this.fieldLength);
+    }
+
+    /**
+     * Reads all remaining fields of the current record as strings.
+     */
+    String[] getRecord() throws IOException {
+        final List<String> result = new ArrayList<String>();
+        while (this.nextField())
+            result.add(this.getString());
+        return result.toArray(new String[result.size()]);
+    }
+}
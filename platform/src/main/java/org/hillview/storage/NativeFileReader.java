@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.storage;
+
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.FullMembership;
+import org.hillview.table.FullSubSchema;
+import org.hillview.table.LazyColumn;
+import org.hillview.table.MappedDateColumn;
+import org.hillview.table.MappedDoubleColumn;
+import org.hillview.table.MappedDurationColumn;
+import org.hillview.table.MappedIntColumn;
+import org.hillview.table.MappedStringColumn;
+import org.hillview.table.Schema;
+import org.hillview.table.Table;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.ISubSchema;
+import org.hillview.table.api.ITable;
+
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Loads a table written by NativeFileWriter.  The column data are not copied:
+ * each column section is memory-mapped and the columns read directly from the
+ * mapping, so loading takes time proportional to the number of columns, and the
+ * data are shared through the OS page cache.  Only string dictionaries are
+ * decoded on the heap.  A lazy reader only reads the schema and the position of
+ * the columns; each column is mapped and decoded the first time it is used.
+ */
+public class NativeFileReader {
+    private final Path file;
+    private final boolean lazy;
+
+    public NativeFileReader(final Path file) {
+        this(file, false);
+    }
+
+    public NativeFileReader(final Path file, final boolean lazy) {
+        this.file = file;
+        this.lazy = lazy;
+    }
+
+    public ITable read() throws IOException {
+        return this.read(new FullSubSchema());
+    }
+
+    /**
+     * Reads only some of the columns of the file.
+     * @param columns  Columns to read; the other columns are not part of the result.
+     */
+    public ITable read(final ISubSchema columns) throws IOException {
+        // Mappings remain valid after the channel is closed.
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            final ByteBuffer header = readFully(channel, 0, NativeFileWriter.MAGIC.length + 12);
+            final byte[] magic = new byte[NativeFileWriter.MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, NativeFileWriter.MAGIC))
+                throw new IOException(this.file + " is not a Hillview native file");
+            final int version = header.getInt();
+            if (version != NativeFileWriter.VERSION)
+                throw new IOException("Unsupported version " + version + " of file " + this.file);
+            final int rowCount = header.getInt();
+            final int schemaLength = header.getInt();
+            final ByteBuffer schemaBytes = readFully(channel, header.capacity(), schemaLength);
+            final Schema schema = Schema.fromJson(
+                    new String(schemaBytes.array(), StandardCharsets.UTF_8));
+
+            final long directory = readFully(channel, fileSize - 8, 8).getLong();
+            final int columnCount = schema.getColumnCount();
+            final ByteBuffer offsets = readFully(channel, directory, 8 * columnCount);
+            final List<IColumn> result = new ArrayList<IColumn>(columnCount);
+            int index = 0;
+            for (String colName : schema.getColumnNames()) {
+                final long start = offsets.getLong(8 * index);
+                final long end = (index == columnCount - 1) ? directory : offsets.getLong(8 * (index + 1));
+                index++;
+                if (!columns.isColumnPresent(colName))
+                    continue;
+                if (end - start > Integer.MAX_VALUE)
+                    throw new IOException("Column " + colName + " is too large to map");
+                final ColumnDescription desc = schema.getDescription(colName);
+                if (this.lazy) {
+                    result.add(new LazyColumn(desc, rowCount,
+                            () -> this.loadColumn(desc, start, end, rowCount)));
+                } else {
+                    final ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                    result.add(createColumn(desc, section, rowCount));
+                }
+            }
+            return new Table(result, new FullMembership(rowCount));
+        }
+    }
+
+    /**
+     * Maps and decodes one column of the file; used by lazy columns.
+     */
+    private IColumn loadColumn(final ColumnDescription desc, final long start, final long end,
+                               final int rowCount) {
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            final ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            return createColumn(desc, section, rowCount);
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading column " + desc.name + " from " + this.file, e);
+        }
+    }
+
+    private static IColumn createColumn(final ColumnDescription desc, final ByteBuffer section,
+                                        final int rowCount) {
+        final int flags = section.getInt(0);
+        int position = 8;
+        @Nullable LongBuffer missing = null;
+        if ((flags & NativeFileWriter.HAS_MISSING) != 0) {
+            final int words = (rowCount + 63) >>> 6;
+            missing = slice(section, position, 8 * words).asLongBuffer();
+            position += 8 * words;
+        }
+        switch (desc.kind) {
+            case Integer:
+                return new MappedIntColumn(desc, missing,
+                        slice(section, position, 4 * rowCount).asIntBuffer());
+            case Double:
+                return new MappedDoubleColumn(desc, missing,
+                        slice(section, position, 8 * rowCount).asDoubleBuffer());
+            case Date:
+            case Duration: {
+                final LongBuffer seconds = slice(section, position, 8 * rowCount).asLongBuffer();
+                position += 8 * rowCount;
+                final IntBuffer nanos = slice(section, position, 4 * rowCount).asIntBuffer();
+                if (desc.kind == ContentsKind.Date)
+                    return new MappedDateColumn(desc, missing, seconds, nanos);
+                return new MappedDurationColumn(desc, missing, seconds, nanos);
+            }
+            case String:
+            case Category:
+            case Json: {
+                final int distinct = section.getInt(position);
+                position += 8;
+                final IntBuffer offsets = slice(section, position, 4 * (distinct + 1)).asIntBuffer();
+                position = align(position + 4 * (distinct + 1));
+                final int bytes = offsets.get(distinct);
+                final byte[] data = new byte[bytes];
+                slice(section, position, bytes).get(data);
+                position = align(position + bytes);
+                final String[] dictionary = new String[distinct];
+                for (int i = 0; i < distinct; i++)
+                    dictionary[i] = new String(data, offsets.get(i),
+                            offsets.get(i + 1) - offsets.get(i), StandardCharsets.UTF_8);
+                return new MappedStringColumn(desc, dictionary,
+                        slice(section, position, 4 * rowCount).asIntBuffer());
+            }
+            default:
+                throw new RuntimeException("Unexpected column kind " + desc.kind);
+        }
+    }
+
+    private static int align(final int position) {
+        return (position + 7) & ~7;
+    }
+
+    private static ByteBuffer slice(final ByteBuffer buffer, final int position, final int length) {
+        final ByteBuffer result = buffer.duplicate();
+        result.position(position);
+        result.limit(position + length);
+        return result.slice();
+    }
+
+    private static ByteBuffer readFully(final FileChannel channel, final long position,
+                                        final int length) throws IOException {
+        final ByteBuffer result = ByteBuffer.allocate(length);
+        while (result.hasRemaining()) {
+            if (channel.read(result, position + result.position()) < 0)
+                throw new EOFException("Unexpected end of file");
+        }
+        result.flip();
+        return result;
+    }
+}
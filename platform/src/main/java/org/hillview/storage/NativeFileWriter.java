@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.storage;
+
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.Schema;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Writes a table in the native Hillview columnar format, which can be loaded
+ * very quickly by NativeFileReader.  All numbers are big-endian.  The file contains:
+ * - a header: the magic string, the format version, the number of rows,
+ *   and the length and bytes of the schema serialized as JSON;
+ * - one section for each column, in schema order, each aligned at 8 bytes;
+ * - a directory with the offset of each column section;
+ * - the offset of the directory, as the last 8 bytes of the file.
+ * A column section starts with 4 bytes of flags and 4 bytes of padding.
+ * If the HAS_MISSING flag is set a bitmap of missing rows follows, one long
+ * for every 64 rows.  Then come the data:
+ * - Integer: one int per row;
+ * - Double: one double per row;
+ * - Date: one long per row with the seconds since the epoch (UTC), followed
+ *   by one int per row with the nanoseconds;
+ * - Duration: seconds and nanoseconds, laid out as for dates;
+ * - String, Category, Json: the number of distinct values and 4 bytes of padding,
+ *   the count + 1 offsets of the values in the UTF-8 dictionary, the dictionary
+ *   bytes, and one int per row with the index of the value in the dictionary,
+ *   or -1 for a missing value.
+ * Each array is padded to a multiple of 8 bytes.
+ * Only the rows in the membership set of the table are written.
+ */
+public class NativeFileWriter {
+    public static final byte[] MAGIC = "HILLVIEW".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 1;
+    public static final int HAS_MISSING = 1;
+    /**
+     * Customary extension of files in this format.
+     */
+    public static final String EXTENSION = ".hvc";
+
+    private final Path file;
+
+    public NativeFileWriter(final Path file) {
+        this.file = file;
+    }
+
+    public void writeTable(final ITable table) throws IOException {
+        final Schema schema = table.getSchema();
+        final IMembershipSet members = table.getMembershipSet();
+        final int rowCount = members.getSize();
+        // Write to a fresh temporary file in the same directory and rename it atomically,
+        // so readers never see a partial file, and concurrent writers of the same file
+        // do not interfere.
+        final Path dir = this.file.toAbsolutePath().getParent();
+        final Path tmp = Files.createTempFile(dir, this.file.getFileName() + ".", ".tmp");
+        try (CountingOutput out = new CountingOutput(Files.newOutputStream(tmp))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rowCount);
+            final byte[] schemaBytes = schema.toJson().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(schemaBytes.length);
+            out.write(schemaBytes);
+            out.align();
+
+            final List<Long> offsets = new ArrayList<Long>();
+            for (String colName : schema.getColumnNames()) {
+                offsets.add(out.position);
+                this.writeColumn(out, table.getColumn(colName), members, rowCount);
+            }
+            final long directory = out.position;
+            for (long offset : offsets)
+                out.writeLong(offset);
+            out.writeLong(directory);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        try {
+            Files.move(tmp, this.file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    private void writeColumn(final CountingOutput out, final IColumn column,
+                             final IMembershipSet members, final int rowCount) throws IOException {
+        final ColumnDescription desc = column.getDescription();
+        final boolean isString;
+        switch (desc.kind) {
+            case String:
+            case Category:
+            case Json:
+                isString = true;
+                break;
+            default:
+                isString = false;
+                break;
+        }
+
+        long[] missing = null;
+        if (!isString) {
+            final long[] bitmap = new long[(rowCount + 63) >>> 6];
+            boolean any = false;
+            int index = 0;
+            final IRowIterator it = members.getIterator();
+            for (int row = it.getNextRow(); row >= 0; row = it.getNextRow(), index++) {
+                if (column.isMissing(row)) {
+                    bitmap[index >>> 6] |= 1L << index;
+                    any = true;
+                }
+            }
+            if (any)
+                missing = bitmap;
+        }
+        out.writeInt(missing != null ? HAS_MISSING : 0);
+        out.writeInt(0);
+        if (missing != null)
+            for (long word : missing)
+                out.writeLong(word);
+
+        IRowIterator it = members.getIterator();
+        switch (desc.kind) {
+            case Integer:
+                for (int row = it.getNextRow(); row >= 0; row = it.getNextRow())
+                    out.writeInt(column.isMissing(row) ? 0 : column.getInt(row));
+                break;
+            case Double:
+                for (int row = it.getNextRow(); row >= 0; row = it.getNextRow())
+                    out.writeDouble(column.isMissing(row) ? 0 : column.getDouble(row));
+                break;
+            case Date:
+                for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+                    final LocalDateTime date = column.isMissing(row) ? null : column.getDate(row);
+                    out.writeLong(date == null ? 0 : date.toEpochSecond(ZoneOffset.UTC));
+                }
+                out.align();
+                it = members.getIterator();
+                for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+                    final LocalDateTime date = column.isMissing(row) ? null : column.getDate(row);
+                    out.writeInt(date == null ? 0 : date.getNano());
+                }
+                break;
+            case Duration:
+                for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+                    final Duration duration = column.isMissing(row) ? null : column.getDuration(row);
+                    out.writeLong(duration == null ? 0 : duration.getSeconds());
+                }
+                out.align();
+                it = members.getIterator();
+                for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+                    final Duration duration = column.isMissing(row) ? null : column.getDuration(row);
+                    out.writeInt(duration == null ? 0 : duration.getNano());
+                }
+                break;
+            case String:
+            case Category:
+            case Json:
+                this.writeStrings(out, column, members);
+                break;
+            default:
+                throw new RuntimeException("Unexpected column kind " + desc.kind);
+        }
+        out.align();
+    }
+
+    private void writeStrings(final CountingOutput out, final IColumn column,
+                              final IMembershipSet members) throws IOException {
+        final HashMap<String, Integer> codes = new HashMap<String, Integer>();
+        final List<byte[]> dictionary = new ArrayList<byte[]>();
+        IRowIterator it = members.getIterator();
+        for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+            final String s = column.getString(row);
+            if ((s != null) && !codes.containsKey(s)) {
+                codes.put(s, dictionary.size());
+                dictionary.add(s.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        out.writeInt(dictionary.size());
+        out.writeInt(0);
+        int offset = 0;
+        out.writeInt(offset);
+        for (byte[] b : dictionary) {
+            offset += b.length;
+            out.writeInt(offset);
+        }
+        out.align();
+        for (byte[] b : dictionary)
+            out.write(b);
+        out.align();
+        it = members.getIterator();
+        for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+            final String s = column.getString(row);
+            out.writeInt(s == null ? -1 : Converters.checkNull(codes.get(s)));
+        }
+    }
+
+    /**
+     * A buffered data output which keeps track of the number of bytes written.
+     */
+    private static final class CountingOutput implements Closeable {
+        private final DataOutputStream stream;
+        long position;
+
+        CountingOutput(final OutputStream stream) {
+            this.stream = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+            this.position = 0;
+        }
+
+        void write(final byte[] b) throws IOException {
+            this.stream.write(b);
+            this.position += b.length;
+        }
+
+        void writeInt(final int value) throws IOException {
+            this.stream.writeInt(value);
+            this.position += 4;
+        }
+
+        void writeLong(final long value) throws IOException {
+            this.stream.writeLong(value);
+            this.position += 8;
+        }
+
+        void writeDouble(final double value) throws IOException {
+            this.stream.writeDouble(value);
+            this.position += 8;
+        }
+
+        /**
+         * Pads the output with zeros to a multiple of 8 bytes.
+         */
+        void align() throws IOException {
+            while ((this.position & 7) != 0) {
+                this.stream.write(0);
+                this.position++;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.stream.close();
+        }
+    }
+}
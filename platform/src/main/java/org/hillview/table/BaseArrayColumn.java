@@ -18,6 +18,7 @@
 
 package org.hillview.table;
 
+import org.hillview.table.api.IColumn;
 import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
@@ -45,6 +46,42 @@ public abstract class BaseArrayColumn extends BaseColumn implements Serializable
         return this.description.allowMissing && Converters.checkNull(this.missing).get(rowIndex);
     }
 
+    @Override
+    public int fillMissing(final int[] rows, final int count, final long[] mask) {
+        if (this.missing == null)
+            // Object columns represent missing values by null.
+            return super.fillMissing(rows, count, mask);
+        IColumn.clearMask(mask, count);
+        if (!this.description.allowMissing)
+            return 0;
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            if (this.missing.get(rows[i])) {
+                mask[i >>> 6] |= 1L << i;
+                result++;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int fillMissing(final int start, final int count, final long[] mask) {
+        if (this.missing == null)
+            return super.fillMissing(start, count, mask);
+        IColumn.clearMask(mask, count);
+        if (!this.description.allowMissing)
+            return 0;
+        int result = 0;
+        final int end = start + count;
+        for (int row = this.missing.nextSetBit(start);
+             (row >= 0) && (row < end); row = this.missing.nextSetBit(row + 1)) {
+            final int i = row - start;
+            mask[i >>> 6] |= 1L << i;
+            result++;
+        }
+        return result;
+    }
+
     public void setMissing(final int rowIndex) {
         Converters.checkNull(this.missing).set(rowIndex);
     }
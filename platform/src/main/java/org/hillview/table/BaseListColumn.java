@@ -18,11 +18,13 @@
 
 package org.hillview.table;
 
+import org.hillview.table.api.IColumn;
 import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.List;
 
 /**
  * Base class for a column that can grow in size.
@@ -61,6 +63,50 @@ public abstract class BaseListColumn extends BaseColumn {
             return false;
     }
 
+    @Override
+    public int fillMissing(final int[] rows, final int count, final long[] mask) {
+        if (this.missing == null)
+            // Object columns represent missing values by null.
+            return super.fillMissing(rows, count, mask);
+        IColumn.clearMask(mask, count);
+        if (!this.description.allowMissing)
+            return 0;
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            final int row = rows[i];
+            if (this.missing.get(row >> this.LogSegmentSize).get(row & this.SegmentMask)) {
+                mask[i >>> 6] |= 1L << i;
+                result++;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int fillMissing(final int start, final int count, final long[] mask) {
+        if (this.missing == null)
+            return super.fillMissing(start, count, mask);
+        IColumn.clearMask(mask, count);
+        if (!this.description.allowMissing)
+            return 0;
+        int result = 0;
+        final int end = start + count;
+        int segmentStart = start & ~this.SegmentMask;
+        for (int segmentId = start >> this.LogSegmentSize; segmentStart < end; segmentId++) {
+            final BitSet segment = this.missing.get(segmentId);
+            final int from = Math.max(start, segmentStart) - segmentStart;
+            final int to = Math.min(end - segmentStart, this.SegmentSize);
+            for (int local = segment.nextSetBit(from);
+                 (local >= 0) && (local < to); local = segment.nextSetBit(local + 1)) {
+                final int i = segmentStart + local - start;
+                mask[i >>> 6] |= 1L << i;
+                result++;
+            }
+            segmentStart += this.SegmentSize;
+        }
+        return result;
+    }
+
     public void appendMissing() {
         Converters.checkNull(this.missing);
         final int segmentId = this.size >> this.LogSegmentSize;
@@ -74,6 +120,15 @@ public abstract class BaseListColumn extends BaseColumn {
 
     public abstract void parseAndAppendString(@Nullable String s);
 
+    /**
+     * Parses a value stored in a range of a character array and appends it.
+     * Columns override this to parse the characters without creating a String.
+     * A null value is appended with parseAndAppendString(null).
+     */
+    public void parseAndAppendChars(final char[] chars, final int start, final int length) {
+        this.parseAndAppendString(new String(chars, start, length));
+    }
+
     void parseEmptyOrNull() {
         if (!this.description.allowMissing)
             throw new RuntimeException("Appending missing data to column " + this.toString());
@@ -82,6 +137,11 @@ public abstract class BaseListColumn extends BaseColumn {
 
     abstract void grow();
 
+    /**
+     * Appends all the values of a column of the same class.
+     */
+    abstract void appendAll(BaseListColumn source);
+
     void growMissing() {
         if (this.missing != null)
             this.missing.add(new BitSet(this.SegmentSize));
@@ -90,6 +150,7 @@ public abstract class BaseListColumn extends BaseColumn {
     public static BaseListColumn create(ColumnDescription desc) {
         switch (desc.kind) {
             case Category:
+                return new DictionaryListColumn(desc);
             case String:
             case Json:
                 return new StringListColumn(desc);
@@ -106,6 +167,20 @@ public abstract class BaseListColumn extends BaseColumn {
         }
     }
 
+    /**
+     * Creates a column holding the values of several columns one after the other.
+     * @param desc   Description of the result; all parts must have been created
+     *               from the same description.
+     * @param parts  Columns to concatenate.
+     */
+    public static BaseListColumn concatenate(final ColumnDescription desc,
+                                             final List<BaseListColumn> parts) {
+        final BaseListColumn result = BaseListColumn.create(desc);
+        for (BaseListColumn part : parts)
+            result.appendAll(part);
+        return result;
+    }
+
     @Override
     public String toString() {
         return this.getDescription().toString();
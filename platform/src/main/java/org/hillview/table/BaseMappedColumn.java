@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.IColumn;
+
+import javax.annotation.Nullable;
+import java.io.ObjectStreamException;
+import java.nio.LongBuffer;
+
+/**
+ * Base class for columns which read their data directly from a memory-mapped file in
+ * the native Hillview format (see org.hillview.storage.NativeFileReader).  The data
+ * never lives on the Java heap; it is kept in the OS page cache.  Missing values are
+ * described by an optional bitmap with one bit per row.
+ */
+abstract class BaseMappedColumn extends BaseColumn {
+    private final int size;
+    @Nullable
+    private final LongBuffer missing;
+
+    BaseMappedColumn(final ColumnDescription description, final int size,
+                     @Nullable final LongBuffer missing) {
+        super(description);
+        this.size = size;
+        this.missing = missing;
+    }
+
+    @Override
+    public int sizeInRows() {
+        return this.size;
+    }
+
+    @Override
+    public boolean isMissing(final int rowIndex) {
+        return (this.missing != null) &&
+                ((this.missing.get(rowIndex >>> 6) & (1L << rowIndex)) != 0);
+    }
+
+    @Override
+    public int fillMissing(final int start, final int count, final long[] mask) {
+        if (this.missing == null)
+            // String columns represent missing values in their data.
+            return super.fillMissing(start, count, mask);
+        IColumn.clearMask(mask, count);
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            if (this.isMissing(start + i)) {
+                mask[i >>> 6] |= 1L << i;
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Mapped buffers cannot be serialized; a copy of the data is sent instead.
+     */
+    Object writeReplace() throws ObjectStreamException {
+        return this.compress(new FullMembership(this.size));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.IColumn;
+
+import javax.annotation.Nullable;
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Base class for fixed-size columns whose data is stored outside of the Java heap,
+ * in buffers allocated by OffHeapMemory.  Missing values are stored in an off-heap
+ * bitmap, if the column allows them.  An off-heap column has an explicit lifetime:
+ * its memory is released when the last of its owners releases it, or when it is
+ * closed, after which the column can no longer be used.
+ */
+abstract class BaseOffHeapColumn extends BaseColumn implements AutoCloseable {
+    private final int size;
+    @Nullable
+    private ByteBuffer missingBuffer;
+    @Nullable
+    private LongBuffer missing;
+    /**
+     * Number of owners which have retained the column and not released it yet.
+     */
+    private int owners;
+    private boolean closed;
+
+    BaseOffHeapColumn(final ColumnDescription description, final int size) {
+        super(description);
+        if (size < 0)
+            throw new IllegalArgumentException("Size must be positive: " + size);
+        this.size = size;
+        if (description.allowMissing) {
+            this.missingBuffer = OffHeapMemory.allocate(8L * IColumn.maskWords(size));
+            this.missing = this.missingBuffer.asLongBuffer();
+        }
+    }
+
+    @Override
+    public int sizeInRows() {
+        return this.size;
+    }
+
+    @Override
+    public boolean isMissing(final int rowIndex) {
+        final LongBuffer m = this.missing;
+        return (m != null) && ((m.get(rowIndex >>> 6) & (1L << rowIndex)) != 0);
+    }
+
+    @Override
+    public int fillMissing(final int start, final int count, final long[] mask) {
+        final LongBuffer m = this.missing;
+        IColumn.clearMask(mask, count);
+        if (m == null)
+            return 0;
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            final int row = start + i;
+            if ((m.get(row >>> 6) & (1L << row)) != 0) {
+                mask[i >>> 6] |= 1L << i;
+                result++;
+            }
+        }
+        return result;
+    }
+
+    public void setMissing(final int rowIndex) {
+        if (this.missing == null)
+            throw new IllegalStateException("Column " + this.getName() + " does not allow missing values");
+        final int word = rowIndex >>> 6;
+        this.missing.put(word, this.missing.get(word) | (1L << rowIndex));
+    }
+
+    /**
+     * Releases the memory of the data.
+     */
+    abstract void releaseData();
+
+    static IllegalStateException released() {
+        return new IllegalStateException("The column has been released");
+    }
+
+    /**
+     * Registers a new owner of the column; the memory stays allocated until
+     * all owners have released the column.
+     */
+    synchronized void retain() {
+        if (this.closed)
+            throw BaseOffHeapColumn.released();
+        this.owners++;
+    }
+
+    /**
+     * Called by an owner which no longer needs the column.  The memory is released
+     * when there are no owners left; a column which was never retained is released
+     * by the first call.
+     */
+    synchronized void release() {
+        if (this.owners > 0)
+            this.owners--;
+        if (this.owners == 0)
+            this.close();
+    }
+
+    /**
+     * Releases the off-heap memory of the column, whether it has owners or not.
+     * The caller must ensure that no computation is still using the column.
+     */
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        if (this.missingBuffer != null) {
+            OffHeapMemory.release(this.missingBuffer);
+            this.missingBuffer = null;
+            this.missing = null;
+        }
+        this.releaseData();
+    }
+
+    /**
+     * Direct buffers cannot be serialized; a copy of the data is sent instead.
+     */
+    Object writeReplace() throws ObjectStreamException {
+        return this.compress(new FullMembership(this.size));
+    }
+}
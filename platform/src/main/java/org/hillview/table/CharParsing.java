@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+/**
+ * Parsers which read values directly from a range of a character array, used
+ * when loading data to avoid creating a String for each value.  Each parser
+ * handles the common formats itself and falls back to the standard Java parser
+ * for everything else, so the results and errors are the same as with the
+ * standard parsers.
+ */
+final class CharParsing {
+    /**
+     * Exactly representable powers of 10.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    /**
+     * Decimal numbers with at most this many digits fit exactly in the mantissa of a double.
+     */
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final int[] DAYS_IN_MONTH = { 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+    private CharParsing() {}
+
+    private static boolean isDigit(final char c) {
+        return (c >= '0') && (c <= '9');
+    }
+
+    /**
+     * Same as Integer.parseInt(new String(chars, start, length)).
+     */
+    static int parseInt(final char[] chars, final int start, final int length) {
+        int i = start;
+        final int end = start + length;
+        boolean negative = false;
+        if ((i < end) && ((chars[i] == '-') || (chars[i] == '+'))) {
+            negative = chars[i] == '-';
+            i++;
+        }
+        // At most 10 digits, so the value fits in a long.
+        if ((i < end) && ((end - i) <= 10)) {
+            long value = 0;
+            for (; i < end; i++) {
+                final char c = chars[i];
+                if (!isDigit(c))
+                    break;
+                value = (value * 10) + (c - '0');
+            }
+            if (i == end) {
+                if (negative)
+                    value = -value;
+                if ((value >= Integer.MIN_VALUE) && (value <= Integer.MAX_VALUE))
+                    return (int) value;
+            }
+        }
+        return Integer.parseInt(new String(chars, start, length));
+    }
+
+    /**
+     * Same as Double.parseDouble(new String(chars, start, length)).
+     */
+    static double parseDouble(final char[] chars, final int start, final int length) {
+        int i = start;
+        final int end = start + length;
+        boolean negative = false;
+        if ((i < end) && ((chars[i] == '-') || (chars[i] == '+'))) {
+            negative = chars[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;  // -1 before the decimal point
+        for (; i < end; i++) {
+            final char c = chars[i];
+            if (isDigit(c)) {
+                mantissa = (mantissa * 10) + (c - '0');
+                digits++;
+                if (fractionDigits >= 0)
+                    fractionDigits++;
+            } else if ((c == '.') && (fractionDigits < 0)) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if ((i == end) && (digits > 0) && (digits <= MAX_EXACT_DIGITS)) {
+            // Both operands are exact, so the division is correctly rounded.
+            double value = mantissa;
+            if (fractionDigits > 0)
+                value /= POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(chars, start, length));
+    }
+
+    /**
+     * Layouts of dates recognized by parseDate.
+     */
+    static final int DATE_ONLY = 0;  // yyyy-MM-dd
+    static final int ISO_DATE_TIME = 1;  // yyyy-MM-ddTHH:mm[:ss[.fraction]]
+    static final int DATE_HOURS_MINUTES = 2;  // yyyy-MM-dd HH:mm
+    static final int DATE_HOURS_SECONDS = 3;  // yyyy-MM-dd HH:mm:ss
+
+    private static int digits(final char[] chars, final int start, final int count) {
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            final char c = chars[i];
+            if (!isDigit(c))
+                return -1;
+            result = (result * 10) + (c - '0');
+        }
+        return result;
+    }
+
+    private static boolean isLeapYear(final long year) {
+        return ((year & 3) == 0) && (((year % 100) != 0) || ((year % 400) == 0));
+    }
+
+    /**
+     * Number of days from 1970-01-01 to the specified date of the proleptic Gregorian calendar.
+     */
+    static long epochDay(long year, final int month, final int day) {
+        // From Howard Hinnant's days_from_civil algorithm.
+        year -= (month <= 2) ? 1 : 0;
+        final long era = Math.floorDiv(year, 400);
+        final long yearOfEra = year - (era * 400);
+        final long dayOfYear = (((153 * (month + ((month > 2) ? -3 : 9))) + 2) / 5) + day - 1;
+        final long dayOfEra = ((yearOfEra * 365) + (yearOfEra / 4)) - (yearOfEra / 100) + dayOfYear;
+        return ((era * 146097) + dayOfEra) - 719468;
+    }
+
+    /**
+     * Parses a date with a fixed layout into the encoding of EpochTime.
+     * @param layout  One of the layout constants.
+     * @return The date, or EpochTime.MISSING if the characters do not match the layout
+     *         exactly or do not describe a valid date; the caller must then use a
+     *         general parser, which will produce a proper result or error.
+     */
+    static long parseDate(final char[] chars, final int start, final int length, final int layout) {
+        if ((length < 10) || (chars[start + 4] != '-') || (chars[start + 7] != '-'))
+            return EpochTime.MISSING;
+        final int year = digits(chars, start, 4);
+        final int month = digits(chars, start + 5, 2);
+        final int day = digits(chars, start + 8, 2);
+        if ((year < 1) || (month < 1) || (month > 12) || (day < 1))
+            return EpochTime.MISSING;
+        final int monthLength = ((month == 2) && isLeapYear(year)) ? 29 : DAYS_IN_MONTH[month - 1];
+        if (day > monthLength)
+            return EpochTime.MISSING;
+
+        int hour = 0, minute = 0, second = 0, nanos = 0;
+        if (layout == DATE_ONLY) {
+            if (length != 10)
+                return EpochTime.MISSING;
+        } else {
+            final char separator = layout == ISO_DATE_TIME ? 'T' : ' ';
+            if ((length < 16) || (chars[start + 10] != separator) || (chars[start + 13] != ':'))
+                return EpochTime.MISSING;
+            hour = digits(chars, start + 11, 2);
+            minute = digits(chars, start + 14, 2);
+            if ((hour < 0) || (hour > 23) || (minute < 0) || (minute > 59))
+                return EpochTime.MISSING;
+            int i = start + 16;
+            final int end = start + length;
+            if ((i < end) && (chars[i] == ':') && (layout != DATE_HOURS_MINUTES)) {
+                if (i + 3 > end)
+                    return EpochTime.MISSING;
+                second = digits(chars, i + 1, 2);
+                if ((second < 0) || (second > 59))
+                    return EpochTime.MISSING;
+                i += 3;
+                if ((i < end) && (chars[i] == '.') && (layout == ISO_DATE_TIME)) {
+                    final int fraction = end - i - 1;
+                    if ((fraction < 1) || (fraction > 9))
+                        return EpochTime.MISSING;
+                    nanos = digits(chars, i + 1, fraction);
+                    if (nanos < 0)
+                        return EpochTime.MISSING;
+                    for (int f = fraction; f < 9; f++)
+                        nanos *= 10;
+                    i = end;
+                }
+            } else if (layout == DATE_HOURS_SECONDS) {
+                return EpochTime.MISSING;
+            }
+            if (i != end)
+                return EpochTime.MISSING;
+        }
+        final long seconds = (epochDay(year, month, day) * 86400) + (hour * 3600) + (minute * 60) + second;
+        return (seconds * 1000000) + (nanos / 1000);
+    }
+}
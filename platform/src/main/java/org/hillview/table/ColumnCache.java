@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
+
+import javax.annotation.Nullable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of the data of the LazyColumns loaded in memory, and unloads the
+ * columns that have not been used recently when they use more than a budget of
+ * heap bytes.  An unloaded column is loaded again by its loader the next time it is
+ * used.  The cache uses the clock algorithm: each column has a flag which is set
+ * whenever the column is used; the cache visits the loaded columns in a circular
+ * order, and evicts the first column whose flag is not set, clearing the flags of
+ * the columns it skips.  This approximates evicting the least recently used column
+ * without any bookkeeping on the path that reads the data.
+ * The cache only holds weak references to the columns, so it does not keep alive
+ * the columns of tables that are no longer used.
+ */
+public final class ColumnCache {
+    /**
+     * Name of the Java system property that specifies the budget of the global cache
+     * in bytes.  Zero means that columns are never evicted.
+     */
+    public static final String SIZE_PROPERTY = "hillview.column.cache.bytes";
+    private static final Logger logger = Logger.getLogger(ColumnCache.class.getName());
+
+    @Nullable
+    private static ColumnCache instance = null;
+
+    private static final class Entry extends WeakReference<LazyColumn> {
+        final long size;
+
+        Entry(final LazyColumn column, final long size, final ReferenceQueue<LazyColumn> queue) {
+            super(column, queue);
+            this.size = size;
+        }
+    }
+
+    private final long maxBytes;
+    private long usedBytes;
+    /**
+     * Loaded columns, in the order in which the clock visits them.
+     */
+    private final ArrayDeque<Entry> entries;
+    /**
+     * Receives the entries of columns which have been garbage-collected.
+     */
+    private final ReferenceQueue<LazyColumn> collected;
+    private final AtomicLong loads;
+    private final AtomicLong evictions;
+
+    /**
+     * Create a cache.
+     * @param maxBytes  Approximate maximum size of the loaded columns in bytes;
+     *                  zero means no limit.
+     */
+    public ColumnCache(final long maxBytes) {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("Negative cache size " + maxBytes);
+        this.maxBytes = maxBytes;
+        this.usedBytes = 0;
+        this.entries = new ArrayDeque<Entry>();
+        this.collected = new ReferenceQueue<LazyColumn>();
+        this.loads = new AtomicLong(0);
+        this.evictions = new AtomicLong(0);
+    }
+
+    /**
+     * @return The global cache, creating it if necessary.  By default it can use
+     *         half of the maximum heap size.
+     */
+    public static synchronized ColumnCache getInstance() {
+        if (instance == null) {
+            long size = Long.getLong(SIZE_PROPERTY, Runtime.getRuntime().maxMemory() / 2);
+            instance = new ColumnCache(size);
+            logger.info("Created column cache with " + size + " bytes");
+        }
+        return instance;
+    }
+
+    /**
+     * Estimates the heap memory used by the data of a column.  The data of
+     * memory-mapped columns is in the operating system page cache, which is not
+     * limited by the heap size; only their dictionaries of strings are counted.
+     */
+    static long estimateSize(final IColumn column) {
+        if (column instanceof BaseMappedColumn) {
+            if (!(column instanceof IDictionaryColumn))
+                return 0;
+            final IDictionaryColumn dictionary = (IDictionaryColumn) column;
+            long size = 0;
+            for (int code = 0; code < dictionary.getDictionarySize(); code++)
+                // Object headers of the string and its array, and the characters
+                size += 40 + 2 * dictionary.decode(code).length();
+            return size;
+        }
+        final long rows = column.sizeInRows();
+        switch (column.getKind()) {
+            case Integer:
+                return 4 * rows;
+            case Double:
+            case Date:
+            case Duration:
+                return 8 * rows;
+            default:
+                // A reference or a code for each row, and the strings themselves
+                return 16 * rows;
+        }
+    }
+
+    /**
+     * Called when a column has been loaded; evicts other columns if necessary.
+     * @param column  Column whose data has been loaded.
+     * @param size    Estimated size of the data of the column.
+     */
+    synchronized void loaded(final LazyColumn column, final long size) {
+        this.loads.incrementAndGet();
+        this.removeCollected();
+        this.entries.addLast(new Entry(column, size, this.collected));
+        this.usedBytes += size;
+        if (this.maxBytes == 0)
+            return;
+        // Each column is skipped at most once, after which its flag is clear;
+        // the column just loaded is never evicted.
+        int toVisit = 2 * this.entries.size();
+        while ((this.usedBytes > this.maxBytes) && (toVisit > 0)) {
+            toVisit--;
+            final Entry e = this.entries.pollFirst();
+            final LazyColumn c = e.get();
+            if (c == null) {
+                this.usedBytes -= e.size;
+            } else if ((c == column) || c.clearReferenced()) {
+                this.entries.addLast(e);
+            } else {
+                c.unload();
+                this.usedBytes -= e.size;
+                this.evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void removeCollected() {
+        for (Reference<? extends LazyColumn> r = this.collected.poll(); r != null; r = this.collected.poll()) {
+            if (this.entries.remove(r))
+                this.usedBytes -= ((Entry) r).size;
+        }
+    }
+
+    /**
+     * @return The estimated size of the loaded columns.
+     */
+    public synchronized long getUsedBytes() {
+        this.removeCollected();
+        return this.usedBytes;
+    }
+
+    /**
+     * @return Number of columns loaded, including columns loaded again after eviction.
+     */
+    public long getLoadCount() {
+        return this.loads.get();
+    }
+
+    public long getEvictionCount() {
+        return this.evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnCache(" + this.getUsedBytes() + "/" + this.maxBytes + " bytes, loads=" +
+                this.getLoadCount() + ", evictions=" + this.getEvictionCount() + ")";
+    }
+}
@@ -18,30 +18,39 @@
 
 package org.hillview.table;
 
+import net.openhft.hashing.LongHashFunction;
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IDateColumn;
+import org.hillview.table.api.IStringConverter;
+import org.hillview.table.api.IndexComparator;
+
 import javax.annotation.Nullable;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 
 /*
- * Column of dates, implemented as an array of dates and a BitSet of missing values
+ * Column of dates, implemented as an array of longs holding microseconds since 1970;
+ * see EpochTime.  The LocalDateTime objects are only created when a value is read.
  */
 public final class DateArrayColumn
         extends BaseArrayColumn
         implements IDateColumn {
-    private final LocalDateTime[] data;
+    private final long[] data;
 
     public DateArrayColumn(final ColumnDescription description, final int size) {
         super(description, size);
         this.checkKind(ContentsKind.Date);
-        this.data = new LocalDateTime[size];
+        this.data = new long[size];
+        Arrays.fill(this.data, EpochTime.MISSING);
     }
 
     public DateArrayColumn(final ColumnDescription description,
                            final LocalDateTime[] data) {
         super(description, data.length);
         this.checkKind(ContentsKind.Date);
-        this.data = data;
+        this.data = new long[data.length];
+        for (int i = 0; i < data.length; i++)
+            this.data[i] = EpochTime.fromDate(data[i]);
     }
 
     @Override
@@ -52,16 +61,61 @@ public final class DateArrayColumn
     @Nullable
     @Override
     public LocalDateTime getDate(final int rowIndex) {
-        return this.data[rowIndex];
+        return EpochTime.toDate(this.data[rowIndex]);
+    }
+
+    public void set(final int rowIndex, @Nullable final LocalDateTime value) {
+        this.data[rowIndex] = EpochTime.fromDate(value);
+    }
+
+    @Override
+    public boolean isMissing(final int rowIndex) { return this.data[rowIndex] == EpochTime.MISSING; }
+
+    @Override
+    public void setMissing(final int rowIndex) { this.data[rowIndex] = EpochTime.MISSING; }
+
+    @Override
+    public double asDouble(final int rowIndex, @Nullable final IStringConverter unused) {
+        if (this.isMissing(rowIndex))
+            return IDateColumn.super.asDouble(rowIndex, unused);  // throws
+        return EpochTime.dateToDouble(this.data[rowIndex]);
+    }
+
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++) {
+            final long value = this.data[rows[i]];
+            if (value != EpochTime.MISSING)
+                out[i] = EpochTime.dateToDouble(value);
+        }
     }
 
-    private void set(final int rowIndex, @Nullable final LocalDateTime value) {
-        this.data[rowIndex] = value;
+    @Override
+    public void asDoubles(final int start, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++) {
+            final long value = this.data[start + i];
+            if (value != EpochTime.MISSING)
+                out[i] = EpochTime.dateToDouble(value);
+        }
     }
 
     @Override
-    public boolean isMissing(final int rowIndex) { return this.getDate(rowIndex) == null; }
+    public IndexComparator getComparator() {
+        return new IndexComparator() {
+            @Override
+            public int compare(final Integer i, final Integer j) {
+                return EpochTime.compare(DateArrayColumn.this.data[i], DateArrayColumn.this.data[j]);
+            }
+        };
+    }
 
     @Override
-    public void setMissing(final int rowIndex) { this.set(rowIndex, null);}
+    public long hashCode64(final int rowIndex, final LongHashFunction hash) {
+        final long value = this.data[rowIndex];
+        if (value == EpochTime.MISSING)
+            return MISSING_HASH_VALUE;
+        return hash.hashLong(Double.doubleToRawLongBits(EpochTime.dateToDouble(value)));
+    }
 }
@@ -18,8 +18,11 @@
 
 package org.hillview.table;
 
+import net.openhft.hashing.LongHashFunction;
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IDateColumn;
+import org.hillview.table.api.IStringConverter;
+import org.hillview.table.api.IndexComparator;
 
 import javax.annotation.Nullable;
 import java.time.LocalDate;
@@ -27,17 +30,18 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * A column of Dates that can grow in size.
+ * A column of Dates that can grow in size.  The dates are stored as longs; see EpochTime.
  */
 public class DateListColumn
         extends BaseListColumn
         implements IDateColumn {
-    private final ArrayList<LocalDateTime[]> segments;
+    private final ArrayList<long[]> segments;
     private static final Logger logger = Logger.getLogger(DateListColumn.class.getName());
 
     /**
@@ -53,11 +57,16 @@ public class DateListColumn
      * @see <a href="http://stackoverflow.com/questions/27454025/unable-to-obtain-localdatetime-from-temporalaccessor-when-parsing-localdatetime">Parsing LocalDateTime</a>
      */
     private boolean parseAsDate;
+    /**
+     * If the format guessed has a fixed layout, one of the layouts understood by
+     * CharParsing.parseDate; otherwise -1.
+     */
+    private int fastLayout = -1;
 
     public DateListColumn(final ColumnDescription desc) {
         super(desc);
         this.checkKind(ContentsKind.Date);
-        this.segments = new ArrayList<LocalDateTime[]>();
+        this.segments = new ArrayList<long[]>();
         this.parserFormatter = null;
     }
 
@@ -66,17 +75,81 @@ public class DateListColumn
     public LocalDateTime getDate(final int rowIndex) {
         final int segmentId = rowIndex >> this.LogSegmentSize;
         final int localIndex = rowIndex & this.SegmentMask;
-        return this.segments.get(segmentId)[localIndex];
+        return EpochTime.toDate(this.segments.get(segmentId)[localIndex]);
+    }
+
+    private long getRaw(final int rowIndex) {
+        return this.segments.get(rowIndex >> this.LogSegmentSize)[rowIndex & this.SegmentMask];
+    }
+
+    @Override
+    public double asDouble(final int rowIndex, @Nullable final IStringConverter unused) {
+        final long value = this.getRaw(rowIndex);
+        if (value == EpochTime.MISSING)
+            return IDateColumn.super.asDouble(rowIndex, unused);  // throws
+        return EpochTime.dateToDouble(value);
+    }
+
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++) {
+            final long value = this.getRaw(rows[i]);
+            if (value != EpochTime.MISSING)
+                out[i] = EpochTime.dateToDouble(value);
+        }
+    }
+
+    @Override
+    public void asDoubles(final int start, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        int i = 0;
+        while (i < count) {
+            final int row = start + i;
+            final long[] segment = this.segments.get(row >> this.LogSegmentSize);
+            final int localIndex = row & this.SegmentMask;
+            final int n = Math.min(count - i, this.SegmentSize - localIndex);
+            for (int j = 0; j < n; j++) {
+                final long value = segment[localIndex + j];
+                if (value != EpochTime.MISSING)
+                    out[i + j] = EpochTime.dateToDouble(value);
+            }
+            i += n;
+        }
+    }
+
+    @Override
+    public IndexComparator getComparator() {
+        return new IndexComparator() {
+            @Override
+            public int compare(final Integer i, final Integer j) {
+                return EpochTime.compare(DateListColumn.this.getRaw(i), DateListColumn.this.getRaw(j));
+            }
+        };
+    }
+
+    @Override
+    public long hashCode64(final int rowIndex, final LongHashFunction hash) {
+        final long value = this.getRaw(rowIndex);
+        if (value == EpochTime.MISSING)
+            return MISSING_HASH_VALUE;
+        return hash.hashLong(Double.doubleToRawLongBits(EpochTime.dateToDouble(value)));
     }
 
     @Override
     void grow() {
-        this.segments.add(new LocalDateTime[this.SegmentSize]);
+        final long[] segment = new long[this.SegmentSize];
+        Arrays.fill(segment, EpochTime.MISSING);
+        this.segments.add(segment);
         this.growMissing();
     }
 
-    @SuppressWarnings("Duplicates")
     private void append(@Nullable final LocalDateTime value) {
+        this.appendRaw(EpochTime.fromDate(value));
+    }
+
+    @SuppressWarnings("Duplicates")
+    private void appendRaw(final long value) {
         final int segmentId = this.size >> this.LogSegmentSize;
         final int localIndex = this.size & this.SegmentMask;
         if (this.segments.size() <= segmentId)
@@ -87,7 +160,7 @@ public class DateListColumn
 
     @Override
     public boolean isMissing(final int rowIndex) {
-        return this.getDate(rowIndex) == null;
+        return this.getRaw(rowIndex) == EpochTime.MISSING;
     }
 
     @Override
@@ -154,6 +227,11 @@ public class DateListColumn
 
                     logger.log(Level.INFO, "Guessed date format " + d.toString());
                     this.parserFormatter = d;
+                    if (b && ((d == DateTimeFormatter.ISO_LOCAL_DATE) || (d == DateTimeFormatter.ISO_DATE)))
+                        this.fastLayout = CharParsing.DATE_ONLY;
+                    else if (!b && ((d == DateTimeFormatter.ISO_LOCAL_DATE_TIME) ||
+                            (d == DateTimeFormatter.ISO_DATE_TIME)))
+                        this.fastLayout = CharParsing.ISO_DATE_TIME;
                     return;
                 } catch (DateTimeParseException ex) {
                     continue;
@@ -167,6 +245,10 @@ public class DateListColumn
             if (s.toLowerCase().matches(regexp)) {
                 String format = DATE_FORMAT_REGEXPS.get(regexp);
                 this.parserFormatter = DateTimeFormatter.ofPattern(format);
+                if (format.equals("yyyy-MM-dd HH:mm:ss"))
+                    this.fastLayout = CharParsing.DATE_HOURS_SECONDS;
+                else if (format.equals("yyyy-MM-dd HH:mm"))
+                    this.fastLayout = CharParsing.DATE_HOURS_MINUTES;
                 logger.log(Level.INFO, "Guessed date format " + regexp);
                 return;
             }
@@ -192,5 +274,23 @@ public class DateListColumn
             this.append(dt);
         }
     }
-}
 
+    @Override
+    public void parseAndAppendChars(final char[] chars, final int start, final int length) {
+        if ((length > 0) && (this.parserFormatter != null) && (this.fastLayout >= 0)) {
+            final long value = CharParsing.parseDate(chars, start, length, this.fastLayout);
+            if (value != EpochTime.MISSING) {
+                this.appendRaw(value);
+                return;
+            }
+        }
+        this.parseAndAppendString(new String(chars, start, length));
+    }
+
+    @Override
+    void appendAll(final BaseListColumn source) {
+        final DateListColumn other = (DateListColumn) source;
+        for (int i = 0; i < other.size; i++)
+            this.appendRaw(other.getRaw(i));
+    }
+}
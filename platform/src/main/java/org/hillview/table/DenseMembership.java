@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.utils.IntSet;
+import org.hillview.utils.Randomness;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A membership set represented as a bitmap, suitable for sets which contain a large
+ * fraction of the rows of a table.  Only the rows in the window [from, to) of the
+ * bitmap are in the set; this allows several sets (e.g., the parts produced by split)
+ * to share the same bitmap.  The bitmap is never modified.
+ */
+public class DenseMembership implements IMembershipSet {
+    private final long[] bits;
+    private final int from;
+    private final int to;
+    private final int size;
+
+    /**
+     * Create a dense membership set.
+     * @param bits  Bitmap; bit i of bits[w] indicates whether row 64 * w + i is in the set.
+     * @param from  First row of the window of the bitmap which is part of the set.
+     * @param to    First row after the window.
+     * @param size  Number of bits set in the window.
+     */
+    DenseMembership(final long[] bits, final int from, final int to, final int size) {
+        if ((from < 0) || (to < from) || (wordCount(to) > bits.length))
+            throw new IllegalArgumentException("Illegal window [" + from + ", " + to + ")");
+        this.bits = bits;
+        this.from = from;
+        this.to = to;
+        this.size = size;
+    }
+
+    static int wordCount(final int rows) {
+        return (rows + 63) >>> 6;
+    }
+
+    /**
+     * @return Word i of the bitmap, restricted to the window of the set.
+     */
+    private long word(final int i) {
+        if ((i < (this.from >>> 6)) || (i >= wordCount(this.to)))
+            return 0;
+        long w = this.bits[i];
+        if (i == (this.from >>> 6))
+            w &= -1L << this.from;
+        if ((i == ((this.to - 1) >>> 6)) && ((this.to & 63) != 0))
+            w &= -1L >>> (64 - (this.to & 63));
+        return w;
+    }
+
+    @Override
+    public boolean isMember(final int rowIndex) {
+        if ((rowIndex < this.from) || (rowIndex >= this.to))
+            return false;
+        return (this.bits[rowIndex >>> 6] & (1L << rowIndex)) != 0;
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    @Override
+    public IRowIterator getIterator() {
+        return new DenseIterator();
+    }
+
+    @Override
+    public IMembershipSet filter(final Predicate<Integer> predicate) {
+        return MembershipFactory.filter(this, predicate::test);
+    }
+
+    @Override
+    public IMembershipSet sample(final int k) {
+        return this.sampleUtil(new Randomness(), k);
+    }
+
+    @Override
+    public IMembershipSet sample(final int k, final long seed) {
+        final Randomness randomGenerator = new Randomness();
+        randomGenerator.setSeed(seed);
+        return this.sampleUtil(randomGenerator, k);
+    }
+
+    /**
+     * Rejection sampling: the set is dense, so a random row in the window is
+     * likely to be a member.
+     */
+    private IMembershipSet sampleUtil(final Randomness randomGenerator, final int k) {
+        if (k >= this.size)
+            return this;
+        int l = k;
+        if (k > (int) (this.size * 0.7)) // sample the items that are not returned
+            l = this.size - k;
+        final IntSet s = new IntSet(l);
+        final int range = this.to - this.from;
+        while (s.size() < l) {
+            int row = this.from + randomGenerator.nextInt(range);
+            if (this.isMember(row))
+                s.add(row);
+        }
+        final IMembershipSet sample = MembershipFactory.fromIntSet(s);
+        if (l == k)
+            return sample;
+        return this.setMinus(sample);
+    }
+
+    /**
+     * Combine two dense sets word by word.
+     */
+    private interface WordOperation {
+        long apply(long left, long right);
+    }
+
+    private DenseMembership combine(final DenseMembership other, final WordOperation op) {
+        final int to = Math.max(this.to, other.to);
+        final long[] result = new long[wordCount(to)];
+        int size = 0;
+        for (int i = 0; i < result.length; i++) {
+            result[i] = op.apply(this.word(i), other.word(i));
+            size += Long.bitCount(result[i]);
+        }
+        return new DenseMembership(result, 0, to, size);
+    }
+
+    @Override
+    public IMembershipSet union(final IMembershipSet otherSet) {
+        if (otherSet instanceof DenseMembership)
+            return this.combine((DenseMembership) otherSet, (a, b) -> a | b);
+        return MembershipFactory.union(this, otherSet);
+    }
+
+    @Override
+    public IMembershipSet intersection(final IMembershipSet otherSet) {
+        if (otherSet instanceof DenseMembership)
+            return this.combine((DenseMembership) otherSet, (a, b) -> a & b);
+        // Iterate over the smaller set
+        if (otherSet.getSize() < this.size)
+            return MembershipFactory.filter(otherSet, this::isMember);
+        return MembershipFactory.filter(this, otherSet::isMember);
+    }
+
+    @Override
+    public IMembershipSet setMinus(final IMembershipSet otherSet) {
+        if (otherSet instanceof DenseMembership)
+            return this.combine((DenseMembership) otherSet, (a, b) -> a & ~b);
+        return MembershipFactory.filter(this, row -> !otherSet.isMember(row));
+    }
+
+    /**
+     * Splits the set into parts with almost the same number of rows; the parts
+     * share the bitmap of this set.
+     */
+    @Override
+    public List<IMembershipSet> split(final int parts) {
+        if (parts <= 0)
+            throw new IllegalArgumentException("Number of parts must be positive: " + parts);
+        final int actualParts = Math.max(1, Math.min(parts, this.size));
+        final List<IMembershipSet> result = new ArrayList<IMembershipSet>(actualParts);
+        final IRowIterator it = this.getIterator();
+        int partStart = this.from;
+        for (int i = 0; i < actualParts; i++) {
+            int partSize = (this.size / actualParts) + ((i < (this.size % actualParts)) ? 1 : 0);
+            int partEnd = this.to;
+            if (i < actualParts - 1) {
+                // Find the row after the last row of this part.
+                int row = -1;
+                for (int j = 0; j < partSize; j++)
+                    row = it.getNextRow();
+                partEnd = row + 1;
+            }
+            result.add(new DenseMembership(this.bits, partStart, partEnd, partSize));
+            partStart = partEnd;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "DenseMembership(" + this.size + " rows in [" + this.from + ", " + this.to + "))";
+    }
+
+    private class DenseIterator implements IRowIterator {
+        private int wordIndex;
+        private long current;
+        private final int lastWord;
+
+        DenseIterator() {
+            this.wordIndex = DenseMembership.this.from >>> 6;
+            this.lastWord = wordCount(DenseMembership.this.to) - 1;
+            this.current = DenseMembership.this.word(this.wordIndex);
+        }
+
+        @Override
+        public int getNextRow() {
+            while (this.current == 0) {
+                if (this.wordIndex >= this.lastWord)
+                    return -1;
+                this.wordIndex++;
+                this.current = DenseMembership.this.word(this.wordIndex);
+            }
+            int bit = Long.numberOfTrailingZeros(this.current);
+            this.current &= this.current - 1;
+            return (this.wordIndex << 6) + bit;
+        }
+
+        @Override
+        public int fillRows(final int[] rows) {
+            int count = 0;
+            while (count < rows.length) {
+                if (this.current == 0) {
+                    if (this.wordIndex >= this.lastWord)
+                        break;
+                    this.wordIndex++;
+                    this.current = DenseMembership.this.word(this.wordIndex);
+                    continue;
+                }
+                final int base = this.wordIndex << 6;
+                do {
+                    rows[count++] = base + Long.numberOfTrailingZeros(this.current);
+                    this.current &= this.current - 1;
+                } while ((this.current != 0) && (count < rows.length));
+            }
+            return count;
+        }
+    }
+}
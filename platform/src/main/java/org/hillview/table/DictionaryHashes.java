@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import net.openhft.hashing.LongHashFunction;
+import org.hillview.table.api.IDictionaryColumn;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the hash of each value in the dictionary of a column, so that
+ * each distinct string is hashed only once.  The hashes are kept separately
+ * for each hash function; callers should obtain their functions from
+ * HashUtil.xxHash, which returns the same object for the same seed.
+ * When the dictionary grows only the hashes of the new values are computed.
+ */
+final class DictionaryHashes implements Serializable {
+    /**
+     * Maximum number of hash functions whose hashes are kept.
+     */
+    private static final int MAX_FUNCTIONS = 4;
+
+    /**
+     * The hashes of the first count values of the dictionary.  The array may be
+     * longer, and may be shared with the Hashes that replace this one.
+     */
+    private static final class Hashes {
+        final long[] values;
+        final int count;
+
+        Hashes(final long[] values, final int count) {
+            this.values = values;
+            this.count = count;
+        }
+    }
+
+    @Nullable
+    private transient volatile ConcurrentHashMap<LongHashFunction, Hashes> cache;
+
+    long hashCode64(final IDictionaryColumn column, final int rowIndex, final LongHashFunction hash) {
+        final int code = column.getCode(rowIndex);
+        if (code < 0)
+            return IDictionaryColumn.MISSING_HASH_VALUE;
+        final ConcurrentHashMap<LongHashFunction, Hashes> c = this.cache;
+        Hashes h = (c == null) ? null : c.get(hash);
+        // The dictionary of a column may still be growing.
+        if ((h == null) || (code >= h.count))
+            h = this.extend(column, hash);
+        return h.values[code];
+    }
+
+    /**
+     * Computes the hashes of the values added to the dictionary since the last call.
+     */
+    private synchronized Hashes extend(final IDictionaryColumn column, final LongHashFunction hash) {
+        ConcurrentHashMap<LongHashFunction, Hashes> c = this.cache;
+        if (c == null) {
+            c = new ConcurrentHashMap<LongHashFunction, Hashes>();
+            this.cache = c;
+        }
+        final Hashes old = c.get(hash);
+        final int size = column.getDictionarySize();
+        final int start = (old == null) ? 0 : old.count;
+        if ((old != null) && (start >= size))
+            // Extended by another thread
+            return old;
+        if ((old == null) && (c.size() >= MAX_FUNCTIONS))
+            c.clear();
+        long[] values = (old == null) ? new long[size] : old.values;
+        if (values.length < size)
+            // Grow geometrically, so that a growing dictionary is hashed in linear time.
+            values = Arrays.copyOf(values, Math.max(size, 2 * values.length));
+        for (int i = start; i < size; i++)
+            values[i] = hash.hashChars(column.decode(i));
+        final Hashes result = new Hashes(values, size);
+        c.put(hash, result);
+        return result;
+    }
+}
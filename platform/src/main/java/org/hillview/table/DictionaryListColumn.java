@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import net.openhft.hashing.LongHashFunction;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IDictionaryColumn;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+
+/**
+ * A column of strings that can grow in size, stored as a dictionary of the distinct
+ * values and a code for each row.  The codes use one byte per row while there are
+ * fewer than 256 distinct values, two bytes up to 65536 values and four bytes beyond;
+ * the stored codes are widened when the dictionary grows.  Best suited for categorical
+ * data, which has few distinct values.
+ */
+public final class DictionaryListColumn extends BaseListColumn implements IDictionaryColumn {
+    private final ArrayList<String> dictionary;
+    /**
+     * Hash table which maps each value to its code: an open addressing table
+     * indexed by the String hash code, holding code + 1 (0 marks an empty slot).
+     * Values can be looked up from a range of characters without creating a String.
+     */
+    private int[] codeTable;
+    /**
+     * Number of bytes used for each code: 1, 2 or 4.  Only the list of segments
+     * of this width is used.  Codes are stored incremented by one, so that 0
+     * represents a missing value.
+     */
+    private int codeWidth;
+    private ArrayList<byte[]> byteSegments;
+    private ArrayList<char[]> charSegments;
+    private ArrayList<int[]> intSegments;
+    private final DictionaryHashes hashes;
+
+    public DictionaryListColumn(final ColumnDescription desc) {
+        super(desc);
+        if ((desc.kind != ContentsKind.String) &&
+                (desc.kind != ContentsKind.Json) &&
+                (desc.kind != ContentsKind.Category))
+            throw new IllegalArgumentException("Unexpected column kind " + desc.kind);
+        this.dictionary = new ArrayList<String>();
+        this.codeTable = new int[16];
+        this.codeWidth = 1;
+        this.byteSegments = new ArrayList<byte[]>();
+        this.charSegments = new ArrayList<char[]>();
+        this.intSegments = new ArrayList<int[]>();
+        this.hashes = new DictionaryHashes();
+    }
+
+    @Override
+    public int getCode(final int rowIndex) {
+        final int segmentId = rowIndex >> this.LogSegmentSize;
+        final int localIndex = rowIndex & this.SegmentMask;
+        switch (this.codeWidth) {
+            case 1:
+                return (this.byteSegments.get(segmentId)[localIndex] & 0xFF) - 1;
+            case 2:
+                return this.charSegments.get(segmentId)[localIndex] - 1;
+            default:
+                return this.intSegments.get(segmentId)[localIndex] - 1;
+        }
+    }
+
+    @Override
+    public void getCodes(final int start, final int count, final int[] out) {
+        int i = 0;
+        while (i < count) {
+            final int row = start + i;
+            final int segmentId = row >> this.LogSegmentSize;
+            final int localIndex = row & this.SegmentMask;
+            final int n = Math.min(count - i, this.SegmentSize - localIndex);
+            switch (this.codeWidth) {
+                case 1: {
+                    final byte[] segment = this.byteSegments.get(segmentId);
+                    for (int j = 0; j < n; j++)
+                        out[i + j] = (segment[localIndex + j] & 0xFF) - 1;
+                    break;
+                }
+                case 2: {
+                    final char[] segment = this.charSegments.get(segmentId);
+                    for (int j = 0; j < n; j++)
+                        out[i + j] = segment[localIndex + j] - 1;
+                    break;
+                }
+                default: {
+                    final int[] segment = this.intSegments.get(segmentId);
+                    for (int j = 0; j < n; j++)
+                        out[i + j] = segment[localIndex + j] - 1;
+                    break;
+                }
+            }
+            i += n;
+        }
+    }
+
+    @Override
+    public int getDictionarySize() {
+        return this.dictionary.size();
+    }
+
+    @Override
+    public String decode(final int code) {
+        return this.dictionary.get(code);
+    }
+
+    @Nullable
+    @Override
+    public String getString(final int rowIndex) {
+        final int code = this.getCode(rowIndex);
+        return code < 0 ? null : this.dictionary.get(code);
+    }
+
+    @Override
+    public boolean isMissing(final int rowIndex) {
+        return this.getCode(rowIndex) < 0;
+    }
+
+    @Override
+    public long hashCode64(final int rowIndex, final LongHashFunction hash) {
+        return this.hashes.hashCode64(this, rowIndex, hash);
+    }
+
+    @Override
+    void grow() {
+        switch (this.codeWidth) {
+            case 1:
+                this.byteSegments.add(new byte[this.SegmentSize]);
+                break;
+            case 2:
+                this.charSegments.add(new char[this.SegmentSize]);
+                break;
+            default:
+                this.intSegments.add(new int[this.SegmentSize]);
+                break;
+        }
+    }
+
+    private int segmentCount() {
+        switch (this.codeWidth) {
+            case 1:
+                return this.byteSegments.size();
+            case 2:
+                return this.charSegments.size();
+            default:
+                return this.intSegments.size();
+        }
+    }
+
+    /**
+     * Converts the stored codes to the next larger width.
+     */
+    private void widen() {
+        if (this.codeWidth == 1) {
+            for (byte[] segment : this.byteSegments) {
+                final char[] wide = new char[segment.length];
+                for (int i = 0; i < segment.length; i++)
+                    wide[i] = (char) (segment[i] & 0xFF);
+                this.charSegments.add(wide);
+            }
+            this.byteSegments = new ArrayList<byte[]>();
+            this.codeWidth = 2;
+        } else {
+            for (char[] segment : this.charSegments) {
+                final int[] wide = new int[segment.length];
+                for (int i = 0; i < segment.length; i++)
+                    wide[i] = segment[i];
+                this.intSegments.add(wide);
+            }
+            this.charSegments = new ArrayList<char[]>();
+            this.codeWidth = 4;
+        }
+    }
+
+    private static int slot(final int hash, final int mask) {
+        // Spread the high bits, as HashMap does
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private int encode(final String value) {
+        final int mask = this.codeTable.length - 1;
+        int slot = slot(value.hashCode(), mask);
+        while (this.codeTable[slot] != 0) {
+            final int code = this.codeTable[slot] - 1;
+            if (this.dictionary.get(code).equals(value))
+                return code;
+            slot = (slot + 1) & mask;
+        }
+        return this.addValue(value, slot);
+    }
+
+    private int encode(final char[] chars, final int start, final int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++)
+            hash = (31 * hash) + chars[i];
+        final int mask = this.codeTable.length - 1;
+        int slot = slot(hash, mask);
+        while (this.codeTable[slot] != 0) {
+            final int code = this.codeTable[slot] - 1;
+            final String s = this.dictionary.get(code);
+            if (s.length() == length) {
+                int i = 0;
+                while ((i < length) && (s.charAt(i) == chars[start + i]))
+                    i++;
+                if (i == length)
+                    return code;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return this.addValue(new String(chars, start, length), slot);
+    }
+
+    /**
+     * Adds a new value to the dictionary.
+     * @param slot  Empty slot of the code table for the value.
+     */
+    private int addValue(final String value, final int slot) {
+        final int result = this.dictionary.size();
+        this.dictionary.add(value);
+        this.codeTable[slot] = result + 1;
+        // Keep the table at most half full
+        if ((2 * this.dictionary.size()) > this.codeTable.length) {
+            final int[] table = new int[2 * this.codeTable.length];
+            final int mask = table.length - 1;
+            for (int i = 0; i < this.dictionary.size(); i++) {
+                int s = slot(this.dictionary.get(i).hashCode(), mask);
+                while (table[s] != 0)
+                    s = (s + 1) & mask;
+                table[s] = i + 1;
+            }
+            this.codeTable = table;
+        }
+        return result;
+    }
+
+    public void append(@Nullable final String value) {
+        this.appendCode(value == null ? MISSING_CODE : this.encode(value));
+    }
+
+    private void appendCode(final int code) {
+        final int stored = code + 1;
+        if (((this.codeWidth == 1) && (stored > 0xFF)) ||
+                ((this.codeWidth == 2) && (stored > Character.MAX_VALUE)))
+            this.widen();
+
+        final int segmentId = this.size >> this.LogSegmentSize;
+        final int localIndex = this.size & this.SegmentMask;
+        if (this.segmentCount() <= segmentId)
+            this.grow();
+        switch (this.codeWidth) {
+            case 1:
+                this.byteSegments.get(segmentId)[localIndex] = (byte) stored;
+                break;
+            case 2:
+                this.charSegments.get(segmentId)[localIndex] = (char) stored;
+                break;
+            default:
+                this.intSegments.get(segmentId)[localIndex] = stored;
+                break;
+        }
+        this.size++;
+    }
+
+    @Override
+    public void appendMissing() {
+        this.append(null);
+    }
+
+    @Override
+    public void parseAndAppendString(@Nullable final String s) {
+        this.append(s);
+    }
+
+    /**
+     * Values already in the dictionary are found without creating a String.
+     */
+    @Override
+    public void parseAndAppendChars(final char[] chars, final int start, final int length) {
+        this.appendCode(this.encode(chars, start, length));
+    }
+
+    @Override
+    void appendAll(final BaseListColumn source) {
+        final DictionaryListColumn other = (DictionaryListColumn) source;
+        // Each distinct value of the other column is looked up only once.
+        final int[] remap = new int[other.getDictionarySize()];
+        for (int code = 0; code < remap.length; code++)
+            remap[code] = this.encode(other.decode(code));
+        for (int i = 0; i < other.size; i++) {
+            final int code = other.getCode(i);
+            this.appendCode(code < 0 ? MISSING_CODE : remap[code]);
+        }
+    }
+}
@@ -20,6 +20,9 @@ package org.hillview.table;
 
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IDoubleColumn;
+import org.hillview.table.api.IStringConverter;
+
+import javax.annotation.Nullable;
 
 /**
  * Column of doubles, implemented as an array of doubles and a BitSet of missing values.
@@ -48,5 +51,18 @@ public final class DoubleArrayColumn
     @Override
     public double getDouble(final int rowIndex) { return this.data[rowIndex];}
 
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++)
+            out[i] = this.data[rows[i]];
+    }
+
+    @Override
+    public void asDoubles(final int start, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        System.arraycopy(this.data, start, out, 0, count);
+    }
+
     public void set(final int rowIndex, final double value) {this.data[rowIndex] = value;}
 }
@@ -20,6 +20,7 @@ package org.hillview.table;
 
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IDoubleColumn;
+import org.hillview.table.api.IStringConverter;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
@@ -44,6 +45,29 @@ public class DoubleListColumn
         return this.segments.get(segmentId)[localIndex];
     }
 
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++) {
+            final int row = rows[i];
+            out[i] = this.segments.get(row >> this.LogSegmentSize)[row & this.SegmentMask];
+        }
+    }
+
+    @Override
+    public void asDoubles(final int start, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        int done = 0;
+        while (done < count) {
+            final int row = start + done;
+            final double[] segment = this.segments.get(row >> this.LogSegmentSize);
+            final int from = row & this.SegmentMask;
+            final int length = Math.min(count - done, this.SegmentSize - from);
+            System.arraycopy(segment, from, out, done, length);
+            done += length;
+        }
+    }
+
     @Override
     void grow() {
         this.segments.add(new double[this.SegmentSize]);
@@ -67,4 +91,23 @@ public class DoubleListColumn
         else
             this.append(Double.parseDouble(s));
     }
+
+    @Override
+    public void parseAndAppendChars(final char[] chars, final int start, final int length) {
+        if (length == 0)
+            this.parseEmptyOrNull();
+        else
+            this.append(CharParsing.parseDouble(chars, start, length));
+    }
+
+    @Override
+    void appendAll(final BaseListColumn source) {
+        final DoubleListColumn other = (DoubleListColumn) source;
+        for (int i = 0; i < other.size; i++) {
+            if (other.isMissing(i))
+                this.appendMissing();
+            else
+                this.append(other.getDouble(i));
+        }
+    }
 }
@@ -18,30 +18,39 @@
 
 package org.hillview.table;
 
+import net.openhft.hashing.LongHashFunction;
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IDurationColumn;
+import org.hillview.table.api.IStringConverter;
+import org.hillview.table.api.IndexComparator;
 
 import javax.annotation.Nullable;
 import java.time.Duration;
+import java.util.Arrays;
 
 /*
- * Column of durations, implemented as an array of Durations and a BitSet of missing values
+ * Column of durations, implemented as an array of longs holding nanoseconds;
+ * see EpochTime.  The Duration objects are only created when a value is read.
  */
-
-public final class DurationArrayColumn extends BaseArrayColumn implements IDurationColumn {
-    private final Duration[] data;
+public final class DurationArrayColumn
+        extends BaseArrayColumn
+        implements IDurationColumn {
+    private final long[] data;
 
     public DurationArrayColumn(final ColumnDescription description, final int size) {
         super(description, size);
         this.checkKind(ContentsKind.Duration);
-        this.data = new Duration[size];
+        this.data = new long[size];
+        Arrays.fill(this.data, EpochTime.MISSING);
     }
 
     public DurationArrayColumn(final ColumnDescription description,
                                final Duration[] data) {
         super(description, data.length);
         this.checkKind(ContentsKind.Duration);
-        this.data = data;
+        this.data = new long[data.length];
+        for (int i = 0; i < data.length; i++)
+            this.data[i] = EpochTime.fromDuration(data[i]);
     }
 
     @Override
@@ -52,16 +61,61 @@ public final class DurationArrayColumn extends BaseArrayColumn implements IDurat
     @Nullable
     @Override
     public Duration getDuration(final int rowIndex) {
-        return this.data[rowIndex];
+        return EpochTime.toDuration(this.data[rowIndex]);
+    }
+
+    public void set(final int rowIndex, @Nullable final Duration value) {
+        this.data[rowIndex] = EpochTime.fromDuration(value);
+    }
+
+    @Override
+    public boolean isMissing(final int rowIndex) { return this.data[rowIndex] == EpochTime.MISSING; }
+
+    @Override
+    public void setMissing(final int rowIndex) { this.data[rowIndex] = EpochTime.MISSING; }
+
+    @Override
+    public double asDouble(final int rowIndex, @Nullable final IStringConverter unused) {
+        if (this.isMissing(rowIndex))
+            return IDurationColumn.super.asDouble(rowIndex, unused);  // throws
+        return EpochTime.durationToDouble(this.data[rowIndex]);
+    }
+
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++) {
+            final long value = this.data[rows[i]];
+            if (value != EpochTime.MISSING)
+                out[i] = EpochTime.durationToDouble(value);
+        }
     }
 
-    private void set(final int rowIndex, @Nullable final Duration value) {
-        this.data[rowIndex] = value;
+    @Override
+    public void asDoubles(final int start, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++) {
+            final long value = this.data[start + i];
+            if (value != EpochTime.MISSING)
+                out[i] = EpochTime.durationToDouble(value);
+        }
     }
 
     @Override
-    public boolean isMissing(final int rowIndex) {return this.getDuration(rowIndex) == null; }
+    public IndexComparator getComparator() {
+        return new IndexComparator() {
+            @Override
+            public int compare(final Integer i, final Integer j) {
+                return EpochTime.compare(DurationArrayColumn.this.data[i], DurationArrayColumn.this.data[j]);
+            }
+        };
+    }
 
     @Override
-    public void setMissing(final int rowIndex) { this.set(rowIndex, null);}
+    public long hashCode64(final int rowIndex, final LongHashFunction hash) {
+        final long value = this.data[rowIndex];
+        if (value == EpochTime.MISSING)
+            return MISSING_HASH_VALUE;
+        return hash.hashLong(Double.doubleToRawLongBits(EpochTime.durationToDouble(value)));
+    }
 }
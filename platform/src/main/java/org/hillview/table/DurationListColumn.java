@@ -18,23 +18,28 @@
 
 package org.hillview.table;
 
+import net.openhft.hashing.LongHashFunction;
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IDurationColumn;
+import org.hillview.table.api.IStringConverter;
+import org.hillview.table.api.IndexComparator;
 
 import javax.annotation.Nullable;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
- * A column of time durations that can grow in size.
+ * A column of time durations that can grow in size.  The durations are stored as
+ * longs; see EpochTime.
  */
 class DurationListColumn extends BaseListColumn implements IDurationColumn {
-    private final ArrayList<Duration[]> segments;
+    private final ArrayList<long[]> segments;
 
     public DurationListColumn(final ColumnDescription desc) {
         super(desc);
         this.checkKind(ContentsKind.Duration);
-        this.segments = new ArrayList<Duration []>();
+        this.segments = new ArrayList<long []>();
     }
 
     @Nullable
@@ -42,17 +47,81 @@ class DurationListColumn extends BaseListColumn implements IDurationColumn {
     public Duration getDuration(final int rowIndex) {
         final int segmentId = rowIndex >> this.LogSegmentSize;
         final int localIndex = rowIndex & this.SegmentMask;
-        return this.segments.get(segmentId)[localIndex];
+        return EpochTime.toDuration(this.segments.get(segmentId)[localIndex]);
+    }
+
+    private long getRaw(final int rowIndex) {
+        return this.segments.get(rowIndex >> this.LogSegmentSize)[rowIndex & this.SegmentMask];
+    }
+
+    @Override
+    public double asDouble(final int rowIndex, @Nullable final IStringConverter unused) {
+        final long value = this.getRaw(rowIndex);
+        if (value == EpochTime.MISSING)
+            return IDurationColumn.super.asDouble(rowIndex, unused);  // throws
+        return EpochTime.durationToDouble(value);
+    }
+
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++) {
+            final long value = this.getRaw(rows[i]);
+            if (value != EpochTime.MISSING)
+                out[i] = EpochTime.durationToDouble(value);
+        }
+    }
+
+    @Override
+    public void asDoubles(final int start, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        int i = 0;
+        while (i < count) {
+            final int row = start + i;
+            final long[] segment = this.segments.get(row >> this.LogSegmentSize);
+            final int localIndex = row & this.SegmentMask;
+            final int n = Math.min(count - i, this.SegmentSize - localIndex);
+            for (int j = 0; j < n; j++) {
+                final long value = segment[localIndex + j];
+                if (value != EpochTime.MISSING)
+                    out[i + j] = EpochTime.durationToDouble(value);
+            }
+            i += n;
+        }
+    }
+
+    @Override
+    public IndexComparator getComparator() {
+        return new IndexComparator() {
+            @Override
+            public int compare(final Integer i, final Integer j) {
+                return EpochTime.compare(DurationListColumn.this.getRaw(i), DurationListColumn.this.getRaw(j));
+            }
+        };
+    }
+
+    @Override
+    public long hashCode64(final int rowIndex, final LongHashFunction hash) {
+        final long value = this.getRaw(rowIndex);
+        if (value == EpochTime.MISSING)
+            return MISSING_HASH_VALUE;
+        return hash.hashLong(Double.doubleToRawLongBits(EpochTime.durationToDouble(value)));
     }
 
     @Override
     void grow() {
-        this.segments.add(new Duration[this.SegmentSize]);
+        final long[] segment = new long[this.SegmentSize];
+        Arrays.fill(segment, EpochTime.MISSING);
+        this.segments.add(segment);
         this.growMissing();
     }
 
-    @SuppressWarnings("Duplicates")
     private void append(@Nullable final Duration value) {
+        this.appendRaw(EpochTime.fromDuration(value));
+    }
+
+    @SuppressWarnings("Duplicates")
+    private void appendRaw(final long value) {
         final int segmentId = this.size >> this.LogSegmentSize;
         final int localIndex = this.size & this.SegmentMask;
         if (this.segments.size() <= segmentId)
@@ -63,7 +132,7 @@ class DurationListColumn extends BaseListColumn implements IDurationColumn {
 
     @Override
     public boolean isMissing(final int rowIndex) {
-        return this.getDuration(rowIndex) == null;
+        return this.getRaw(rowIndex) == EpochTime.MISSING;
     }
 
     @Override
@@ -78,4 +147,11 @@ class DurationListColumn extends BaseListColumn implements IDurationColumn {
         else
             this.append(Duration.parse(s));
     }
-}
\ No newline at end of file
+
+    @Override
+    void appendAll(final BaseListColumn source) {
+        final DurationListColumn other = (DurationListColumn) source;
+        for (int i = 0; i < other.size; i++)
+            this.appendRaw(other.getRaw(i));
+    }
+}
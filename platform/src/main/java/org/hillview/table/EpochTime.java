@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Encoding of dates and durations as primitive longs, used by the columns which
+ * store them.  A date is the number of microseconds since 1970-01-01T00:00 and a
+ * duration is a number of nanoseconds.  The doubles produced agree with
+ * Converters.toDouble: both are numbers of milliseconds.
+ */
+final class EpochTime {
+    /**
+     * Encoding of a missing value.
+     */
+    static final long MISSING = Long.MIN_VALUE;
+    private static final long MICROS_PER_SECOND = 1000000;
+    private static final long MICROS_PER_MILLI = 1000;
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private EpochTime() {}
+
+    /**
+     * Encodes a date; the precision is reduced to microseconds.
+     */
+    static long fromDate(@Nullable final LocalDateTime date) {
+        if (date == null)
+            return MISSING;
+        return Math.addExact(
+                Math.multiplyExact(date.toEpochSecond(ZoneOffset.UTC), MICROS_PER_SECOND),
+                date.getNano() / 1000);
+    }
+
+    @Nullable
+    static LocalDateTime toDate(final long micros) {
+        if (micros == MISSING)
+            return null;
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, MICROS_PER_SECOND),
+                (int) Math.floorMod(micros, MICROS_PER_SECOND) * 1000, ZoneOffset.UTC);
+    }
+
+    /**
+     * Milliseconds are rounded toward zero, as by Converters.toDouble.
+     */
+    static double dateToDouble(final long micros) {
+        return micros / MICROS_PER_MILLI;
+    }
+
+    static long fromDuration(@Nullable final Duration duration) {
+        if (duration == null)
+            return MISSING;
+        return duration.toNanos();
+    }
+
+    @Nullable
+    static Duration toDuration(final long nanos) {
+        if (nanos == MISSING)
+            return null;
+        return Duration.ofNanos(nanos);
+    }
+
+    /**
+     * Milliseconds are rounded toward zero, as by Converters.toDouble.
+     */
+    static double durationToDouble(final long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Compares two encoded values; missing values are larger than all others.
+     */
+    static int compare(final long left, final long right) {
+        if (left == right)
+            return 0;
+        if (left == MISSING)
+            return 1;
+        if (right == MISSING)
+            return -1;
+        return Long.compare(left, right);
+    }
+}
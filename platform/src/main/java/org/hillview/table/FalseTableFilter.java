@@ -9,6 +9,9 @@ public class FalseTableFilter implements TableFilter {
     @Override
     public void setTable(final ITable unused) {}
 
+    @Override
+    public boolean isThreadSafe() { return true; }
+
     @Override
     public boolean test(final int rowIndex) {
         return false;
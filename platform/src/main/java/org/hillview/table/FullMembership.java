@@ -23,6 +23,7 @@ import org.hillview.table.api.IRowIterator;
 import org.hillview.utils.IntSet;
 import org.hillview.utils.Randomness;
 
+import java.util.List;
 import java.util.function.Predicate;
 
 /**
@@ -72,7 +73,7 @@ public class FullMembership implements IMembershipSet {
 
     @Override
     public IMembershipSet filter(Predicate<Integer> predicate) {
-        return new SparseMembership(this, predicate);
+        return MembershipFactory.filter(this, predicate::test);
     }
 
     /**
@@ -107,17 +108,18 @@ public class FullMembership implements IMembershipSet {
 
     @Override
     public IMembershipSet setMinus(final IMembershipSet otherSet) {
-        if (otherSet instanceof FullMembership) {
-            final IntSet baseMap = new IntSet(Integer.max(0, this.getSize()-otherSet.getSize()));
-            for (int i = otherSet.getSize(); i < this.rowCount; i++)
-                baseMap.add(i);
-            return new SparseMembership(baseMap);
-        }
-        final IntSet baseMap = new IntSet();
-        for (int i = 0; i < this.getSize(); i++)
-            if (!otherSet.isMember(i))
-                baseMap.add(i);
-        return new SparseMembership(baseMap);
+        if (otherSet instanceof FullMembership)
+            return new RangeMembership(
+                    Integer.min(otherSet.getSize(), this.rowCount), this.rowCount);
+        return MembershipFactory.filter(this, row -> !otherSet.isMember(row));
+    }
+
+    /**
+     * Splits the set into at most 'parts' contiguous row ranges.
+     */
+    @Override
+    public List<IMembershipSet> split(final int parts) {
+        return RangeMembership.splitRange(0, this.rowCount, parts);
     }
 
     private IMembershipSet sampleUtil(final Randomness randomGenerator, final int k) {
@@ -129,10 +131,11 @@ public class FullMembership implements IMembershipSet {
             s.add(randomGenerator.nextInt(this.rowCount));
         while (s.size() < l)
             s.add(randomGenerator.nextInt(this.rowCount));
+        final IMembershipSet sample = MembershipFactory.fromIntSet(s);
         if (l == k)
-            return new SparseMembership(s);
+            return sample;
         else
-            return this.setMinus(new SparseMembership(s));
+            return this.setMinus(sample);
     }
 
     public static class FullMembershipIterator implements IRowIterator {
@@ -151,5 +154,14 @@ public class FullMembership implements IMembershipSet {
             }
             else return - 1;
         }
+
+        @Override
+        public int fillRows(final int[] rows) {
+            final int count = Math.min(rows.length, this.range - this.cursor);
+            for (int i = 0; i < count; i++)
+                rows[i] = this.cursor + i;
+            this.cursor += count;
+            return count;
+        }
     }
 }
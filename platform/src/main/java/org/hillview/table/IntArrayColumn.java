@@ -20,7 +20,9 @@ package org.hillview.table;
 
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IIntColumn;
+import org.hillview.table.api.IStringConverter;
 
+import javax.annotation.Nullable;
 import java.io.Serializable;
 
 /**
@@ -58,6 +60,20 @@ public final class IntArrayColumn
         return this.data[rowIndex];
     }
 
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++)
+            out[i] = this.data[rows[i]];
+    }
+
+    @Override
+    public void asDoubles(final int start, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++)
+            out[i] = this.data[start + i];
+    }
+
     public void set(final int rowIndex, final int value) {
         this.data[rowIndex] = value;
     }
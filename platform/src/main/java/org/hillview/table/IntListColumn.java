@@ -20,6 +20,7 @@ package org.hillview.table;
 
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IIntColumn;
+import org.hillview.table.api.IStringConverter;
 
 import javax.annotation.Nullable;
 import java.security.InvalidParameterException;
@@ -47,6 +48,30 @@ public final class IntListColumn
         return this.segments.get(segmentId)[localIndex];
     }
 
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++) {
+            final int row = rows[i];
+            out[i] = this.segments.get(row >> this.LogSegmentSize)[row & this.SegmentMask];
+        }
+    }
+
+    @Override
+    public void asDoubles(final int start, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        int done = 0;
+        while (done < count) {
+            final int row = start + done;
+            final int[] segment = this.segments.get(row >> this.LogSegmentSize);
+            final int from = row & this.SegmentMask;
+            final int length = Math.min(count - done, this.SegmentSize - from);
+            for (int i = 0; i < length; i++)
+                out[done + i] = segment[from + i];
+            done += length;
+        }
+    }
+
     @Override
     void grow() {
         this.segments.add(new int[this.SegmentSize]);
@@ -70,4 +95,23 @@ public final class IntListColumn
         else
             this.append(Integer.parseInt(s));
     }
+
+    @Override
+    public void parseAndAppendChars(final char[] chars, final int start, final int length) {
+        if (length == 0)
+            this.parseEmptyOrNull();
+        else
+            this.append(CharParsing.parseInt(chars, start, length));
+    }
+
+    @Override
+    void appendAll(final BaseListColumn source) {
+        final IntListColumn other = (IntListColumn) source;
+        for (int i = 0; i < other.size; i++) {
+            if (other.isMissing(i))
+                this.appendMissing();
+            else
+                this.append(other.getInt(i));
+        }
+    }
 }
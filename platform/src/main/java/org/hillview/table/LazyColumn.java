@@ -22,7 +22,6 @@ import net.openhft.hashing.LongHashFunction;
 import org.hillview.table.api.IColumn;
 import org.hillview.table.api.IStringConverter;
 import org.hillview.table.api.IndexComparator;
-import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
 import java.time.Duration;
@@ -30,25 +29,99 @@ import java.time.LocalDateTime;
 
 /**
  * A LazyColumn is loaded lazily on demand.  The data is kept in a separate column.
+ * The description and size of the column are known in advance, so tables can be
+ * built from lazy columns without loading them; the data is loaded the first time
+ * it is accessed.  The loaded data is tracked by a ColumnCache, which may unload
+ * it when memory is needed; it is then loaded again when next accessed.
  */
 public class LazyColumn implements IColumn {
+    private final ColumnDescription description;
+    private final int size;
     @Nullable
-    private IColumn actualColumn;
-    private final IColumnLoader loader;
+    private volatile IColumn actualColumn;
+    private final transient IColumnLoader loader;
+    private final transient ColumnCache cache;
+    /**
+     * Set whenever the column is used; cleared by the cache.  This is not synchronized:
+     * a lost update only makes the column look less recently used.
+     */
+    private transient boolean referenced;
+
+    public LazyColumn(final ColumnDescription description, final int size,
+                      final IColumnLoader loader) {
+        this(description, size, loader, ColumnCache.getInstance());
+    }
 
-    public LazyColumn(IColumnLoader loader) {
+    public LazyColumn(final ColumnDescription description, final int size,
+                      final IColumnLoader loader, final ColumnCache cache) {
+        this.description = description;
+        this.size = size;
         this.loader = loader;
+        this.cache = cache;
+        this.referenced = false;
     }
 
     private IColumn loadIfNecessary() {
-        if (this.actualColumn == null)
-            this.actualColumn = this.loader.load();
-        return Converters.checkNull(this.actualColumn);
+        // Only written when it changes, so the cache line is not dirtied on each access.
+        if (!this.referenced)
+            this.referenced = true;
+        IColumn result = this.actualColumn;
+        if (result != null)
+            return result;
+        synchronized (this) {
+            result = this.actualColumn;
+            if (result != null)
+                return result;
+            result = this.loader.load();
+            if (result.sizeInRows() != this.size)
+                throw new RuntimeException("Loaded column " + this.description.name + " has " +
+                        result.sizeInRows() + " rows instead of " + this.size);
+            this.actualColumn = result;
+        }
+        // Outside the lock of the column: the cache may unload other columns.
+        this.cache.loaded(this, ColumnCache.estimateSize(result));
+        return result;
+    }
+
+    /**
+     * Releases the data of the column; callers still using the data keep it alive.
+     */
+    void unload() {
+        this.actualColumn = null;
+    }
+
+    /**
+     * Clears the flag which indicates that the column has been used.
+     * @return The previous value of the flag.
+     */
+    boolean clearReferenced() {
+        final boolean result = this.referenced;
+        this.referenced = false;
+        return result;
+    }
+
+    /**
+     * @return True if the data of the column has been loaded.
+     */
+    public boolean isLoaded() {
+        return this.actualColumn != null;
+    }
+
+    /**
+     * A serialized lazy column is loaded.
+     */
+    private Object writeReplace() {
+        return this.loadIfNecessary();
+    }
+
+    @Override
+    public IColumn getLoadedColumn() {
+        return this.loadIfNecessary();
     }
 
     @Override
     public ColumnDescription getDescription() {
-        return this.loadIfNecessary().getDescription();
+        return this.description;
     }
 
     @Nullable
@@ -86,7 +159,7 @@ public class LazyColumn implements IColumn {
 
     @Override
     public int sizeInRows() {
-        return this.loadIfNecessary().sizeInRows();
+        return this.size;
     }
 
     @Override
@@ -94,6 +167,26 @@ public class LazyColumn implements IColumn {
         return this.loadIfNecessary().asDouble(rowIndex, converter);
     }
 
+    @Override
+    public int fillMissing(int[] rows, int count, long[] mask) {
+        return this.loadIfNecessary().fillMissing(rows, count, mask);
+    }
+
+    @Override
+    public int fillMissing(int start, int count, long[] mask) {
+        return this.loadIfNecessary().fillMissing(start, count, mask);
+    }
+
+    @Override
+    public void asDoubles(int[] rows, int count, @Nullable IStringConverter converter, double[] out) {
+        this.loadIfNecessary().asDoubles(rows, count, converter, out);
+    }
+
+    @Override
+    public void asDoubles(int start, int count, @Nullable IStringConverter converter, double[] out) {
+        this.loadIfNecessary().asDoubles(start, count, converter, out);
+    }
+
     @Nullable
     @Override
     public String asString(int rowIndex) {
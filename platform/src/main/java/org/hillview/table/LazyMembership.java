@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * A membership set which contains the rows of a base membership set that satisfy
+ * a predicate.  The set is not computed when it is created: the predicate is evaluated
+ * while the set is being iterated, so that filtering is fused with the scan performed
+ * by the next computation on the filtered table.  After the set has been scanned a
+ * number of times it is materialized, so that the predicate is no longer evaluated.
+ * The predicate must be safe to invoke concurrently from multiple threads.
+ */
+public class LazyMembership implements IMembershipSet {
+    /**
+     * Number of scans after which the set is materialized.
+     */
+    public static final int DEFAULT_SCANS_BEFORE_MATERIALIZATION = 2;
+
+    private final IMembershipSet base;
+    private final IntPredicate predicate;
+    private final int scansBeforeMaterialization;
+    private final AtomicInteger scans;
+    @Nullable
+    private volatile IMembershipSet materialized;
+    /**
+     * Size of the set, or -1 if not yet known.
+     */
+    private volatile int size;
+
+    public LazyMembership(final IMembershipSet base, final IntPredicate predicate) {
+        this(base, predicate, DEFAULT_SCANS_BEFORE_MATERIALIZATION);
+    }
+
+    /**
+     * Create a lazy membership set.
+     * @param base       Set of rows that are filtered.
+     * @param predicate  Predicate which selects the rows in this set.
+     * @param scansBeforeMaterialization  Number of scans of the set after which
+     *                   the set is materialized.
+     */
+    public LazyMembership(final IMembershipSet base, final IntPredicate predicate,
+                          final int scansBeforeMaterialization) {
+        if (scansBeforeMaterialization <= 0)
+            throw new IllegalArgumentException(
+                    "Number of scans must be positive: " + scansBeforeMaterialization);
+        this.base = base;
+        this.predicate = predicate;
+        this.scansBeforeMaterialization = scansBeforeMaterialization;
+        this.scans = new AtomicInteger(0);
+        this.materialized = null;
+        this.size = -1;
+    }
+
+    public boolean isMaterialized() {
+        return this.materialized != null;
+    }
+
+    /**
+     * @return The number of times the set has been scanned before being materialized.
+     */
+    public int getScanCount() {
+        return this.scans.get();
+    }
+
+    /**
+     * Computes the set of rows explicitly, if not already done.
+     * @return The materialized set.
+     */
+    public synchronized IMembershipSet materialize() {
+        IMembershipSet result = this.materialized;
+        if (result != null)
+            return result;
+        result = MembershipFactory.filter(this.base, this.predicate);
+        this.size = result.getSize();
+        this.materialized = result;
+        return result;
+    }
+
+    /**
+     * Called once for each complete scan of the set.
+     * @return The materialized set if the set has been scanned often enough, null otherwise.
+     */
+    @Nullable
+    private IMembershipSet scanned() {
+        if (this.scans.incrementAndGet() >= this.scansBeforeMaterialization)
+            return this.materialize();
+        return null;
+    }
+
+    @Override
+    public boolean isMember(final int rowIndex) {
+        final IMembershipSet m = this.materialized;
+        if (m != null)
+            return m.isMember(rowIndex);
+        return this.base.isMember(rowIndex) && this.predicate.test(rowIndex);
+    }
+
+    @Override
+    public int getSize() {
+        final IMembershipSet m = this.materialized;
+        if (m != null)
+            return m.getSize();
+        if (this.size >= 0)
+            return this.size;
+        // Counting does not allocate memory, so it does not count as a scan.
+        int count = 0;
+        final IRowIterator it = this.base.getIterator();
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        for (int read = it.fillRows(rows); read > 0; read = it.fillRows(rows))
+            for (int i = 0; i < read; i++)
+                if (this.predicate.test(rows[i]))
+                    count++;
+        this.size = count;
+        return count;
+    }
+
+    @Override
+    public int getMaxSize() {
+        final IMembershipSet m = this.materialized;
+        if (m != null)
+            return m.getSize();
+        if (this.size >= 0)
+            return this.size;
+        return this.base.getMaxSize();
+    }
+
+    @Override
+    public IRowIterator getIterator() {
+        final IMembershipSet m = this.materialized;
+        if (m != null)
+            return m.getIterator();
+        return new LazyIterator(this.base.getIterator());
+    }
+
+    @Override
+    public IMembershipSet filter(final Predicate<Integer> filter) {
+        final IMembershipSet m = this.materialized;
+        if (m != null)
+            return new LazyMembership(m, filter::test);
+        final IntPredicate p = this.predicate;
+        return new LazyMembership(this.base, row -> p.test(row) && filter.test(row));
+    }
+
+    /**
+     * Sampling all rows returns the set itself, so it does not force a scan.
+     */
+    @Override
+    public IMembershipSet sample(final double rate) {
+        if (rate >= 1)
+            return this;
+        return this.materialize().sample(rate);
+    }
+
+    @Override
+    public IMembershipSet sample(final int k) {
+        return this.materialize().sample(k);
+    }
+
+    @Override
+    public IMembershipSet sample(final int k, final long seed) {
+        return this.materialize().sample(k, seed);
+    }
+
+    @Override
+    public IMembershipSet union(final IMembershipSet otherMap) {
+        return this.materialize().union(otherMap);
+    }
+
+    @Override
+    public IMembershipSet intersection(final IMembershipSet otherMap) {
+        return this.materialize().intersection(otherMap);
+    }
+
+    @Override
+    public IMembershipSet setMinus(final IMembershipSet otherMap) {
+        return this.materialize().setMinus(otherMap);
+    }
+
+    /**
+     * Splits the base set and filters each part lazily.  The parts may not have
+     * equal sizes.  The parts are usually all scanned, so splitting counts as a scan.
+     */
+    @Override
+    public List<IMembershipSet> split(final int parts) {
+        IMembershipSet m = this.materialized;
+        if (m == null)
+            m = this.scanned();
+        if (m != null)
+            return m.split(parts);
+        final List<IMembershipSet> result = new ArrayList<IMembershipSet>(parts);
+        for (IMembershipSet part : this.base.split(parts))
+            result.add(new LazyMembership(part, this.predicate, this.scansBeforeMaterialization));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final IMembershipSet m = this.materialized;
+        if (m != null)
+            return "LazyMembership(" + m.toString() + ")";
+        return "LazyMembership(filtered " + this.base.toString() + ")";
+    }
+
+    private class LazyIterator implements IRowIterator {
+        private final IRowIterator baseIterator;
+        private boolean done;
+
+        private LazyIterator(final IRowIterator baseIterator) {
+            this.baseIterator = baseIterator;
+            this.done = false;
+        }
+
+        @Override
+        public int getNextRow() {
+            if (this.done)
+                return -1;
+            int row = this.baseIterator.getNextRow();
+            while (row >= 0) {
+                if (LazyMembership.this.predicate.test(row))
+                    return row;
+                row = this.baseIterator.getNextRow();
+            }
+            this.done = true;
+            LazyMembership.this.scanned();
+            return -1;
+        }
+
+        @Override
+        public int fillRows(final int[] rows) {
+            while (!this.done) {
+                // Filter the rows of the base in place.
+                final int read = this.baseIterator.fillRows(rows);
+                if (read == 0) {
+                    this.done = true;
+                    LazyMembership.this.scanned();
+                    break;
+                }
+                int count = 0;
+                for (int i = 0; i < read; i++)
+                    if (LazyMembership.this.predicate.test(rows[i]))
+                        rows[count++] = rows[i];
+                if (count > 0)
+                    return count;
+            }
+            return 0;
+        }
+    }
+}
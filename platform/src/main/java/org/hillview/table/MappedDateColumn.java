@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IDateColumn;
+import org.hillview.table.api.IStringConverter;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Column of dates stored in a memory-mapped file as seconds and nanoseconds since
+ * the epoch.  Conversions to double do not need to create LocalDateTime objects.
+ */
+public final class MappedDateColumn extends BaseMappedColumn implements IDateColumn {
+    private final LongBuffer seconds;
+    private final IntBuffer nanos;
+
+    public MappedDateColumn(final ColumnDescription description, @Nullable final LongBuffer missing,
+                            final LongBuffer seconds, final IntBuffer nanos) {
+        super(description, seconds.limit(), missing);
+        this.checkKind(ContentsKind.Date);
+        this.seconds = seconds;
+        this.nanos = nanos;
+    }
+
+    @Nullable
+    @Override
+    public LocalDateTime getDate(final int rowIndex) {
+        if (this.isMissing(rowIndex))
+            return null;
+        return LocalDateTime.ofEpochSecond(
+                this.seconds.get(rowIndex), this.nanos.get(rowIndex), ZoneOffset.UTC);
+    }
+
+    private double toDouble(final int rowIndex) {
+        // Same as Converters.toDouble(this.getDate(rowIndex))
+        return Converters.toMillis(this.seconds.get(rowIndex), this.nanos.get(rowIndex));
+    }
+
+    @Override
+    public double asDouble(final int rowIndex, @Nullable final IStringConverter unused) {
+        if (this.isMissing(rowIndex))
+            // throws the appropriate exception
+            return IDateColumn.super.asDouble(rowIndex, unused);
+        return this.toDouble(rowIndex);
+    }
+
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++)
+            out[i] = this.toDouble(rows[i]);
+    }
+
+    @Override
+    public void asDoubles(final int start, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++)
+            out[i] = this.toDouble(start + i);
+    }
+}
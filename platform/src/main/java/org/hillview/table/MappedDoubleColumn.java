@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IDoubleColumn;
+import org.hillview.table.api.IStringConverter;
+
+import javax.annotation.Nullable;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Column of doubles stored in a memory-mapped file.
+ */
+public final class MappedDoubleColumn extends BaseMappedColumn implements IDoubleColumn {
+    private final DoubleBuffer data;
+
+    public MappedDoubleColumn(final ColumnDescription description, @Nullable final LongBuffer missing,
+                              final DoubleBuffer data) {
+        super(description, data.limit(), missing);
+        this.checkKind(ContentsKind.Double);
+        this.data = data;
+    }
+
+    @Override
+    public double getDouble(final int rowIndex) {
+        return this.data.get(rowIndex);
+    }
+
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++)
+            out[i] = this.data.get(rows[i]);
+    }
+
+    @Override
+    public void asDoubles(final int start, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        final DoubleBuffer source = this.data.duplicate();
+        source.position(start);
+        source.get(out, 0, count);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IDurationColumn;
+
+import javax.annotation.Nullable;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.Duration;
+
+/**
+ * Column of durations stored in a memory-mapped file as seconds and nanoseconds.
+ */
+public final class MappedDurationColumn extends BaseMappedColumn implements IDurationColumn {
+    private final LongBuffer seconds;
+    private final IntBuffer nanos;
+
+    public MappedDurationColumn(final ColumnDescription description, @Nullable final LongBuffer missing,
+                                final LongBuffer seconds, final IntBuffer nanos) {
+        super(description, seconds.limit(), missing);
+        this.checkKind(ContentsKind.Duration);
+        this.seconds = seconds;
+        this.nanos = nanos;
+    }
+
+    @Nullable
+    @Override
+    public Duration getDuration(final int rowIndex) {
+        if (this.isMissing(rowIndex))
+            return null;
+        return Duration.ofSeconds(this.seconds.get(rowIndex), this.nanos.get(rowIndex));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import net.openhft.hashing.LongHashFunction;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IDictionaryColumn;
+
+import javax.annotation.Nullable;
+import java.nio.IntBuffer;
+
+/**
+ * Column of strings stored in a memory-mapped file.  The file holds a dictionary
+ * of the distinct strings and, for each row, the index of its value in the
+ * dictionary; a negative index denotes a missing value.  The dictionary is
+ * decoded on the heap when the column is loaded.
+ */
+public final class MappedStringColumn extends BaseMappedColumn implements IDictionaryColumn {
+    private final String[] dictionary;
+    private final IntBuffer codes;
+    private final DictionaryHashes hashes;
+
+    public MappedStringColumn(final ColumnDescription description, final String[] dictionary,
+                              final IntBuffer codes) {
+        super(description, codes.limit(), null);
+        if ((description.kind != ContentsKind.String) && (description.kind != ContentsKind.Category)
+                && (description.kind != ContentsKind.Json))
+            throw new RuntimeException("Expected a string kind but have " + description.kind);
+        this.dictionary = dictionary;
+        this.codes = codes;
+        this.hashes = new DictionaryHashes();
+    }
+
+    @Override
+    public int getCode(final int rowIndex) {
+        final int code = this.codes.get(rowIndex);
+        return code < 0 ? MISSING_CODE : code;
+    }
+
+    @Override
+    public int getDictionarySize() {
+        return this.dictionary.length;
+    }
+
+    @Override
+    public String decode(final int code) {
+        return this.dictionary[code];
+    }
+
+    @Override
+    public long hashCode64(final int rowIndex, final LongHashFunction hash) {
+        return this.hashes.hashCode64(this, rowIndex, hash);
+    }
+
+    @Nullable
+    @Override
+    public String getString(final int rowIndex) {
+        final int code = this.codes.get(rowIndex);
+        return code < 0 ? null : this.dictionary[code];
+    }
+
+    @Override
+    public boolean isMissing(final int rowIndex) {
+        return this.codes.get(rowIndex) < 0;
+    }
+}
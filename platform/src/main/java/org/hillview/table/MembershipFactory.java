@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.utils.IntSet;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Creates membership sets whose representation is chosen according to the density
+ * of the rows: a contiguous range of rows is a RangeMembership, a set containing a
+ * large fraction of the rows is a DenseMembership (a bitmap), and a sparse set is a
+ * SortedArrayMembership.  All these representations iterate in increasing row order,
+ * so scans of the filtered tables access the columns sequentially.
+ */
+public final class MembershipFactory {
+    /**
+     * A bitmap uses 1 bit for each row up to the largest row in the set, while a sorted
+     * array uses 32 bits for each row in the set; the bitmap is used when it is smaller.
+     */
+    private static final int BITS_PER_ARRAY_ELEMENT = 32;
+
+    private MembershipFactory() {}
+
+    /**
+     * Accumulates a set of rows, which are then stored in the most compact representation.
+     */
+    public static final class Builder {
+        private int[] rows;
+        private int count;
+        private boolean sorted;
+
+        public Builder(final int expectedSize) {
+            this.rows = new int[Math.max(expectedSize, 16)];
+            this.count = 0;
+            this.sorted = true;
+        }
+
+        public void add(final int row) {
+            if (this.count == this.rows.length)
+                this.rows = Arrays.copyOf(this.rows, this.rows.length * 2);
+            if (this.count > 0 && this.rows[this.count - 1] >= row)
+                this.sorted = false;
+            this.rows[this.count++] = row;
+        }
+
+        public IMembershipSet build() {
+            if (!this.sorted) {
+                Arrays.sort(this.rows, 0, this.count);
+                // Remove duplicates
+                int unique = 0;
+                for (int i = 0; i < this.count; i++)
+                    if (unique == 0 || this.rows[unique - 1] != this.rows[i])
+                        this.rows[unique++] = this.rows[i];
+                this.count = unique;
+                this.sorted = true;
+            }
+            return MembershipFactory.fromSortedRows(this.rows, this.count);
+        }
+    }
+
+    /**
+     * Creates a membership set from a sorted array of distinct rows.
+     * @param rows   Rows in the set, in increasing order.  The array may be used
+     *               by the resulting set, so it should not be modified afterwards.
+     * @param count  Number of valid entries in rows.
+     */
+    public static IMembershipSet fromSortedRows(final int[] rows, final int count) {
+        if (count == 0)
+            return new RangeMembership(0, 0);
+        final int first = rows[0];
+        final int last = rows[count - 1];
+        if (last - first + 1 == count)
+            return new RangeMembership(first, last + 1);
+        if ((long)count * BITS_PER_ARRAY_ELEMENT >= last + 1) {
+            final long[] bits = new long[DenseMembership.wordCount(last + 1)];
+            for (int i = 0; i < count; i++)
+                bits[rows[i] >>> 6] |= 1L << rows[i];
+            return new DenseMembership(bits, 0, last + 1, count);
+        }
+        final int[] data = count == rows.length ? rows : Arrays.copyOf(rows, count);
+        return new SortedArrayMembership(data);
+    }
+
+    /**
+     * Creates a membership set with the rows of a base set which satisfy a predicate.
+     */
+    public static IMembershipSet filter(final IMembershipSet base, final IntPredicate predicate) {
+        final Builder builder = new Builder(Math.min(base.getMaxSize(), 1024));
+        final IRowIterator it = base.getIterator();
+        int row = it.getNextRow();
+        while (row >= 0) {
+            if (predicate.test(row))
+                builder.add(row);
+            row = it.getNextRow();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a membership set containing the elements of an IntSet.
+     */
+    public static IMembershipSet fromIntSet(final IntSet set) {
+        final Builder builder = new Builder(set.size());
+        final IntSet.IntSetIterator it = set.getIterator();
+        while (it.hasNext())
+            builder.add(it.getNext());
+        return builder.build();
+    }
+
+    /**
+     * Creates a membership set with all the rows in two sets.
+     */
+    public static IMembershipSet union(final IMembershipSet left, final IMembershipSet right) {
+        final Builder builder = new Builder(left.getSize() + right.getSize());
+        IRowIterator it = left.getIterator();
+        for (int row = it.getNextRow(); row >= 0; row = it.getNextRow())
+            builder.add(row);
+        it = right.getIterator();
+        for (int row = it.getNextRow(); row >= 0; row = it.getNextRow())
+            if (!left.isMember(row))
+                builder.add(row);
+        return builder.build();
+    }
+}
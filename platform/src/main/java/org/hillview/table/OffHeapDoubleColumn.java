@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IDoubleColumn;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.IRowOrder;
+import org.hillview.table.api.IStringConverter;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+
+/**
+ * Column of doubles stored outside of the Java heap, in a direct buffer.
+ * The memory is released by close().
+ */
+public final class OffHeapDoubleColumn extends BaseOffHeapColumn implements IDoubleColumn {
+    @Nullable
+    private ByteBuffer buffer;
+    @Nullable
+    private DoubleBuffer data;
+
+    public OffHeapDoubleColumn(final ColumnDescription description, final int size) {
+        super(description, size);
+        this.checkKind(ContentsKind.Double);
+        this.buffer = OffHeapMemory.allocate((long) 8 * size);
+        this.data = this.buffer.asDoubleBuffer();
+    }
+
+    /**
+     * Copies the specified rows of a column of doubles to a new off-heap column.
+     * @param source    Column to copy; its kind must be Double.
+     * @param rowOrder  Rows to copy, in the order in which they will appear in the result.
+     */
+    public static OffHeapDoubleColumn copy(final IColumn source, final IRowOrder rowOrder) {
+        final OffHeapDoubleColumn result = new OffHeapDoubleColumn(
+                source.getDescription(), rowOrder.getSize());
+        final IRowIterator rowIt = rowOrder.getIterator();
+        int row = 0;
+        while (true) {
+            final int i = rowIt.getNextRow();
+            if (i < 0)
+                break;
+            if (source.isMissing(i))
+                result.setMissing(row);
+            else
+                result.set(row, source.getDouble(i));
+            row++;
+        }
+        return result;
+    }
+
+    private DoubleBuffer getData() {
+        final DoubleBuffer d = this.data;
+        if (d == null)
+            throw BaseOffHeapColumn.released();
+        return d;
+    }
+
+    @Override
+    public double getDouble(final int rowIndex) {
+        return this.getData().get(rowIndex);
+    }
+
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        final DoubleBuffer d = this.getData();
+        for (int i = 0; i < count; i++)
+            out[i] = d.get(rows[i]);
+    }
+
+    @Override
+    public void asDoubles(final int start, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        final DoubleBuffer d = this.getData();
+        for (int i = 0; i < count; i++)
+            out[i] = d.get(start + i);
+    }
+
+    public void set(final int rowIndex, final double value) {
+        this.getData().put(rowIndex, value);
+    }
+
+    @Override
+    void releaseData() {
+        if (this.buffer != null) {
+            OffHeapMemory.release(this.buffer);
+            this.buffer = null;
+            this.data = null;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IIntColumn;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.IRowOrder;
+import org.hillview.table.api.IStringConverter;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Column of ints stored outside of the Java heap, in a direct buffer.
+ * The memory is released by close().
+ */
+public final class OffHeapIntColumn extends BaseOffHeapColumn implements IIntColumn {
+    @Nullable
+    private ByteBuffer buffer;
+    @Nullable
+    private IntBuffer data;
+
+    public OffHeapIntColumn(final ColumnDescription description, final int size) {
+        super(description, size);
+        this.checkKind(ContentsKind.Integer);
+        this.buffer = OffHeapMemory.allocate((long) 4 * size);
+        this.data = this.buffer.asIntBuffer();
+    }
+
+    /**
+     * Copies the specified rows of a column of ints to a new off-heap column.
+     * @param source    Column to copy; its kind must be Integer.
+     * @param rowOrder  Rows to copy, in the order in which they will appear in the result.
+     */
+    public static OffHeapIntColumn copy(final IColumn source, final IRowOrder rowOrder) {
+        final OffHeapIntColumn result = new OffHeapIntColumn(
+                source.getDescription(), rowOrder.getSize());
+        final IRowIterator rowIt = rowOrder.getIterator();
+        int row = 0;
+        while (true) {
+            final int i = rowIt.getNextRow();
+            if (i < 0)
+                break;
+            if (source.isMissing(i))
+                result.setMissing(row);
+            else
+                result.set(row, source.getInt(i));
+            row++;
+        }
+        return result;
+    }
+
+    private IntBuffer getData() {
+        final IntBuffer d = this.data;
+        if (d == null)
+            throw BaseOffHeapColumn.released();
+        return d;
+    }
+
+    @Override
+    public int getInt(final int rowIndex) {
+        return this.getData().get(rowIndex);
+    }
+
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        final IntBuffer d = this.getData();
+        for (int i = 0; i < count; i++)
+            out[i] = d.get(rows[i]);
+    }
+
+    @Override
+    public void asDoubles(final int start, final int count,
+                          @Nullable final IStringConverter unused, final double[] out) {
+        final IntBuffer d = this.getData();
+        for (int i = 0; i < count; i++)
+            out[i] = d.get(start + i);
+    }
+
+    public void set(final int rowIndex, final int value) {
+        this.getData().put(rowIndex, value);
+    }
+
+    @Override
+    void releaseData() {
+        if (this.buffer != null) {
+            OffHeapMemory.release(this.buffer);
+            this.buffer = null;
+            this.data = null;
+        }
+    }
+}
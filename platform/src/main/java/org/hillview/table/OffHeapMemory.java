@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.ITable;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Allocates the memory used by off-heap columns and keeps track of the amount in use.
+ * Off-heap memory is not scanned by the garbage collector, so large tables stored
+ * this way do not lengthen the GC pauses.  The columns drop their buffers when they
+ * are released, and the JVM returns the memory of a buffer to the operating system
+ * once no computation refers to it anymore; the maximum amount is bounded by the
+ * -XX:MaxDirectMemorySize JVM flag.
+ */
+public final class OffHeapMemory {
+    private static final AtomicLong allocatedBytes = new AtomicLong(0);
+
+    private OffHeapMemory() {}
+
+    /**
+     * Allocates a zero-filled buffer in native byte order.
+     * @param bytes  Size of the buffer; it must fit in a Java array index.
+     */
+    static ByteBuffer allocate(final long bytes) {
+        if ((bytes < 0) || (bytes > Integer.MAX_VALUE))
+            throw new IllegalArgumentException("Cannot allocate " + bytes + " bytes off-heap");
+        final ByteBuffer result = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+        allocatedBytes.addAndGet(bytes);
+        return result;
+    }
+
+    /**
+     * Signals that the buffer is no longer in use; the caller must drop all
+     * references to it.
+     */
+    static void release(final ByteBuffer buffer) {
+        allocatedBytes.addAndGet(-buffer.capacity());
+    }
+
+    /**
+     * Registers a new owner of the off-heap columns of some data, which is a table or
+     * a list of tables; other objects have no off-heap columns.  The columns
+     * are released when each of their owners has called releaseColumns.
+     */
+    public static void retainColumns(@Nullable final Object data) {
+        forEachColumn(data, BaseOffHeapColumn::retain);
+    }
+
+    /**
+     * Called by an owner of the off-heap columns of some data when it no longer
+     * needs them: the memory of each column is released after its last owner has
+     * called this.  Columns which were never retained are released immediately.
+     */
+    public static void releaseColumns(@Nullable final Object data) {
+        forEachColumn(data, BaseOffHeapColumn::release);
+    }
+
+    private static void forEachColumn(@Nullable final Object data,
+                                      final Consumer<BaseOffHeapColumn> action) {
+        if (data instanceof ITable) {
+            for (IColumn column : ((ITable) data).getColumns())
+                if (column instanceof BaseOffHeapColumn)
+                    action.accept((BaseOffHeapColumn) column);
+        } else if (data instanceof List) {
+            for (Object element : (List<?>) data)
+                forEachColumn(element, action);
+        }
+    }
+
+    /**
+     * @return Number of bytes allocated by off-heap columns which have not been released.
+     */
+    public static long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+}
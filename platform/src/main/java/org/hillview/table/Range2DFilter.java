@@ -22,6 +22,9 @@ public class Range2DFilter implements TableFilter, Serializable {
         this.second.setTable(table);
     }
 
+    @Override
+    public boolean isThreadSafe() { return true; }
+
     public boolean test(int rowIndex) {
         return this.first.test(rowIndex) && this.second.test(rowIndex);
     }
@@ -1,6 +1,7 @@
 package org.hillview.table;
 
 import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
 import org.hillview.table.api.IStringConverter;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
@@ -15,6 +16,11 @@ public class RangeFilter implements TableFilter, Serializable {
     IColumn column;  // not really nullable, but set later.
     @Nullable
     final IStringConverter converter;
+    /**
+     * For dictionary-encoded columns: true for the codes of the values in the range.
+     */
+    @Nullable
+    private transient boolean[] inRange;
 
     public RangeFilter(FilterDescription args) {
         this.args = args;
@@ -28,13 +34,29 @@ public class RangeFilter implements TableFilter, Serializable {
 
     @Override
     public void setTable(ITable table) {
-        IColumn col = table.getColumn(this.args.columnName);
-        this.column = Converters.checkNull(col);
+        IColumn col = Converters.checkNull(table.getColumn(this.args.columnName)).getLoadedColumn();
+        this.column = col;
+        this.inRange = null;
+        if ((this.converter != null) && (col instanceof IDictionaryColumn)) {
+            // Each distinct string is compared only once
+            final IDictionaryColumn dictionary = (IDictionaryColumn) col;
+            this.inRange = new boolean[dictionary.getDictionarySize()];
+            for (int code = 0; code < this.inRange.length; code++) {
+                double d = this.converter.asDouble(dictionary.decode(code));
+                this.inRange[code] = this.args.min <= d && d <= this.args.max;
+            }
+        }
     }
 
+    @Override
+    public boolean isThreadSafe() { return true; }
+
     public boolean test(int rowIndex) {
         boolean result;
-        if (Converters.checkNull(this.column).isMissing(rowIndex))
+        if (this.inRange != null) {
+            int code = ((IDictionaryColumn) Converters.checkNull(this.column)).getCode(rowIndex);
+            result = code >= 0 && this.inRange[code];
+        } else if (Converters.checkNull(this.column).isMissing(rowIndex))
             result = false;
         else {
             double d = this.column.asDouble(rowIndex, this.converter);
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.utils.IntSet;
+import org.hillview.utils.Randomness;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A IMembershipSet which contains all rows in a contiguous range [start, end).
+ * It uses constant space, so it is the natural way to describe a shard of a table.
+ */
+public class RangeMembership implements IMembershipSet {
+    private final int start;
+    private final int end;
+
+    /**
+     * Create a membership set containing the rows start, start + 1, ..., end - 1.
+     * @param start First row in the set.
+     * @param end   First row after the set.
+     */
+    public RangeMembership(final int start, final int end) {
+        if ((start < 0) || (end < start))
+            throw new IllegalArgumentException("Illegal row range [" + start + ", " + end + ")");
+        this.start = start;
+        this.end = end;
+    }
+
+    public int getStart() {
+        return this.start;
+    }
+
+    public int getEnd() {
+        return this.end;
+    }
+
+    @Override
+    public boolean isMember(final int rowIndex) {
+        return (rowIndex >= this.start) && (rowIndex < this.end);
+    }
+
+    @Override
+    public int getSize() {
+        return this.end - this.start;
+    }
+
+    @Override
+    public IRowIterator getIterator() {
+        return new RangeIterator(this.start, this.end);
+    }
+
+    @Override
+    public IMembershipSet filter(Predicate<Integer> predicate) {
+        return MembershipFactory.filter(this, predicate::test);
+    }
+
+    @Override
+    public IMembershipSet sample(final int k) {
+        if (k >= this.getSize())
+            return this;
+        final Randomness randomGenerator = new Randomness();
+        return this.sampleUtil(randomGenerator, k);
+    }
+
+    @Override
+    public IMembershipSet sample(final int k, final long seed) {
+        if (k >= this.getSize())
+            return this;
+        final Randomness randomGenerator = new Randomness();
+        randomGenerator.setSeed(seed);
+        return this.sampleUtil(randomGenerator, k);
+    }
+
+    private IMembershipSet sampleUtil(final Randomness randomGenerator, final int k) {
+        final int size = this.getSize();
+        int l = k;
+        if (k > (int) (size * 0.7)) // sample the items that are not returned
+            l = size - k;
+        final IntSet s = new IntSet(l);
+        while (s.size() < l)
+            s.add(this.start + randomGenerator.nextInt(size));
+        final IMembershipSet sample = MembershipFactory.fromIntSet(s);
+        if (l == k)
+            return sample;
+        else
+            return this.setMinus(sample);
+    }
+
+    /**
+     * If the set is a contiguous range of rows return it as a RangeMembership,
+     * otherwise return null.
+     */
+    @Nullable
+    public static RangeMembership asRange(final IMembershipSet set) {
+        if (set instanceof RangeMembership)
+            return (RangeMembership) set;
+        if (set instanceof FullMembership)
+            return new RangeMembership(0, set.getSize());
+        return null;
+    }
+
+    @Override
+    public IMembershipSet union(final IMembershipSet otherSet) {
+        RangeMembership other = asRange(otherSet);
+        if ((other != null) && (other.start <= this.end) && (this.start <= other.end))
+            // overlapping or adjacent ranges
+            return new RangeMembership(Math.min(this.start, other.start),
+                                       Math.max(this.end, other.end));
+        return MembershipFactory.union(this, otherSet);
+    }
+
+    @Override
+    public IMembershipSet intersection(final IMembershipSet otherSet) {
+        RangeMembership other = asRange(otherSet);
+        if (other != null) {
+            int start = Math.max(this.start, other.start);
+            int end = Math.max(start, Math.min(this.end, other.end));
+            return new RangeMembership(start, end);
+        }
+        return MembershipFactory.filter(otherSet, this::isMember);
+    }
+
+    /**
+     * Splits the range into at most 'parts' contiguous ranges of almost equal size.
+     */
+    @Override
+    public List<IMembershipSet> split(final int parts) {
+        return RangeMembership.splitRange(this.start, this.end, parts);
+    }
+
+    static List<IMembershipSet> splitRange(final int start, final int end, final int parts) {
+        if (parts <= 0)
+            throw new IllegalArgumentException("Number of parts must be positive: " + parts);
+        final int size = end - start;
+        final int actualParts = Math.max(1, Math.min(parts, size));
+        final List<IMembershipSet> result = new ArrayList<IMembershipSet>(actualParts);
+        int partStart = start;
+        for (int i = 0; i < actualParts; i++) {
+            // The first (size % actualParts) parts get one extra row.
+            int partSize = (size / actualParts) + ((i < (size % actualParts)) ? 1 : 0);
+            result.add(new RangeMembership(partStart, partStart + partSize));
+            partStart += partSize;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "RangeMembership[" + this.start + ", " + this.end + ")";
+    }
+
+    private static class RangeIterator implements IRowIterator {
+        private int cursor;
+        private final int end;
+
+        private RangeIterator(final int start, final int end) {
+            this.cursor = start;
+            this.end = end;
+        }
+
+        @Override
+        public int getNextRow() {
+            if (this.cursor < this.end) {
+                this.cursor++;
+                return this.cursor - 1;
+            }
+            else return -1;
+        }
+
+        @Override
+        public int fillRows(final int[] rows) {
+            final int count = Math.min(rows.length, this.end - this.cursor);
+            for (int i = 0; i < count; i++)
+                rows[i] = this.cursor + i;
+            this.cursor += count;
+            return count;
+        }
+    }
+}
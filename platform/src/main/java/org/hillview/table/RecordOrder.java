@@ -211,4 +211,17 @@ public class RecordOrder implements Iterable<ColumnSortOrientation>, Serializabl
         }
         return merge;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RecordOrder that = (RecordOrder) o;
+        return this.sortOrientationList.equals(that.sortOrientationList);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.sortOrientationList.hashCode();
+    }
 }
@@ -30,7 +30,7 @@ import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
 import java.security.InvalidParameterException;
 import java.util.*;
 
@@ -152,9 +152,21 @@ public final class Schema
         return Schema.fromJson(s);
     }
 
+    /**
+     * Writes the schema to a temporary file which is then renamed, so that readers
+     * never see a partially written file.
+     */
     public void writeToJsonFile(Path file) throws IOException {
         String text = this.toJson();
         byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
-        Files.write(file, bytes, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        Path tmp = Files.createTempFile(
+                file.toAbsolutePath().getParent(), file.getFileName() + ".", ".tmp");
+        try {
+            Files.write(tmp, bytes);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
     }
 }
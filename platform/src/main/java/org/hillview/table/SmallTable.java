@@ -25,6 +25,8 @@ import org.hillview.dataset.api.IJson;
 import org.hillview.table.api.*;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A SmallTable is similar to a Table, but it is intended to be shipped over the network.
@@ -83,6 +85,17 @@ public class SmallTable
         return this.compress(set);
     }
 
+    /**
+     * Selecting rows from a SmallTable copies the data, so small tables are never
+     * split in chunks.
+     */
+    @Override
+    public List<ITable> splitInChunks(final int maxChunkSize) {
+        final List<ITable> result = new ArrayList<ITable>(1);
+        result.add(this);
+        return result;
+    }
+
     @Override
     public ITable project(Schema schema) {
         Iterable<IColumn> cols = this.getColumns(schema);
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.utils.IntSet;
+import org.hillview.utils.Randomness;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A membership set represented as a sorted array of rows, suitable for sets
+ * which contain a small fraction of the rows of a table.
+ */
+public class SortedArrayMembership implements IMembershipSet {
+    /**
+     * Rows in the set, in increasing order, in positions [start, end) of the array.
+     */
+    private final int[] rows;
+    private final int start;
+    private final int end;
+
+    /**
+     * Create a membership set from an array of rows.
+     * @param rows  Distinct rows, sorted in increasing order.  The array is not copied.
+     */
+    SortedArrayMembership(final int[] rows) {
+        this(rows, 0, rows.length);
+    }
+
+    private SortedArrayMembership(final int[] rows, final int start, final int end) {
+        this.rows = rows;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public boolean isMember(final int rowIndex) {
+        return Arrays.binarySearch(this.rows, this.start, this.end, rowIndex) >= 0;
+    }
+
+    @Override
+    public int getSize() {
+        return this.end - this.start;
+    }
+
+    @Override
+    public IRowIterator getIterator() {
+        return new IRowIterator() {
+            private int index = SortedArrayMembership.this.start;
+
+            @Override
+            public int getNextRow() {
+                if (this.index >= SortedArrayMembership.this.end)
+                    return -1;
+                return SortedArrayMembership.this.rows[this.index++];
+            }
+
+            @Override
+            public int fillRows(final int[] buffer) {
+                final int count = Math.min(buffer.length, SortedArrayMembership.this.end - this.index);
+                System.arraycopy(SortedArrayMembership.this.rows, this.index, buffer, 0, count);
+                this.index += count;
+                return count;
+            }
+        };
+    }
+
+    @Override
+    public IMembershipSet filter(final Predicate<Integer> predicate) {
+        return MembershipFactory.filter(this, predicate::test);
+    }
+
+    @Override
+    public IMembershipSet sample(final int k) {
+        return this.sampleUtil(new Randomness(), k);
+    }
+
+    @Override
+    public IMembershipSet sample(final int k, final long seed) {
+        final Randomness randomGenerator = new Randomness();
+        randomGenerator.setSeed(seed);
+        return this.sampleUtil(randomGenerator, k);
+    }
+
+    private IMembershipSet sampleUtil(final Randomness randomGenerator, final int k) {
+        final int size = this.getSize();
+        if (k >= size)
+            return this;
+        int l = k;
+        if (k > (int) (size * 0.7)) // sample the items that are not returned
+            l = size - k;
+        final IntSet s = new IntSet(l);
+        while (s.size() < l)
+            s.add(this.rows[this.start + randomGenerator.nextInt(size)]);
+        final IMembershipSet sample = MembershipFactory.fromIntSet(s);
+        if (l == k)
+            return sample;
+        return this.setMinus(sample);
+    }
+
+    @Override
+    public IMembershipSet union(final IMembershipSet otherSet) {
+        if (!(otherSet instanceof SortedArrayMembership))
+            return MembershipFactory.union(this, otherSet);
+        // Merge the two sorted arrays
+        final SortedArrayMembership other = (SortedArrayMembership) otherSet;
+        final int[] result = new int[this.getSize() + other.getSize()];
+        int i = this.start, j = other.start, k = 0;
+        while ((i < this.end) && (j < other.end)) {
+            int left = this.rows[i];
+            int right = other.rows[j];
+            if (left <= right) {
+                result[k++] = left;
+                i++;
+                if (left == right)
+                    j++;
+            } else {
+                result[k++] = right;
+                j++;
+            }
+        }
+        while (i < this.end)
+            result[k++] = this.rows[i++];
+        while (j < other.end)
+            result[k++] = other.rows[j++];
+        return MembershipFactory.fromSortedRows(result, k);
+    }
+
+    @Override
+    public IMembershipSet intersection(final IMembershipSet otherSet) {
+        return MembershipFactory.filter(this, otherSet::isMember);
+    }
+
+    @Override
+    public IMembershipSet setMinus(final IMembershipSet otherSet) {
+        return MembershipFactory.filter(this, row -> !otherSet.isMember(row));
+    }
+
+    /**
+     * Splits the set into parts with almost the same number of rows; the parts
+     * share the array of this set.
+     */
+    @Override
+    public List<IMembershipSet> split(final int parts) {
+        if (parts <= 0)
+            throw new IllegalArgumentException("Number of parts must be positive: " + parts);
+        final int size = this.getSize();
+        final int actualParts = Math.max(1, Math.min(parts, size));
+        final List<IMembershipSet> result = new ArrayList<IMembershipSet>(actualParts);
+        int partStart = this.start;
+        for (int i = 0; i < actualParts; i++) {
+            int partSize = (size / actualParts) + ((i < (size % actualParts)) ? 1 : 0);
+            result.add(new SortedArrayMembership(this.rows, partStart, partStart + partSize));
+            partStart += partSize;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SortedArrayMembership(" + this.getSize() + " rows)";
+    }
+}
@@ -68,4 +68,18 @@ public class SortedStringsConverter implements IStringConverter {
             return this.min + index;
         return this.min + ((index * (double)(this.max - this.min)) / (this.boundaries.length - 1));
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SortedStringsConverter that = (SortedStringsConverter) o;
+        return this.min == that.min && this.max == that.max &&
+                Arrays.equals(this.boundaries, that.boundaries);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(this.boundaries) + this.min) + this.max;
+    }
 }
@@ -22,6 +22,8 @@ import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.IRowIterator;
 import org.hillview.utils.IntSet;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.function.Predicate;
 
 
@@ -90,7 +92,7 @@ public class SparseMembership implements IMembershipSet {
 
     @Override
     public IMembershipSet filter(Predicate<Integer> predicate) {
-        return new SparseMembership(this, predicate);
+        return MembershipFactory.filter(this, predicate::test);
     }
 
     @Override
@@ -158,6 +160,22 @@ public class SparseMembership implements IMembershipSet {
         return new SparseMembership(intersectSet);
     }
 
+    /**
+     * Splits the set into parts with almost the same number of rows.  The rows are
+     * sorted once into an array which is shared by all parts.
+     */
+    @Override
+    public List<IMembershipSet> split(final int parts) {
+        if (parts <= 0)
+            throw new IllegalArgumentException("Number of parts must be positive: " + parts);
+        final int[] rows = new int[this.getSize()];
+        final IntSet.IntSetIterator iter = this.membershipMap.getIterator();
+        for (int i = 0; i < rows.length; i++)
+            rows[i] = iter.getNext();
+        Arrays.sort(rows);
+        return new SortedArrayMembership(rows).split(parts);
+    }
+
     /**
      * Estimates the size of a selectRowsFromFullTable applied to an IMembershipSet
      * @return an approximation of the size, based on a sample of size 20. May return 0.
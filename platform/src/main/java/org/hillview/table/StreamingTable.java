@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.dataset.api.IStreamable;
+import org.hillview.dataset.api.Pair;
+import org.hillview.table.api.*;
+import org.hillview.utils.Converters;
+import rx.Observable;
+import rx.subjects.ReplaySubject;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A table which is still being loaded.  The loader appends the rows as a sequence of
+ * pieces, each an immutable table; sketches can be computed on the pieces while the
+ * rest of the data is loaded.  When loading completes the loader supplies the whole
+ * table, and the pieces are released.  All other operations on the table wait for
+ * the load to complete.
+ */
+public final class StreamingTable implements ITable, IStreamable<ITable>, Serializable {
+    private final Schema schema;
+    /**
+     * Pieces appended so far; null when the load is complete.
+     */
+    @Nullable
+    private ReplaySubject<Pair<Double, ITable>> pieces;
+    @Nullable
+    private volatile ITable table;
+    @Nullable
+    private volatile Throwable error;
+    private final CountDownLatch done;
+
+    public StreamingTable(final Schema schema) {
+        this.schema = schema;
+        this.pieces = ReplaySubject.create();
+        this.table = null;
+        this.error = null;
+        this.done = new CountDownLatch(1);
+    }
+
+    /**
+     * Append some rows to the table.  Must be called by a single thread at a time.
+     * @param fraction  Fraction of the whole table contained in the piece.
+     * @param piece     A table containing the rows.
+     */
+    public void append(final double fraction, final ITable piece) {
+        Converters.checkNull(this.pieces).onNext(new Pair<Double, ITable>(fraction, piece));
+    }
+
+    /**
+     * Signals that all the data has been loaded.
+     * @param table  The whole table; it has the same rows as all the pieces.
+     */
+    public void complete(final ITable table) {
+        final ReplaySubject<Pair<Double, ITable>> subject = Converters.checkNull(this.pieces);
+        synchronized (this) {
+            this.table = table;
+            this.pieces = null;
+        }
+        this.done.countDown();
+        subject.onCompleted();
+    }
+
+    /**
+     * Signals that loading the table has failed.
+     */
+    public void fail(final Throwable error) {
+        final ReplaySubject<Pair<Double, ITable>> subject = Converters.checkNull(this.pieces);
+        synchronized (this) {
+            this.error = error;
+            this.pieces = null;
+        }
+        this.done.countDown();
+        subject.onError(error);
+    }
+
+    public boolean isComplete() {
+        return this.done.getCount() == 0;
+    }
+
+    @Override
+    public synchronized Observable<Pair<Double, ITable>> getPieces() {
+        if (this.pieces != null)
+            return this.pieces;
+        if (this.error != null)
+            return Observable.error(this.error);
+        return Observable.just(new Pair<Double, ITable>(1.0, Converters.checkNull(this.table)));
+    }
+
+    /**
+     * @return The whole table, waiting for the load to complete.
+     */
+    public ITable getTable() {
+        try {
+            // The load runs on the compute scheduler; if this thread belongs to it the
+            // pool must be allowed to start another thread to avoid a deadlock.
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    StreamingTable.this.done.await();
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return StreamingTable.this.isComplete();
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (this.error != null)
+            throw new RuntimeException("Error loading table", this.error);
+        return Converters.checkNull(this.table);
+    }
+
+    @Override
+    public Schema getSchema() {
+        return this.schema;
+    }
+
+    @Override
+    public IRowIterator getRowIterator() {
+        return this.getTable().getRowIterator();
+    }
+
+    @Override
+    public IMembershipSet getMembershipSet() {
+        return this.getTable().getMembershipSet();
+    }
+
+    @Override
+    public int getNumOfRows() {
+        return this.getTable().getNumOfRows();
+    }
+
+    @Override
+    public IColumn getColumn(final String colName) {
+        return this.getTable().getColumn(colName);
+    }
+
+    @Override
+    public SmallTable compress(final ISubSchema subSchema, final IRowOrder rowOrder) {
+        return this.getTable().compress(subSchema, rowOrder);
+    }
+
+    @Override
+    public SmallTable compress(final IRowOrder rowOrder) {
+        return this.getTable().compress(rowOrder);
+    }
+
+    @Override
+    public ITable selectRowsFromFullTable(final IMembershipSet set) {
+        return this.getTable().selectRowsFromFullTable(set);
+    }
+
+    @Override
+    public ITable project(final Schema schema) {
+        return this.getTable().project(schema);
+    }
+
+    @Override
+    public Iterable<IColumn> getColumns(final Schema schema) {
+        return this.getTable().getColumns(schema);
+    }
+
+    @Override
+    public Iterable<IColumn> getColumns() {
+        return this.getTable().getColumns();
+    }
+
+    @Override
+    public String toLongString(final int rowsToDisplay) {
+        return this.getTable().toLongString(rowsToDisplay);
+    }
+
+    /**
+     * A serialized table is always complete.
+     */
+    private Object writeReplace() {
+        return this.getTable();
+    }
+
+    @Override
+    public String toString() {
+        if (this.isComplete() && (this.error == null))
+            return "StreamingTable(" + Converters.checkNull(this.table).toString() + ")";
+        return "StreamingTable(loading " + this.schema.getColumnCount() + " columns)";
+    }
+}
@@ -23,12 +23,26 @@ import org.hillview.table.api.IStringColumn;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
- * A column of Strings that can grow in size.
+ * A column of Strings that can grow in size.  Equal strings are stored as a single
+ * object while the column has few distinct values.  Columns with few distinct values
+ * are better stored in a DictionaryListColumn.
  */
 public class StringListColumn extends BaseListColumn implements IStringColumn {
+    /**
+     * Beyond this many distinct strings new values are stored as they are.
+     */
+    static final int MAX_CANONICAL = 1 << 16;
+
     private final ArrayList<String[]> segments;
+    /**
+     * Used to share equal strings; a per-column table avoids the contention of
+     * String.intern when several columns are loaded in parallel.
+     */
+    @Nullable
+    private transient HashMap<String, String> canonical;
 
     public StringListColumn(final ColumnDescription desc) {
         super(desc);
@@ -37,6 +51,7 @@ public class StringListColumn extends BaseListColumn implements IStringColumn {
                 (desc.kind != ContentsKind.Category))
             throw new IllegalArgumentException("Unexpected column kind " + desc.kind);
         this.segments = new ArrayList<String []>();
+        this.canonical = new HashMap<String, String>();
     }
 
     @Nullable
@@ -55,8 +70,14 @@ public class StringListColumn extends BaseListColumn implements IStringColumn {
     }
 
     public void append(@Nullable String value) {
-        if (value != null)
-            value = value.intern();
+        if ((value != null) && (this.canonical != null)) {
+            final String existing = this.canonical.putIfAbsent(value, value);
+            if (existing != null)
+                value = existing;
+            else if (this.canonical.size() > MAX_CANONICAL)
+                // Too many distinct values for sharing to pay off
+                this.canonical = null;
+        }
 
         final int segmentId = this.size >> this.LogSegmentSize;
         final int localIndex = this.size & this.SegmentMask;
@@ -80,4 +101,11 @@ public class StringListColumn extends BaseListColumn implements IStringColumn {
     public void parseAndAppendString(@Nullable String s) {
         this.append(s);
     }
+
+    @Override
+    void appendAll(final BaseListColumn source) {
+        final StringListColumn other = (StringListColumn) source;
+        for (int i = 0; i < other.size; i++)
+            this.append(other.getString(i));
+    }
 }
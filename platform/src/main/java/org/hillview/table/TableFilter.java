@@ -36,4 +36,10 @@ public interface TableFilter extends Serializable {
      * @param rowIndex Row index in the table.
      */
     boolean test(int rowIndex);
+
+    /**
+     * True if, after setTable has been called, test can be invoked concurrently
+     * from multiple threads.  Such filters can be evaluated lazily.
+     */
+    default boolean isThreadSafe() { return false; }
 }
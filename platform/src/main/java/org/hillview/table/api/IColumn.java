@@ -21,11 +21,14 @@ package org.hillview.table.api;
 import net.openhft.hashing.LongHashFunction;
 import org.hillview.table.ColumnDescription;
 import org.hillview.table.ObjectArrayColumn;
+import org.hillview.table.OffHeapDoubleColumn;
+import org.hillview.table.OffHeapIntColumn;
 
 import javax.annotation.Nullable;
 import java.io.Serializable;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 
 /**
  * Interface describing operations on a column.
@@ -87,6 +90,86 @@ public interface IColumn extends Serializable {
      */
     double asDouble(int rowIndex, @Nullable IStringConverter converter);
 
+    /**
+     * Batch version of isMissing.  Bit i of the mask (bit i % 64 of word i / 64)
+     * is set if rows[i] is missing and cleared otherwise.
+     * @param rows   Indexes of the rows to check.
+     * @param count  Number of valid entries in rows.
+     * @param mask   Receives the result; must have at least maskWords(count) words.
+     * @return       The number of missing rows.
+     */
+    default int fillMissing(final int[] rows, final int count, final long[] mask) {
+        IColumn.clearMask(mask, count);
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            if (this.isMissing(rows[i])) {
+                mask[i >>> 6] |= 1L << i;
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Same as fillMissing for the contiguous range of rows start, ..., start + count - 1.
+     */
+    default int fillMissing(final int start, final int count, final long[] mask) {
+        IColumn.clearMask(mask, count);
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            if (this.isMissing(start + i)) {
+                mask[i >>> 6] |= 1L << i;
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Batch version of asDouble: out[i] receives the value of rows[i].
+     * The value written for a missing row is unspecified; use fillMissing to find them.
+     * @param rows       Indexes of the rows to convert.
+     * @param count      Number of valid entries in rows.
+     * @param converter  Used only for columns that store data as strings.
+     * @param out        Receives the values; must have at least count elements.
+     */
+    default void asDoubles(final int[] rows, final int count,
+                           @Nullable final IStringConverter converter, final double[] out) {
+        for (int i = 0; i < count; i++) {
+            final int row = rows[i];
+            out[i] = this.isMissing(row) ? 0 : this.asDouble(row, converter);
+        }
+    }
+
+    /**
+     * Same as asDoubles for the contiguous range of rows start, ..., start + count - 1.
+     */
+    default void asDoubles(final int start, final int count,
+                           @Nullable final IStringConverter converter, final double[] out) {
+        for (int i = 0; i < count; i++) {
+            final int row = start + i;
+            out[i] = this.isMissing(row) ? 0 : this.asDouble(row, converter);
+        }
+    }
+
+    /**
+     * @return The number of words of a mask describing count rows.
+     */
+    static int maskWords(final int count) {
+        return (count + 63) >>> 6;
+    }
+
+    /**
+     * @return True if bit i of a mask produced by fillMissing is set.
+     */
+    static boolean isMasked(final long[] mask, final int i) {
+        return (mask[i >>> 6] & (1L << i)) != 0;
+    }
+
+    static void clearMask(final long[] mask, final int count) {
+        Arrays.fill(mask, 0, IColumn.maskWords(count), 0L);
+    }
+
     // Returns null only if the object is missing.
     @Nullable
     String asString(int rowIndex);
@@ -113,6 +196,33 @@ public interface IColumn extends Serializable {
         return result;
     }
 
+    /**
+     * @return The column which holds the data; differs from this column only for
+     *         columns which wrap another one, such as lazily loaded columns.
+     *         Used to choose algorithms by the representation of the data.
+     */
+    default IColumn getLoadedColumn() {
+        return this;
+    }
+
+    /**
+     * Compresses an IColumn like compress, but stores integer and double data outside
+     * of the Java heap.  The memory of the result is released by OffHeapMemory.releaseColumns,
+     * or by the HillviewServer when the datasets holding it are removed.
+     * Columns of other kinds are compressed on the heap.
+     * @param rowOrder specifies the set of rows and their order
+     */
+    default IColumn compressOffHeap(final IRowOrder rowOrder) {
+        switch (this.getKind()) {
+            case Integer:
+                return OffHeapIntColumn.copy(this, rowOrder);
+            case Double:
+                return OffHeapDoubleColumn.copy(this, rowOrder);
+            default:
+                return this.compress(rowOrder);
+        }
+    }
+
     default String getName() {
         return this.getDescription().name;
     }
@@ -33,6 +33,26 @@ public interface IDateColumn extends IColumn {
         return Converters.toDouble(Converters.checkNull(tmp));
     }
 
+    @Override
+    default void asDoubles(final int[] rows, final int count,
+                           @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++) {
+            final LocalDateTime date = this.getDate(rows[i]);
+            if (date != null)
+                out[i] = Converters.toDouble(date);
+        }
+    }
+
+    @Override
+    default void asDoubles(final int start, final int count,
+                           @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++) {
+            final LocalDateTime date = this.getDate(start + i);
+            if (date != null)
+                out[i] = Converters.toDouble(date);
+        }
+    }
+
     @Nullable
     @Override
     default String asString(final int rowIndex) {
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table.api;
+
+/**
+ * A column of strings represented by a dictionary of the distinct values and,
+ * for each row, the code of its value: the index of the value in the dictionary.
+ * Sketches can work on the codes instead of the strings, processing each
+ * distinct string only once.
+ */
+public interface IDictionaryColumn extends IStringColumn {
+    /**
+     * Code of the missing values.
+     */
+    int MISSING_CODE = -1;
+
+    /**
+     * @return The code of the value in the specified row, or MISSING_CODE.
+     */
+    int getCode(int rowIndex);
+
+    /**
+     * @return The number of distinct values; the codes are between 0 and this value - 1.
+     */
+    int getDictionarySize();
+
+    /**
+     * @return The string with the specified code.
+     */
+    String decode(int code);
+
+    /**
+     * Stores in out the codes of the rows rows[0], ..., rows[count - 1].
+     */
+    default void getCodes(final int[] rows, final int count, final int[] out) {
+        for (int i = 0; i < count; i++)
+            out[i] = this.getCode(rows[i]);
+    }
+
+    /**
+     * Stores in out the codes of the rows start, ..., start + count - 1.
+     */
+    default void getCodes(final int start, final int count, final int[] out) {
+        for (int i = 0; i < count; i++)
+            out[i] = this.getCode(start + i);
+    }
+}
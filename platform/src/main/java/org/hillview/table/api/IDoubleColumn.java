@@ -30,6 +30,20 @@ public interface IDoubleColumn extends IColumn {
         return this.getDouble(rowIndex);
     }
 
+    @Override
+    default void asDoubles(final int[] rows, final int count,
+                           @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++)
+            out[i] = this.getDouble(rows[i]);
+    }
+
+    @Override
+    default void asDoubles(final int start, final int count,
+                           @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++)
+            out[i] = this.getDouble(start + i);
+    }
+
     @Nullable
     @Override
     default String asString(final int rowIndex) {
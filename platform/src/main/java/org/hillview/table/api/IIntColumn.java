@@ -30,6 +30,20 @@ public interface IIntColumn extends IColumn {
         return this.getInt(rowIndex);
     }
 
+    @Override
+    default void asDoubles(final int[] rows, final int count,
+                           @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++)
+            out[i] = this.getInt(rows[i]);
+    }
+
+    @Override
+    default void asDoubles(final int start, final int count,
+                           @Nullable final IStringConverter unused, final double[] out) {
+        for (int i = 0; i < count; i++)
+            out[i] = this.getInt(start + i);
+    }
+
     @Nullable
     @Override
     default String asString(final int rowIndex) {
@@ -19,9 +19,12 @@
 package org.hillview.table.api;
 
 import org.hillview.utils.Randomness;
+import org.hillview.table.MembershipFactory;
 import org.hillview.table.SparseMembership;
 import org.hillview.utils.IntSet;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Predicate;
 
 /**
@@ -80,15 +83,37 @@ public interface IMembershipSet extends IRowOrder {
     IMembershipSet intersection(IMembershipSet otherMap);
 
     default IMembershipSet setMinus(IMembershipSet otherMap) {
-        final IntSet setMinusSet = new IntSet();
+        return MembershipFactory.filter(this, row -> !otherMap.isMember(row));
+    }
+
+    /**
+     * @return An upper bound on the size of the set which is cheap to compute.
+     */
+    default int getMaxSize() {
+        return this.getSize();
+    }
+
+    /**
+     * Split the membership set into at most 'parts' disjoint membership sets whose union
+     * is this set.  The parts have almost equal sizes; they can be used to split a table
+     * into smaller tables that share the same columns.
+     * @param parts  Number of parts desired; must be positive.
+     */
+    default List<IMembershipSet> split(int parts) {
+        if (parts <= 0)
+            throw new IllegalArgumentException("Number of parts must be positive: " + parts);
+        final int size = this.getSize();
+        final int actualParts = Math.max(1, Math.min(parts, size));
+        final List<IMembershipSet> result = new ArrayList<IMembershipSet>(actualParts);
         final IRowIterator iter = this.getIterator();
-        int curr = iter.getNextRow();
-        while (curr >= 0) {
-            if (!otherMap.isMember(curr))
-                setMinusSet.add(curr);
-            curr = iter.getNextRow();
+        for (int i = 0; i < actualParts; i++) {
+            int partSize = (size / actualParts) + ((i < (size % actualParts)) ? 1 : 0);
+            final IntSet part = new IntSet(partSize);
+            for (int j = 0; j < partSize; j++)
+                part.add(iter.getNextRow());
+            result.add(new SparseMembership(part));
         }
-        return new SparseMembership(setMinusSet);
+        return result;
     }
 
     default int getSampleSize(double rate, long seed, boolean useSeed) {
@@ -105,4 +130,3 @@ public interface IMembershipSet extends IRowOrder {
         return sampleSize;
     }
 }
-//TODO: Add a split membership set method to split a table into smaller tables.
@@ -23,7 +23,30 @@ package org.hillview.table.api;
  * It returns -1 when the iteration is completed.
  */
 public interface IRowIterator {
+    /**
+     * A good size for the buffers passed to fillRows.
+     */
+    int BATCH_SIZE = 1024;
+
     // Returns -1 when iteration is completed; else it returns
     // the index of the next row.
     int getNextRow();
+
+    /**
+     * Writes the indexes of the next rows into the buffer.  This amortizes
+     * the cost of a call over many rows; implementations should override it
+     * when they can produce rows in bulk.
+     * @param rows  Buffer that receives the row indexes, starting at position 0.
+     * @return      The number of rows written; 0 only when the iteration is completed.
+     */
+    default int fillRows(final int[] rows) {
+        int count = 0;
+        while (count < rows.length) {
+            int row = this.getNextRow();
+            if (row < 0)
+                break;
+            rows[count++] = row;
+        }
+        return count;
+    }
 }
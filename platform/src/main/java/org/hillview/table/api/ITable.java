@@ -18,14 +18,20 @@
 
 package org.hillview.table.api;
 
+import org.hillview.dataset.api.IChunkable;
+import org.hillview.dataset.api.IScannable;
 import org.hillview.table.Schema;
 import org.hillview.table.SmallTable;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
 /**
  * An ITable object has a schema, a set of columns, and a MembershipSet.
  * All columns have the same size.
  */
-public interface ITable {
+public interface ITable extends IChunkable<ITable>, IScannable {
     Schema getSchema();
 
     IRowIterator getRowIterator();
@@ -77,4 +83,36 @@ public interface ITable {
      * Formats the first rows in the table as a long string.
      */
     String toLongString(int rowsToDisplay);
+
+    /**
+     * Enumerates the rows in the membership set of the table in batches.
+     */
+    @Override
+    default void scan(final ObjIntConsumer<int[]> consumer) {
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final IRowIterator it = this.getMembershipSet().getIterator();
+        for (int count = it.fillRows(rows); count > 0; count = it.fillRows(rows))
+            consumer.accept(rows, count);
+    }
+
+    /**
+     * Splits the table into tables with at most maxChunkSize rows each.
+     * The resulting tables share the columns with this table.
+     */
+    @Override
+    default List<ITable> splitInChunks(final int maxChunkSize) {
+        if (maxChunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be positive: " + maxChunkSize);
+        final IMembershipSet members = this.getMembershipSet();
+        // The exact size may be expensive to compute for lazily filtered tables.
+        final int parts = (members.getMaxSize() + maxChunkSize - 1) / maxChunkSize;
+        final List<ITable> result = new ArrayList<ITable>(Math.max(parts, 1));
+        if (parts <= 1) {
+            result.add(this);
+            return result;
+        }
+        for (IMembershipSet set : members.split(parts))
+            result.add(this.selectRowsFromFullTable(set));
+        return result;
+    }
 }
@@ -23,6 +23,7 @@ import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.ZoneOffset;
 
 /**
  * Conversion to and from doubles of various supported datatypes.
@@ -32,13 +33,32 @@ public class Converters {
             LocalDate.of(1970, 1, 1),
             LocalTime.of(0, 0));
 
+    /**
+     * Number of milliseconds in a time span, rounded toward zero.  Duration.toMillis
+     * rounds down before Java 9 and toward zero after, so it is not used.
+     * @param seconds  Seconds of the span, rounded down.
+     * @param nanos    Nanoseconds of the span in addition to seconds, in [0, 1e9).
+     */
+    public static long toMillis(long seconds, long nanos) {
+        if ((seconds < 0) && (nanos > 0)) {
+            seconds++;
+            nanos -= 1000000000;
+        }
+        return Math.addExact(Math.multiplyExact(seconds, 1000), nanos / 1000000);
+    }
+
+    /**
+     * @return The number of milliseconds between 1970-01-01T00:00 and d, rounded toward zero.
+     */
     public static double toDouble(final LocalDateTime d) {
-        Duration span = Duration.between(baseTime, d);
-        return Converters.toDouble(span);
+        return toMillis(d.toEpochSecond(ZoneOffset.UTC), d.getNano());
     }
 
+    /**
+     * @return The number of milliseconds of d, rounded toward zero.
+     */
     public static double toDouble(final Duration d) {
-        return d.toMillis();
+        return toMillis(d.getSeconds(), d.getNano());
     }
 
     // TODO: these representations are too coarse to support sub-millisecond timestamps
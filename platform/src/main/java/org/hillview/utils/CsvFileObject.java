@@ -1,16 +1,52 @@
 package org.hillview.utils;
 
+import org.hillview.storage.ColumnParseException;
 import org.hillview.storage.CsvFileReader;
+import org.hillview.storage.CsvSchemaInference;
+import org.hillview.storage.NativeFileReader;
+import org.hillview.storage.NativeFileWriter;
+import org.hillview.table.ColumnDescription;
 import org.hillview.table.Schema;
+import org.hillview.table.StreamingTable;
 import org.hillview.table.api.ITable;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.logging.Logger;
 
 
 public class CsvFileObject {
+    /**
+     * Name of the Java system property which controls caching: if true (the default
+     * is false), a table parsed from a CSV file is saved in the native Hillview format next to
+     * the file (with the extension NativeFileWriter.EXTENSION appended), and later
+     * loads read the native file instead of parsing the CSV file again.
+     */
+    public static final String NATIVE_CACHE_PROPERTY = "hillview.storage.nativecache";
+    /**
+     * Name of the Java system property which enables streaming loads: if true (the
+     * default is false), tables can be explored while the files are being parsed.
+     */
+    public static final String STREAMING_PROPERTY = "hillview.storage.streaming";
+    /**
+     * Name of the Java system property which stores the integer and double columns
+     * parsed from CSV files outside of the Java heap if true (the default is false).
+     * Tables read back from their native copy are kept on the heap, so the property
+     * has no effect when NATIVE_CACHE_PROPERTY is set.
+     */
+    public static final String OFF_HEAP_PROPERTY = "hillview.storage.offheap";
+    /**
+     * When a file has no schema, the inferred schema is saved next to the file with
+     * this extension appended once the whole file was loaded with it, and reused
+     * while it is newer than the file.
+     */
+    public static final String INFERRED_SCHEMA_EXTENSION = ".schema";
+    private static final Logger logger = Logger.getLogger(CsvFileObject.class.getName());
+
     private final Path dataPath;
     @Nullable
     private final Path schemaPath;
@@ -20,22 +56,181 @@ public class CsvFileObject {
         this.schemaPath = schema;
     }
 
+    private static boolean useCache() {
+        return Boolean.parseBoolean(System.getProperty(NATIVE_CACHE_PROPERTY, "false"));
+    }
+
+    private Path getCachePath() {
+        return this.dataPath.resolveSibling(this.dataPath.getFileName() + NativeFileWriter.EXTENSION);
+    }
+
+    /**
+     * @return The table read from the native copy of the file, or null if there is
+     *         no valid copy.  The columns are loaded lazily, and they can be unloaded
+     *         by the ColumnCache when memory is needed.
+     */
+    @Nullable
+    public ITable loadCached() throws IOException {
+        final Path cached = this.getCachePath();
+        if (useCache() && this.isCacheValid(cached)) {
+            try {
+                return new NativeFileReader(cached, true).read();
+            } catch (IOException e) {
+                logger.warning("Could not read " + cached + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
     public ITable loadTable() throws IOException {
-        Schema schema = null;
-        if (this.schemaPath != null) {
-            String s = new String(Files.readAllBytes(this.schemaPath));
-            schema = Schema.fromJson(s);
+        final ITable result = this.loadCached();
+        if (result != null)
+            return result;
+        final ITable table = this.parse();
+        final Path cached = this.getCachePath();
+        if (useCache()) {
+            try {
+                new NativeFileWriter(cached).writeTable(table);
+                // Use the native copy, whose columns can be unloaded when not used.
+                return new NativeFileReader(cached, true).read();
+            } catch (IOException e) {
+                // e.g., the data directory is read-only; the cache is just an optimization.
+                logger.warning("Could not write " + cached + ": " + e.getMessage());
+            }
         }
+        return table;
+    }
+
+    /**
+     * The cached copy is valid if it is newer than the data and the schema.
+     */
+    private boolean isCacheValid(final Path cached) throws IOException {
+        if (!Files.exists(cached))
+            return false;
+        final FileTime cacheTime = Files.getLastModifiedTime(cached);
+        if (cacheTime.compareTo(Files.getLastModifiedTime(this.dataPath)) < 0)
+            return false;
+        return (this.schemaPath == null) ||
+                (cacheTime.compareTo(Files.getLastModifiedTime(this.schemaPath)) >= 0);
+    }
 
+    private Path getInferredSchemaPath() {
+        return this.dataPath.resolveSibling(this.dataPath.getFileName() + INFERRED_SCHEMA_EXTENSION);
+    }
+
+    /**
+     * @return The schema saved by a previous load which succeeded with an inferred
+     *         schema, or null if there is none newer than the data file.
+     */
+    @Nullable
+    private Schema readInferredSchema() throws IOException {
+        final Path inferred = this.getInferredSchemaPath();
+        if (Files.exists(inferred) && Files.getLastModifiedTime(inferred).compareTo(
+                Files.getLastModifiedTime(this.dataPath)) >= 0)
+            return Schema.readFromJsonFile(inferred);
+        return null;
+    }
+
+    /**
+     * Reads the schema saved by a previous load, or infers the schema of the data
+     * file from a sample of its rows.
+     */
+    private Schema inferSchema(final CsvFileReader.CsvConfiguration config) throws IOException {
+        final Schema saved = this.readInferredSchema();
+        if (saved != null)
+            return saved;
+        return new CsvSchemaInference(this.dataPath, config).infer();
+    }
+
+    /**
+     * @return A copy of the schema where one column description is replaced.
+     */
+    private static Schema replaceColumn(final Schema schema, final ColumnDescription desc) {
+        final Schema result = new Schema();
+        for (String col : schema.getColumnNames()) {
+            if (col.equals(desc.name))
+                result.append(desc);
+            else
+                result.append(schema.getDescription(col));
+        }
+        return result;
+    }
+
+    /**
+     * Starts parsing the file in the background and returns tables which can be used
+     * while they are loading, one for each part of the file parsed in parallel.
+     * No native copy of the file is written, and an inferred schema is not saved.
+     * @param pieceRows  Number of rows made available at a time.
+     */
+    public List<StreamingTable> streamTables(final int pieceRows) throws IOException {
+        final CsvFileReader.CsvConfiguration config = this.createConfiguration();
+        if (config.schema == null)
+            config.schema = this.inferSchema(config);
+        return new CsvFileReader(this.dataPath, config).readStreaming(pieceRows);
+    }
+
+    private ITable parse() throws IOException {
+        final CsvFileReader.CsvConfiguration config = this.createConfiguration();
+        if (config.schema != null) {
+            CsvFileReader r = new CsvFileReader(this.dataPath, config);
+            ITable tbl = r.read();
+            return Converters.checkNull(tbl);
+        }
+
+        // The inferred schema is only a guess based on a sample of the rows:
+        // when a value does not parse, the kind of its column is widened and
+        // the file is parsed again.
+        final Schema saved = this.readInferredSchema();
+        Schema schema = (saved != null) ? saved : new CsvSchemaInference(this.dataPath, config).infer();
+        while (true) {
+            config.schema = schema;
+            final ITable tbl;
+            try {
+                tbl = Converters.checkNull(new CsvFileReader(this.dataPath, config).read());
+            } catch (RuntimeException ex) {
+                final ColumnParseException error = ColumnParseException.find(ex);
+                if (error == null)
+                    throw ex;
+                final ColumnDescription desc = schema.getDescription(error.getColumnName());
+                final ColumnDescription widened = (desc == null) ? null :
+                        CsvSchemaInference.widen(desc, error.getValue());
+                if (widened == null)
+                    throw ex;
+                logger.warning(this.dataPath + ": cannot parse " + error.getValue() +
+                        " in column " + desc.name + " as " + desc.kind + "; reading it as " + widened.kind);
+                schema = replaceColumn(schema, widened);
+                continue;
+            }
+            // Only a schema which was used to load the whole file is saved.
+            if (schema != saved) {
+                final Path inferred = this.getInferredSchemaPath();
+                try {
+                    schema.writeToJsonFile(inferred);
+                } catch (IOException e) {
+                    logger.warning("Could not write " + inferred + ": " + e.getMessage());
+                }
+            }
+            return tbl;
+        }
+    }
+
+    /**
+     * @return The configuration for reading the file; the schema is null
+     *         if the file has no schema file.
+     */
+    private CsvFileReader.CsvConfiguration createConfiguration() throws IOException {
         CsvFileReader.CsvConfiguration config = new CsvFileReader.CsvConfiguration();
         config.allowFewerColumns = false;
         config.hasHeaderRow = true;
         config.allowMissingData = false;
-        config.schema = schema;
-        CsvFileReader r = new CsvFileReader(this.dataPath, config);
-
-        ITable tbl = r.read();
-        return Converters.checkNull(tbl);
+        if (this.schemaPath != null) {
+            String s = new String(Files.readAllBytes(this.schemaPath));
+            config.schema = Schema.fromJson(s);
+        }
+        config.parallelism = 0;
+        config.offHeap = !useCache() &&
+                Boolean.parseBoolean(System.getProperty(OFF_HEAP_PROPERTY, "false"));
+        return config;
     }
 
     @Override
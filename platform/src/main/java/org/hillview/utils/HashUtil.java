@@ -18,6 +18,10 @@
 
 package org.hillview.utils;
 
+import net.openhft.hashing.LongHashFunction;
+
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Various utilities for computing hash functions.  This class only has
  * static methods.
@@ -29,9 +33,33 @@ public class HashUtil {
     private static final int INV_INT_PHI = 340573321;
     private static final long LONG_PHI = -7046029254386353131L;
     private static final long INV_LONG_PHI = -1018231460777725123L;
+    /**
+     * Maximum number of hash functions remembered by xxHash.
+     */
+    private static final int MAX_HASH_FUNCTIONS = 64;
+    private static final ConcurrentHashMap<Long, LongHashFunction> xxHashes =
+            new ConcurrentHashMap<Long, LongHashFunction>();
 
     protected HashUtil() {}
 
+    /**
+     * @return The xxHash function with the specified seed.  The same object is
+     * normally returned for the same seed, so that columns can cache the hashes
+     * of their values for each function.
+     */
+    public static LongHashFunction xxHash(final long seed) {
+        LongHashFunction result = xxHashes.get(seed);
+        if (result == null) {
+            if (xxHashes.size() >= MAX_HASH_FUNCTIONS)
+                xxHashes.clear();
+            result = LongHashFunction.xx(seed);
+            final LongHashFunction previous = xxHashes.putIfAbsent(seed, result);
+            if (previous != null)
+                result = previous;
+        }
+        return result;
+    }
+
     public static int murmurHash3(int x) {
         x ^= x >>> 16;
         x *= -2048144789;
@@ -198,7 +198,7 @@ public class TestTables {
         int start = 0;
         while (start < tableSize) {
             int thisFragSize = Math.min(fragmentSize, tableSize - start);
-            IMembershipSet members = new SparseMembership(start, thisFragSize);
+            IMembershipSet members = new RangeMembership(start, start + thisFragSize);
             tableList.add(bigTable.selectRowsFromFullTable(members));
             start += fragmentSize;
         }
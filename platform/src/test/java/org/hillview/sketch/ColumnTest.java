@@ -18,13 +18,49 @@
 
 package org.hillview.sketch;
 
+import net.openhft.hashing.LongHashFunction;
+import org.apache.commons.lang3.SerializationUtils;
+import org.hillview.table.BaseListColumn;
+import org.hillview.table.ColumnCache;
 import org.hillview.table.ColumnDescription;
+import org.hillview.table.DateArrayColumn;
+import org.hillview.table.DateListColumn;
+import org.hillview.table.DoubleArrayColumn;
 import org.hillview.table.DoubleListColumn;
+import org.hillview.table.DurationArrayColumn;
+import org.hillview.table.FullMembership;
+import org.hillview.table.IntListColumn;
+import org.hillview.table.LazyColumn;
+import org.hillview.table.MappedDateColumn;
+import org.hillview.table.MappedDurationColumn;
+import org.hillview.table.MappedIntColumn;
+import org.hillview.table.MappedStringColumn;
+import org.hillview.table.OffHeapDoubleColumn;
+import org.hillview.table.OffHeapIntColumn;
+import org.hillview.table.OffHeapMemory;
+import org.hillview.table.SortedStringsConverter;
+import org.hillview.table.StringArrayColumn;
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.IntArrayColumn;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
+import org.hillview.table.api.IStringConverter;
+import org.hillview.table.api.IndexComparator;
+import org.hillview.utils.Converters;
 import org.junit.Test;
 
+import javax.annotation.Nullable;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ColumnTest {
     @Test
@@ -61,4 +97,303 @@ public class ColumnTest {
             assertEquals((double)i, col.getDouble(i), 1e-3);
         assertEquals( col.asDouble(0, null), 0.0, 1e-3 );
     }
+
+    /**
+     * Checks the batch accessors of a column against the scalar ones, for a batch
+     * of scattered rows and for a range that crosses segment boundaries.
+     */
+    private static void checkBatches(final IColumn col, @Nullable final IStringConverter converter) {
+        final int count = 2000;
+        final int[] rows = new int[count];
+        for (int i = 0; i < count; i++)
+            rows[i] = (i * 7) % col.sizeInRows();
+        final double[] values = new double[count];
+        final long[] mask = new long[IColumn.maskWords(count)];
+        int missing = col.fillMissing(rows, count, mask);
+        col.asDoubles(rows, count, converter, values);
+        int expectedMissing = 0;
+        for (int i = 0; i < count; i++) {
+            assertEquals(col.isMissing(rows[i]), IColumn.isMasked(mask, i));
+            if (col.isMissing(rows[i]))
+                expectedMissing++;
+            else
+                assertEquals(col.asDouble(rows[i], converter), values[i], 1e-3);
+        }
+        assertEquals(expectedMissing, missing);
+
+        final int start = 1000;
+        missing = col.fillMissing(start, count, mask);
+        col.asDoubles(start, count, converter, values);
+        expectedMissing = 0;
+        for (int i = 0; i < count; i++) {
+            assertEquals(col.isMissing(start + i), IColumn.isMasked(mask, i));
+            if (col.isMissing(start + i))
+                expectedMissing++;
+            else
+                assertEquals(col.asDouble(start + i, converter), values[i], 1e-3);
+        }
+        assertEquals(expectedMissing, missing);
+    }
+
+    @Test
+    public void testBatchAccessors() {
+        final int size = 5000;
+        final ColumnDescription intDesc = new ColumnDescription("i", ContentsKind.Integer, true);
+        final ColumnDescription doubleDesc = new ColumnDescription("d", ContentsKind.Double, true);
+        final IntArrayColumn intArray = new IntArrayColumn(intDesc, size);
+        final DoubleArrayColumn doubleArray = new DoubleArrayColumn(doubleDesc, size);
+        final IntListColumn intList = new IntListColumn(intDesc);
+        final DoubleListColumn doubleList = new DoubleListColumn(doubleDesc);
+        final StringArrayColumn strings = new StringArrayColumn(
+                new ColumnDescription("s", ContentsKind.String, true), size);
+        for (int i = 0; i < size; i++) {
+            if ((i % 3) == 0) {
+                intArray.setMissing(i);
+                doubleArray.setMissing(i);
+                intList.appendMissing();
+                doubleList.appendMissing();
+                strings.setMissing(i);
+            } else {
+                intArray.set(i, i);
+                doubleArray.set(i, Math.sqrt(i));
+                intList.append(i);
+                doubleList.append(Math.sqrt(i));
+                strings.set(i, Integer.toString(i % 10));
+            }
+        }
+        checkBatches(intArray, null);
+        checkBatches(doubleArray, null);
+        checkBatches(intList, null);
+        checkBatches(doubleList, null);
+        checkBatches(strings, new SortedStringsConverter(
+                new String[] { "0", "3", "6" }, 0, 10));
+    }
+
+    @Test
+    public void testTimeColumns() {
+        final int size = 3000;
+        final LocalDateTime base = LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999999000);
+        final LocalDateTime[] dateData = new LocalDateTime[size];
+        final Duration[] durationData = new Duration[size];
+        final ColumnDescription dateDesc = new ColumnDescription("d", ContentsKind.Date, true);
+        final ColumnDescription durationDesc = new ColumnDescription("t", ContentsKind.Duration, true);
+        final DateListColumn dateList = new DateListColumn(dateDesc);
+        final BaseListColumn durationList = BaseListColumn.create(durationDesc);
+        for (int i = 0; i < size; i++) {
+            if ((i % 9) == 0) {
+                dateList.appendMissing();
+                durationList.appendMissing();
+                continue;
+            }
+            dateData[i] = base.plusSeconds((i - (size / 2)) * 3607L).plusNanos(i * 1000L);
+            // Java 8 prints negative durations with a fraction incorrectly
+            durationData[i] = Duration.ofSeconds(i - (size / 2), i < (size / 2) ? 0 : i);
+            dateList.parseAndAppendString(dateData[i].toString());
+            durationList.parseAndAppendString(durationData[i].toString());
+        }
+        final DateArrayColumn dateArray = new DateArrayColumn(dateDesc, dateData);
+        final DurationArrayColumn durationArray = new DurationArrayColumn(durationDesc, durationData);
+        final IColumn[] dates = new IColumn[] { dateArray, dateList };
+        final IColumn[] durations = new IColumn[] { durationArray, durationList };
+        for (int i = 0; i < size; i++) {
+            for (IColumn c : dates) {
+                assertEquals(dateData[i] == null, c.isMissing(i));
+                assertEquals(dateData[i], c.getDate(i));
+                if (dateData[i] != null)
+                    assertEquals(Converters.toDouble(dateData[i]), c.asDouble(i, null), 0);
+            }
+            for (IColumn c : durations) {
+                assertEquals(durationData[i] == null, c.isMissing(i));
+                assertEquals(durationData[i], c.getDuration(i));
+                if (durationData[i] != null)
+                    assertEquals(Converters.toDouble(durationData[i]), c.asDouble(i, null), 0);
+            }
+        }
+        for (IColumn c : dates)
+            checkBatches(c, null);
+        for (IColumn c : durations)
+            checkBatches(c, null);
+
+        // Missing values sort last
+        final IndexComparator comparator = dateArray.getComparator();
+        assertTrue(comparator.compare(1, 2) < 0);
+        assertTrue(comparator.compare(0, 1) > 0);
+        assertEquals(0, comparator.compare(0, 9));
+        assertTrue(durationList.getComparator().compare(2, 1) > 0);
+        assertTrue(new DateArrayColumn(dateDesc, 1).isMissing(0));
+    }
+
+    /**
+     * Dates before 1970 are converted to milliseconds rounded toward zero, whatever
+     * the representation of the column.
+     */
+    @Test
+    public void testPre1970Dates() {
+        final ColumnDescription desc = new ColumnDescription("d", ContentsKind.Date, false);
+        final LocalDateTime[] data = new LocalDateTime[] {
+                LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999500000),
+                LocalDateTime.of(1969, 12, 31, 23, 59, 58, 1000),
+                LocalDateTime.of(1970, 1, 1, 0, 0, 0, 1500000) };
+        final double[] expected = new double[] { 0, -1999, 1 };
+        final DateListColumn list = new DateListColumn(desc);
+        final LongBuffer seconds = LongBuffer.allocate(data.length);
+        final IntBuffer nanos = IntBuffer.allocate(data.length);
+        for (LocalDateTime d : data) {
+            list.parseAndAppendString(d.toString());
+            seconds.put(d.toEpochSecond(ZoneOffset.UTC));
+            nanos.put(d.getNano());
+        }
+        seconds.flip();
+        nanos.flip();
+        final IColumn[] columns = new IColumn[] {
+                new DateArrayColumn(desc, data), list, new MappedDateColumn(desc, null, seconds, nanos) };
+        final LongHashFunction hash = LongHashFunction.xx(0);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(expected[i], Converters.toDouble(data[i]), 0);
+            for (IColumn c : columns) {
+                assertEquals(expected[i], c.asDouble(i, null), 0);
+                assertEquals(columns[0].hashCode64(i, hash), c.hashCode64(i, hash));
+            }
+        }
+    }
+
+    /**
+     * Negative durations with a fraction of a millisecond are converted to milliseconds
+     * rounded toward zero, whatever the representation of the column.
+     */
+    @Test
+    public void testNegativeDurations() {
+        final ColumnDescription desc = new ColumnDescription("t", ContentsKind.Duration, false);
+        final Duration[] data = new Duration[] {
+                Duration.ofNanos(-999999999L), Duration.ofNanos(-500000),
+                Duration.ofSeconds(-3, 1500000), Duration.ofNanos(1500000) };
+        final double[] expected = new double[] { -999, 0, -2998, 1 };
+        final BaseListColumn list = BaseListColumn.create(desc);
+        final LongBuffer seconds = LongBuffer.allocate(data.length);
+        final IntBuffer nanos = IntBuffer.allocate(data.length);
+        for (Duration d : data) {
+            // Java 8 prints negative durations with a fraction incorrectly
+            list.parseAndAppendString(d.isNegative() ? "-" + d.negated() : d.toString());
+            seconds.put(d.getSeconds());
+            nanos.put(d.getNano());
+        }
+        seconds.flip();
+        nanos.flip();
+        final IColumn[] columns = new IColumn[] {
+                new DurationArrayColumn(desc, data), list,
+                new MappedDurationColumn(desc, null, seconds, nanos) };
+        final LongHashFunction hash = LongHashFunction.xx(0);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(expected[i], Converters.toDouble(data[i]), 0);
+            for (IColumn c : columns) {
+                assertEquals(data[i], c.getDuration(i));
+                assertEquals(expected[i], c.asDouble(i, null), 0);
+                assertEquals(columns[0].hashCode64(i, hash), c.hashCode64(i, hash));
+            }
+        }
+    }
+
+    @Test
+    public void testColumnCache() {
+        final int size = 1000;
+        final ColumnCache cache = new ColumnCache(10000);  // room for two columns
+        final AtomicInteger loads = new AtomicInteger(0);
+        final LazyColumn[] columns = new LazyColumn[3];
+        for (int i = 0; i < columns.length; i++) {
+            final ColumnDescription desc = new ColumnDescription("C" + i, ContentsKind.Integer, false);
+            final int value = i;
+            columns[i] = new LazyColumn(desc, size, () -> {
+                loads.incrementAndGet();
+                final IntArrayColumn col = new IntArrayColumn(desc, size);
+                for (int j = 0; j < size; j++)
+                    col.set(j, value);
+                return col;
+            }, cache);
+        }
+        assertEquals(size, columns[0].sizeInRows());
+        assertEquals(0, loads.get());
+        assertEquals(0, columns[0].getInt(5));
+        assertEquals(1, columns[1].getInt(5));
+        assertEquals(0, cache.getEvictionCount());
+        // The least recently used column is unloaded
+        assertEquals(2, columns[2].getInt(5));
+        assertEquals(3, loads.get());
+        assertEquals(1, cache.getEvictionCount());
+        assertFalse(columns[0].isLoaded());
+        assertTrue(columns[2].isLoaded());
+        assertTrue(cache.getUsedBytes() <= 10000);
+        // and loaded again when used
+        assertEquals(0, columns[0].getInt(7));
+        assertEquals(4, loads.get());
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals(2 * 4 * size, cache.getUsedBytes());
+    }
+
+    @Test
+    public void testColumnCacheMapped() {
+        final int size = 100000;
+        final ColumnCache cache = new ColumnCache(1000);
+        final ColumnDescription intDesc = new ColumnDescription("I", ContentsKind.Integer, false);
+        final LazyColumn ints = new LazyColumn(intDesc, size,
+                () -> new MappedIntColumn(intDesc, null, IntBuffer.allocate(size)), cache);
+        final ColumnDescription stringDesc = new ColumnDescription("S", ContentsKind.Category, false);
+        final LazyColumn strings = new LazyColumn(stringDesc, size,
+                () -> new MappedStringColumn(stringDesc, new String[] { "a", "bc" }, IntBuffer.allocate(size)),
+                cache);
+        // Only the heap memory is counted: the mapped data is not.
+        assertTrue(ints.getLoadedColumn() instanceof MappedIntColumn);
+        assertEquals(0, cache.getUsedBytes());
+        assertTrue(strings.getLoadedColumn() instanceof IDictionaryColumn);
+        assertEquals("a", strings.getString(size - 1));
+        assertEquals(2 * 40 + 2 * 3, cache.getUsedBytes());
+        assertEquals(0, cache.getEvictionCount());
+        assertTrue(ints.isLoaded());
+    }
+
+    @Test
+    public void testOffHeapColumns() {
+        final int size = 5000;
+        final IntArrayColumn ints = new IntArrayColumn(
+                new ColumnDescription("i", ContentsKind.Integer, true), size);
+        final DoubleArrayColumn doubles = new DoubleArrayColumn(
+                new ColumnDescription("d", ContentsKind.Double, false), size);
+        for (int i = 0; i < size; i++) {
+            if ((i % 5) == 0)
+                ints.setMissing(i);
+            else
+                ints.set(i, i);
+            doubles.set(i, Math.sqrt(i));
+        }
+        final long before = OffHeapMemory.getAllocatedBytes();
+        final FullMembership all = new FullMembership(size);
+        final IColumn offInts = ints.compressOffHeap(all);
+        final IColumn offDoubles = doubles.compressOffHeap(all);
+        assertTrue(offInts instanceof OffHeapIntColumn);
+        assertTrue(offDoubles instanceof OffHeapDoubleColumn);
+        assertTrue(OffHeapMemory.getAllocatedBytes() > before);
+        for (int i = 0; i < size; i++) {
+            assertEquals(ints.isMissing(i), offInts.isMissing(i));
+            if (!ints.isMissing(i))
+                assertEquals(ints.getInt(i), offInts.getInt(i));
+            assertEquals(doubles.getDouble(i), offDoubles.getDouble(i), 0);
+        }
+        checkBatches(offInts, null);
+        checkBatches(offDoubles, null);
+
+        // Serialization produces an on-heap copy
+        final IColumn copy = SerializationUtils.clone(offInts);
+        assertEquals(ints.getInt(7), copy.getInt(7));
+        assertTrue(copy.isMissing(10));
+
+        ((OffHeapIntColumn) offInts).close();
+        ((OffHeapDoubleColumn) offDoubles).close();
+        ((OffHeapDoubleColumn) offDoubles).close();
+        assertEquals(before, OffHeapMemory.getAllocatedBytes());
+        try {
+            offInts.getInt(1);
+            fail("Released column was accessible");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketch;
+
+import org.hillview.dataset.ComputeScheduler;
+import org.hillview.dataset.api.TaskPriority;
+import org.junit.Test;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ComputeSchedulerTest {
+    @Test
+    public void priorityTest() throws InterruptedException {
+        final ComputeScheduler scheduler = new ComputeScheduler(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final int count = 5;
+        final CountDownLatch done = new CountDownLatch(2 * count);
+        final List<TaskPriority> order = Collections.synchronizedList(new ArrayList<TaskPriority>());
+
+        // Occupy the only thread
+        scheduler.getExecutor(TaskPriority.Normal).execute(() -> {
+            started.countDown();
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        started.await();
+        final Executor background = scheduler.getExecutor(TaskPriority.Background);
+        final Executor interactive = scheduler.getExecutor(TaskPriority.Interactive);
+        for (int i = 0; i < count; i++)
+            background.execute(() -> { order.add(TaskPriority.Background); done.countDown(); });
+        for (int i = 0; i < count; i++)
+            interactive.execute(() -> { order.add(TaskPriority.Interactive); done.countDown(); });
+        assertEquals(count, scheduler.getQueueDepth(TaskPriority.Background));
+        assertEquals(count, scheduler.getQueueDepth(TaskPriority.Interactive));
+        assertEquals(2 * count, scheduler.getQueueDepth());
+        assertEquals(1, scheduler.getRunningCount());
+
+        blocked.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < count; i++) {
+            assertEquals(TaskPriority.Interactive, order.get(i));
+            assertEquals(TaskPriority.Background, order.get(count + i));
+        }
+        assertEquals(0, scheduler.getQueueDepth());
+        assertEquals(count, scheduler.getCompletedCount(TaskPriority.Interactive));
+        assertEquals(count, scheduler.getCompletedCount(TaskPriority.Background));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void subscribeOnTest() {
+        final ComputeScheduler scheduler = new ComputeScheduler(2);
+        final Thread caller = Thread.currentThread();
+        Thread worker = Observable.fromCallable(Thread::currentThread)
+                .subscribeOn(scheduler.getScheduler(TaskPriority.Normal))
+                .toBlocking()
+                .single();
+        assertTrue(worker != caller);
+        assertTrue(worker instanceof ForkJoinWorkerThread);
+        scheduler.shutdown();
+    }
+}
@@ -21,13 +21,21 @@ package org.hillview.sketch;
 import com.univocity.parsers.csv.CsvFormat;
 import com.univocity.parsers.csv.CsvWriter;
 import com.univocity.parsers.csv.CsvWriterSettings;
+import org.hillview.dataset.LocalDataSet;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.sketches.BucketsDescriptionEqSize;
+import org.hillview.sketches.Histogram;
+import org.hillview.sketches.HistogramSketch;
 import org.hillview.storage.CsvFileReader;
 import org.hillview.storage.CsvFileWriter;
+import org.hillview.storage.CsvSchemaInference;
 import org.hillview.table.*;
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IColumn;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
+import org.hillview.utils.CsvFileObject;
+import org.hillview.utils.Randomness;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -38,6 +46,7 @@ import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -84,6 +93,36 @@ public class CsvReaderTest {
         System.out.printf("Total memory %d, Free memory %d.", mem, freeMem);*/
     }
 
+    @Test
+    public void readCsvFileOffHeapTest() throws IOException {
+        Schema schema = Schema.readFromJsonFile(Paths.get(dataFolder, schemaFile));
+        Path path = Paths.get(dataFolder, csvFile);
+        CsvFileReader.CsvConfiguration config = new CsvFileReader.CsvConfiguration();
+        config.hasHeaderRow = true;
+        config.schema = schema;
+        ITable onHeap = Converters.checkNull(new CsvFileReader(path, config).read());
+        long before = OffHeapMemory.getAllocatedBytes();
+        config.offHeap = true;
+        ITable offHeap = Converters.checkNull(new CsvFileReader(path, config).read());
+        Assert.assertTrue(OffHeapMemory.getAllocatedBytes() > before);
+        for (IColumn col : offHeap.getColumns()) {
+            IColumn expected = onHeap.getColumn(col.getName());
+            if (col.getKind() == ContentsKind.Integer)
+                Assert.assertTrue(col instanceof OffHeapIntColumn);
+            else if (col.getKind() == ContentsKind.Double)
+                Assert.assertTrue(col instanceof OffHeapDoubleColumn);
+            else
+                continue;
+            for (int i = 0; i < col.sizeInRows(); i++) {
+                Assert.assertEquals(expected.isMissing(i), col.isMissing(i));
+                if (!col.isMissing(i))
+                    Assert.assertEquals(expected.asDouble(i, null), col.asDouble(i, null), 0);
+            }
+        }
+        OffHeapMemory.releaseColumns(offHeap);
+        Assert.assertEquals(before, OffHeapMemory.getAllocatedBytes());
+    }
+
     private void writeReadTable(ITable table) throws IOException {
         UUID uid = UUID.randomUUID();
         String tmpFileName = uid.toString();
@@ -159,6 +198,343 @@ public class CsvReaderTest {
         ITable tbl = this.readTable(dataFolder, csvFile);
         writeReadTable(Converters.checkNull(tbl));
     }
-}
 
+    private static ITable readLargeFile(Path path, Schema schema, int parallelism) throws IOException {
+        CsvFileReader.CsvConfiguration config = new CsvFileReader.CsvConfiguration();
+        config.hasHeaderRow = true;
+        config.allowMissingData = true;
+        config.schema = schema;
+        config.parallelism = parallelism;
+        return Converters.checkNull(new CsvFileReader(path, config).read());
+    }
+
+    @Test
+    public void parallelReadTest() throws IOException {
+        Schema schema = new Schema();
+        schema.append(new ColumnDescription("Id", ContentsKind.Integer, false));
+        schema.append(new ColumnDescription("Text", ContentsKind.String, true));
+        schema.append(new ColumnDescription("Kind", ContentsKind.Category, true));
+        schema.append(new ColumnDescription("Value", ContentsKind.Double, true));
+        Path path = Paths.get(".", UUID.randomUUID().toString());
+        final int rows = 250000;
+        try {
+            // Large enough to be split; some fields contain quoted newlines and quotes
+            try (Writer writer = Files.newBufferedWriter(path)) {
+                writer.write("Id,Text,Kind,Value\n");
+                for (int i = 0; i < rows; i++) {
+                    String text = (i % 3 == 0) ? "\"line " + i + "\nnext, \"\"quoted\"\"\"" : "text" + i;
+                    String value = (i % 10 == 0) ? "" : Double.toString(i / 4.0);
+                    writer.write(i + "," + text + ",k" + (i % 17) + "," + value + "\n");
+                }
+            }
+            ITable sequential = readLargeFile(path, schema, 1);
+            ITable parallel = readLargeFile(path, schema, 4);
+            Assert.assertEquals(rows, sequential.getNumOfRows());
+            Assert.assertEquals(rows, parallel.getNumOfRows());
+            for (String col : schema.getColumnNames()) {
+                IColumn expected = sequential.getColumn(col);
+                IColumn actual = parallel.getColumn(col);
+                for (int i = 0; i < rows; i++)
+                    Assert.assertEquals(expected.getObject(i), actual.getObject(i));
+            }
+            Assert.assertEquals("line 3\nnext, \"quoted\"", parallel.getColumn("Text").getString(3));
+
+            CsvFileReader.CsvConfiguration config = new CsvFileReader.CsvConfiguration();
+            config.hasHeaderRow = true;
+            config.allowMissingData = true;
+            config.schema = schema;
+            config.parallelism = 2;
+            List<ITable> parts = new CsvFileReader(path, config).readPartitions();
+            Assert.assertEquals(2, parts.size());
+            int start = 0;
+            for (ITable part : parts) {
+                IColumn ids = part.getColumn("Id");
+                for (int i = 0; i < part.getNumOfRows(); i++)
+                    Assert.assertEquals(start + i, ids.getInt(i));
+                start += part.getNumOfRows();
+            }
+            Assert.assertEquals(rows, start);
+        } finally {
+            if (Files.exists(path))
+                Files.delete(path);
+        }
+    }
+
+    /**
+     * Checks that reading a large file in parallel produces the same rows as reading
+     * it sequentially.
+     */
+    private static void checkParallelRead(Path path, Schema schema, int rows) throws IOException {
+        ITable sequential = readLargeFile(path, schema, 1);
+        ITable parallel = readLargeFile(path, schema, 4);
+        Assert.assertEquals(rows, sequential.getNumOfRows());
+        Assert.assertEquals(rows, parallel.getNumOfRows());
+        for (String col : schema.getColumnNames()) {
+            IColumn expected = sequential.getColumn(col);
+            IColumn actual = parallel.getColumn(col);
+            for (int i = 0; i < rows; i++)
+                Assert.assertEquals(expected.getObject(i), actual.getObject(i));
+        }
+    }
+
+    @Test
+    public void parallelReadStrayQuoteTest() throws IOException {
+        // A quote inside an unquoted field is a literal character, but it changes the
+        // parity of the number of quotes used to split the file.
+        Schema schema = new Schema();
+        schema.append(new ColumnDescription("Id", ContentsKind.Integer, false));
+        schema.append(new ColumnDescription("Text", ContentsKind.String, true));
+        Path path = Paths.get(".", UUID.randomUUID().toString());
+        // Large enough to be split
+        final int rows = 600000;
+        try {
+            try (Writer writer = Files.newBufferedWriter(path)) {
+                writer.write("Id,Text\n");
+                for (int i = 0; i < rows; i++) {
+                    String text = (i == 10) ? "5\" pipe" :
+                            (i % 3 == 0) ? "\"line " + i + "\nnext, \"\"quoted\"\"\"" : "text" + i;
+                    writer.write(i + "," + text + "\n");
+                }
+            }
+            checkParallelRead(path, schema, rows);
+            Assert.assertEquals("5\" pipe", readLargeFile(path, schema, 4).getColumn("Text").getString(10));
+
+            // A single column: a record starting inside a quoted field has the right
+            // number of fields, so only the end of the previous part shows the error.
+            schema = new Schema();
+            schema.append(new ColumnDescription("Text", ContentsKind.String, true));
+            try (Writer writer = Files.newBufferedWriter(path)) {
+                writer.write("Text\n");
+                for (int i = 0; i < rows; i++) {
+                    String text = (i == 10) ? "5\" pipe" :
+                            (i % 3 == 0) ? "\"line " + i + "\nnext \"\"q\"\"\"" : "text" + i;
+                    writer.write(text + "\n");
+                }
+            }
+            checkParallelRead(path, schema, rows);
+        } finally {
+            if (Files.exists(path))
+                Files.delete(path);
+        }
+    }
+
+    @Test
+    public void typedReadTest() throws IOException {
+        Schema schema = new Schema();
+        schema.append(new ColumnDescription("Name", ContentsKind.String, true));
+        schema.append(new ColumnDescription("Count", ContentsKind.Integer, true));
+        schema.append(new ColumnDescription("Value", ContentsKind.Double, true));
+        schema.append(new ColumnDescription("Kind", ContentsKind.Category, true));
+        schema.append(new ColumnDescription("When", ContentsKind.Date, true));
+        Path path = Paths.get(".", UUID.randomUUID().toString());
+        StringBuilder longField = new StringBuilder();
+        for (int i = 0; i < 100000; i++)
+            longField.append((char)('a' + (i % 26)));
+        String[] doubles = { "0", "-0.5", ".25", "1e5", "3.14159265358979", "123456789012345678",
+                "-2.5E-3", "0.1", "17", "1.7976931348623157E308" };
+        try {
+            try (Writer writer = Files.newBufferedWriter(path)) {
+                writer.write("# a comment\r\n");
+                writer.write("  plain , 10, 1.5 , x, 2017-01-02 03:04:05\r\n");
+                writer.write("\n");
+                writer.write("\"quoted, \"\"text\"\"\",-7,,\"\",2017-12-31 23:59:59\n");
+                writer.write(",,,,\n");
+                writer.write("\"" + longField + "\",2147483647,-1e-3,x,1970-01-01 00:00:00\n");
+                for (int i = 0; i < doubles.length; i++)
+                    writer.write("d" + i + "," + i + "," + doubles[i] + ",k" + i + ",2000-02-29 12:00:00\n");
+                writer.write("last,-2147483648,2,\"x\",1969-12-31 23:59:59");
+            }
+            CsvFileReader.CsvConfiguration config = new CsvFileReader.CsvConfiguration();
+            config.allowMissingData = true;
+            config.schema = schema;
+            ITable table = new CsvFileReader(path, config).read();
+            Assert.assertNotNull(table);
+            Assert.assertEquals(5 + doubles.length, table.getNumOfRows());
+
+            IColumn name = table.getColumn("Name");
+            IColumn count = table.getColumn("Count");
+            IColumn value = table.getColumn("Value");
+            IColumn kind = table.getColumn("Kind");
+            IColumn when = table.getColumn("When");
+            Assert.assertEquals("plain", name.getString(0));
+            Assert.assertEquals(10, count.getInt(0));
+            Assert.assertEquals(1.5, value.getDouble(0), 0);
+            Assert.assertEquals("x", kind.getString(0));
+            Assert.assertEquals(LocalDateTime.of(2017, 1, 2, 3, 4, 5), when.getDate(0));
+
+            Assert.assertEquals("quoted, \"text\"", name.getString(1));
+            Assert.assertEquals(-7, count.getInt(1));
+            Assert.assertTrue(value.isMissing(1));
+            Assert.assertEquals("", kind.getString(1));
+            Assert.assertEquals(LocalDateTime.of(2017, 12, 31, 23, 59, 59), when.getDate(1));
+
+            for (String col : schema.getColumnNames())
+                Assert.assertTrue(table.getColumn(col).isMissing(2));
 
+            Assert.assertEquals(longField.toString(), name.getString(3));
+            Assert.assertEquals(Integer.MAX_VALUE, count.getInt(3));
+            Assert.assertEquals(-1e-3, value.getDouble(3), 0);
+            Assert.assertEquals(LocalDateTime.of(1970, 1, 1, 0, 0), when.getDate(3));
+
+            for (int i = 0; i < doubles.length; i++) {
+                Assert.assertEquals(Double.parseDouble(doubles[i]), value.getDouble(4 + i), 0);
+                Assert.assertEquals("k" + i, kind.getString(4 + i));
+                Assert.assertEquals(LocalDateTime.of(2000, 2, 29, 12, 0), when.getDate(4 + i));
+            }
+
+            int last = 4 + doubles.length;
+            Assert.assertEquals("last", name.getString(last));
+            Assert.assertEquals(Integer.MIN_VALUE, count.getInt(last));
+            Assert.assertEquals("x", kind.getString(last));
+            Assert.assertEquals(kind.getString(0), kind.getString(last));
+            Assert.assertEquals(LocalDateTime.of(1969, 12, 31, 23, 59, 59), when.getDate(last));
+        } finally {
+            if (Files.exists(path))
+                Files.delete(path);
+        }
+    }
+
+    @Test
+    public void inferSchemaTest() throws IOException {
+        Path path = Paths.get(".", UUID.randomUUID().toString());
+        final int rows = 20000;
+        try {
+            try (Writer writer = Files.newBufferedWriter(path)) {
+                writer.write("Id,Value,When,Kind,Text,Empty\n");
+                for (int i = 0; i < rows; i++) {
+                    String value = (i % 7 == 0) ? "" : Double.toString(i / 8.0);
+                    writer.write(i + "," + value + ",2017-03-" + (10 + i % 20) + " 10:00:00,k" +
+                            (i % 5) + ",\"text, " + i + "\",\n");
+                }
+            }
+            CsvFileReader.CsvConfiguration config = new CsvFileReader.CsvConfiguration();
+            config.hasHeaderRow = true;
+            Schema schema = new CsvSchemaInference(path, config, 100, 100, new Randomness(0)).infer();
+            Assert.assertEquals(ContentsKind.Integer, schema.getKind("Id"));
+            Assert.assertEquals(ContentsKind.Double, schema.getKind("Value"));
+            Assert.assertEquals(ContentsKind.Date, schema.getKind("When"));
+            Assert.assertEquals(ContentsKind.Category, schema.getKind("Kind"));
+            Assert.assertEquals(ContentsKind.String, schema.getKind("Text"));
+            Assert.assertEquals(ContentsKind.String, schema.getKind("Empty"));
+            // Only part of the file was sampled
+            Assert.assertTrue(schema.getDescription("Id").allowMissing);
+
+            config.schema = schema;
+            ITable table = new CsvFileReader(path, config).read();
+            Assert.assertNotNull(table);
+            Assert.assertEquals(rows, table.getNumOfRows());
+            Assert.assertEquals(rows - 1, table.getColumn("Id").getInt(rows - 1));
+            Assert.assertTrue(table.getColumn("Value").isMissing(7));
+            Assert.assertEquals("k3", table.getColumn("Kind").getString(3));
+
+            // The whole file is sampled
+            config.schema = null;
+            schema = new CsvSchemaInference(path, config, rows, 0, new Randomness(0)).infer();
+            Assert.assertFalse(schema.getDescription("Id").allowMissing);
+            Assert.assertTrue(schema.getDescription("Value").allowMissing);
+            Assert.assertTrue(schema.getDescription("Empty").allowMissing);
+        } finally {
+            if (Files.exists(path))
+                Files.delete(path);
+        }
+    }
+
+    @Test
+    public void widenInferredSchemaTest() throws IOException {
+        Path path = Paths.get(".", UUID.randomUUID().toString() + ".csv");
+        Path inferred = Paths.get(path.toString() + CsvFileObject.INFERRED_SCHEMA_EXTENSION);
+        final int rows = 200000;
+        try {
+            // The values which do not parse are unlikely to be in the sample
+            try (Writer writer = Files.newBufferedWriter(path)) {
+                writer.write("Id,Count,Size\n");
+                for (int i = 0; i < rows; i++) {
+                    String count = (i == rows - 10) ? "N/A" : Integer.toString(i % 10);
+                    String size = (i == rows - 20) ? "1.5" : Integer.toString(i % 3);
+                    writer.write(i + "," + count + "," + size + "\n");
+                }
+            }
+            ITable table = new CsvFileObject(path, null).loadTable();
+            Assert.assertEquals(rows, table.getNumOfRows());
+            Assert.assertEquals(ContentsKind.Integer, table.getSchema().getKind("Id"));
+            Assert.assertEquals(ContentsKind.String, table.getSchema().getKind("Count"));
+            Assert.assertEquals(ContentsKind.Double, table.getSchema().getKind("Size"));
+            Assert.assertEquals("N/A", table.getColumn("Count").getString(rows - 10));
+            Assert.assertEquals(1.5, table.getColumn("Size").getDouble(rows - 20), 0);
+
+            // The schema which loaded the file is saved
+            Assert.assertTrue(Files.exists(inferred));
+            Schema saved = Schema.readFromJsonFile(inferred);
+            Assert.assertEquals(ContentsKind.String, saved.getKind("Count"));
+            Assert.assertEquals(ContentsKind.Double, saved.getKind("Size"));
+
+            ColumnDescription desc = new ColumnDescription("X", ContentsKind.Integer, false);
+            ColumnDescription widened = CsvSchemaInference.widen(desc, "2.5");
+            Assert.assertNotNull(widened);
+            Assert.assertEquals(ContentsKind.Double, widened.kind);
+            Assert.assertTrue(widened.allowMissing);
+            widened = CsvSchemaInference.widen(widened, "x");
+            Assert.assertNotNull(widened);
+            Assert.assertEquals(ContentsKind.String, widened.kind);
+            Assert.assertNull(CsvSchemaInference.widen(widened, "x"));
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(inferred);
+        }
+    }
+
+    @Test
+    public void streamingReadTest() throws IOException {
+        Schema schema = new Schema();
+        schema.append(new ColumnDescription("Id", ContentsKind.Integer, false));
+        schema.append(new ColumnDescription("Value", ContentsKind.Double, true));
+        Path path = Paths.get(".", UUID.randomUUID().toString());
+        final int rows = 10000;
+        try {
+            try (Writer writer = Files.newBufferedWriter(path)) {
+                writer.write("Id,Value\n");
+                for (int i = 0; i < rows; i++)
+                    writer.write(i + "," + ((i % 10 == 0) ? "" : Double.toString(i % 100)) + "\n");
+            }
+            CsvFileReader.CsvConfiguration config = new CsvFileReader.CsvConfiguration();
+            config.hasHeaderRow = true;
+            config.schema = schema;
+            ITable expected = new CsvFileReader(path, config).read();
+            Assert.assertNotNull(expected);
+
+            List<StreamingTable> tables = new CsvFileReader(path, config).readStreaming(1000);
+            Assert.assertEquals(1, tables.size());
+            StreamingTable table = tables.get(0);
+            Assert.assertEquals(schema, table.getSchema());
+
+            HistogramSketch sketch = new HistogramSketch(
+                    new BucketsDescriptionEqSize(0, 100, 10), "Value", null);
+            LocalDataSet<ITable> local = new LocalDataSet<ITable>(table);
+            List<PartialResult<Histogram>> partials =
+                    local.sketch(sketch).toList().toBlocking().single();
+            // A zero, then one result for each piece; the whole table is a single
+            // piece if it was loaded before the sketch started.
+            Assert.assertTrue(partials.size() >= 2);
+            double done = 0;
+            Histogram actual = sketch.zero();
+            for (PartialResult<Histogram> p : partials) {
+                done += p.deltaDone;
+                actual = sketch.add(actual, p.deltaValue);
+            }
+            Assert.assertEquals(1.0, done, 1e-9);
+            Histogram full = sketch.create(expected);
+            for (int i = 0; i < full.getNumOfBuckets(); i++)
+                Assert.assertEquals(full.getCount(i), actual.getCount(i));
+            Assert.assertEquals(full.getMissingData(), actual.getMissingData());
+
+            Assert.assertEquals(rows, table.getNumOfRows());
+            Assert.assertTrue(table.isComplete());
+            Assert.assertEquals(1, table.getPieces().toList().toBlocking().single().size());
+            for (int i = 0; i < rows; i++)
+                Assert.assertEquals(i, table.getColumn("Id").getInt(i));
+        } finally {
+            if (Files.exists(path))
+                Files.delete(path);
+        }
+    }
+}
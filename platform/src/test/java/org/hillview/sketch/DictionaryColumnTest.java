@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketch;
+
+import net.openhft.hashing.LongHashFunction;
+import org.hillview.sketches.BucketsDescriptionEqSize;
+import org.hillview.sketches.DistinctStrings;
+import org.hillview.sketches.HLogLog;
+import org.hillview.sketches.Histogram;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.DictionaryListColumn;
+import org.hillview.table.FullMembership;
+import org.hillview.table.RangeMembership;
+import org.hillview.table.SortedStringsConverter;
+import org.hillview.table.StringListColumn;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.utils.HashUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Iterator;
+
+/**
+ * Tests for the dictionary-encoded string columns.
+ */
+public class DictionaryColumnTest {
+    private final ColumnDescription desc = new ColumnDescription("test", ContentsKind.Category, true);
+
+    /**
+     * Fills a dictionary column and a string column with the same data.
+     * @param distinct  Number of distinct values.
+     */
+    private static void fill(final DictionaryListColumn dict, final StringListColumn strings,
+                             final int size, final int distinct) {
+        for (int i = 0; i < size; i++) {
+            if ((i % 7) == 0) {
+                dict.appendMissing();
+                strings.appendMissing();
+            } else {
+                final String s = "v" + ((i * 31) % distinct);
+                dict.append(s);
+                strings.append(s);
+            }
+        }
+    }
+
+    @Test
+    public void testCodes() {
+        // The number of distinct values forces the codes to be widened twice.
+        final int size = 200000;
+        final DictionaryListColumn dict = new DictionaryListColumn(this.desc);
+        final StringListColumn strings = new StringListColumn(
+                new ColumnDescription("s", ContentsKind.String, true));
+        fill(dict, strings, size, 70000);
+        Assert.assertEquals(size, dict.sizeInRows());
+        Assert.assertTrue(dict.getDictionarySize() <= 70000);
+        final LongHashFunction hash = LongHashFunction.xx(0);
+        for (int i = 0; i < size; i++) {
+            Assert.assertEquals(strings.isMissing(i), dict.isMissing(i));
+            Assert.assertEquals(strings.getString(i), dict.getString(i));
+            Assert.assertEquals(strings.hashCode64(i, hash), dict.hashCode64(i, hash));
+            final int code = dict.getCode(i);
+            if (code >= 0)
+                Assert.assertEquals(strings.getString(i), dict.decode(code));
+        }
+        final int[] codes = new int[3000];
+        dict.getCodes(1000, codes.length, codes);
+        for (int i = 0; i < codes.length; i++)
+            Assert.assertEquals(dict.getCode(1000 + i), codes[i]);
+    }
+
+    @Test
+    public void testHashCache() {
+        final DictionaryListColumn dict = new DictionaryListColumn(this.desc);
+        final LongHashFunction first = HashUtil.xxHash(1);
+        final LongHashFunction second = HashUtil.xxHash(2);
+        Assert.assertSame(first, HashUtil.xxHash(1));
+        // Hashes with several functions, while the dictionary grows
+        for (int i = 0; i < 5000; i++) {
+            final String s = "v" + (i / 2);
+            dict.append(s);
+            Assert.assertEquals(first.hashChars(s), dict.hashCode64(i, first));
+            Assert.assertEquals(second.hashChars(s), dict.hashCode64(i, second));
+        }
+        for (int i = 0; i < 5000; i++)
+            Assert.assertEquals(first.hashChars(dict.getString(i)), dict.hashCode64(i, first));
+    }
+
+    @Test
+    public void testSketches() {
+        final int size = 50000;
+        final DictionaryListColumn dict = new DictionaryListColumn(this.desc);
+        final StringListColumn strings = new StringListColumn(
+                new ColumnDescription("s", ContentsKind.String, true));
+        fill(dict, strings, size, 100);
+        final IMembershipSet[] sets = new IMembershipSet[] {
+                new FullMembership(size),
+                new RangeMembership(100, 20000),
+                new FullMembership(size).filter(r -> (r % 3) == 1)
+        };
+        for (IMembershipSet set : sets) {
+            final HLogLog expectedHll = new HLogLog(12, 5);
+            expectedHll.createHLL(strings, set);
+            final HLogLog hll = new HLogLog(12, 5);
+            hll.createHLL(dict, set);
+            Assert.assertEquals(expectedHll.distinctItemsEstimator(), hll.distinctItemsEstimator());
+
+            final DistinctStrings distinct = new DistinctStrings(0);
+            distinct.addStrings(dict, set);
+            Assert.assertEquals(100, distinct.size());
+            final String[] boundaries = new String[distinct.size()];
+            final Iterator<String> it = distinct.getStrings().iterator();
+            for (int i = 0; i < boundaries.length; i++)
+                boundaries[i] = it.next();
+
+            final SortedStringsConverter converter = new SortedStringsConverter(boundaries, 0, 99);
+            final BucketsDescriptionEqSize buckets = new BucketsDescriptionEqSize(0, 99, 10);
+            final Histogram expected = new Histogram(buckets);
+            expected.createHistogram(strings, set, converter);
+            final Histogram actual = new Histogram(buckets);
+            actual.createHistogram(dict, set, converter);
+            for (int i = 0; i < buckets.getNumOfBuckets(); i++)
+                Assert.assertEquals(expected.getCount(i), actual.getCount(i));
+            Assert.assertEquals(expected.getMissingData(), actual.getMissingData());
+        }
+    }
+}
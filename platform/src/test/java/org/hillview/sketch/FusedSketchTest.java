@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketch;
+
+import org.hillview.dataset.ConcurrentSketch;
+import org.hillview.dataset.FusedSketch;
+import org.hillview.dataset.TripleSketch;
+import org.hillview.dataset.api.ISketch;
+import org.hillview.dataset.api.Pair;
+import org.hillview.dataset.api.Triple;
+import org.hillview.sketches.*;
+import org.hillview.table.SmallTable;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+import org.hillview.utils.TestTables;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for sketches that share a single scan of the data.
+ */
+public class FusedSketchTest {
+    private static void checkEqual(final Histogram expected, final Histogram actual) {
+        assertEquals(expected.getNumOfBuckets(), actual.getNumOfBuckets());
+        for (int i = 0; i < expected.getNumOfBuckets(); i++)
+            assertEquals(expected.getCount(i), actual.getCount(i));
+        assertEquals(expected.getMissingData(), actual.getMissingData());
+        assertEquals(expected.getOutOfRange(), actual.getOutOfRange());
+    }
+
+    private static void checkEqual(final BasicColStats expected, final BasicColStats actual) {
+        assertEquals(expected.getPresentCount(), actual.getPresentCount());
+        assertEquals(expected.getRowCount(), actual.getRowCount());
+        assertEquals(expected.getMin(), actual.getMin(), 0);
+        assertEquals(expected.getMax(), actual.getMax(), 0);
+        assertEquals(expected.getMoment(1), actual.getMoment(1), 1e-9);
+    }
+
+    private static void checkEqual(final HeatMap expected, final HeatMap actual) {
+        for (int i = 0; i < expected.getNumOfBucketsD1(); i++)
+            for (int j = 0; j < expected.getNumOfBucketsD2(); j++)
+                assertEquals(expected.getCount(i, j), actual.getCount(i, j));
+        assertEquals(expected.getMissingData(), actual.getMissingData());
+        assertEquals(expected.getOutOfRange(), actual.getOutOfRange());
+        checkEqual(expected.getMissingHistogramD1(), actual.getMissingHistogramD1());
+        checkEqual(expected.getMissingHistogramD2(), actual.getMissingHistogramD2());
+    }
+
+    @Test
+    public void fusedTest() {
+        final SmallTable table = TestTables.getMissingIntTable(5000, 2);
+        final Iterator<String> names = table.getSchema().getColumnNames().iterator();
+        final String col1 = names.next();
+        final String col2 = names.next();
+        final BucketsDescriptionEqSize buckets = new BucketsDescriptionEqSize(0, 100, 10);
+        final HistogramSketch hist = new HistogramSketch(buckets, col1, null);
+        final HistogramSketch cdf = new HistogramSketch(
+                new BucketsDescriptionEqSize(0, 100, 50), col1, null);
+        final BasicColStatSketch stats = new BasicColStatSketch(col2, null);
+        final HeatMapSketch heat = new HeatMapSketch(buckets, buckets, null, null, col1, col2);
+
+        final ConcurrentSketch<ITable, Histogram, BasicColStats> pair =
+                new ConcurrentSketch<ITable, Histogram, BasicColStats>(hist, stats);
+        assertNotNull(pair.getAccumulator(table));
+        final Pair<Histogram, BasicColStats> p = pair.create(table);
+        checkEqual(hist.create(table), Converters.checkNull(p.first));
+        checkEqual(stats.create(table), Converters.checkNull(p.second));
+
+        // Nested sketches are fused as well
+        final TripleSketch<ITable, Histogram, HeatMap, Pair<Histogram, BasicColStats>> triple =
+                new TripleSketch<ITable, Histogram, HeatMap, Pair<Histogram, BasicColStats>>(
+                        cdf, heat, pair);
+        assertNotNull(triple.getAccumulator(table));
+        final Triple<Histogram, HeatMap, Pair<Histogram, BasicColStats>> t = triple.create(table);
+        checkEqual(cdf.create(table), Converters.checkNull(t.first));
+        checkEqual(heat.create(table), Converters.checkNull(t.second));
+        checkEqual(hist.create(table), Converters.checkNull(Converters.checkNull(t.third).first));
+
+        final List<ISketch<ITable, Histogram>> list = new ArrayList<ISketch<ITable, Histogram>>();
+        list.add(hist);
+        list.add(cdf);
+        final List<Histogram> results = new FusedSketch<ITable, Histogram>(list).create(table);
+        assertEquals(2, results.size());
+        checkEqual(hist.create(table), results.get(0));
+        checkEqual(cdf.create(table), results.get(1));
+    }
+
+    @Test
+    public void sampledTest() {
+        final SmallTable table = TestTables.getIntTable(1000, 1);
+        final String col = table.getSchema().getColumnNames().iterator().next();
+        final BucketsDescriptionEqSize buckets = new BucketsDescriptionEqSize(0, 100, 10);
+        final HistogramSketch sampled = new HistogramSketch(buckets, col, null, 0.5);
+        final HistogramSketch full = new HistogramSketch(buckets, col, null);
+        assertNull(sampled.getAccumulator(table));
+        final ConcurrentSketch<ITable, Histogram, Histogram> pair =
+                new ConcurrentSketch<ITable, Histogram, Histogram>(sampled, full);
+        // Cannot be fused, but can still be computed.
+        assertNull(pair.getAccumulator(table));
+        final Pair<Histogram, Histogram> p = pair.create(table);
+        checkEqual(full.create(table), Converters.checkNull(p.second));
+    }
+}
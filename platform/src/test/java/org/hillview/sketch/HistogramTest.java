@@ -19,9 +19,23 @@
 package org.hillview.sketch;
 
 import org.hillview.sketches.*;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.DateArrayColumn;
 import org.hillview.table.DoubleArrayColumn;
 import org.hillview.table.FullMembership;
+import org.hillview.table.SortedStringsConverter;
+import org.hillview.table.StringArrayColumn;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.IStringConverter;
 import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
 import static org.junit.Assert.assertEquals;
 
 public class HistogramTest {
@@ -94,4 +108,65 @@ public class HistogramTest {
         size2 += hist.getMissingHistogramD2().getOutOfRange();
         assertEquals(size + size1 + size2, expectedSize);
     }
+
+    /**
+     * The specialized kernels must produce the same histograms as converting each row.
+     */
+    @Test
+    public void testHistogramKernels() {
+        final int colSize = 5000;
+        final StringArrayColumn strings = new StringArrayColumn(
+                new ColumnDescription("s", ContentsKind.String, true), colSize);
+        final LocalDateTime[] dateData = new LocalDateTime[colSize];
+        final LocalDateTime base = LocalDateTime.of(1965, 3, 2, 10, 30, 15, 123456789);
+        for (int i = 0; i < colSize; i++) {
+            if ((i % 7) == 0)
+                continue;  // missing
+            strings.set(i, "S" + (i % 13));
+            dateData[i] = base.plusHours(i * 17).plusNanos(i * 1000);
+        }
+        final DateArrayColumn dates = new DateArrayColumn(
+                new ColumnDescription("d", ContentsKind.Date, true), dateData);
+        final SortedStringsConverter converter = new SortedStringsConverter(
+                new String[] { "S1", "S3", "S5", "S7", "S9" }, 0, 10);
+        checkKernel(strings, converter, new BucketsDescriptionEqSize(0, 10, 7));
+        final double min = dates.asDouble(1, null);
+        final double max = dates.asDouble(colSize - 1, null);
+        checkKernel(dates, null, new BucketsDescriptionEqSize(min, max, 20));
+        for (int i = 1; i < colSize; i += 101) {
+            if (dates.isMissing(i))
+                continue;
+            // Milliseconds rounded toward zero, whatever the Java version
+            final Duration span = Duration.between(LocalDateTime.of(1970, 1, 1, 0, 0), dates.getDate(i));
+            final long nanos = (span.getSeconds() * 1000000000L) + span.getNano();
+            assertEquals((double) (nanos / 1000000), dates.asDouble(i, null), 0);
+        }
+    }
+
+    private static void checkKernel(final IColumn col, @Nullable final IStringConverter converter,
+                                    final BucketsDescriptionEqSize buckets) {
+        final IMembershipSet members = new FullMembership(col.sizeInRows())
+                .filter(row -> (row % 3) != 1);
+        final Histogram hist = new Histogram(buckets);
+        hist.createHistogram(col, members, converter);
+        final long[] expected = new long[buckets.getNumOfBuckets()];
+        long missing = 0;
+        long outOfRange = 0;
+        final IRowIterator it = members.getIterator();
+        for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+            if (col.isMissing(row)) {
+                missing++;
+                continue;
+            }
+            int index = buckets.indexOf(col.asDouble(row, converter));
+            if (index >= 0)
+                expected[index]++;
+            else
+                outOfRange++;
+        }
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], hist.getCount(i));
+        assertEquals(missing, hist.getMissingData());
+        assertEquals(outOfRange, hist.getOutOfRange());
+    }
 }
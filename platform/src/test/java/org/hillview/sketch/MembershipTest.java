@@ -23,6 +23,8 @@ import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.IRowIterator;
 import org.hillview.utils.IntSet;
 import org.junit.Test;
+
+import java.util.function.IntPredicate;
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
@@ -91,4 +93,190 @@ public class MembershipTest {
             curr = sIter.getNextRow();
         }
     }
+
+    @Test
+    public void TestLazyMembership() {
+        final FullMembership full = new FullMembership(1000);
+        final int[] evaluations = new int[1];
+        final LazyMembership lazy = new LazyMembership(full, row -> {
+            evaluations[0]++;
+            return (row % 3) == 0;
+        });
+        assertEquals(0, evaluations[0]);
+        assertTrue(lazy.isMember(3));
+        assertFalse(lazy.isMember(4));
+        assertEquals(334, lazy.getSize());
+        assertFalse(lazy.isMaterialized());
+        // The size is cached
+        evaluations[0] = 0;
+        assertEquals(334, lazy.getSize());
+        assertEquals(0, evaluations[0]);
+        assertTrue(lazy.sample(1.0) == lazy);
+
+        int count = 0;
+        final IRowIterator it = lazy.getIterator();
+        for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+            assertEquals(0, row % 3);
+            count++;
+        }
+        assertEquals(334, count);
+        assertEquals(1, lazy.getScanCount());
+        assertFalse(lazy.isMaterialized());
+
+        // The second scan materializes the set
+        final IRowIterator it1 = lazy.getIterator();
+        //noinspection StatementWithEmptyBody
+        while (it1.getNextRow() >= 0) ;
+        assertTrue(lazy.isMaterialized());
+        evaluations[0] = 0;
+        assertEquals(334, lazy.getSize());
+        assertTrue(lazy.isMember(999));
+        final IRowIterator it2 = lazy.getIterator();
+        //noinspection StatementWithEmptyBody
+        while (it2.getNextRow() >= 0) ;
+        assertEquals(0, evaluations[0]);
+
+        final IMembershipSet filtered = lazy.filter(row -> (row % 2) == 0);
+        assertEquals(167, filtered.getSize());
+        assertEquals(334, lazy.union(filtered).getSize());
+        assertEquals(167, lazy.intersection(filtered).getSize());
+        assertEquals(167, lazy.setMinus(filtered).getSize());
+    }
+
+    @Test
+    public void TestLazySplit() {
+        final LazyMembership lazy = new LazyMembership(
+                new FullMembership(1000), row -> (row % 2) == 0, 3);
+        assertEquals(1000, lazy.getMaxSize());
+        int total = 0;
+        for (IMembershipSet part : lazy.split(4)) {
+            assertTrue(part instanceof LazyMembership);
+            total += part.getSize();
+        }
+        assertEquals(500, total);
+        assertFalse(lazy.isMaterialized());
+        lazy.split(4);
+        lazy.split(4);
+        assertTrue(lazy.isMaterialized());
+    }
+
+    @Test
+    public void TestSparseSplit() {
+        final SparseMembership sparse = new SparseMembership(
+                new FullMembership(1000), row -> (row % 3) == 0);
+        int total = 0;
+        int previous = -1;
+        for (IMembershipSet part : sparse.split(4)) {
+            total += part.getSize();
+            // Parts are consecutive ranges of the sorted rows
+            final IRowIterator it = part.getIterator();
+            for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+                assertTrue(row > previous);
+                assertTrue(sparse.isMember(row));
+                previous = row;
+            }
+        }
+        assertEquals(sparse.getSize(), total);
+    }
+
+    private static void checkAscending(final IMembershipSet set, final IntPredicate expected,
+                                       final int universe) {
+        final IRowIterator it = set.getIterator();
+        int previous = -1;
+        int count = 0;
+        for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+            assertTrue(row > previous);
+            assertTrue(expected.test(row));
+            previous = row;
+            count++;
+        }
+        int expectedCount = 0;
+        for (int i = 0; i < universe; i++) {
+            assertEquals(expected.test(i), set.isMember(i));
+            if (expected.test(i))
+                expectedCount++;
+        }
+        assertEquals(expectedCount, count);
+        assertEquals(expectedCount, set.getSize());
+    }
+
+    @Test
+    public void TestAdaptiveMembership() {
+        final int universe = 10000;
+        final FullMembership full = new FullMembership(universe);
+        final IMembershipSet dense = full.filter(row -> (row % 3) != 0);
+        assertTrue(dense instanceof DenseMembership);
+        checkAscending(dense, row -> (row % 3) != 0, universe);
+        final IMembershipSet sparse = full.filter(row -> (row % 100) == 7);
+        assertTrue(sparse instanceof SortedArrayMembership);
+        checkAscending(sparse, row -> (row % 100) == 7, universe);
+        final IMembershipSet range = full.filter(row -> row >= 100 && row < 200);
+        assertTrue(range instanceof RangeMembership);
+        final IMembershipSet other = full.filter(row -> (row % 2) == 0);
+        assertTrue(other instanceof DenseMembership);
+
+        checkAscending(dense.union(other), row -> (row % 3) != 0 || (row % 2) == 0, universe);
+        checkAscending(dense.intersection(other), row -> (row % 3) != 0 && (row % 2) == 0, universe);
+        checkAscending(dense.setMinus(other), row -> (row % 3) != 0 && (row % 2) != 0, universe);
+        checkAscending(dense.intersection(range), row -> (row % 3) != 0 && row >= 100 && row < 200, universe);
+        checkAscending(sparse.union(dense), row -> (row % 3) != 0 || (row % 100) == 7, universe);
+        checkAscending(sparse.intersection(other), row -> (row % 100) == 7 && (row % 2) == 0, universe);
+        checkAscending(sparse.setMinus(dense), row -> (row % 100) == 7 && (row % 3) == 0, universe);
+        checkAscending(full.setMinus(sparse), row -> (row % 100) != 7, universe);
+
+        for (IMembershipSet set : new IMembershipSet[] { dense, sparse }) {
+            int total = 0;
+            for (IMembershipSet part : set.split(7)) {
+                total += part.getSize();
+                final IRowIterator it = part.getIterator();
+                for (int row = it.getNextRow(); row >= 0; row = it.getNextRow())
+                    assertTrue(set.isMember(row));
+            }
+            assertEquals(set.getSize(), total);
+            final IMembershipSet sample = set.sample(50);
+            assertEquals(50, sample.getSize());
+            final IMembershipSet big = set.sample(set.getSize() - 10, 1);
+            assertEquals(set.getSize() - 10, big.getSize());
+            final IRowIterator it = big.getIterator();
+            for (int row = it.getNextRow(); row >= 0; row = it.getNextRow())
+                assertTrue(set.isMember(row));
+        }
+    }
+
+    private static void checkBatches(final IMembershipSet set, final int batchSize) {
+        final IRowIterator single = set.getIterator();
+        final IRowIterator batch = set.getIterator();
+        final int[] rows = new int[batchSize];
+        int total = 0;
+        for (int count = batch.fillRows(rows); count > 0; count = batch.fillRows(rows)) {
+            assertTrue(count <= batchSize);
+            for (int i = 0; i < count; i++)
+                assertEquals(single.getNextRow(), rows[i]);
+            total += count;
+        }
+        assertEquals(-1, single.getNextRow());
+        assertEquals(0, batch.fillRows(rows));
+        assertEquals(set.getSize(), total);
+    }
+
+    @Test
+    public void TestBatchIterator() {
+        final int universe = 10000;
+        final FullMembership full = new FullMembership(universe);
+        final IMembershipSet[] sets = new IMembershipSet[] {
+                full,
+                new RangeMembership(123, 4567),
+                full.filter(row -> (row % 3) != 0),
+                full.filter(row -> (row % 100) == 7),
+                new SparseMembership(full, row -> (row % 5) == 1),
+                new LazyMembership(full, row -> (row % 7) == 2),
+                new FullMembership(0)
+        };
+        for (IMembershipSet set : sets) {
+            checkBatches(set, 1);
+            checkBatches(set, 63);
+            checkBatches(set, IRowIterator.BATCH_SIZE);
+            checkBatches(set, 2 * universe);
+        }
+    }
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketch;
+
+import org.hillview.dataset.api.Empty;
+import org.hillview.maps.LoadNativeFilesMapper;
+import org.hillview.sketches.BasicColStatSketch;
+import org.hillview.sketches.BasicColStats;
+import org.hillview.storage.NativeFileReader;
+import org.hillview.storage.NativeFileWriter;
+import org.hillview.table.*;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ITable;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the native columnar file format.
+ */
+public class NativeFileTest {
+    private static Table createTable(final int size) {
+        final IntArrayColumn ints = new IntArrayColumn(
+                new ColumnDescription("Int", ContentsKind.Integer, true), size);
+        final DoubleArrayColumn doubles = new DoubleArrayColumn(
+                new ColumnDescription("Double", ContentsKind.Double, false), size);
+        final StringArrayColumn strings = new StringArrayColumn(
+                new ColumnDescription("Category", ContentsKind.Category, true), size);
+        final LocalDateTime[] dates = new LocalDateTime[size];
+        final Duration[] durations = new Duration[size];
+        final LocalDateTime base = LocalDateTime.of(1960, 5, 17, 3, 4, 5, 600700800);
+        for (int i = 0; i < size; i++) {
+            if ((i % 11) == 0)
+                ints.setMissing(i);
+            else
+                ints.set(i, i * 3 - 1000);
+            doubles.set(i, Math.sqrt(i));
+            strings.set(i, (i % 7) == 0 ? null : "\u00e9t\u00e9 " + (i % 13));
+            dates[i] = (i % 5) == 0 ? null : base.plusSeconds(i * 100000L).plusNanos(i);
+            durations[i] = (i % 3) == 0 ? null : Duration.ofSeconds(-i, i * 1000);
+        }
+        final List<IColumn> columns = new ArrayList<IColumn>();
+        columns.add(ints);
+        columns.add(doubles);
+        columns.add(strings);
+        columns.add(new DateArrayColumn(new ColumnDescription("Date", ContentsKind.Date, true), dates));
+        columns.add(new DurationArrayColumn(
+                new ColumnDescription("Duration", ContentsKind.Duration, true), durations));
+        return new Table(columns, new FullMembership(size));
+    }
+
+    private static void checkSame(final ITable expected, final ITable actual) {
+        assertEquals(expected.getSchema(), actual.getSchema());
+        assertEquals(expected.getNumOfRows(), actual.getNumOfRows());
+        final IRowIterator expectedRows = expected.getMembershipSet().getIterator();
+        final IRowIterator actualRows = actual.getMembershipSet().getIterator();
+        for (int row = expectedRows.getNextRow(); row >= 0; row = expectedRows.getNextRow()) {
+            final int actualRow = actualRows.getNextRow();
+            for (String col : expected.getSchema().getColumnNames()) {
+                final IColumn e = expected.getColumn(col);
+                final IColumn a = actual.getColumn(col);
+                assertEquals(e.isMissing(row), a.isMissing(actualRow));
+                assertEquals(e.getObject(row), a.getObject(actualRow));
+                if (!e.isMissing(row) && (e.getKind() != ContentsKind.Category))
+                    assertEquals(e.asDouble(row, null), a.asDouble(actualRow, null), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final Path file = Files.createTempFile("hillview", NativeFileWriter.EXTENSION);
+        try {
+            final Table table = createTable(3000);
+            new NativeFileWriter(file).writeTable(table);
+            final ITable loaded = new NativeFileReader(file).read();
+            checkSame(table, loaded);
+            assertTrue(loaded.getColumn("Int") instanceof MappedIntColumn);
+
+            final BasicColStatSketch sketch = new BasicColStatSketch("Int", null, 2, 1.0);
+            final BasicColStats expected = sketch.create(table);
+            final BasicColStats actual = sketch.create(loaded);
+            assertEquals(expected.getPresentCount(), actual.getPresentCount());
+            assertEquals(expected.getMoment(2), actual.getMoment(2), 1e-6);
+
+            // Only the rows in the membership set are written
+            final IMembershipSet odd = table.getMembershipSet().filter(r -> (r % 2) == 1);
+            final ITable filtered = table.selectRowsFromFullTable(odd);
+            new NativeFileWriter(file).writeTable(filtered);
+            checkSame(filtered, new NativeFileReader(file).read());
+
+            // Mapped columns are serialized by copying their data
+            final ObjectOutputStream out = new ObjectOutputStream(new ByteArrayOutputStream());
+            out.writeObject(loaded.getColumn("Date"));
+            out.close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testEmptyTable() throws IOException {
+        final Path file = Files.createTempFile("hillview", NativeFileWriter.EXTENSION);
+        try {
+            final Table table = createTable(0);
+            new NativeFileWriter(file).writeTable(table);
+            checkSame(table, new NativeFileReader(file).read());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        final Path folder = Files.createTempDirectory("hillview");
+        final Path file = folder.resolve("data" + NativeFileWriter.EXTENSION);
+        try {
+            final Table table = createTable(5000);
+            final List<Thread> writers = new ArrayList<Thread>();
+            final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+            for (int i = 0; i < 4; i++)
+                writers.add(new Thread(() -> {
+                    try {
+                        new NativeFileWriter(file).writeTable(table);
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }));
+            for (Thread t : writers)
+                t.start();
+            for (Thread t : writers)
+                t.join();
+            assertTrue(errors.isEmpty());
+            checkSame(table, new NativeFileReader(file).read());
+            // No temporary files are left behind
+            try (Stream<Path> files = Files.list(folder)) {
+                assertEquals(1, files.count());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(folder);
+        }
+    }
+
+    @Test
+    public void testLazyColumns() throws IOException {
+        final Path folder = Files.createTempDirectory("hillview");
+        final Path first = folder.resolve("first" + NativeFileWriter.EXTENSION);
+        final Path second = folder.resolve("second" + NativeFileWriter.EXTENSION);
+        try {
+            final Table table = createTable(2000);
+            new NativeFileWriter(first).writeTable(table);
+            new NativeFileWriter(second).writeTable(table);
+            final LoadNativeFilesMapper mapper = new LoadNativeFilesMapper(
+                    folder.toString(), "*" + NativeFileWriter.EXTENSION, new String[] { "Int", "Category" });
+            final List<ITable> tables = mapper.apply(Empty.getInstance());
+            assertEquals(2, tables.size());
+            for (ITable loaded : tables) {
+                assertEquals(2, loaded.getSchema().getColumnCount());
+                assertEquals(table.getNumOfRows(), loaded.getNumOfRows());
+                final LazyColumn ints = (LazyColumn) loaded.getColumn("Int");
+                final LazyColumn categories = (LazyColumn) loaded.getColumn("Category");
+                assertFalse(ints.isLoaded());
+                assertFalse(categories.isLoaded());
+
+                final BasicColStatSketch sketch = new BasicColStatSketch("Int", null, 2, 1.0);
+                assertEquals(sketch.create(table).getPresentCount(), sketch.create(loaded).getPresentCount());
+                assertTrue(ints.isLoaded());
+                assertFalse(categories.isLoaded());
+                // Kernels can use the representation of the loaded data
+                assertTrue(categories.getLoadedColumn() instanceof IDictionaryColumn);
+                checkSame(table.project(loaded.getSchema()), loaded);
+                assertTrue(categories.isLoaded());
+            }
+        } finally {
+            Files.deleteIfExists(first);
+            Files.deleteIfExists(second);
+            Files.deleteIfExists(folder);
+        }
+    }
+}
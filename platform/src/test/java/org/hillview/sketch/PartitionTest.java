@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketch;
+
+import org.hillview.dataset.LocalDataSet;
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.maps.PartitionTableMap;
+import org.hillview.sketches.BucketsDescriptionEqSize;
+import org.hillview.sketches.Histogram;
+import org.hillview.sketches.HistogramSketch;
+import org.hillview.table.FullMembership;
+import org.hillview.table.RangeMembership;
+import org.hillview.table.Table;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.TestTables;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for splitting tables into shards.
+ */
+public class PartitionTest {
+    @Test
+    public void rangeMembershipTest() {
+        final RangeMembership range = new RangeMembership(10, 20);
+        assertEquals(10, range.getSize());
+        assertTrue(range.isMember(10));
+        assertTrue(range.isMember(19));
+        assertFalse(range.isMember(20));
+        assertFalse(range.isMember(9));
+        final IRowIterator it = range.getIterator();
+        int expected = 10;
+        int row = it.getNextRow();
+        while (row >= 0) {
+            assertEquals(expected, row);
+            expected++;
+            row = it.getNextRow();
+        }
+        assertEquals(20, expected);
+
+        final IMembershipSet union = range.union(new RangeMembership(15, 30));
+        assertEquals(20, union.getSize());
+        final IMembershipSet inter = range.intersection(new FullMembership(15));
+        assertEquals(5, inter.getSize());
+        final IMembershipSet disjoint = range.union(new RangeMembership(40, 45));
+        assertEquals(15, disjoint.getSize());
+        assertEquals(5, range.sample(5).getSize());
+        assertEquals(8, range.sample(8, 0).getSize());
+        assertEquals(5, range.filter(r -> (r % 2) == 0).getSize());
+    }
+
+    private static void checkSplit(final IMembershipSet set, final int parts) {
+        final List<IMembershipSet> split = set.split(parts);
+        assertTrue(split.size() <= parts);
+        int total = 0;
+        for (IMembershipSet s : split) {
+            total += s.getSize();
+            final IRowIterator it = s.getIterator();
+            int row = it.getNextRow();
+            while (row >= 0) {
+                assertTrue(set.isMember(row));
+                for (IMembershipSet other : split)
+                    if (other != s)
+                        assertFalse(other.isMember(row));
+                row = it.getNextRow();
+            }
+        }
+        assertEquals(set.getSize(), total);
+    }
+
+    @Test
+    public void splitTest() {
+        final FullMembership full = new FullMembership(1000);
+        checkSplit(full, 1);
+        checkSplit(full, 7);
+        checkSplit(full, 2000);
+        final IMembershipSet sparse = full.filter(r -> (r % 3) == 0);
+        checkSplit(sparse, 5);
+        checkSplit(new RangeMembership(100, 203), 4);
+        checkSplit(new FullMembership(0), 3);
+    }
+
+    @Test
+    public void partitionMapTest() {
+        final int size = 100000;
+        final Table table = TestTables.getRepIntTable(size, 1);
+        final String colName = table.getSchema().getColumnNames().iterator().next();
+        final List<ITable> shards = new PartitionTableMap(8, 1000).apply(table);
+        assertEquals(8, shards.size());
+        int rows = 0;
+        for (ITable t : shards) {
+            rows += t.getNumOfRows();
+            assertTrue(t.getColumn(colName) == table.getColumn(colName));
+        }
+        assertEquals(size, rows);
+        // Small tables are not split
+        assertEquals(1, new PartitionTableMap(8, size).apply(table).size());
+
+        final BucketsDescriptionEqSize buckets = new BucketsDescriptionEqSize(0, 100, 10);
+        final HistogramSketch sketch = new HistogramSketch(buckets, colName, null);
+        final Histogram expected = sketch.create(table);
+        final IDataSet<ITable> local = new LocalDataSet<ITable>(table);
+        final IDataSet<ITable> partitioned = local.blockingFlatMap(new PartitionTableMap(4, 1000));
+        final Histogram actual = partitioned.blockingSketch(sketch);
+        for (int i = 0; i < expected.getNumOfBuckets(); i++)
+            assertEquals(expected.getCount(i), actual.getCount(i));
+        assertEquals(expected.getOutOfRange(), actual.getOutOfRange());
+        assertEquals(expected.getMissingData(), actual.getMissingData());
+    }
+
+    @Test
+    public void chunkedSketchTest() {
+        final int size = 300000;
+        final Table table = TestTables.getRepIntTable(size, 1);
+        final String colName = table.getSchema().getColumnNames().iterator().next();
+        final List<ITable> chunks = table.splitInChunks(LocalDataSet.DEFAULT_CHUNK_SIZE);
+        assertEquals(5, chunks.size());
+        assertEquals(1, table.splitInChunks(size).size());
+
+        final BucketsDescriptionEqSize buckets = new BucketsDescriptionEqSize(0, 100, 10);
+        final HistogramSketch sketch = new HistogramSketch(buckets, colName, null);
+        final Histogram expected = sketch.create(table);
+        final LocalDataSet<ITable> local = new LocalDataSet<ITable>(table);
+        final List<PartialResult<Histogram>> partials =
+                local.sketch(sketch).toList().toBlocking().single();
+        // A zero followed by one result for each chunk
+        assertEquals(chunks.size() + 1, partials.size());
+        double done = 0;
+        Histogram actual = sketch.zero();
+        for (PartialResult<Histogram> p : partials) {
+            done += p.deltaDone;
+            actual = sketch.add(actual, p.deltaValue);
+        }
+        assertEquals(1.0, done, 1e-9);
+        for (int i = 0; i < expected.getNumOfBuckets(); i++)
+            assertEquals(expected.getCount(i), actual.getCount(i));
+
+        final LocalDataSet<ITable> unchunked = new LocalDataSet<ITable>(table);
+        unchunked.setChunkSize(0);
+        assertEquals(2, unchunked.sketch(sketch).toList().toBlocking().single().size());
+    }
+}
@@ -22,9 +22,22 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.net.HostAndPort;
 import org.hillview.dataset.LocalDataSet;
 import org.hillview.dataset.ParallelDataSet;
+import org.hillview.dataset.RemoteBatch;
 import org.hillview.dataset.RemoteDataSet;
 import org.hillview.dataset.api.*;
+import org.apache.commons.lang3.SerializationUtils;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import org.hillview.remoting.ChannelPool;
 import org.hillview.remoting.HillviewServer;
+import org.hillview.remoting.ResultCodecs;
+import org.hillview.sketches.*;
+import org.hillview.table.OffHeapMemory;
+import org.hillview.table.SmallTable;
+import org.hillview.table.Table;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.TestTables;
 import org.hillview.utils.Converters;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -34,11 +47,15 @@ import rx.observers.TestSubscriber;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static junit.framework.TestCase.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -65,6 +82,29 @@ public class RemotingTest {
         }
     }
 
+    /**
+     * Copies the columns of a table off-heap.
+     */
+    private static class OffHeapMap implements IMap<ITable, ITable> {
+        @Override
+        public ITable apply(final ITable data) {
+            final List<IColumn> columns = new ArrayList<IColumn>();
+            for (IColumn column : data.getColumns())
+                columns.add(column.compressOffHeap(data.getMembershipSet()));
+            return new Table(columns);
+        }
+    }
+
+    /**
+     * Produces a table which shares the columns of its input.
+     */
+    private static class ShareColumnsMap implements IMap<ITable, ITable> {
+        @Override
+        public ITable apply(final ITable data) {
+            return data.project(data.getSchema());
+        }
+    }
+
     private static class SumSketch implements ISketch<int[], Integer> {
         @Override @Nullable
         public Integer zero() {
@@ -121,6 +161,21 @@ public class RemotingTest {
         }
     }
 
+    /**
+     * Sums slowly: the partitions holding larger values take longer.
+     */
+    private static class SlowSumSketch extends SumSketch {
+        @Override
+        public Integer create(final int[] data) {
+            try {
+                Thread.sleep((data.length == 0) ? 0 : data[0] / 20);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return super.create(data);
+        }
+    }
+
     /*
      * Create separate server and client actor systems to test remoting.
      */
@@ -140,6 +195,7 @@ public class RemotingTest {
         ParallelDataSet<int[]> pds = new ParallelDataSet<int[]>(al);
         pds.setBundleInterval(0);
         server = new HillviewServer(serverAddress, pds);
+        server.setCoalescing(0, 1);
     }
 
     @Test
@@ -271,4 +327,242 @@ public class RemotingTest {
             server.shutdown();
         }
     }
-}
\ No newline at end of file
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(final T value, final boolean smaller) {
+        final byte[] bytes = ResultCodecs.encode(new PartialResult<T>(0.5, value));
+        if (smaller)
+            assertTrue(bytes.length < SerializationUtils.serialize(
+                    new PartialResult<T>(0.5, value)).length);
+        final PartialResult<T> result = (PartialResult<T>) ResultCodecs.decode(bytes);
+        assertNotNull(result);
+        assertEquals(0.5, result.deltaDone);
+        return Converters.checkNull(result.deltaValue);
+    }
+
+    @Test
+    public void testResultCodecs() {
+        final SmallTable ints = TestTables.getMissingIntTable(1000, 2);
+        final String col = ints.getSchema().getColumnNames().iterator().next();
+        final BucketsDescriptionEqSize buckets = new BucketsDescriptionEqSize(0, 1000, 20);
+        final Histogram hist = new HistogramSketch(buckets, col, null).create(ints);
+        final Histogram hist1 = roundTrip(hist, true);
+        assertEquals(hist.getNumOfBuckets(), hist1.getNumOfBuckets());
+        for (int i = 0; i < hist.getNumOfBuckets(); i++)
+            assertEquals(hist.getCount(i), hist1.getCount(i));
+        assertEquals(hist.getMissingData(), hist1.getMissingData());
+        assertEquals(hist.getOutOfRange(), hist1.getOutOfRange());
+
+        final Iterator<String> names = ints.getSchema().getColumnNames().iterator();
+        final HeatMap map = new HeatMapSketch(buckets, new BucketsDescription(
+                new double[] { 0, 10, 100, 1000 }), null, null, names.next(), names.next())
+                .create(ints);
+        final HeatMap map1 = roundTrip(map, true);
+        for (int i = 0; i < map.getNumOfBucketsD1(); i++)
+            for (int j = 0; j < map.getNumOfBucketsD2(); j++)
+                assertEquals(map.getCount(i, j), map1.getCount(i, j));
+        assertEquals(map.getSize(), map1.getSize());
+        assertEquals(map.getMissingHistogramD1().getCount(3),
+                map1.getMissingHistogramD1().getCount(3));
+
+        final HLogLog hll = new HLogLogSketch(col, 12, 0).create(ints);
+        assertEquals(hll.distinctItemsEstimator(), roundTrip(hll, false).distinctItemsEstimator());
+
+        final Table people = TestTables.testTable();
+        final BasicColStats stats = new BasicColStatSketch("Age", null).create(people);
+        final BasicColStats stats1 = roundTrip(stats, true);
+        assertEquals(stats.getMinObject(), stats1.getMinObject());
+        assertEquals(stats.getMaxObject(), stats1.getMaxObject());
+        assertEquals(stats.getPresentCount(), stats1.getPresentCount());
+        assertEquals(stats.getRowCount(), stats1.getRowCount());
+        assertEquals(stats.getMoment(1), stats1.getMoment(1));
+
+        final SmallTable small = people.compress(people.getMembershipSet());
+        final List<Integer> counts = new ArrayList<Integer>();
+        for (int i = 0; i < small.getNumOfRows(); i++)
+            counts.add(i + 1);
+        final NextKList list = new NextKList(small, counts, 3, 100);
+        final NextKList list1 = roundTrip(list, true);
+        assertEquals(list.toJson(), list1.toJson());
+        assertEquals(ints.toJson(), roundTrip(ints, true).toJson());
+
+        // Types without a codec use Java serialization
+        final int[] data = new int[] { 1, 2, 3 };
+        assertEquals(3, roundTrip(data, false)[2]);
+        assertNull(ResultCodecs.decode(ResultCodecs.encode(null)));
+    }
+
+    @Test
+    public void testChannelPool() {
+        final ChannelPool pool = ChannelPool.getInstance();
+        final RemoteDataSet<int[]> rds = new RemoteDataSet<int[]>(serverAddress);
+        assertTrue(pool.getReferenceCount(serverAddress) >= 1);
+        final ManagedChannel channel = pool.getChannel(serverAddress);
+        assertTrue(channel == pool.getChannel(serverAddress));
+
+        // The dataset produced by map shares the channel
+        final IDataSet<int[]> mapped = rds.blockingMap(new IncrementMap());
+        assertTrue(pool.getReferenceCount(serverAddress) >= 2);
+        assertEquals(50005000, (int) mapped.blockingSketch(new SumSketch()));
+        assertTrue(channel == pool.getChannel(serverAddress));
+
+        // Errors returned by the server do not close the channel
+        pool.reportFailure(serverAddress, channel, new RuntimeException("error"));
+        assertTrue(channel == pool.getChannel(serverAddress));
+        // A broken connection does
+        pool.reportFailure(serverAddress, channel, Status.UNAVAILABLE.asRuntimeException());
+        assertTrue(channel.isShutdown());
+        final ManagedChannel channel1 = pool.getChannel(serverAddress);
+        assertTrue(channel != channel1);
+        assertEquals(50005000, (int) mapped.blockingSketch(new SumSketch()));
+    }
+
+    @Test
+    public void testChannelPoolCleanup() {
+        final ChannelPool pool = new ChannelPool(0);
+        final ManagedChannel channel = pool.getChannel(serverAddress);
+        assertEquals(1, pool.getChannelCount());
+        // Without handles the channel is idle, and closed by the next cleanup
+        pool.cleanup();
+        assertTrue(channel.isShutdown());
+        assertEquals(0, pool.getChannelCount());
+        // which also runs when a channel is requested
+        final ManagedChannel channel1 = pool.getChannel(serverAddress);
+        final ManagedChannel channel2 = pool.getChannel(serverAddress);
+        assertTrue(channel1.isShutdown());
+        assertFalse(channel2.isShutdown());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCoalescing() {
+        final HillviewServer srv = Converters.checkNull(server);
+        final IDataSet<int[]> remoteIds = new RemoteDataSet<int[]>(serverAddress);
+        final List<PartialResult<Integer>> uncoalesced =
+                remoteIds.sketch(new SumSketch()).toList().toBlocking().single();
+        // One result for each partition at least
+        assertTrue(uncoalesced.size() >= 10);
+        srv.setCoalescing(10000, 1000);
+        try {
+            final List<PartialResult<Integer>> coalesced =
+                    remoteIds.sketch(new SumSketch()).toList().toBlocking().single();
+            assertEquals(1, coalesced.size());
+            assertEquals(1.0, coalesced.get(0).deltaDone, 1e-9);
+            assertEquals(49995000, (int) Converters.checkNull(coalesced.get(0).deltaValue));
+        } finally {
+            srv.setCoalescing(0, 1);
+        }
+    }
+
+    @Test
+    public void testBatch() {
+        final RemoteDataSet<int[]> remoteIds = new RemoteDataSet<int[]>(serverAddress);
+        final RemoteBatch batch = new RemoteBatch(serverAddress);
+        final Observable<PartialResult<Integer>> sum1 = batch.sketch(remoteIds, new SumSketch());
+        final Observable<PartialResult<IDataSet<int[]>>> mapped =
+                batch.map(remoteIds, new IncrementMap());
+        final Observable<PartialResult<Integer>> sum2 = batch.sketch(remoteIds, new SumSketch());
+        final Observable<PartialResult<Integer>> missing =
+                batch.sketch(new RemoteDataSet<int[]>(serverAddress, 99999), new SumSketch());
+        batch.execute();
+
+        final int expected = 49995000;
+        assertEquals(expected, (int) sum1.map(e -> e.deltaValue).reduce((x, y) -> x + y)
+                                         .toBlocking().last());
+        assertEquals(expected, (int) sum2.map(e -> e.deltaValue).reduce((x, y) -> x + y)
+                                         .toBlocking().last());
+        final IDataSet<int[]> result = mapped.filter(p -> p.deltaValue != null)
+                                             .toBlocking().last().deltaValue;
+        assertNotNull(result);
+        assertEquals(expected + 10000, (int) result.blockingSketch(new SumSketch()));
+
+        final TestSubscriber<PartialResult<Integer>> ts = new TestSubscriber<>();
+        missing.toBlocking().subscribe(ts);
+        ts.assertError(RuntimeException.class);
+
+        final RemoteBatch errorBatch = new RemoteBatch(serverAddress);
+        final Observable<PartialResult<Integer>> error =
+                errorBatch.sketch(remoteIds, new ErrorSumSketch());
+        errorBatch.execute();
+        final TestSubscriber<PartialResult<Integer>> ts1 = new TestSubscriber<>();
+        error.toBlocking().subscribe(ts1);
+        ts1.assertError(RuntimeException.class);
+    }
+
+    @Test
+    public void testBatchCancelOne() {
+        final RemoteDataSet<int[]> remoteIds = new RemoteDataSet<int[]>(serverAddress);
+        final RemoteBatch batch = new RemoteBatch(serverAddress);
+        // Computed together with one scan of the data
+        final Observable<PartialResult<Integer>> sum1 = batch.sketch(remoteIds, new SlowSumSketch());
+        final Observable<PartialResult<Integer>> sum2 = batch.sketch(remoteIds, new SlowSumSketch());
+        batch.execute();
+        // Cancelling one sketch does not cancel the other one
+        assertNotNull(sum1.take(1).toBlocking().single());
+        assertEquals(49995000, (int) sum2.map(e -> e.deltaValue).reduce((x, y) -> x + y)
+                                         .toBlocking().last());
+    }
+
+    @Test
+    public void testConnectInProcess() {
+        // The server runs in this process: its dataset is used directly
+        final IDataSet<int[]> local = RemoteDataSet.connect(serverAddress);
+        assertTrue(local instanceof ParallelDataSet);
+        assertEquals(49995000, (int) local.blockingSketch(new SumSketch()));
+        final IDataSet<int[]> mapped = local.blockingMap(new IncrementMap());
+        assertEquals(50005000, (int) mapped.blockingSketch(new SumSketch()));
+
+        // No server on this address in this process
+        final HostAndPort other = HostAndPort.fromParts("127.0.0.1", serverAddress.getPort() + 1);
+        assertTrue(RemoteDataSet.<int[]>connect(other) instanceof RemoteDataSet);
+
+        System.setProperty(RemoteDataSet.IN_PROCESS_PROPERTY, "false");
+        try {
+            final IDataSet<int[]> remote = RemoteDataSet.connect(serverAddress);
+            assertTrue(remote instanceof RemoteDataSet);
+            assertEquals(49995000, (int) remote.blockingSketch(new SumSketch()));
+        } finally {
+            System.clearProperty(RemoteDataSet.IN_PROCESS_PROPERTY);
+        }
+    }
+
+    @Test
+    public void testRemoveDataSet() throws Exception {
+        final HostAndPort address = HostAndPort.fromParts("127.0.0.1", serverAddress.getPort() + 2);
+        final SmallTable table = TestTables.getIntTable(1000, 2);
+        final HillviewServer tableServer = new HillviewServer(address, new LocalDataSet<ITable>(table));
+        final long before = OffHeapMemory.getAllocatedBytes();
+        try {
+            final IDataSet<ITable> remote = new RemoteDataSet<ITable>(address);
+            // The server numbers its datasets in order: the initial one is 1.
+            final IDataSet<ITable> offHeap = remote.blockingMap(new OffHeapMap());
+            final long allocated = OffHeapMemory.getAllocatedBytes();
+            assertTrue(allocated > before);
+            final IDataSet<ITable> shared = offHeap.blockingMap(new ShareColumnsMap());
+
+            // The columns are still held by the second dataset
+            assertTrue(tableServer.removeDataSet(2));
+            assertEquals(allocated, OffHeapMemory.getAllocatedBytes());
+            final BasicColStats stats = shared.blockingSketch(
+                    new BasicColStatSketch("Column0", null));
+            assertEquals(1000, stats.getPresentCount());
+
+            assertTrue(tableServer.removeDataSet(3));
+            assertEquals(before, OffHeapMemory.getAllocatedBytes());
+            assertFalse(tableServer.removeDataSet(3));
+            try {
+                tableServer.removeDataSet(HillviewServer.DEFAULT_IDS_INDEX);
+                fail("The initial dataset was removed");
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+
+            // Datasets which are not removed are released on shutdown
+            remote.blockingMap(new OffHeapMap());
+            assertTrue(OffHeapMemory.getAllocatedBytes() > before);
+        } finally {
+            tableServer.shutdown();
+        }
+        assertEquals(before, OffHeapMemory.getAllocatedBytes());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketch;
+
+import org.hillview.dataset.LocalDataSet;
+import org.hillview.dataset.SketchCache;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.sketches.BasicColStatSketch;
+import org.hillview.sketches.BasicColStats;
+import org.hillview.sketches.BucketsDescriptionEqSize;
+import org.hillview.sketches.Histogram;
+import org.hillview.sketches.HistogramSketch;
+import org.hillview.table.Table;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.TestTables;
+import org.junit.Test;
+import rx.Observable;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SketchCacheTest {
+    @Test
+    public void hitMissTest() {
+        final Table table = TestTables.getRepIntTable(1000, 1);
+        final String colName = table.getSchema().getColumnNames().iterator().next();
+        final LocalDataSet<ITable> local = new LocalDataSet<ITable>(table);
+        final SketchCache cache = new SketchCache(SketchCache.DEFAULT_SIZE);
+
+        final HistogramSketch sketch = new HistogramSketch(
+                new BucketsDescriptionEqSize(0, 100, 10), colName, null);
+        final HistogramSketch same = new HistogramSketch(
+                new BucketsDescriptionEqSize(0, 100, 10), colName, null);
+        final HistogramSketch other = new HistogramSketch(
+                new BucketsDescriptionEqSize(0, 100, 20), colName, null);
+        assertEquals(sketch, same);
+        assertEquals(sketch.hashCode(), same.hashCode());
+        assertTrue(!sketch.equals(other));
+
+        final Histogram first = cache.sketch("t", sketch, local.sketch(sketch))
+                .reduce(new PartialResult<Histogram>(0.0, sketch.zero()), (a, b) ->
+                        new PartialResult<Histogram>(a.deltaDone + b.deltaDone,
+                                sketch.add(a.deltaValue, b.deltaValue)))
+                .toBlocking().single().deltaValue;
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getEntryCount());
+
+        final List<PartialResult<Histogram>> cached =
+                cache.sketch("t", same, local.sketch(same)).toList().toBlocking().single();
+        assertEquals(1, cached.size());
+        assertEquals(1.0, cached.get(0).deltaDone, 0);
+        final Histogram second = cached.get(0).deltaValue;
+        for (int i = 0; i < first.getNumOfBuckets(); i++)
+            assertEquals(first.getCount(i), second.getCount(i));
+        assertEquals(1, cache.getHitCount());
+
+        // Different sketch or different dataset
+        cache.sketch("t", other, local.sketch(other)).toBlocking().last();
+        cache.sketch("u", sketch, local.sketch(sketch)).toBlocking().last();
+        assertEquals(3, cache.getMissCount());
+        assertEquals(3, cache.getEntryCount());
+    }
+
+    @Test
+    public void sampledTest() {
+        final Table table = TestTables.getRepIntTable(1000, 1);
+        final String colName = table.getSchema().getColumnNames().iterator().next();
+        final LocalDataSet<ITable> local = new LocalDataSet<ITable>(table);
+        final SketchCache cache = new SketchCache(SketchCache.DEFAULT_SIZE);
+        final HistogramSketch sketch = new HistogramSketch(
+                new BucketsDescriptionEqSize(0, 100, 10), colName, null, 0.5);
+        final BasicColStatSketch stats = new BasicColStatSketch(colName, null, 1, 0.5);
+        assertFalse(sketch.isCacheable());
+        assertFalse(stats.isCacheable());
+        // Each request draws a new sample
+        for (int i = 0; i < 2; i++) {
+            cache.sketch("t", sketch, local.sketch(sketch)).toBlocking().last();
+            cache.sketch("t", stats, local.sketch(stats)).toBlocking().last();
+        }
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void incompleteTest() {
+        final SketchCache cache = new SketchCache(SketchCache.DEFAULT_SIZE);
+        final BasicColStatSketch sketch = new BasicColStatSketch("X", null);
+        // Only half of the data is processed
+        final Observable<PartialResult<BasicColStats>> half =
+                Observable.just(new PartialResult<BasicColStats>(0.5, sketch.zero()));
+        cache.sketch("t", sketch, half).toBlocking().last();
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void evictionTest() {
+        final BasicColStatSketch[] sketches = new BasicColStatSketch[10];
+        for (int i = 0; i < sketches.length; i++)
+            sketches[i] = new BasicColStatSketch("X" + i, null);
+        final SketchCache probe = new SketchCache(SketchCache.DEFAULT_SIZE);
+        probe.sketch("t", sketches[0], Observable.just(
+                new PartialResult<BasicColStats>(sketches[0].zero()))).toBlocking().last();
+        final long entrySize = probe.getUsedBytes();
+        assertTrue(entrySize > 0);
+
+        // Room for 3 results
+        final SketchCache cache = new SketchCache(3 * entrySize);
+        for (BasicColStatSketch s : sketches)
+            cache.sketch("t", s, Observable.just(
+                    new PartialResult<BasicColStats>(s.zero()))).toBlocking().last();
+        assertEquals(3, cache.getEntryCount());
+        assertTrue(cache.getUsedBytes() <= 3 * entrySize);
+        // The most recent results are kept
+        cache.sketch("t", sketches[9], Observable.<PartialResult<BasicColStats>>empty())
+                .toBlocking().last();
+        assertEquals(1, cache.getHitCount());
+        // The oldest results were evicted
+        cache.sketch("t", sketches[0], Observable.just(
+                new PartialResult<BasicColStats>(sketches[0].zero()))).toBlocking().last();
+        assertEquals(1, cache.getHitCount());
+        assertEquals(sketches.length + 1, cache.getMissCount());
+    }
+}
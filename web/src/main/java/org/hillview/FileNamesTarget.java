@@ -17,11 +17,16 @@
 
 package org.hillview;
 
+import org.hillview.dataset.CompositeMap;
 import org.hillview.dataset.api.IDataSet;
 import org.hillview.maps.LoadFileMapper;
+import org.hillview.maps.PartitionTableMap;
+import org.hillview.maps.StreamFileMapper;
+import org.hillview.table.api.ITable;
 import org.hillview.utils.CsvFileObject;
 
 import javax.websocket.Session;
+import java.util.List;
 
 public class FileNamesTarget extends RpcTarget {
     private final IDataSet<CsvFileObject> files;
@@ -32,7 +37,17 @@ public class FileNamesTarget extends RpcTarget {
 
     @HillviewRpc
     public void loadTable(RpcRequest request, Session session) {
-        this.runMap(this.files, new LoadFileMapper(), TableTarget::new, request, session);
+        if (Boolean.getBoolean(CsvFileObject.STREAMING_PROPERTY)) {
+            // The tables can be explored while they are loading; each file is parsed
+            // in parallel parts, one per core of the worker.
+            this.runFlatMap(this.files, new StreamFileMapper(), TableTarget::new, request, session);
+            return;
+        }
+        // Each loaded table is split into shards, one per core of the worker.
+        CompositeMap<CsvFileObject, ITable, List<ITable>> map =
+                new CompositeMap<CsvFileObject, ITable, List<ITable>>(
+                        new LoadFileMapper(), new PartitionTableMap());
+        this.runFlatMap(this.files, map, TableTarget::new, request, session);
     }
 
     @Override
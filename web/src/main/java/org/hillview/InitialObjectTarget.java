@@ -85,12 +85,12 @@ public class InitialObjectTarget extends RpcTarget {
         if (numServers > 1) {
             logger.info("Creating PDS");
             final ArrayList<IDataSet<Empty>> emptyDatasets = new ArrayList<IDataSet<Empty>>(numServers);
-            description.getServerList().forEach(server -> emptyDatasets.add(new RemoteDataSet<>(server)));
+            description.getServerList().forEach(server -> emptyDatasets.add(RemoteDataSet.<Empty>connect(server)));
             this.emptyDataset = new ParallelDataSet<>(emptyDatasets);
         }
         else {
             logger.info("Creating RDS");
-            this.emptyDataset = new RemoteDataSet<Empty>(description.getServerList().get(0));
+            this.emptyDataset = RemoteDataSet.connect(description.getServerList().get(0));
         }
     }
 
@@ -41,6 +41,11 @@ abstract class RpcTarget implements IJson {
     String objectId;
     private final HashMap<String, Method> executor;
     static final Logger logger = Logger.getLogger(RpcTarget.class.getName());
+    /**
+     * Complete sketch results computed by all targets; users often request
+     * the same view of a dataset repeatedly.
+     */
+    static final SketchCache sketchCache = new SketchCache(SketchCache.DEFAULT_SIZE);
 
     @Nullable
     private Subscription subscription;
@@ -229,8 +234,9 @@ abstract class RpcTarget implements IJson {
     <T, R extends IJson> void
     runSketch(IDataSet<T> data, ISketch<T, R> sketch,
               RpcRequest request, Session session) {
-        // Run the sketch
-        Observable<PartialResult<R>> sketches = data.sketch(sketch);
+        // Run the sketch, unless the result is cached
+        Observable<PartialResult<R>> sketches = sketchCache.sketch(
+                Converters.checkNull(this.objectId), sketch, data.sketch(sketch));
         // Knows how to add partial results
         PartialResultMonoid<R> prm = new PartialResultMonoid<R>(sketch);
         // Prefix sum of the partial results
@@ -254,8 +260,9 @@ abstract class RpcTarget implements IJson {
     <T, R, S extends IJson> void
     runCompleteSketch(IDataSet<T> data, ISketch<T, R> sketch, Function<R, S> postprocessing,
               RpcRequest request, Session session) {
-        // Run the sketch
-        Observable<PartialResult<R>> sketches = data.sketch(sketch);
+        // Run the sketch, unless the result is cached
+        Observable<PartialResult<R>> sketches = sketchCache.sketch(
+                Converters.checkNull(this.objectId), sketch, data.sketch(sketch));
         // Knows how to add partial results
         PartialResultMonoid<R> prm = new PartialResultMonoid<R>(sketch);
         // Prefix sum of the partial results.